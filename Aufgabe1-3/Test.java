@@ -1,12 +1,18 @@
 import aufgabe1.Randoms;
 import aufgabe1.Simulation;
+import aufgabe1.world.CheckpointLog;
 import aufgabe1.world.SimpleFoodWorldGenerator;
+import aufgabe1.world.UpdateMode;
 import aufgabe1.world.World;
 import aufgabe1.world.WorldParameters;
 import aufgabe1.world.entity.AntParameters;
 import aufgabe1.world.entity.Colony;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.random.RandomGeneratorFactory;
 
 /**
@@ -23,8 +29,11 @@ import java.util.random.RandomGeneratorFactory;
  * Sebastian: Datenbank (Ini File), 3D Welt
  */
 public class Test {
-    public static void main(String[] args) {
-        WorldParameters worldParams = new WorldParameters();
+    private static final WorldParameters worldParams = new WorldParameters();
+    private static final Colony.Parameters colonyParameters = new Colony.Parameters();
+    private static final AntParameters antParams = new AntParameters();
+
+    public static void main(String[] args) throws IOException {
         worldParams.foodDecay = 0.995f;
         worldParams.colonyDecay = 0.9975f;
         worldParams.avoidDecay = 0.85f;
@@ -34,11 +43,9 @@ public class Test {
         worldParams.foodExpireTimeVariance = worldParams.dayNightCycleTime / 2;
         worldParams.foodExpireTimeMin = 1000;
 
-        Colony.Parameters colonyParameters = new Colony.Parameters();
         colonyParameters.antSpawnFoodThreshold = 75;
         colonyParameters.antSpawnFoodCost = 25;
 
-        AntParameters antParams = new AntParameters();
         AntParameters.Behavior behaviorParams = antParams.behavior();
 
         behaviorParams.highScentThreshold = 1f;
@@ -73,7 +80,7 @@ public class Test {
         antParams.energyFoodFactor = worldParams.dayNightCycleTime / 3f;
 
         Randoms randoms = new Randoms(RandomGeneratorFactory.of("L32X64MixRandom"), 1337);
-        Simulation sim = new Simulation(randoms, s -> createTestWorld(s, worldParams, colonyParameters, antParams));
+        Simulation sim = new Simulation(randoms, s -> createTestWorld(s, worldParams, colonyParameters, antParams, World.defaultThreads()));
 
         for (int run = 0; run < 5; run++) {
             for (int i = 0; i < 1000; i++) {
@@ -88,11 +95,116 @@ public class Test {
             sim.resetWorld();
         }
         sim.close();
+
+        // the deterministic mode has to give the same world with any number of threads
+        byte[] single;
+        try (Simulation deterministic = deterministicSimulation(1)) {
+            step(deterministic, 1000);
+            single = snapshot(deterministic);
+        }
+        byte[] parallel;
+        try (Simulation deterministic = deterministicSimulation(4)) {
+            step(deterministic, 1000);
+            parallel = snapshot(deterministic);
+        }
+        if (!Arrays.equals(single, parallel)) {
+            throw new AssertionError("The deterministic mode differs between 1 and 4 threads");
+        }
+        System.out.println("Deterministic mode: 1 and 4 threads give the same world.");
+
+        // a loaded snapshot has to continue like the world it was saved from
+        if (!Arrays.equals(parallel, runLoaded(4, 500, 500))) {
+            throw new AssertionError("A world loaded from a snapshot continues differently");
+        }
+        System.out.println("Snapshots: a loaded world continues like the saved one.");
+
+        // a world resumed from a checkpoint log has to continue like the world that wrote it
+        if (!Arrays.equals(parallel, runResumed(4, 500, 500))) {
+            throw new AssertionError("A world resumed from a checkpoint log continues differently");
+        }
+        System.out.println("Checkpoints: a resumed world continues like the running one.");
+    }
+
+    /**
+     * Saves a deterministic test world, loads it again and continues the loaded world.
+     * Returns the snapshot of the loaded world at the end.
+     */
+    private static byte @NotNull [] runLoaded(int threads, int stepsBefore, int stepsAfter) throws IOException {
+        Path file = Files.createTempFile("test", ".snapshot");
+        try (Simulation sim = deterministicSimulation(threads)) {
+            step(sim, stepsBefore);
+            sim.saveSnapshot(file, false);
+            byte[] saved = Files.readAllBytes(file);
+            sim.loadSnapshot(file, new SimpleFoodWorldGenerator(1337, sim.randoms(), worldParams), threads);
+            sim.world().setUpdateMode(UpdateMode.DETERMINISTIC);
+            if (!Arrays.equals(saved, snapshot(sim))) {
+                throw new AssertionError("A loaded snapshot differs from the saved one");
+            }
+            step(sim, stepsAfter);
+            return snapshot(sim);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Runs a deterministic test world with a checkpoint log, resumes the last checkpoint in a new simulation
+     * and continues it. Returns the snapshot of the resumed world at the end.
+     */
+    private static byte @NotNull [] runResumed(int threads, int stepsBefore, int stepsAfter) throws IOException {
+        Path file = Files.createTempFile("test", ".checkpoints");
+        try {
+            try (Simulation sim = deterministicSimulation(threads)) {
+                // the last checkpoint is written after the last step
+                CheckpointLog checkpoints = new CheckpointLog(file, 100, false);
+                sim.world().setCheckpointLog(checkpoints);
+                step(sim, stepsBefore);
+                checkpoints.flush();
+            }
+            try (Simulation sim = deterministicSimulation(threads)) {
+                sim.loadCheckpoint(file, new SimpleFoodWorldGenerator(1337, sim.randoms(), worldParams), threads);
+                sim.world().setUpdateMode(UpdateMode.DETERMINISTIC);
+                if (sim.world().time() != stepsBefore) {
+                    throw new AssertionError("Resumed at tick " + sim.world().time() + " instead of " + stepsBefore);
+                }
+                step(sim, stepsAfter);
+                return snapshot(sim);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Creates a simulation of a new test world in the deterministic mode, the same for every call.
+     */
+    @NotNull
+    private static Simulation deterministicSimulation(int threads) {
+        Randoms randoms = new Randoms(RandomGeneratorFactory.of("L32X64MixRandom"), 1337);
+        Simulation sim = new Simulation(randoms, s -> createTestWorld(s, worldParams, colonyParameters, antParams, threads));
+        sim.world().setUpdateMode(UpdateMode.DETERMINISTIC);
+        return sim;
+    }
+
+    private static void step(@NotNull Simulation sim, int steps) {
+        for (int i = 0; i < steps; i++) {
+            sim.step();
+        }
+    }
+
+    private static byte @NotNull [] snapshot(@NotNull Simulation sim) throws IOException {
+        Path file = Files.createTempFile("test", ".snapshot");
+        try {
+            sim.saveSnapshot(file, false);
+            return Files.readAllBytes(file);
+        } finally {
+            Files.delete(file);
+        }
     }
 
     @NotNull
-    private static World createTestWorld(@NotNull Simulation sim, @NotNull WorldParameters worldParams, Colony.@NotNull Parameters colonyParameters, @NotNull AntParameters antParameters) {
-        World world = new World(new SimpleFoodWorldGenerator(1337, sim.randoms(), worldParams), worldParams);
+    private static World createTestWorld(@NotNull Simulation sim, @NotNull WorldParameters worldParams, Colony.@NotNull Parameters colonyParameters, @NotNull AntParameters antParameters, int threads) {
+        World world = new World(new SimpleFoodWorldGenerator(1337, sim.randoms(), worldParams), worldParams, threads);
         world.setSimulation(sim);
 
         Colony colony = world.generator().createColony(world.get(-50, 0), colonyParameters, antParameters);
@@ -19,6 +19,9 @@ public enum Direction {
     West(-1, 0),
     NorthWest(-1, -1);
 
+    // values() copies the array on every call
+    private static final Direction[] VALUES = values();
+
     private final int dx;
     private final int dy;
 
@@ -125,13 +128,23 @@ public enum Direction {
         return null;
     }
 
+    /**
+     * Like values()[ordinal], but without copying the array.
+     *
+     * @param ordinal must be >= 0 and < 8
+     * @return the direction with the given ordinal
+     */
+    @NotNull
+    public static Direction of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
     /**
      * @param count how many to the left
      * @return the direction to the left of the current direction
      */
     public Direction left(int count) {
-        Direction[] values = Direction.values();
-        return values[(ordinal() + values.length - count) % values.length];
+        return VALUES[(ordinal() + VALUES.length - count) % VALUES.length];
     }
 
     /**
@@ -146,8 +159,7 @@ public enum Direction {
      * @return the direction to the right of the current direction
      */
     public Direction right(int count) {
-        Direction[] values = Direction.values();
-        return values[(ordinal() + values.length + count) % values.length];
+        return VALUES[(ordinal() + VALUES.length + count) % VALUES.length];
     }
 
     public int dx() {
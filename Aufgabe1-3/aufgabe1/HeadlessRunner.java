@@ -0,0 +1,390 @@
+package aufgabe1;
+
+import aufgabe1.world.CheckpointLog;
+import aufgabe1.world.ChunkStats;
+import aufgabe1.world.SimpleFoodWorldGenerator;
+import aufgabe1.world.UpdateMode;
+import aufgabe1.world.World;
+import aufgabe1.world.WorldParameters;
+import aufgabe1.world.entity.AntParameters;
+import aufgabe1.world.entity.Colony;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * Runs a simulation without the viewer for a fixed number of ticks as fast as possible and reports
+ * the time per tick. Builds the same worlds as {@link Main}, so the numbers can be compared between versions.
+ * <br>
+ * Usage: {@code java aufgabe1.HeadlessRunner [--ticks N] [--warmup N] [--world starting|random|viewer] [--seed N]
+ * [--threads N] [--mode LOCKING|DOUBLE_BUFFERED|DETERMINISTIC] [--table-ants N] [--diffusion RATE] [--load FILE] [--save FILE] [--resume FILE] [--checkpoint FILE] [--checkpoint-interval N] [--record FILE] [--snapshot-interval N] [--replay FILE] [--replay-from N] [--csv FILE] [--json FILE]}
+ * <br>
+ * With {@code --table-ants} every colony stores its ants in an {@link aufgabe1.world.entity.AntTable}
+ * and the given number of ants is spawned into the tables before the warmup.
+ * With {@code --diffusion} the scents spread to the neighbouring cells every tick, see
+ * {@link WorldParameters#scentDiffusion}.
+ * With {@code --load} the run continues the world of a snapshot instead of building a new one,
+ * the world options are ignored then. With {@code --save} the world is saved after the run, see
+ * {@link aufgabe1.world.WorldSnapshot}.
+ * With {@code --checkpoint} the world is saved to a {@link CheckpointLog} every {@code --checkpoint-interval} ticks
+ * while it runs, {@code --resume} continues the last checkpoint of such a log.
+ * With {@code --record} the run is recorded into a {@link ReplayLog}, with a snapshot every {@code --snapshot-interval}
+ * steps if given. {@code --replay} runs such a log again, e.g. one recorded by the viewer, and measures every step
+ * after the warmup. The seed, world, mode and threads of the log are used then and {@code --ticks} is ignored.
+ * {@code --replay-from} starts at the last snapshot of the log before that step. The end of a replay is compared
+ * with the recording, if a DETERMINISTIC recording ends differently the run fails.
+ * <br>
+ * A row is appended to the CSV file, so it collects the results of several runs. The JSON file is overwritten.
+ * Modularisierungseinheit: Modul
+ * STYLE: procedural
+ */
+public class HeadlessRunner {
+    private static final String CSV_HEADER = "world,mode,threads,seed,ticks,meanMs,p50Ms,p90Ms,p99Ms,maxMs,ticksPerSecond,ants,colonyFood,residentChunks";
+
+    private HeadlessRunner() {
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: HeadlessRunner [--ticks N] [--warmup N] [--world starting|random|viewer] [--seed N] "
+                + "[--threads N] [--mode LOCKING|DOUBLE_BUFFERED|DETERMINISTIC] [--table-ants N] [--diffusion RATE] [--load FILE] [--save FILE] [--resume FILE] [--checkpoint FILE] [--checkpoint-interval N] [--record FILE] [--snapshot-interval N] [--replay FILE] [--replay-from N] [--csv FILE] [--json FILE]");
+            System.exit(2);
+            return;
+        }
+
+        Report report = run(options);
+        System.out.println(report);
+        try {
+            if (options.csv != null) appendCsv(options.csv, report);
+            if (options.json != null) writeJson(options.json, report);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while writing the results: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the world, runs the warmup ticks and then measures every single tick.
+     */
+    @NotNull
+    static Report run(@NotNull Options options) {
+        if (options.replay != null) return replay(options, options.replay);
+        if (options.record != null && (options.load != null || options.resume != null || options.tableAnts > 0)) {
+            throw new IllegalArgumentException("Runs with --load, --resume or --table-ants can't be recorded");
+        }
+
+        WorldParameters worldParams = Main.createWorldParameters();
+        Colony.Parameters colonyParameters = Main.createColonyParameters();
+        worldParams.scentDiffusion = options.diffusion;
+        AntParameters antParams = Main.createAntParameters(worldParams);
+
+        Randoms randoms = new Randoms(RandomGeneratorFactory.of("L32X64MixRandom"), options.seed);
+        try (Simulation sim = new Simulation(randoms,
+            Main.createWorldFactory(options.world, worldParams, colonyParameters, antParams, options.threads))) {
+            if (options.load != null) {
+                long start = System.nanoTime();
+                sim.loadSnapshot(options.load, new SimpleFoodWorldGenerator(1337, sim.randoms(), worldParams), options.threads);
+                System.out.printf(Locale.ROOT, "Loaded %s in %.1fms%n", options.load, (System.nanoTime() - start) / 1e6);
+            } else if (options.resume != null) {
+                long start = System.nanoTime();
+                sim.loadCheckpoint(options.resume, new SimpleFoodWorldGenerator(1337, sim.randoms(), worldParams), options.threads);
+                System.out.printf(Locale.ROOT, "Resumed %s at tick %d in %.1fms%n", options.resume, sim.world().time(),
+                    (System.nanoTime() - start) / 1e6);
+            }
+            World world = sim.world();
+            world.setUpdateMode(options.mode);
+            if (options.checkpoint != null) {
+                world.setCheckpointLog(new CheckpointLog(options.checkpoint, options.checkpointInterval, false));
+            }
+            if (options.tableAnts > 0 && options.load == null && options.resume == null) {
+                spawnTableAnts(world, options.tableAnts);
+            }
+            if (options.record != null) {
+                sim.startRecording(new ReplayLog.Recorder(options.record, options.world, options.snapshotInterval));
+            }
+
+            for (int i = 0; i < options.warmup; i++) {
+                sim.step();
+            }
+            long[] tickNanos = new long[options.ticks];
+            long total = 0;
+            for (int i = 0; i < options.ticks; i++) {
+                long start = System.nanoTime();
+                sim.step();
+                tickNanos[i] = System.nanoTime() - start;
+                total += tickNanos[i];
+            }
+            sim.stopRecording();
+            if (options.save != null) {
+                long start = System.nanoTime();
+                sim.saveSnapshot(options.save, false);
+                System.out.printf(Locale.ROOT, "Saved %s in %.1fms%n", options.save, (System.nanoTime() - start) / 1e6);
+            }
+            CheckpointLog checkpoints = world.checkpointLog();
+            if (checkpoints != null) {
+                checkpoints.flush();
+                System.out.printf(Locale.ROOT, "Checkpoints: %d written, %d postponed, %d compactions, %.1fMB, max pause %.3fms%n",
+                    checkpoints.checkpoints(), checkpoints.postponed(), checkpoints.compactions(),
+                    checkpoints.bytes() / 1e6, checkpoints.maxPauseNanos() / 1e6);
+            }
+            return new Report(options, tickNanos, total, world.totalAnts(), world.totalColonyFood(), world.chunkStats());
+        } catch (IOException e) {
+            throw new RuntimeException("Error while reading or writing the snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replays a log, see {@link Replay}, measures every step after the warmup and checks the end state.
+     */
+    @NotNull
+    private static Report replay(@NotNull Options options, @NotNull Path file) {
+        try {
+            ReplayLog log = ReplayLog.read(file);
+            options.seed = log.seed();
+            options.world = log.world();
+            options.mode = log.mode();
+            options.threads = log.threads();
+            try (Replay replay = new Replay(log, options.replayFrom)) {
+                Simulation sim = replay.simulation();
+                System.out.printf(Locale.ROOT, "Replaying %s from step %d to step %d%n", file, replay.start(), log.steps());
+                for (int i = 0; i < options.warmup && !replay.done(); i++) {
+                    replay.step();
+                }
+                if (replay.remaining() > Integer.MAX_VALUE) throw new IllegalArgumentException("The replay is too long");
+                long[] tickNanos = new long[(int) replay.remaining()];
+                if (tickNanos.length == 0) throw new IllegalArgumentException("The replay is not longer than the warmup");
+                long total = 0;
+                for (int i = 0; i < tickNanos.length; i++) {
+                    long start = System.nanoTime();
+                    replay.step();
+                    tickNanos[i] = System.nanoTime() - start;
+                    total += tickNanos[i];
+                }
+                String difference = replay.verify();
+                if (difference == null) {
+                    System.out.println("Replay matches the recording");
+                } else if (log.mode() == UpdateMode.DETERMINISTIC) {
+                    throw new IllegalStateException("Replay differs from the recording: " + difference);
+                } else {
+                    // the other modes depend on the timing of the threads
+                    System.out.println("Replay differs: " + difference);
+                }
+                World world = sim.world();
+                return new Report(options, tickNanos, total, world.totalAnts(), world.totalColonyFood(), world.chunkStats());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error while replaying " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Enables the ant tables of all colonies and spreads the ants evenly over them.
+     */
+    private static void spawnTableAnts(@NotNull World world, int ants) {
+        List<Colony> colonies = world.colonies();
+        for (int i = 0; i < colonies.size(); i++) {
+            Colony colony = colonies.get(i);
+            colony.enableAntTable();
+            int count = ants / colonies.size() + (i < ants % colonies.size() ? 1 : 0);
+            for (int ant = 0; ant < count; ant++) {
+                colony.spawnTableAnt(5, 5);
+            }
+        }
+    }
+
+    private static void appendCsv(@NotNull Path file, @NotNull Report report) throws IOException {
+        StringBuilder content = new StringBuilder();
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            content.append(CSV_HEADER).append('\n');
+        }
+        content.append(report.toCsvRow()).append('\n');
+        Files.writeString(file, content, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void writeJson(@NotNull Path file, @NotNull Report report) throws IOException {
+        Files.writeString(file, report.toJson() + "\n", StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The command line options of the runner.
+     * STYLE: procedural, plain data
+     */
+    static final class Options {
+        int ticks = 5000;
+        int warmup = 500;
+        @NotNull
+        String world = "starting";
+        long seed = 1337;
+        int threads = World.defaultThreads();
+        @NotNull
+        UpdateMode mode = UpdateMode.LOCKING;
+        int tableAnts = 0;
+        float diffusion = 0;
+        @Nullable
+        Path load;
+        @Nullable
+        Path save;
+        @Nullable
+        Path resume;
+        @Nullable
+        Path checkpoint;
+        int checkpointInterval = 100;
+        @Nullable
+        Path record;
+        int snapshotInterval = 0;
+        @Nullable
+        Path replay;
+        long replayFrom = 0;
+        @Nullable
+        Path csv;
+        @Nullable
+        Path json;
+
+        @NotNull
+        static Options parse(String @NotNull [] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i += 2) {
+                String name = args[i];
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + name);
+                String value = args[i + 1];
+                try {
+                    switch (name) {
+                        case "--ticks" -> options.ticks = positive(name, Integer.parseInt(value));
+                        case "--warmup" -> options.warmup = Math.max(0, Integer.parseInt(value));
+                        case "--world" -> options.world = switch (value) {
+                            case "starting", "random", "viewer" -> value;
+                            default -> throw new IllegalArgumentException("Unknown world " + value);
+                        };
+                        case "--seed" -> options.seed = Long.parseLong(value);
+                        case "--threads" -> options.threads = positive(name, Integer.parseInt(value));
+                        case "--mode" -> options.mode = UpdateMode.valueOf(value.toUpperCase(Locale.ROOT));
+                        case "--table-ants" -> options.tableAnts = Math.max(0, Integer.parseInt(value));
+                        case "--diffusion" -> options.diffusion = rate(name, Float.parseFloat(value));
+                        case "--load" -> options.load = Path.of(value);
+                        case "--save" -> options.save = Path.of(value);
+                        case "--resume" -> options.resume = Path.of(value);
+                        case "--checkpoint" -> options.checkpoint = Path.of(value);
+                        case "--checkpoint-interval" -> options.checkpointInterval = positive(name, Integer.parseInt(value));
+                        case "--record" -> options.record = Path.of(value);
+                        case "--snapshot-interval" -> options.snapshotInterval = Math.max(0, Integer.parseInt(value));
+                        case "--replay" -> options.replay = Path.of(value);
+                        case "--replay-from" -> options.replayFrom = Math.max(0, Long.parseLong(value));
+                        case "--csv" -> options.csv = Path.of(value);
+                        case "--json" -> options.json = Path.of(value);
+                        default -> throw new IllegalArgumentException("Unknown option " + name);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number for " + name + ": " + value, e);
+                }
+            }
+            return options;
+        }
+
+        private static float rate(@NotNull String name, float value) {
+            if (!(value >= 0 && value <= 1)) throw new IllegalArgumentException(name + " must be between 0 and 1");
+            return value;
+        }
+
+        private static int positive(@NotNull String name, int value) {
+            if (value < 1) throw new IllegalArgumentException(name + " must be positive");
+            return value;
+        }
+    }
+
+    /**
+     * The results of a run. The tick times are sorted, percentiles use the nearest rank.
+     * Modularisierungseinheit: Klasse
+     * STYLE: object-oriented, immutable
+     */
+    static final class Report {
+        @NotNull
+        private final Options options;
+        private final long @NotNull [] sortedNanos;
+        private final long totalNanos;
+        private final int ants;
+        private final float colonyFood;
+        @NotNull
+        private final ChunkStats chunks;
+
+        private Report(@NotNull Options options, long @NotNull [] tickNanos, long totalNanos, int ants, float colonyFood, @NotNull ChunkStats chunks) {
+            this.options = options;
+            this.sortedNanos = tickNanos.clone();
+            Arrays.sort(this.sortedNanos);
+            this.totalNanos = totalNanos;
+            this.ants = ants;
+            this.colonyFood = colonyFood;
+            this.chunks = chunks;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the time in milliseconds that the given percentage of ticks didn't exceed
+         */
+        @Contract(pure = true)
+        double percentileMs(double percentile) {
+            int rank = (int) Math.ceil(percentile / 100 * sortedNanos.length);
+            int index = Math.min(sortedNanos.length - 1, Math.max(0, rank - 1));
+            return sortedNanos[index] / 1e6;
+        }
+
+        @Contract(pure = true)
+        double meanMs() {
+            return totalNanos / 1e6 / sortedNanos.length;
+        }
+
+        @Contract(pure = true)
+        double ticksPerSecond() {
+            return sortedNanos.length / (totalNanos / 1e9);
+        }
+
+        @NotNull
+        String toCsvRow() {
+            return String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.4f,%.4f,%.4f,%.4f,%.4f,%.2f,%d,%.3f,%d",
+                options.world, options.mode, options.threads, options.seed, sortedNanos.length,
+                meanMs(), percentileMs(50), percentileMs(90), percentileMs(99), percentileMs(100),
+                ticksPerSecond(), ants, colonyFood, chunks.resident());
+        }
+
+        @NotNull
+        String toJson() {
+            return String.format(Locale.ROOT, """
+                    {
+                      "world": "%s",
+                      "mode": "%s",
+                      "threads": %d,
+                      "seed": %d,
+                      "ticks": %d,
+                      "warmup": %d,
+                      "msPerTick": {"mean": %.4f, "p50": %.4f, "p90": %.4f, "p99": %.4f, "max": %.4f},
+                      "ticksPerSecond": %.2f,
+                      "ants": %d,
+                      "colonyFood": %.3f,
+                      "chunks": {"resident": %d, "budget": %d, "evictions": %d}
+                    }""",
+                options.world, options.mode, options.threads, options.seed, sortedNanos.length, options.warmup,
+                meanMs(), percentileMs(50), percentileMs(90), percentileMs(99), percentileMs(100),
+                ticksPerSecond(), ants, colonyFood, chunks.resident(), chunks.budget(), chunks.evictions());
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%d ticks (%s, %d threads): mean %.3fms, p50 %.3fms, p90 %.3fms, p99 %.3fms, max %.3fms, %.1f ticks/s | ants: %d, colony food: %.1f | %s",
+                sortedNanos.length, options.mode, options.threads, meanMs(), percentileMs(50), percentileMs(90),
+                percentileMs(99), percentileMs(100), ticksPerSecond(), ants, colonyFood, chunks);
+        }
+    }
+}
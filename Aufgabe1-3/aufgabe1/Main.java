@@ -3,12 +3,15 @@ package aufgabe1;
 import aufgabe1.view.Viewer;
 import aufgabe1.view.Visualization;
 import aufgabe1.world.SimpleFoodWorldGenerator;
+import aufgabe1.world.UpdateMode;
 import aufgabe1.world.World;
 import aufgabe1.world.WorldParameters;
 import aufgabe1.world.entity.AntParameters;
 import aufgabe1.world.entity.Colony;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.random.RandomGeneratorFactory;
 
@@ -16,7 +19,64 @@ import java.util.random.RandomGeneratorFactory;
  * Modularisierungseinheit: Modul
  */
 public class Main {
+    /**
+     * With {@code --record FILE} the run is recorded into a {@link ReplayLog}, which the {@link HeadlessRunner}
+     * can replay. The world is updated deterministically then, see {@link UpdateMode#DETERMINISTIC}.
+     * {@code --snapshot-interval N} additionally saves a snapshot every N steps.
+     */
     public static void main(String[] args) {
+        Path record = null;
+        int snapshotInterval = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--record" -> record = Path.of(args[i + 1]);
+                case "--snapshot-interval" -> snapshotInterval = Math.max(0, Integer.parseInt(args[i + 1]));
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        WorldParameters worldParams = createWorldParameters();
+        Colony.Parameters colonyParameters = createColonyParameters();
+        AntParameters antParams = createAntParameters(worldParams);
+
+        Randoms randoms = new Randoms(RandomGeneratorFactory.of("L32X64MixRandom"), 1337);
+        Simulation.WorldFactory worlds = createWorldFactory("viewer", worldParams, colonyParameters, antParams, World.defaultThreads());
+        boolean deterministic = record != null;
+        Simulation sim = new Simulation(randoms, s -> {
+            World world = worlds.createWorld(s);
+            if (deterministic) world.setUpdateMode(UpdateMode.DETERMINISTIC);
+            return world;
+        });
+        if (record != null) {
+            try {
+                sim.startRecording(new ReplayLog.Recorder(record, "viewer", snapshotInterval));
+            } catch (IOException e) {
+                throw new RuntimeException("Error while creating the replay log: " + e.getMessage(), e);
+            }
+            // the viewer exits the JVM when it is closed
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    sim.stopRecording();
+                } catch (IOException e) {
+                    System.err.println("Could not finish the replay log: " + e.getMessage());
+                }
+            }));
+        }
+
+        Visualization.Parameters vizParams = new Visualization.Parameters();
+        vizParams.scentColorScale = antParams.behavior().highScentThreshold;
+        vizParams.foodColorScale = 0.25f;
+        vizParams.scale = 4;
+
+        Viewer viewer = new Viewer(sim, vizParams, 1000, 1000);
+        viewer.run(1.0 / 25.0, true);
+    }
+
+    /**
+     * The world parameters used by the viewer and the {@link HeadlessRunner}.
+     */
+    @NotNull
+    static WorldParameters createWorldParameters() {
         WorldParameters worldParams = new WorldParameters();
         worldParams.foodDecay = 0.995f;
         worldParams.colonyDecay = 0.9975f;
@@ -26,11 +86,22 @@ public class Main {
         worldParams.foodExpireTimeMean = (int) (worldParams.dayNightCycleTime * worldParams.dayPercentage);
         worldParams.foodExpireTimeVariance = worldParams.dayNightCycleTime / 2;
         worldParams.foodExpireTimeMin = 1000;
+        return worldParams;
+    }
 
+    @NotNull
+    static Colony.Parameters createColonyParameters() {
         Colony.Parameters colonyParameters = new Colony.Parameters();
         colonyParameters.antSpawnFoodThreshold = 75;
         colonyParameters.antSpawnFoodCost = 25;
+        return colonyParameters;
+    }
 
+    /**
+     * @param worldParams the energy of the ants depends on the length of a day
+     */
+    @NotNull
+    static AntParameters createAntParameters(@NotNull WorldParameters worldParams) {
         AntParameters antParams = new AntParameters();
         AntParameters.Behavior behaviorParams = antParams.behavior();
 
@@ -64,29 +135,33 @@ public class Main {
 
         antParams.energyGain = worldParams.dayNightCycleTime * 2;
         antParams.energyFoodFactor = worldParams.dayNightCycleTime / 3f;
+        return antParams;
+    }
 
-        Randoms randoms = new Randoms(RandomGeneratorFactory.of("L32X64MixRandom"), 1337);
-        AtomicBoolean firstSim = new AtomicBoolean(true);
-        Simulation sim = new Simulation(randoms, s -> {
-            if (firstSim.getAndSet(false)) {
-                return createStartingWorld(s, worldParams, colonyParameters, antParams);
-            } else {
-                return createRandomWorld(s, worldParams, colonyParameters, antParams);
+    /**
+     * Creates the worlds of a simulation by name: "starting" and "random" always create the same kind of world,
+     * "viewer" creates the starting world first and a random one on every reset.
+     *
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    @NotNull
+    static Simulation.WorldFactory createWorldFactory(@NotNull String world, @NotNull WorldParameters worldParams, Colony.@NotNull Parameters colonyParameters, @NotNull AntParameters antParameters, int threads) {
+        return switch (world) {
+            case "starting" -> s -> createStartingWorld(s, worldParams, colonyParameters, antParameters, threads);
+            case "random" -> s -> createRandomWorld(s, worldParams, colonyParameters, antParameters, threads);
+            case "viewer" -> {
+                AtomicBoolean firstSim = new AtomicBoolean(true);
+                yield s -> firstSim.getAndSet(false)
+                    ? createStartingWorld(s, worldParams, colonyParameters, antParameters, threads)
+                    : createRandomWorld(s, worldParams, colonyParameters, antParameters, threads);
             }
-        });
-
-        Visualization.Parameters vizParams = new Visualization.Parameters();
-        vizParams.scentColorScale = behaviorParams.highScentThreshold;
-        vizParams.foodColorScale = 0.25f;
-        vizParams.scale = 4;
-
-        Viewer viewer = new Viewer(sim, vizParams, 1000, 1000);
-        viewer.run(1.0 / 25.0, true);
+            default -> throw new IllegalArgumentException("Unknown world " + world);
+        };
     }
 
     @NotNull
-    private static World createStartingWorld(@NotNull Simulation sim, @NotNull WorldParameters worldParams, Colony.@NotNull Parameters colonyParameters, @NotNull AntParameters antParameters) {
-        World world = new World(new SimpleFoodWorldGenerator(1337, sim.randoms(), worldParams), worldParams);
+    static World createStartingWorld(@NotNull Simulation sim, @NotNull WorldParameters worldParams, Colony.@NotNull Parameters colonyParameters, @NotNull AntParameters antParameters, int threads) {
+        World world = new World(new SimpleFoodWorldGenerator(1337, sim.randoms(), worldParams), worldParams, threads);
         world.setSimulation(sim);
 
         Colony colony = world.generator().createColony(world.get(170, 120), colonyParameters, antParameters);
@@ -102,8 +177,8 @@ public class Main {
     }
 
     @NotNull
-    private static World createRandomWorld(@NotNull Simulation sim, @NotNull WorldParameters worldParams, Colony.@NotNull Parameters colonyParameters, @NotNull AntParameters antParameters) {
-        World world = new World(new SimpleFoodWorldGenerator(1337, sim.randoms(), worldParams), worldParams);
+    static World createRandomWorld(@NotNull Simulation sim, @NotNull WorldParameters worldParams, Colony.@NotNull Parameters colonyParameters, @NotNull AntParameters antParameters, int threads) {
+        World world = new World(new SimpleFoodWorldGenerator(1337, sim.randoms(), worldParams), worldParams, threads);
         world.setSimulation(sim);
         for (int i = 0; i < 2; i++) {
             int colonyX = sim.randoms().places().nextInt(250) - 125;
@@ -0,0 +1,56 @@
+package aufgabe1;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * A SplitMix64 stream like the rows of an {@link aufgabe1.world.entity.AntTable}: the whole state is one long that
+ * is advanced by a constant and mixed, see {@link Randoms#mix}. Unlike the generators of a
+ * {@link java.util.random.RandomGeneratorFactory} the state can be read, so ants and colonies use it
+ * for their streams and a {@link aufgabe1.world.WorldSnapshot} continues them exactly.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+public final class MixRandom implements RandomGenerator {
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+    private long state;
+
+    /**
+     * @param state a state returned by {@link #state()} or any seed
+     */
+    public MixRandom(long state) {
+        this.state = state;
+    }
+
+    @Override
+    public long nextLong() {
+        state += GAMMA;
+        return Randoms.mix(state);
+    }
+
+    /**
+     * Creates an independent stream that is seeded with the next value of this one.
+     */
+    @NotNull
+    public MixRandom split() {
+        // mixed again, so the new stream doesn't start where this one continues
+        return new MixRandom(Randoms.mix(nextLong()));
+    }
+
+    /**
+     * @return the state, a stream created with it continues with the same values as this one
+     */
+    @Contract(pure = true)
+    public long state() {
+        return state;
+    }
+
+    /**
+     * Continues the stream at a state returned by {@link #state()}.
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+}
@@ -41,6 +41,71 @@ public final class Randoms {
         return factory.create(seed);
     }
 
+    /**
+     * Creates a random number generator whose sequence only depends on the seed of this instance and the
+     * given keys, e.g. a position and a time step. Streams derived this way don't depend on the order
+     * in which they are requested, so they can be used by several threads without changing the results.
+     */
+    @NotNull
+    public RandomGenerator derive(long @NotNull ... keys) {
+        long hash = seed;
+        for (long key : keys) {
+            hash = mix(hash + key);
+        }
+        return factory.create(hash);
+    }
+
+    /**
+     * Like {@link #derive}, but the stream is a {@link MixRandom}, whose state can be saved in a snapshot.
+     * Used for the streams of ants and colonies, they don't depend on the algorithm of this instance.
+     */
+    @NotNull
+    public MixRandom stream(long @NotNull ... keys) {
+        long hash = seed;
+        for (long key : keys) {
+            hash = mix(hash + key);
+        }
+        return new MixRandom(hash);
+    }
+
+    /**
+     * Creates an independent generator from the given one. If the algorithm supports splitting, like the LXM
+     * generators do, the generator is split, otherwise it is seeded with the next value of the given one.
+     * Either way the result only depends on the state of the given generator.
+     */
+    @NotNull
+    public RandomGenerator split(@NotNull RandomGenerator generator) {
+        if (generator instanceof RandomGenerator.SplittableGenerator splittable) {
+            return splittable.split();
+        }
+        return factory.create(generator.nextLong());
+    }
+
+    /**
+     * The finalizer of SplitMix64. Adding a constant to a state and mixing it gives a cheap random stream
+     * that needs no object, see {@link aufgabe1.world.entity.AntTable}.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return the seed all generators of this instance are derived from
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * @return the name of the algorithm of the generators, see {@link RandomGeneratorFactory#of(String)}
+     */
+    @NotNull
+    public String algorithm() {
+        return factory.name();
+    }
+
     @NotNull
     public RandomGenerator places() {
         return places;
@@ -0,0 +1,178 @@
+package aufgabe1;
+
+import aufgabe1.ReplayLog.ColonyInjection;
+import aufgabe1.ReplayLog.End;
+import aufgabe1.ReplayLog.Event;
+import aufgabe1.ReplayLog.FoodInjection;
+import aufgabe1.ReplayLog.ParameterChange;
+import aufgabe1.ReplayLog.Reset;
+import aufgabe1.ReplayLog.Snapshot;
+import aufgabe1.ReplayLog.Stamped;
+import aufgabe1.world.SimpleFoodWorldGenerator;
+import aufgabe1.world.UpdateMode;
+import aufgabe1.world.World;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * Runs a {@link ReplayLog} again as fast as possible: creates the same simulation and requests every recorded
+ * change before the step it was applied in. With the update mode of the recording, which is
+ * {@link UpdateMode#DETERMINISTIC} for the viewer, the replay ends in exactly the same state.
+ * <br>
+ * A replay can start at a snapshot of the log instead of the first step. A snapshot holds the whole state of the
+ * world, see {@link aufgabe1.world.WorldSnapshot}, so such a replay ends in the same state as well. Only recordings
+ * with {@link UpdateMode#DETERMINISTIC} can be started at a snapshot, with other modes there is nothing to continue.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+public final class Replay implements Closeable {
+    @NotNull
+    private final ReplayLog log;
+    // the parameters the world factory creates new worlds with
+    @NotNull
+    private final ReplayLog.Parameters parameters;
+    @NotNull
+    private final Simulation simulation;
+    private final long start;
+    // the index of the next event to request
+    private int next;
+
+    /**
+     * @param from the step to start at, the replay starts at the last snapshot before or at it,
+     *             or at the first step if there is none
+     * @throws IllegalArgumentException if from is after the first step and the recording isn't deterministic
+     */
+    public Replay(@NotNull ReplayLog log, long from) throws IOException {
+        this.log = log;
+        this.parameters = log.parameters();
+        UpdateMode mode = log.mode();
+        if (from > 0 && mode != UpdateMode.DETERMINISTIC) {
+            throw new IllegalArgumentException("Only DETERMINISTIC recordings can be replayed from a snapshot, this one is " + mode);
+        }
+        Simulation.WorldFactory worlds = Main.createWorldFactory(log.world(), parameters.world(), parameters.colony(),
+            parameters.ant(), log.threads());
+        Randoms randoms = new Randoms(RandomGeneratorFactory.of(log.algorithm()), log.seed());
+        this.simulation = new Simulation(randoms, s -> {
+            World world = worlds.createWorld(s);
+            world.setUpdateMode(mode);
+            return world;
+        });
+
+        Stamped snapshot = from > 0 ? nearestSnapshot(from) : null;
+        if (snapshot != null) {
+            // the snapshot contains the changes before it, but new worlds need the parameters as well
+            List<Stamped> events = log.events();
+            while (events.get(next) != snapshot) {
+                if (events.get(next).event() instanceof ParameterChange change) parameters.apply(change);
+                next++;
+            }
+            Path file = log.file().resolveSibling(((Snapshot) snapshot.event()).file());
+            simulation.loadSnapshot(file, new SimpleFoodWorldGenerator(1337, randoms, parameters.world()), log.threads());
+            simulation.world().setUpdateMode(mode);
+            simulation.setSteps(snapshot.step());
+        }
+        this.start = simulation.steps();
+    }
+
+    /**
+     * @return the last snapshot at or before the step whose file still exists, or null if there is none
+     */
+    @Nullable
+    private Stamped nearestSnapshot(long step) {
+        Stamped nearest = null;
+        for (Stamped stamped : log.events()) {
+            if (stamped.step() > step) break;
+            if (stamped.event() instanceof Snapshot snapshot && Files.exists(log.file().resolveSibling(snapshot.file()))) {
+                nearest = stamped;
+            }
+        }
+        if (nearest == null) System.err.println("No snapshot at or before step " + step + ", replaying from the start");
+        return nearest;
+    }
+
+    /**
+     * Requests the recorded changes of the next step and makes the step.
+     */
+    public void step() {
+        long step = simulation.steps();
+        List<Stamped> events = log.events();
+        while (next < events.size() && events.get(next).step() <= step) {
+            Event event = events.get(next++).event();
+            switch (event) {
+                case ParameterChange change -> {
+                    parameters.apply(change);
+                    simulation.changeParameter(change.target(), change.field(), change.value());
+                }
+                case Reset ignored -> simulation.requestReset();
+                case ColonyInjection colony -> simulation.injectColony(colony.x(), colony.y(), colony.food());
+                case FoodInjection food -> simulation.injectFood(food.x(), food.y(), food.amount());
+                case Snapshot ignored -> {
+                }
+            }
+        }
+        simulation.step();
+    }
+
+    /**
+     * @return true if the replay reached the end of the recording
+     */
+    @Contract(pure = true)
+    public boolean done() {
+        return simulation.steps() >= log.steps();
+    }
+
+    /**
+     * @return the number of steps until the end of the recording
+     */
+    @Contract(pure = true)
+    public long remaining() {
+        return Math.max(0, log.steps() - simulation.steps());
+    }
+
+    /**
+     * @return the step the replay started at
+     */
+    @Contract(pure = true)
+    public long start() {
+        return start;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public Simulation simulation() {
+        return simulation;
+    }
+
+    /**
+     * Compares the state at the end of the replay with the one of the recording.
+     *
+     * @return null if they are the same, otherwise a description of the difference
+     */
+    @Nullable
+    public String verify() {
+        End end = log.end();
+        if (end == null) return "the recording didn't finish";
+        World world = simulation.world();
+        if (simulation.steps() == end.step() && world.time() == end.time() && world.totalAnts() == end.ants()
+            && Float.compare(world.totalColonyFood(), end.colonyFood()) == 0) {
+            return null;
+        }
+        return String.format(Locale.ROOT, "recorded step %d, time %d, %d ants, %.3f food, replayed step %d, time %d, %d ants, %.3f food",
+            end.step(), end.time(), end.ants(), end.colonyFood(),
+            simulation.steps(), world.time(), world.totalAnts(), world.totalColonyFood());
+    }
+
+    @Override
+    public void close() {
+        simulation.close();
+    }
+}
@@ -0,0 +1,488 @@
+package aufgabe1;
+
+import aufgabe1.world.UpdateMode;
+import aufgabe1.world.World;
+import aufgabe1.world.WorldParameters;
+import aufgabe1.world.entity.AntParameters;
+import aufgabe1.world.entity.Colony;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.UnmodifiableView;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * A compact log of everything that influences a simulation from the outside: the seed, the world it started with,
+ * the initial parameters and every parameter change, reset and injection of a colony or food, stamped with the
+ * step of the {@link Simulation} before which it was applied. {@link Replay} runs a log again.
+ * <br>
+ * Layout: magic, version, seed, random algorithm, world, update mode, threads, the initial world, colony, ant and
+ * behavior parameters as name/value pairs, then the events (type, step, data) up to the end record, which holds
+ * the state the recording finished with. Parameters are stored by name, so a log stays readable when fields
+ * are added.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented, immutable
+ */
+public final class ReplayLog {
+    static final int MAGIC = 0x414E5452; // "ANTR"
+    static final int VERSION = 1;
+
+    private static final byte PARAMETER = 1;
+    private static final byte RESET = 2;
+    private static final byte COLONY = 3;
+    private static final byte FOOD = 4;
+    private static final byte SNAPSHOT = 5;
+    private static final byte END = 6;
+
+    @NotNull
+    private final Path file;
+    private final long seed;
+    @NotNull
+    private final String algorithm;
+    @NotNull
+    private final String world;
+    @NotNull
+    private final UpdateMode mode;
+    private final int threads;
+    @NotNull
+    private final Parameters parameters;
+    @NotNull
+    private final List<Stamped> events;
+    @Nullable
+    private final End end;
+
+    private ReplayLog(@NotNull Path file, long seed, @NotNull String algorithm, @NotNull String world, @NotNull UpdateMode mode,
+                      int threads, @NotNull Parameters parameters, @NotNull List<Stamped> events, @Nullable End end) {
+        this.file = file;
+        this.seed = seed;
+        this.algorithm = algorithm;
+        this.world = world;
+        this.mode = mode;
+        this.threads = threads;
+        this.parameters = parameters;
+        this.events = events;
+        this.end = end;
+    }
+
+    /**
+     * Reads a whole log. A log without an end record, e.g. of a crashed viewer, is read up to its last complete event.
+     */
+    @NotNull
+    public static ReplayLog read(@NotNull Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not a replay log");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported replay log version " + version);
+            long seed = in.readLong();
+            String algorithm = in.readUTF();
+            String world = in.readUTF();
+            UpdateMode mode;
+            try {
+                mode = UpdateMode.valueOf(in.readUTF());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown update mode in replay log", e);
+            }
+            int threads = in.readInt();
+            Parameters parameters = new Parameters(new WorldParameters(), new Colony.Parameters(), new AntParameters());
+            for (Target target : Target.values()) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    double value = in.readDouble();
+                    try {
+                        set(target.field(name), parameters.of(target), value);
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                }
+            }
+
+            List<Stamped> events = new ArrayList<>();
+            End end = null;
+            try {
+                while (end == null) {
+                    byte type = in.readByte();
+                    long step = in.readLong();
+                    switch (type) {
+                        case PARAMETER -> {
+                            int target = in.readByte();
+                            if (target < 0 || target >= Target.values().length) throw new IOException("Unknown target " + target);
+                            events.add(new Stamped(step, new ParameterChange(Target.values()[target], in.readUTF(), in.readDouble())));
+                        }
+                        case RESET -> events.add(new Stamped(step, new Reset()));
+                        case COLONY -> events.add(new Stamped(step, new ColonyInjection(in.readInt(), in.readInt(), in.readFloat())));
+                        case FOOD -> events.add(new Stamped(step, new FoodInjection(in.readInt(), in.readInt(), in.readFloat())));
+                        case SNAPSHOT -> events.add(new Stamped(step, new Snapshot(in.readUTF())));
+                        case END -> end = new End(step, in.readInt(), in.readInt(), in.readFloat());
+                        default -> throw new IOException("Unknown event type " + type);
+                    }
+                }
+            } catch (EOFException e) {
+                System.err.println("Replay log " + file + " has no end record, replaying up to its last event");
+            }
+            return new ReplayLog(file, seed, algorithm, world, mode, threads, parameters, Collections.unmodifiableList(events), end);
+        }
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public Path file() {
+        return file;
+    }
+
+    @Contract(pure = true)
+    public long seed() {
+        return seed;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public String algorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the name of the worlds the simulation created, see {@link Main#createWorldFactory}
+     */
+    @NotNull
+    @Contract(pure = true)
+    public String world() {
+        return world;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public UpdateMode mode() {
+        return mode;
+    }
+
+    @Contract(pure = true)
+    public int threads() {
+        return threads;
+    }
+
+    /**
+     * @return the parameters at the start of the recording, a new copy on every call
+     */
+    @NotNull
+    public Parameters parameters() {
+        return parameters.copy();
+    }
+
+    @NotNull
+    @UnmodifiableView
+    @Contract(pure = true)
+    public List<Stamped> events() {
+        return events;
+    }
+
+    /**
+     * @return the end record, or null if the recording didn't finish
+     */
+    @Nullable
+    @Contract(pure = true)
+    public End end() {
+        return end;
+    }
+
+    /**
+     * @return the number of steps the recording ran, or the step of the last event if it didn't finish
+     */
+    @Contract(pure = true)
+    public long steps() {
+        if (end != null) return end.step();
+        return events.isEmpty() ? 0 : events.get(events.size() - 1).step();
+    }
+
+    /**
+     * The public int and float fields of a parameter class, sorted by name so the order doesn't depend on the JVM.
+     */
+    @NotNull
+    static List<Field> fields(@NotNull Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : type.getFields()) {
+            if (Modifier.isStatic(field.getModifiers())) continue;
+            if (field.getType() == int.class || field.getType() == float.class) fields.add(field);
+        }
+        fields.sort(Comparator.comparing(Field::getName));
+        return fields;
+    }
+
+    /**
+     * @return the value of an int or float field, a double holds both exactly
+     */
+    static double get(@NotNull Field field, @NotNull Object parameters) {
+        try {
+            return field.getType() == int.class ? field.getInt(parameters) : field.getFloat(parameters);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Public field is not accessible", e);
+        }
+    }
+
+    static void set(@NotNull Field field, @NotNull Object parameters, double value) {
+        try {
+            if (field.getType() == int.class) {
+                field.setInt(parameters, (int) value);
+            } else {
+                field.setFloat(parameters, (float) value);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Public field is not accessible", e);
+        }
+    }
+
+    /**
+     * The parameter objects a change can be applied to.
+     * STYLE: functional
+     */
+    public enum Target {
+        WORLD(WorldParameters.class),
+        COLONY(Colony.Parameters.class),
+        ANT(AntParameters.class),
+        BEHAVIOR(AntParameters.Behavior.class);
+
+        @NotNull
+        private final Class<?> type;
+
+        Target(@NotNull Class<?> type) {
+            this.type = type;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the parameters have no int or float field with this name
+         */
+        @NotNull
+        public Field field(@NotNull String name) {
+            return fields(type).stream().filter(field -> field.getName().equals(name)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown parameter " + type.getSimpleName() + "." + name));
+        }
+
+        /**
+         * @return the distinct parameter objects of this kind that are used by the world. The colonies of a world
+         * usually share theirs.
+         */
+        @NotNull
+        Stream<Object> objects(@NotNull World world) {
+            Stream<Object> objects = switch (this) {
+                case WORLD -> Stream.of(world.parameters());
+                case COLONY -> world.colonies().stream().map(Colony::parameters);
+                case ANT -> world.colonies().stream().map(Colony::antSpawnParameters);
+                case BEHAVIOR -> world.colonies().stream().map(colony -> colony.antSpawnParameters().behavior());
+            };
+            // the parameter classes don't override equals, so this compares identities
+            return objects.distinct();
+        }
+    }
+
+    /**
+     * Something that changes a simulation from the outside.
+     * STYLE: functional, algebraic data type
+     */
+    public sealed interface Event permits ParameterChange, Reset, ColonyInjection, FoodInjection, Snapshot {
+    }
+
+    /**
+     * @param value the new value, a double holds int and float fields exactly
+     */
+    public record ParameterChange(@NotNull Target target, @NotNull String field, double value) implements Event {
+    }
+
+    public record Reset() implements Event {
+    }
+
+    /**
+     * A colony that gets the parameters of the first colony of the world.
+     */
+    public record ColonyInjection(int x, int y, float food) implements Event {
+    }
+
+    /**
+     * Food that is spread around a cell like the food of the world generator.
+     */
+    public record FoodInjection(int x, int y, float amount) implements Event {
+    }
+
+    /**
+     * A {@link aufgabe1.world.WorldSnapshot} of the world before the step, the file is relative to the log.
+     */
+    public record Snapshot(@NotNull String file) implements Event {
+    }
+
+    /**
+     * @param step the number of steps of the simulation before the event was applied
+     */
+    public record Stamped(long step, @NotNull Event event) {
+    }
+
+    /**
+     * The state a recording finished with, a replay that reaches the same step should end in the same state.
+     */
+    public record End(long step, int time, int ants, float colonyFood) {
+    }
+
+    /**
+     * The parameters of the world, the colonies and the ants, the behavior is part of the ant parameters.
+     */
+    public record Parameters(@NotNull WorldParameters world, Colony.@NotNull Parameters colony, @NotNull AntParameters ant) {
+        @NotNull
+        public Object of(@NotNull Target target) {
+            return switch (target) {
+                case WORLD -> world;
+                case COLONY -> colony;
+                case ANT -> ant;
+                case BEHAVIOR -> ant.behavior();
+            };
+        }
+
+        /**
+         * Applies a change to these parameters.
+         *
+         * @throws IllegalArgumentException if the parameter doesn't exist
+         */
+        public void apply(@NotNull ParameterChange change) {
+            set(change.target().field(change.field()), of(change.target()), change.value());
+        }
+
+        @NotNull
+        public Parameters copy() {
+            return new Parameters(new WorldParameters(world), new Colony.Parameters(colony), new AntParameters(ant));
+        }
+    }
+
+    /**
+     * Writes a log while a simulation runs, see {@link Simulation#startRecording}. Every event is flushed at once,
+     * so the log survives a viewer that is simply closed. Optionally saves a snapshot of the world every few steps,
+     * a replay can start at one of them instead of running the whole log.
+     * Modularisierungseinheit: Klasse
+     * STYLE: object-oriented
+     */
+    public static final class Recorder implements Closeable {
+        @NotNull
+        private final Path file;
+        @NotNull
+        private final String world;
+        private final int snapshotInterval;
+        @NotNull
+        private final DataOutputStream out;
+
+        /**
+         * @param world            the name of the worlds the simulation creates, see {@link Main#createWorldFactory}
+         * @param snapshotInterval the number of steps between two snapshots, 0 saves none
+         */
+        public Recorder(@NotNull Path file, @NotNull String world, int snapshotInterval) throws IOException {
+            Objects.requireNonNull(file);
+            Objects.requireNonNull(world);
+            if (snapshotInterval < 0) throw new IllegalArgumentException("snapshotInterval must not be negative");
+            this.file = file;
+            this.world = world;
+            this.snapshotInterval = snapshotInterval;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        }
+
+        /**
+         * Writes the header. The parameters are those of the first colony, the colonies share them when they are
+         * created by the world factory.
+         */
+        void begin(@NotNull Simulation simulation) throws IOException {
+            World world = simulation.world();
+            if (world.colonies().isEmpty()) throw new IllegalStateException("The world has no colony to take the parameters from");
+            Colony colony = world.colonies().get(0);
+            Parameters parameters = new Parameters(world.parameters(), colony.parameters(), colony.antSpawnParameters());
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(simulation.randoms().seed());
+            out.writeUTF(simulation.randoms().algorithm());
+            out.writeUTF(this.world);
+            out.writeUTF(world.updateMode().name());
+            out.writeInt(world.threads());
+            for (Target target : Target.values()) {
+                List<Field> fields = fields(target.type);
+                out.writeInt(fields.size());
+                for (Field field : fields) {
+                    out.writeUTF(field.getName());
+                    out.writeDouble(get(field, parameters.of(target)));
+                }
+            }
+            out.flush();
+        }
+
+        void record(long step, @NotNull Event event) throws IOException {
+            switch (event) {
+                case ParameterChange change -> {
+                    writeType(PARAMETER, step);
+                    out.writeByte(change.target().ordinal());
+                    out.writeUTF(change.field());
+                    out.writeDouble(change.value());
+                }
+                case Reset ignored -> writeType(RESET, step);
+                case ColonyInjection colony -> {
+                    writeType(COLONY, step);
+                    out.writeInt(colony.x());
+                    out.writeInt(colony.y());
+                    out.writeFloat(colony.food());
+                }
+                case FoodInjection food -> {
+                    writeType(FOOD, step);
+                    out.writeInt(food.x());
+                    out.writeInt(food.y());
+                    out.writeFloat(food.amount());
+                }
+                case Snapshot snapshot -> {
+                    writeType(SNAPSHOT, step);
+                    out.writeUTF(snapshot.file());
+                }
+            }
+            out.flush();
+        }
+
+        /**
+         * Saves a snapshot if one is due after the given number of steps.
+         */
+        void afterStep(@NotNull Simulation simulation, long step) throws IOException {
+            if (snapshotInterval == 0 || step % snapshotInterval != 0) return;
+            String name = file.getFileName() + "." + step + ".snapshot";
+            simulation.saveSnapshot(file.resolveSibling(name), false);
+            record(step, new Snapshot(name));
+        }
+
+        /**
+         * Writes the end record and closes the log.
+         */
+        void end(@NotNull Simulation simulation, long step) throws IOException {
+            World world = simulation.world();
+            writeType(END, step);
+            out.writeInt(world.time());
+            out.writeInt(world.totalAnts());
+            out.writeFloat(world.totalColonyFood());
+            close();
+        }
+
+        private void writeType(byte type, long step) throws IOException {
+            out.writeByte(type);
+            out.writeLong(step);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
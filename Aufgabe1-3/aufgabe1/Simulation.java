@@ -1,18 +1,35 @@
 package aufgabe1;
 
+import aufgabe1.ReplayLog.ColonyInjection;
+import aufgabe1.ReplayLog.FoodInjection;
+import aufgabe1.ReplayLog.ParameterChange;
+import aufgabe1.ReplayLog.Target;
+import aufgabe1.world.Cell;
+import aufgabe1.world.CheckpointLog;
 import aufgabe1.world.World;
+import aufgabe1.world.WorldGenerator;
+import aufgabe1.world.WorldParameters;
+import aufgabe1.world.WorldSnapshot;
+import aufgabe1.world.entity.Ant;
+import aufgabe1.world.entity.AntParameters;
 import aufgabe1.world.entity.Colony;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.file.Path;
 import java.util.AbstractMap;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -20,6 +37,8 @@ import java.util.stream.Stream;
 
 /**
  * Represents a simulation of the world. It can interact and change the world.
+ * Changes from the outside, like the sliders of the viewer, are queued and applied between two steps, so they
+ * don't hit a tick that is running and can be recorded in a {@link ReplayLog}.
  * STYLE: partially procedural, partially functional, partially object-oriented
  */
 // GOOD: The methods clearly defines its purpose and focuses on the function of setting field values.
@@ -30,8 +49,18 @@ public class Simulation implements Closeable {
     @NotNull
     private final WorldFactory worldFactory;
 
+    // the changes requested from other threads, they are applied before the next step
+    @NotNull
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
     @NotNull
     private World world;
+    // the number of steps since the simulation was created, unlike the time of the world it isn't reset
+    private long steps;
+    // true if a parameter of the ants changed in the pending changes, the ants get a copy of the new ones
+    private boolean antParametersChanged;
+    @Nullable
+    private ReplayLog.Recorder recorder;
 
     public Simulation(@NotNull Randoms randoms, @NotNull WorldFactory worldFactory) {
         Objects.requireNonNull(randoms);
@@ -44,10 +73,11 @@ public class Simulation implements Closeable {
     }
 
     /**
-     * Resets the world
+     * Resets the world. Waits until the current step is finished.
      */
-    public void resetWorld() {
+    public synchronized void resetWorld() {
         setWorld(worldFactory.createWorld(this));
+        record(new ReplayLog.Reset());
     }
 
     @NotNull
@@ -80,10 +110,192 @@ public class Simulation implements Closeable {
     }
 
     /**
-     * Advances the simulation by one time step.
+     * Advances the simulation by one time step. Applies the pending changes first.
      */
-    public void step() {
+    public synchronized void step() {
+        if (!pending.isEmpty()) applyPending();
         world.update();
+        steps++;
+        if (recorder != null) {
+            try {
+                recorder.afterStep(this, steps);
+            } catch (IOException e) {
+                throw new RuntimeException("Error while writing the replay log: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of steps since the simulation was created
+     */
+    @Contract(pure = true)
+    public synchronized long steps() {
+        return steps;
+    }
+
+    /**
+     * Continues the step count of a replay that started at a snapshot.
+     */
+    synchronized void setSteps(long steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * Resets the world before the next step.
+     */
+    public void requestReset() {
+        pending.add(this::resetWorld);
+    }
+
+    /**
+     * Sets the world parameters to the requested ones before the next step. Only the values that differ are
+     * changed, the requested parameters are copied.
+     */
+    public void changeParameters(@NotNull WorldParameters requested) {
+        WorldParameters copy = new WorldParameters(requested);
+        pending.add(() -> changeFields(Target.WORLD, copy));
+    }
+
+    /**
+     * Sets the parameters of all colonies to the requested ones before the next step.
+     */
+    public void changeParameters(Colony.@NotNull Parameters requested) {
+        Colony.Parameters copy = new Colony.Parameters(requested);
+        pending.add(() -> changeFields(Target.COLONY, copy));
+    }
+
+    /**
+     * Sets the ant spawn parameters of all colonies and the parameters of all their ants to the requested ones
+     * before the next step.
+     */
+    public void changeParameters(@NotNull AntParameters requested) {
+        AntParameters copy = new AntParameters(requested);
+        pending.add(() -> {
+            changeFields(Target.ANT, copy);
+            changeFields(Target.BEHAVIOR, copy.behavior());
+        });
+    }
+
+    /**
+     * Changes a single parameter before the next step.
+     *
+     * @throws IllegalArgumentException if the parameter doesn't exist
+     */
+    public void changeParameter(@NotNull Target target, @NotNull String field, double value) {
+        Field resolved = target.field(field);
+        pending.add(() -> changeField(target, resolved, value));
+    }
+
+    /**
+     * Creates a colony with the parameters of the first colony before the next step.
+     * Nothing happens if the cell already has a colony.
+     *
+     * @return completes with the new colony once it has been created, or with an {@link IllegalStateException}
+     * if the cell already has a colony or the world has no colony to copy the parameters from
+     */
+    @NotNull
+    public CompletableFuture<Colony> injectColony(int x, int y, float food) {
+        CompletableFuture<Colony> result = new CompletableFuture<>();
+        pending.add(() -> {
+            Cell cell = world.get(x, y);
+            if (cell.colony() != null) {
+                result.completeExceptionally(new IllegalStateException("The cell " + x + ", " + y + " already has a colony"));
+                return;
+            }
+            if (world.colonies().isEmpty()) {
+                result.completeExceptionally(new IllegalStateException("The world has no colony to copy the parameters from"));
+                return;
+            }
+            Colony template = world.colonies().get(0);
+            Colony colony = world.generator().createColony(cell, template.parameters(), template.antSpawnParameters());
+            colony.increaseFood(food);
+            record(new ColonyInjection(x, y, food));
+            result.complete(colony);
+        });
+        return result;
+    }
+
+    /**
+     * Spreads food around a cell before the next step, like the world generator does.
+     */
+    public void injectFood(int x, int y, float amount) {
+        if (!(amount > 0)) throw new IllegalArgumentException("amount must be positive");
+        pending.add(() -> {
+            world.generator().generateFood(world.get(x, y), amount);
+            record(new FoodInjection(x, y, amount));
+        });
+    }
+
+    /**
+     * Records all changes from now on. Has to be started before the first step, since the log only describes
+     * how the simulation was created.
+     *
+     * @throws IllegalStateException if the simulation already made a step or records already
+     */
+    public synchronized void startRecording(@NotNull ReplayLog.Recorder recorder) throws IOException {
+        Objects.requireNonNull(recorder);
+        if (steps != 0) throw new IllegalStateException("A recording has to start before the first step");
+        if (this.recorder != null) throw new IllegalStateException("The simulation is already recorded");
+        recorder.begin(this);
+        this.recorder = recorder;
+    }
+
+    /**
+     * Writes the end of the recording, which holds the current state to check a replay against.
+     * Waits until the current step is finished.
+     */
+    public synchronized void stopRecording() throws IOException {
+        ReplayLog.Recorder recorder = this.recorder;
+        if (recorder == null) return;
+        this.recorder = null;
+        recorder.end(this, steps);
+    }
+
+    /**
+     * Applies the pending changes in the order they were requested.
+     */
+    private void applyPending() {
+        Runnable change;
+        while ((change = pending.poll()) != null) {
+            change.run();
+        }
+        if (antParametersChanged) {
+            antParametersChanged = false;
+            for (Colony colony : world.colonies()) {
+                for (Ant ant : colony.ants()) {
+                    ant.setParameters(new AntParameters(colony.antSpawnParameters()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes every field whose requested value differs from the one of the world or its first colony.
+     * Comparing when the change is applied, not when it is requested, keeps the values right if the
+     * same field is requested several times within a step.
+     */
+    private void changeFields(@NotNull Target target, @NotNull Object requested) {
+        Object current = target.objects(world).findFirst().orElse(null);
+        if (current == null) return;
+        for (Field field : ReplayLog.fields(requested.getClass())) {
+            double value = ReplayLog.get(field, requested);
+            if (value != ReplayLog.get(field, current)) changeField(target, field, value);
+        }
+    }
+
+    private void changeField(@NotNull Target target, @NotNull Field field, double value) {
+        target.objects(world).forEach(parameters -> ReplayLog.set(field, parameters, value));
+        if (target == Target.ANT || target == Target.BEHAVIOR) antParametersChanged = true;
+        record(new ParameterChange(target, field.getName(), value));
+    }
+
+    private void record(@NotNull ReplayLog.Event event) {
+        if (recorder == null) return;
+        try {
+            recorder.record(steps, event);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while writing the replay log: " + e.getMessage(), e);
+        }
     }
 
     @NotNull
@@ -113,6 +325,41 @@ public class Simulation implements Closeable {
         }
     }
 
+    /**
+     * Saves the whole world into a binary snapshot, see {@link WorldSnapshot}.
+     * Waits until the current tick is finished.
+     *
+     * @param compress true to deflate the chunks
+     */
+    public void saveSnapshot(@NotNull Path file, boolean compress) throws IOException {
+        if (!world.lock(5000)) throw new IllegalStateException("Could not lock the world");
+        try {
+            WorldSnapshot.write(world, file, compress);
+        } finally {
+            world.unlock();
+        }
+    }
+
+    /**
+     * Replaces the world by the one saved in a snapshot, see {@link WorldSnapshot}.
+     *
+     * @param generator generates the chunks that are not part of the snapshot
+     */
+    public void loadSnapshot(@NotNull Path file, @NotNull WorldGenerator generator, int threads) throws IOException {
+        if (recorder != null) throw new IllegalStateException("A recorded simulation can't load a snapshot");
+        setWorld(WorldSnapshot.read(file, this, generator, threads));
+    }
+
+    /**
+     * Replaces the world by the one of the last complete checkpoint in a log, see {@link CheckpointLog}.
+     *
+     * @param generator generates the chunks that are not part of the log
+     */
+    public void loadCheckpoint(@NotNull Path file, @NotNull WorldGenerator generator, int threads) throws IOException {
+        if (recorder != null) throw new IllegalStateException("A recorded simulation can't load a checkpoint");
+        setWorld(CheckpointLog.read(file, this, generator, threads));
+    }
+
     private void setFieldsToIni(Field @NotNull [] fields, String section, Object object) throws IllegalAccessException {
         for (Field field : fields) {
             Object value = field.get(object);
@@ -143,9 +390,14 @@ public class Simulation implements Closeable {
         }
         BiConsumer<String, Object> setSectionData = this::setFieldValues;
 
+        // the values are loaded into copies, the simulation applies them before the next step
         Colony colony = world.colonies().get(0);
-        setSectionData.accept("World", world.parameters());
-        setSectionData.accept("Colony1", colony.antSpawnParameters());
+        WorldParameters worldParameters = new WorldParameters(world.parameters());
+        AntParameters antParameters = new AntParameters(colony.antSpawnParameters());
+        setSectionData.accept("World", worldParameters);
+        setSectionData.accept("Colony1", antParameters);
+        changeParameters(worldParameters);
+        changeParameters(antParameters);
         System.out.println();
     }
 
@@ -6,6 +6,8 @@ import aufgabe1.world.entity.Ant;
 import aufgabe1.world.entity.FoodSource;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -15,6 +17,9 @@ import java.util.Objects;
  */
 public abstract class Behavior {
     protected final Behaviors behaviors;
+    // reused by evaluateBestDirection for every direction
+    @NotNull
+    private final Score score = new Score();
     private int noReturnTimer;
 
     protected Behavior(Behaviors behaviors) {
@@ -41,6 +46,27 @@ public abstract class Behavior {
         if (noReturnTimer > 0) noReturnTimer--;
     }
 
+    /**
+     * @return the number of bytes {@link #writeState} writes
+     */
+    public int stateBytes() {
+        return Integer.BYTES;
+    }
+
+    /**
+     * Writes the state that the behavior keeps between turns for a snapshot, subclasses add their own.
+     */
+    public void writeState(@NotNull ByteBuffer out) {
+        out.putInt(noReturnTimer);
+    }
+
+    /**
+     * Reads the state written by {@link #writeState}.
+     */
+    public void readState(@NotNull ByteBuffer in) {
+        noReturnTimer = in.getInt();
+    }
+
     /**
      * Mixes avoidScent with pursueScent based on predefined parameters.
      *
@@ -102,14 +128,18 @@ public abstract class Behavior {
      */
     @NotNull
     protected WeightedDirection evaluateBestDirection() {
+        // STYLE: Performance
+        // Called for every ant in every tick, so the scores are written into a reused object
+        // and the best values are kept in primitives instead of boxed nullable values.
         WeightedDirection best = null;
-        Float bestWeight = null;
-        Integer bestSegment = null;
-        for (WeightedDirection option : behaviors.ant.possibleNextCells()) {
-            Score score = evaluateDirectionScore(option);
-            if (bestSegment == null || score.segment > bestSegment) {
+        float bestWeight = 0;
+        int bestSegment = 0;
+        List<WeightedDirection> options = behaviors.ant.possibleNextCells();
+        for (int i = 0; i < options.size(); i++) {
+            WeightedDirection option = options.get(i);
+            Score score = evaluateDirectionScore(option, this.score);
+            if (i == 0 || score.segment > bestSegment) {
                 bestSegment = score.segment;
-                bestWeight = null;
                 best = null;
             } else if (score.segment < bestSegment) {
                 continue;
@@ -126,7 +156,7 @@ public abstract class Behavior {
             weight += randomBias;
 
             // Take maximum
-            if (bestWeight == null || weight > bestWeight) {
+            if (best == null || weight > bestWeight) {
                 best = option;
                 bestWeight = weight;
             }
@@ -140,38 +170,96 @@ public abstract class Behavior {
      * Abstract method to be implemented by subclasses for evaluating the weighted direction score for a given direction.
      *
      * @param direction The weighted direction.
-     * @return A Score object indicating the calculated score for the direction.
+     * @param score     The object the result is written into, it is reused for every direction.
+     * @return The given score object indicating the calculated score for the direction.
      */
-    protected abstract Score evaluateDirectionScore(@NotNull WeightedDirection direction);
+    @NotNull
+    protected abstract Score evaluateDirectionScore(@NotNull WeightedDirection direction, @NotNull Score score);
 
     /**
      * Represents a score for a direction, including a segment identifier and a numerical value.
      * Instances of this class are used to convey the evaluation results of direction scores.
+     * Every behavior reuses one instance, so the score is only valid until the next direction is evaluated.
      */
-    protected record Score(int segment, float value) {
-        public Score(float score) {
-            this(0, score);
+    protected static final class Score {
+        private int segment;
+        private float value;
+
+        @NotNull
+        public Score set(int segment, float value) {
+            this.segment = segment;
+            this.value = value;
+            return this;
+        }
+
+        @NotNull
+        public Score set(float value) {
+            return set(0, value);
+        }
+
+        public int segment() {
+            return segment;
+        }
+
+        public float value() {
+            return value;
         }
     }
 
     /**
      * Represents a weighted direction associated with a cell, a direction, and a bias.
-     *
-     * @param cell      The cell associated with the weighted direction.
-     * @param direction The direction associated with the weighted direction.
-     * @param bias      The bias value associated with the direction.
+     * Every ant keeps one instance per possible direction and updates them after each step,
+     * see {@link #set}, so they are only valid until the ant moves again.
      */
-    //GOOD: Using Records for WeightedDirection and Score simplifies the representation and manipulation of data and promotes clarity in code
-    public record WeightedDirection(
+    //GOOD: Keeping the candidates in mutable objects avoids allocating five objects per ant and tick
+    public static final class WeightedDirection {
         @NotNull
-        Cell cell,
+        private Cell cell;
         @NotNull
-        Direction direction,
-        float bias
-    ) {
+        private Direction direction;
+        private float bias;
+
+        public WeightedDirection(@NotNull Cell cell, @NotNull Direction direction, float bias) {
+            this.cell = cell;
+            this.direction = direction;
+            this.bias = bias;
+        }
+
         @NotNull
         public static WeightedDirection inDirection(@NotNull Cell start, @NotNull Direction direction, float bias) {
             return new WeightedDirection(start.neighbor(direction), direction, bias);
         }
+
+        /**
+         * Points this object to the neighbour of the start cell in the given direction.
+         */
+        public void set(@NotNull Cell start, @NotNull Direction direction, float bias) {
+            this.cell = start.neighbor(direction);
+            this.direction = direction;
+            this.bias = bias;
+        }
+
+        /**
+         * @return The cell associated with the weighted direction.
+         */
+        @NotNull
+        public Cell cell() {
+            return cell;
+        }
+
+        /**
+         * @return The direction associated with the weighted direction.
+         */
+        @NotNull
+        public Direction direction() {
+            return direction;
+        }
+
+        /**
+         * @return The bias value associated with the direction.
+         */
+        public float bias() {
+            return bias;
+        }
     }
 }
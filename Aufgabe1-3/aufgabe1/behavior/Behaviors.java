@@ -1,11 +1,12 @@
 package aufgabe1.behavior;
 
+import aufgabe1.MixRandom;
 import aufgabe1.world.entity.Ant;
 import aufgabe1.world.entity.AntParameters;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
-import java.util.random.RandomGenerator;
 
 /**
  * Contains instances of different behaviors.
@@ -13,11 +14,13 @@ import java.util.random.RandomGenerator;
  * STYLE: object-oriented
  */
 public class Behaviors {
+    // the number of behaviors, see index
+    private static final int COUNT = 5;
 
     @NotNull
     protected final Ant ant;
     @NotNull
-    protected final RandomGenerator random;
+    protected final MixRandom random;
     @NotNull
     private final Behavior explore;
     @NotNull
@@ -31,7 +34,7 @@ public class Behaviors {
     @NotNull
     protected AntParameters.Behavior parameters;
 
-    public Behaviors(@NotNull Ant ant, @NotNull RandomGenerator random, @NotNull AntParameters.Behavior parameters) {
+    public Behaviors(@NotNull Ant ant, @NotNull MixRandom random, @NotNull AntParameters.Behavior parameters) {
         Objects.requireNonNull(parameters);
         Objects.requireNonNull(ant);
         Objects.requireNonNull(random);
@@ -86,6 +89,64 @@ public class Behaviors {
         return returnHome;
     }
 
+    /**
+     * @return the index of one of the behaviors, used to store the current behavior of an ant in a snapshot
+     */
+    public int index(@NotNull Behavior behavior) {
+        if (behavior == exploreInit) return 0;
+        if (behavior == explore) return 1;
+        if (behavior == followScentToFood) return 2;
+        if (behavior == followScentToColony) return 3;
+        if (behavior == returnHome) return 4;
+        throw new IllegalArgumentException("Behavior doesn't belong to this ant");
+    }
+
+    /**
+     * @return the behavior with the given index, see {@link #index}
+     */
+    @NotNull
+    public Behavior byIndex(int index) {
+        return switch (index) {
+            case 0 -> exploreInit;
+            case 1 -> explore;
+            case 2 -> followScentToFood;
+            case 3 -> followScentToColony;
+            case 4 -> returnHome;
+            default -> throw new IllegalArgumentException("Unknown behavior index " + index);
+        };
+    }
+
+    /**
+     * @return the number of bytes {@link #writeState} writes
+     */
+    public int stateBytes() {
+        int bytes = Long.BYTES;
+        for (int i = 0; i < COUNT; i++) {
+            bytes += byIndex(i).stateBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the random stream and the state of every behavior for a snapshot, in the order of their indices.
+     */
+    public void writeState(@NotNull ByteBuffer out) {
+        out.putLong(random.state());
+        for (int i = 0; i < COUNT; i++) {
+            byIndex(i).writeState(out);
+        }
+    }
+
+    /**
+     * Reads the state written by {@link #writeState}.
+     */
+    public void readState(@NotNull ByteBuffer in) {
+        random.setState(in.getLong());
+        for (int i = 0; i < COUNT; i++) {
+            byIndex(i).readState(in);
+        }
+    }
+
     /**
      * @return The behavior parameters.
      */
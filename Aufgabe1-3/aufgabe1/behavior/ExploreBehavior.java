@@ -5,6 +5,9 @@ import aufgabe1.world.entity.Ant;
 import aufgabe1.world.entity.Colony;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
 /**
  * Controls the explore-behavior of an ant.
  * Modularisierungseinheit: Klasse
@@ -18,26 +21,44 @@ public class ExploreBehavior extends Behavior {
         super(behaviors);
     }
 
+    @Override
+    public int stateBytes() {
+        return super.stateBytes() + Byte.BYTES;
+    }
+
+    @Override
+    public void writeState(@NotNull ByteBuffer out) {
+        super.writeState(out);
+        out.put((byte) (wasOnHighScent ? 1 : 0));
+    }
+
+    @Override
+    public void readState(@NotNull ByteBuffer in) {
+        super.readState(in);
+        wasOnHighScent = in.get() != 0;
+    }
+
     /**
      * Evaluates the score for a given direction based on factors such as food scent, colony scent, and height difference.
      *
      * @param direction The weighted direction.
-     * @return A Score object indicating the calculated score for the direction.
+     * @param score     The reused object the result is written into.
+     * @return The given score object indicating the calculated score for the direction.
      */
     @Override
     @NotNull
-    protected Score evaluateDirectionScore(@NotNull WeightedDirection direction) {
+    protected Score evaluateDirectionScore(@NotNull WeightedDirection direction, @NotNull Score score) {
         Colony colony = behaviors.ant.colony();
         Cell cell = direction.cell();
         if (cell.foodScent(colony) >= behaviors.parameters().highScentThreshold) {
-            return new Score(1, mixScents(0, cell.foodScent(colony)));
+            return score.set(1, mixScents(0, cell.foodScent(colony)));
         }
         // Calculate height difference between the current cell and the ant's cell
         float heightDifference = Math.max(cell.height() - behaviors.ant.cell().height(), 0) * behaviors.parameters().weightHeight;
         // Determine the maximum scent value between colony scent and food scent
         float maxScent = Math.max(cell.colonyScent(colony), cell.foodScent(colony));
         // Combine avoid scent, height difference, and inverse of max scent using the mixScents function
-        return new Score(mixScents(cell.avoidScent(colony) + heightDifference, -1 * maxScent));
+        return score.set(mixScents(cell.avoidScent(colony) + heightDifference, -1 * maxScent));
     }
 
     /**
@@ -94,12 +115,14 @@ public class ExploreBehavior extends Behavior {
      * Precondition: ant != null.
      */
     private boolean isNearHighFoodScent(@NotNull Ant ant) {
-        for (WeightedDirection direction : ant.possibleNextCells()) {
-            Cell cell = direction.cell();
+        List<WeightedDirection> options = ant.possibleNextCells();
+        for (int i = 0; i < options.size(); i++) {
+            Cell cell = options.get(i).cell();
             if (cell.foodScent(ant.colony()) >= behaviors.parameters().highScentThreshold) {
                 return true;
             }
-            for (Ant other : cell.ants()) {
+            for (int j = 0; j < cell.antCount(); j++) {
+                Ant other = cell.ant(j);
                 if (other == ant) continue;
                 if (other.isCarrying() && ant.colony().equals(other.colony())) return true;
             }
@@ -116,8 +139,9 @@ public class ExploreBehavior extends Behavior {
      * Precondition: ant != null.
      */
     private boolean highColonyScentNearby(@NotNull Ant ant) {
-        for (WeightedDirection direction : ant.possibleNextCells()) {
-            Cell cell = direction.cell();
+        List<WeightedDirection> options = ant.possibleNextCells();
+        for (int i = 0; i < options.size(); i++) {
+            Cell cell = options.get(i).cell();
             if (isHighColonyScent(cell.colonyScent(ant.colony()))) {
                 return true;
             }
@@ -5,6 +5,8 @@ import aufgabe1.world.entity.Ant;
 import aufgabe1.world.entity.Colony;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+
 public class ExploreInitBehavior extends Behavior {
 
     private int steps;
@@ -14,18 +16,36 @@ public class ExploreInitBehavior extends Behavior {
         super(behaviors);
     }
 
+    @Override
+    public int stateBytes() {
+        return super.stateBytes() + Integer.BYTES;
+    }
+
+    @Override
+    public void writeState(@NotNull ByteBuffer out) {
+        super.writeState(out);
+        out.putInt(steps);
+    }
+
+    @Override
+    public void readState(@NotNull ByteBuffer in) {
+        super.readState(in);
+        steps = in.getInt();
+    }
+
     /**
      * Evaluates the score for a given direction based on the colony scent in the cell.
      *
      * @param direction The weighted direction to be evaluated.
-     * @return A Score object representing the calculated score for the direction.
+     * @param score     The reused object the result is written into.
+     * @return The given score object representing the calculated score for the direction.
      */
     @Override
     @NotNull
-    protected Score evaluateDirectionScore(@NotNull WeightedDirection direction) {
+    protected Score evaluateDirectionScore(@NotNull WeightedDirection direction, @NotNull Score score) {
         Colony colony = behaviors.ant.colony();
         Cell cell = direction.cell();
-        return new Score(mixScents(0, 2 * cell.colonyScent(colony)));
+        return score.set(mixScents(0, 2 * cell.colonyScent(colony)));
     }
 
     /**
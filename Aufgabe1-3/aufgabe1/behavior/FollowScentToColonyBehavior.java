@@ -5,6 +5,8 @@ import aufgabe1.world.entity.Ant;
 import aufgabe1.world.entity.Colony;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+
 /**
  * Controls the follow-scent-to-colony behavior of an ant.
  * Modularisierungseinheit: Klasse
@@ -18,18 +20,35 @@ public class FollowScentToColonyBehavior extends Behavior {
         super(behaviors);
     }
 
+    @Override
+    public int stateBytes() {
+        return super.stateBytes() + Integer.BYTES;
+    }
+
+    @Override
+    public void writeState(@NotNull ByteBuffer out) {
+        super.writeState(out);
+        out.putInt(noColonyScentSteps);
+    }
+
+    @Override
+    public void readState(@NotNull ByteBuffer in) {
+        super.readState(in);
+        noColonyScentSteps = in.getInt();
+    }
+
     /**
      * Calculates the weighted direction for a cell based on colony scent while avoiding 'avoid' scent
      */
     @Override
     @NotNull
-    protected Score evaluateDirectionScore(@NotNull WeightedDirection direction) {
+    protected Score evaluateDirectionScore(@NotNull WeightedDirection direction, @NotNull Score score) {
         Colony colony = behaviors.ant.colony();
         if (direction.cell().colony() == colony) {
-            return new Score(1, 0);
+            return score.set(1, 0);
         }
 
-        return new Score(mixScents(direction.cell().avoidScent(colony), direction.cell().colonyScent(colony)));
+        return score.set(mixScents(direction.cell().avoidScent(colony), direction.cell().colonyScent(colony)));
     }
 
     /**
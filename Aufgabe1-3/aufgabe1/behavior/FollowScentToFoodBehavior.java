@@ -5,7 +5,9 @@ import aufgabe1.world.entity.Ant;
 import aufgabe1.world.entity.Colony;
 import aufgabe1.world.entity.FoodSource;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * Controls the follow-scent-to-food behavior of an ant.
@@ -13,31 +15,50 @@ import org.jetbrains.annotations.Nullable;
  * STYLE: object-oriented
  */
 public class FollowScentToFoodBehavior extends Behavior {
-    @Nullable
-    private Integer badScentFollowStartTime;
+    // an int instead of a nullable Integer, so starting to follow a bad scent doesn't box the time
+    private static final int NOT_FOLLOWING_BAD_SCENT = -1;
+    private int badScentFollowStartTime = NOT_FOLLOWING_BAD_SCENT;
 
     protected FollowScentToFoodBehavior(Behaviors behaviors) {
         super(behaviors);
     }
 
+    @Override
+    public int stateBytes() {
+        return super.stateBytes() + Integer.BYTES;
+    }
+
+    @Override
+    public void writeState(@NotNull ByteBuffer out) {
+        super.writeState(out);
+        out.putInt(badScentFollowStartTime);
+    }
+
+    @Override
+    public void readState(@NotNull ByteBuffer in) {
+        super.readState(in);
+        badScentFollowStartTime = in.getInt();
+    }
+
     /**
      * Evaluates the score for a given direction based on the presence of food in the cell.
      *
      * @param direction The weighted direction to be evaluated.
-     * @return A Score object representing the calculated score for the direction.
+     * @param score     The reused object the result is written into.
+     * @return The given score object representing the calculated score for the direction.
      */
     @Override
     @NotNull
-    protected Score evaluateDirectionScore(@NotNull WeightedDirection direction) {
+    protected Score evaluateDirectionScore(@NotNull WeightedDirection direction, @NotNull Score score) {
         // Check if the cell contains food
         FoodSource food = direction.cell().foodSource();
         if (food != null && !food.isEmpty()) {
             // If food is present, use sigmoid function on the food amount as the score
-            return new Score(1, sigmoid(food.amount()));
+            return score.set(1, sigmoid(food.amount()));
         }
         // If there is no food, calculate the score using avoidScent and foodScent in the cell
         Colony colony = behaviors.ant.colony();
-        return new Score(mixScents(direction.cell().avoidScent(colony), direction.cell().foodScent(colony)));
+        return score.set(mixScents(direction.cell().avoidScent(colony), direction.cell().foodScent(colony)));
     }
 
     /**
@@ -46,7 +67,7 @@ public class FollowScentToFoodBehavior extends Behavior {
     @Override
     public void begin() {
         super.begin();
-        badScentFollowStartTime = null;
+        badScentFollowStartTime = NOT_FOLLOWING_BAD_SCENT;
     }
 
     /**
@@ -78,7 +99,7 @@ public class FollowScentToFoodBehavior extends Behavior {
                 ant.setNextBehavior(ant.behaviors().exploreInit());
             }
         } else {
-            badScentFollowStartTime = null;
+            badScentFollowStartTime = NOT_FOLLOWING_BAD_SCENT;
         }
 
         ant.emitColonyScent();
@@ -93,8 +114,9 @@ public class FollowScentToFoodBehavior extends Behavior {
      * Precondition: ant != null.
      */
     private boolean isFollowingBadScent(@NotNull Ant ant) {
-        for (WeightedDirection direction : ant.possibleNextCells()) {
-            if (direction.cell().foodScent(ant.colony()) >= behaviors.parameters().highScentThreshold) {
+        List<WeightedDirection> options = ant.possibleNextCells();
+        for (int i = 0; i < options.size(); i++) {
+            if (options.get(i).cell().foodScent(ant.colony()) >= behaviors.parameters().highScentThreshold) {
                 return false;
             }
         }
@@ -110,7 +132,7 @@ public class FollowScentToFoodBehavior extends Behavior {
      * Precondition: ant != null.
      */
     private boolean isFollowingBadScentTooLong(@NotNull Ant ant) {
-        if (badScentFollowStartTime == null) {
+        if (badScentFollowStartTime == NOT_FOLLOWING_BAD_SCENT) {
             badScentFollowStartTime = ant.cell().world().time();
         }
 
@@ -9,7 +9,9 @@ import aufgabe1.world.entity.PathHistory;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Represents the abstraction of the return to colony behavior of an ant.
@@ -18,9 +20,11 @@ import java.util.Iterator;
  * relevant data and methods within the class. Also, it implements the behavior class.
  */
 public class ReturnToColonyBehavior extends Behavior {
+    // only set while the behavior is active
+    @Nullable
     private ImaginaryAnt imagination;
     @NotNull
-    private Vector targetDelta = new Vector();
+    private final Vector targetDelta = new Vector();
 
     protected ReturnToColonyBehavior(Behaviors behaviors) {
         super(behaviors);
@@ -28,8 +32,8 @@ public class ReturnToColonyBehavior extends Behavior {
 
     @Override
     @NotNull
-    protected Score evaluateDirectionScore(@NotNull WeightedDirection direction) {
-        return new Score(mixScents(0, direction.cell().colonyScent(behaviors.ant.colony())));
+    protected Score evaluateDirectionScore(@NotNull WeightedDirection direction, @NotNull Score score) {
+        return score.set(mixScents(0, direction.cell().colonyScent(behaviors.ant.colony())));
     }
 
     /**
@@ -39,9 +43,9 @@ public class ReturnToColonyBehavior extends Behavior {
     public void begin() {
         super.begin();
         PathHistory history = behaviors.ant.pathHistory();
-        imagination = new ImaginaryAnt(history.integratePath().iterator());
+        imagination = new ImaginaryAnt(history.integratePath());
         imagination.setMark();
-        targetDelta = new Vector();
+        targetDelta.set(0, 0);
         history.reset();
         behaviors.ant.setRecordPath(false);
     }
@@ -52,9 +56,31 @@ public class ReturnToColonyBehavior extends Behavior {
     @Override
     public void end() {
         super.end();
+        imagination = null;
         behaviors.ant.setRecordPath(true);
     }
 
+    @Override
+    public int stateBytes() {
+        return super.stateBytes() + 2 * Integer.BYTES + Byte.BYTES + (imagination == null ? 0 : imagination.stateBytes());
+    }
+
+    @Override
+    public void writeState(@NotNull ByteBuffer out) {
+        super.writeState(out);
+        out.putInt(targetDelta.x());
+        out.putInt(targetDelta.y());
+        out.put((byte) (imagination == null ? 0 : 1));
+        if (imagination != null) imagination.writeState(out);
+    }
+
+    @Override
+    public void readState(@NotNull ByteBuffer in) {
+        super.readState(in);
+        targetDelta.set(in.getInt(), in.getInt());
+        imagination = in.get() != 0 ? ImaginaryAnt.readState(in) : null;
+    }
+
     /**
      * Defines the behavior of an ant during its turn.
      */
@@ -63,6 +89,8 @@ public class ReturnToColonyBehavior extends Behavior {
         super.act();
 
         Ant ant = behaviors.ant;
+        ImaginaryAnt imagination = this.imagination;
+        assert imagination != null;
 
         if (ant.cell().colony() == ant.colony()) {
             if (ant.cell().world().isDay()) {
@@ -82,7 +110,9 @@ public class ReturnToColonyBehavior extends Behavior {
         }
 
         // 1. Go to colony
-        for (WeightedDirection direction : ant.possibleNextCells()) {
+        List<WeightedDirection> options = ant.possibleNextCells();
+        for (int i = 0; i < options.size(); i++) {
+            WeightedDirection direction = options.get(i);
             if (direction.cell().colony() == ant.colony()) {
                 ant.emitColonyScent();
                 ant.setNextDirection(direction.direction());
@@ -120,7 +150,7 @@ public class ReturnToColonyBehavior extends Behavior {
                 imagination.step();
             }
 
-            targetDelta = new Vector(imagination.position()).sub(imagination.mark());
+            targetDelta.set(imagination.position()).sub(imagination.mark());
             imagination.setMark();
         }
 
@@ -137,22 +167,91 @@ public class ReturnToColonyBehavior extends Behavior {
      * Represents an imaginary ant used for simulating path exploration.
      */
     private static class ImaginaryAnt {
+        // direction, distance and position of a segment
+        private static final int SEGMENT_BYTES = Byte.BYTES + 3 * Integer.BYTES;
+        // next, pos, mark and remaining steps, the three flags and the direction
+        private static final int FIXED_BYTES = 6 * Integer.BYTES + 4 * Byte.BYTES;
         @NotNull
-        private final Iterator<PathHistory.IntegratedSegment> path;
-        @Nullable
-        private Vector pos;
-        @Nullable
-        private Vector mark;
+        private final List<PathHistory.IntegratedSegment> path;
+        // the index of the next segment in path
+        private int next;
+        // pos and mark are reused, the flags tell if they have been set
+        @NotNull
+        private final Vector pos = new Vector();
+        @NotNull
+        private final Vector mark = new Vector();
+        private boolean hasPosition;
+        private boolean hasMark;
         @Nullable
         private Direction direction;
         private int remainingSteps;
         private boolean finished = false;
 
-        public ImaginaryAnt(@NotNull Iterator<PathHistory.IntegratedSegment> path) {
+        public ImaginaryAnt(@NotNull List<PathHistory.IntegratedSegment> path) {
             this.path = path;
             finished = !nextSegment();
         }
 
+        private ImaginaryAnt(@NotNull List<PathHistory.IntegratedSegment> path, int next) {
+            this.path = path;
+            this.next = next;
+        }
+
+        /**
+         * @return the number of bytes {@link #writeState} writes
+         */
+        public int stateBytes() {
+            return Integer.BYTES + path.size() * SEGMENT_BYTES + FIXED_BYTES;
+        }
+
+        /**
+         * Writes the path and the progress along it for a snapshot.
+         */
+        public void writeState(@NotNull ByteBuffer out) {
+            out.putInt(path.size());
+            for (PathHistory.IntegratedSegment segment : path) {
+                out.put((byte) segment.direction().ordinal());
+                out.putInt(segment.distance());
+                out.putInt(segment.position().x());
+                out.putInt(segment.position().y());
+            }
+            out.putInt(next);
+            out.putInt(pos.x());
+            out.putInt(pos.y());
+            out.putInt(mark.x());
+            out.putInt(mark.y());
+            out.put((byte) (hasPosition ? 1 : 0));
+            out.put((byte) (hasMark ? 1 : 0));
+            out.put((byte) (finished ? 1 : 0));
+            out.put((byte) (direction == null ? -1 : direction.ordinal()));
+            out.putInt(remainingSteps);
+        }
+
+        /**
+         * Reads an imaginary ant written by {@link #writeState}.
+         */
+        @NotNull
+        public static ImaginaryAnt readState(@NotNull ByteBuffer in) {
+            int size = in.getInt();
+            if (size < 0) throw new IllegalArgumentException("Invalid path length " + size);
+            List<PathHistory.IntegratedSegment> path = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Direction direction = Direction.of(in.get());
+                int distance = in.getInt();
+                path.add(new PathHistory.IntegratedSegment(direction, distance, new Vector(in.getInt(), in.getInt())));
+            }
+            ImaginaryAnt imagination = new ImaginaryAnt(path, in.getInt());
+            imagination.pos.set(in.getInt(), in.getInt());
+            imagination.mark.set(in.getInt(), in.getInt());
+            imagination.hasPosition = in.get() != 0;
+            imagination.hasMark = in.get() != 0;
+            imagination.finished = in.get() != 0;
+            byte direction = in.get();
+            imagination.direction = direction < 0 ? null : Direction.of(direction);
+            imagination.remainingSteps = in.getInt();
+            return imagination;
+        }
+
         /**
          * Moves to the next path segment.
          *
@@ -160,11 +259,12 @@ public class ReturnToColonyBehavior extends Behavior {
          */
         @SuppressWarnings("BooleanMethodIsAlwaysInverted")
         private boolean nextSegment() {
-            if (!path.hasNext()) return false;
-            PathHistory.IntegratedSegment segment = path.next();
+            if (next >= path.size()) return false;
+            PathHistory.IntegratedSegment segment = path.get(next++);
             direction = segment.direction().opposite();
             remainingSteps = segment.distance();
-            pos = new Vector(segment.position());
+            pos.set(segment.position());
+            hasPosition = true;
             return true;
         }
 
@@ -181,7 +281,7 @@ public class ReturnToColonyBehavior extends Behavior {
                 }
             }
 
-            assert pos != null && direction != null;
+            assert hasPosition && direction != null;
             pos.add(direction);
             remainingSteps--;
         }
@@ -202,7 +302,7 @@ public class ReturnToColonyBehavior extends Behavior {
          */
         @Nullable
         public IVector position() {
-            return pos;
+            return hasPosition ? pos : null;
         }
 
         /**
@@ -212,17 +312,16 @@ public class ReturnToColonyBehavior extends Behavior {
          */
         @Nullable
         public IVector mark() {
-            return mark;
+            return hasMark ? mark : null;
         }
 
         /**
          * Sets the mark at the current position of the imaginary ant.
          */
         public void setMark() {
-            if (pos == null) {
-                mark = null;
-            } else {
-                mark = pos.copy();
+            hasMark = hasPosition;
+            if (hasPosition) {
+                mark.set(pos);
             }
         }
 
@@ -232,8 +331,8 @@ public class ReturnToColonyBehavior extends Behavior {
          * @return True if the position has improved (closer to the mark), false otherwise.
          */
         public boolean hasImproved() {
-            if (mark == null) return true;
-            if (pos == null) return false;
+            if (!hasMark) return true;
+            if (!hasPosition) return false;
             return pos.length() < mark.length();
         }
     }
@@ -0,0 +1,385 @@
+package aufgabe1.behavior;
+
+import aufgabe1.Direction;
+import aufgabe1.world.Cell;
+import aufgabe1.world.entity.AntParameters;
+import aufgabe1.world.entity.AntTable;
+import aufgabe1.world.entity.Colony;
+import aufgabe1.world.entity.FoodSource;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The behaviours of the ants of an {@link AntTable}. It is the same finite state machine as the subclasses
+ * of {@link Behavior}, but the behaviours are stateless functions over a row of the table, so all ants share
+ * these five constants. The state of a behaviour is kept in the row, see {@link AntTable#counter} and
+ * {@link AntTable#flag}.
+ * <br>
+ * There are two differences to the behaviours of {@link aufgabe1.world.entity.Ant}: a table has no path history,
+ * so returning ants head straight for their colony instead of retracing their path, and exploring ants only
+ * notice food scent, since cells don't list the ants of a table.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural, the constants only select the functions
+ */
+public enum TableBehavior {
+    /**
+     * Like {@link ExploreInitBehavior}, the counter holds the remaining steps.
+     */
+    EXPLORE_INIT {
+        @Override
+        protected float score(@NotNull AntTable table, @NotNull Cell cell) {
+            return mixScents(table, 0, 2 * cell.colonyScent(table.colony()));
+        }
+
+        @Override
+        public void begin(@NotNull AntTable table, int row) {
+            super.begin(table, row);
+            table.setCounter(row, (int) (table.nextGaussian(row) * 50 + 20));
+        }
+
+        @Override
+        protected void act(@NotNull AntTable table, int row, @NotNull Cell cell, @NotNull Colony colony, @NotNull AntParameters.Behavior parameters) {
+            float scentBelow = cell.colonyScent(colony);
+            boolean onHighScent = scentBelow >= parameters.highScentThreshold;
+            boolean onVeryHighScent = scentBelow >= parameters.highScentThreshold * 2;
+
+            int best = evaluateBestOption(table, row);
+            table.setNextDirection(row, table.optionDirection(best));
+            boolean nextHighScent = table.option(best).colonyScent(colony) >= parameters.highScentThreshold;
+
+            // strengthen existing trails
+            if (onVeryHighScent) {
+                table.emitColonyScent(row);
+            }
+
+            boolean endOfTrail = !onHighScent && !nextHighScent && cell.colony() != colony;
+            if (table.counter(row) <= 0 || endOfTrail) {
+                table.setNextBehaviorImmediate(row, EXPLORE);
+                return;
+            }
+            table.setCounter(row, table.counter(row) - 1);
+        }
+    },
+    /**
+     * Like {@link ExploreBehavior}, the flag tells if the ant was on a high colony scent in the last step.
+     */
+    EXPLORE {
+        @Override
+        protected int segment(@NotNull AntTable table, @NotNull Cell cell) {
+            return cell.foodScent(table.colony()) >= table.parameters().behavior().highScentThreshold ? 1 : 0;
+        }
+
+        @Override
+        protected float score(@NotNull AntTable table, @NotNull Cell cell) {
+            Colony colony = table.colony();
+            AntParameters.Behavior parameters = table.parameters().behavior();
+            float foodScent = cell.foodScent(colony);
+            if (foodScent >= parameters.highScentThreshold) {
+                return mixScents(table, 0, foodScent);
+            }
+            float heightDifference = Math.max(cell.height() - table.cell().height(), 0) * parameters.weightHeight;
+            float maxScent = Math.max(cell.colonyScent(colony), foodScent);
+            return mixScents(table, cell.avoidScent(colony) + heightDifference, -1 * maxScent);
+        }
+
+        @Override
+        protected void act(@NotNull AntTable table, int row, @NotNull Cell cell, @NotNull Colony colony, @NotNull AntParameters.Behavior parameters) {
+            boolean onHighScent = cell.colonyScent(colony) >= parameters.highScentThreshold;
+
+            int best = evaluateBestOption(table, row);
+            table.setNextDirection(row, table.optionDirection(best));
+
+            FoodSource foodSource = cell.foodSource();
+            if (foodSource != null && cell.hasFood()) {
+                takeFoodAndReturn(table, row, foodSource);
+            } else if (anyOption(table, ScentKind.FOOD, parameters.highScentThreshold)) {
+                table.setNextBehavior(row, FOLLOW_SCENT_TO_FOOD);
+            }
+
+            // stop exploring at night
+            if (table.world().isNight()) {
+                table.setNextBehavior(row, RETURN_HOME);
+            }
+
+            boolean highScentNearby = table.flag(row) || anyOption(table, ScentKind.COLONY, parameters.highScentThreshold);
+            if (!onHighScent && !highScentNearby) {
+                table.emitColonyScent(row);
+            }
+
+            table.setFlag(row, onHighScent);
+            table.emitAvoidScent(row);
+        }
+    },
+    /**
+     * Like {@link FollowScentToFoodBehavior}, the counter holds the time since the ant follows a bad scent.
+     */
+    FOLLOW_SCENT_TO_FOOD {
+        @Override
+        protected int segment(@NotNull AntTable table, @NotNull Cell cell) {
+            FoodSource food = cell.foodSource();
+            return food != null && !food.isEmpty() ? 1 : 0;
+        }
+
+        @Override
+        protected float score(@NotNull AntTable table, @NotNull Cell cell) {
+            FoodSource food = cell.foodSource();
+            if (food != null && !food.isEmpty()) {
+                return Behavior.sigmoid(food.amount());
+            }
+            Colony colony = table.colony();
+            return mixScents(table, cell.avoidScent(colony), cell.foodScent(colony));
+        }
+
+        @Override
+        public void begin(@NotNull AntTable table, int row) {
+            super.begin(table, row);
+            table.setCounter(row, NOT_FOLLOWING_BAD_SCENT);
+        }
+
+        @Override
+        protected void act(@NotNull AntTable table, int row, @NotNull Cell cell, @NotNull Colony colony, @NotNull AntParameters.Behavior parameters) {
+            int best = evaluateBestOption(table, row);
+            table.setNextDirection(row, table.optionDirection(best));
+
+            boolean followingBadScent = !anyOption(table, ScentKind.FOOD, parameters.highScentThreshold);
+
+            FoodSource foodSource = cell.foodSource();
+            if (foodSource != null && cell.hasFood()) {
+                takeFoodAndReturn(table, row, foodSource);
+                followingBadScent = false;
+            }
+
+            if (cell.colony() == colony) {
+                turnAround(table, row);
+            }
+
+            if (followingBadScent) {
+                int time = table.world().time();
+                if (table.counter(row) == NOT_FOLLOWING_BAD_SCENT) {
+                    table.setCounter(row, time);
+                }
+                if (time - table.counter(row) >= parameters.badScentFollowTimeThreshold) {
+                    table.setNextBehavior(row, EXPLORE_INIT);
+                }
+            } else {
+                table.setCounter(row, NOT_FOLLOWING_BAD_SCENT);
+            }
+
+            table.emitColonyScent(row);
+            table.emitAvoidScent(row);
+        }
+    },
+    /**
+     * Like {@link FollowScentToColonyBehavior}, the counter holds the number of steps without colony scent.
+     */
+    FOLLOW_SCENT_TO_COLONY {
+        @Override
+        protected int segment(@NotNull AntTable table, @NotNull Cell cell) {
+            return cell.colony() == table.colony() ? 1 : 0;
+        }
+
+        @Override
+        protected float score(@NotNull AntTable table, @NotNull Cell cell) {
+            Colony colony = table.colony();
+            if (cell.colony() == colony) return 0;
+            return mixScents(table, cell.avoidScent(colony), cell.colonyScent(colony));
+        }
+
+        @Override
+        public void begin(@NotNull AntTable table, int row) {
+            super.begin(table, row);
+            table.setCounter(row, 0);
+        }
+
+        @Override
+        protected void act(@NotNull AntTable table, int row, @NotNull Cell cell, @NotNull Colony colony, @NotNull AntParameters.Behavior parameters) {
+            int best = evaluateBestOption(table, row);
+            table.setNextDirection(row, table.optionDirection(best));
+            if (table.option(best).colonyScent(colony) < 0.01) {
+                table.setCounter(row, table.counter(row) + 1);
+            } else {
+                table.setCounter(row, 0);
+            }
+
+            FoodSource foodSource = cell.foodSource();
+            if (cell.colony() == colony) {
+                table.depositAllFood(row);
+                turnAround(table, row);
+                table.setNextBehavior(row, FOLLOW_SCENT_TO_FOOD);
+            } else if (foodSource != null && cell.hasFood()) {
+                takeFoodAndReturn(table, row, foodSource);
+            }
+
+            // same as FollowScentToColonyBehavior
+            boolean lost = table.counter(row) > 50;
+            if (table.world().isNight() && lost) {
+                table.setNextBehavior(row, RETURN_HOME);
+            }
+
+            table.emitFoodScent(row);
+            table.emitAvoidScent(row);
+        }
+    },
+    /**
+     * Like {@link ReturnToColonyBehavior}, but without a path history the ant heads straight for its colony
+     * when there is no colony scent to follow.
+     */
+    RETURN_HOME {
+        @Override
+        protected float score(@NotNull AntTable table, @NotNull Cell cell) {
+            return mixScents(table, 0, cell.colonyScent(table.colony()));
+        }
+
+        @Override
+        protected void act(@NotNull AntTable table, int row, @NotNull Cell cell, @NotNull Colony colony, @NotNull AntParameters.Behavior parameters) {
+            if (cell.colony() == colony) {
+                if (table.world().isDay()) {
+                    if (table.isCarrying(row)) {
+                        table.depositAllFood(row);
+                        turnAround(table, row);
+                        table.setNextBehavior(row, FOLLOW_SCENT_TO_FOOD);
+                    } else {
+                        table.setNextBehavior(row, EXPLORE_INIT);
+                    }
+                } else {
+                    table.setSleep(row, 1);
+                }
+                return;
+            }
+
+            // 1. Go to colony
+            for (int i = 0; i < table.optionCount(); i++) {
+                if (table.option(i).colony() == colony) {
+                    table.emitColonyScent(row);
+                    table.setNextDirection(row, table.optionDirection(i));
+                    return;
+                }
+            }
+
+            // 2. Go along scent trail
+            int best = evaluateBestOption(table, row);
+            if (table.option(best).colonyScent(colony) >= parameters.highScentThreshold) {
+                table.setNextDirection(row, table.optionDirection(best));
+                return;
+            }
+
+            // 3. Head for the colony
+            Direction home = Direction.fromDelta(colony.position().x() - table.x(row), colony.position().y() - table.y(row));
+            if (home != null) {
+                table.setNextDirection(row, home);
+            }
+        }
+    };
+
+    private static final int NOT_FOLLOWING_BAD_SCENT = -1;
+    // values() copies the array on every call
+    private static final TableBehavior[] VALUES = values();
+
+    private enum ScentKind {FOOD, COLONY}
+
+    /**
+     * @return the behaviour with the given ordinal, as stored in the rows of a table
+     */
+    @NotNull
+    public static TableBehavior of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * Called when a row changes to this behaviour, like {@link Behavior#begin()}.
+     */
+    public void begin(@NotNull AntTable table, int row) {
+        table.setNoReturnTimer(row, 0);
+    }
+
+    /**
+     * Defines the behaviour of the ant in the given row during its turn, like {@link Behavior#act()}.
+     * The cell and the possible next cells are the ones of the row, see {@link AntTable#cell()}.
+     */
+    public void act(@NotNull AntTable table, int row) {
+        int noReturnTimer = table.noReturnTimer(row);
+        if (noReturnTimer > 0) table.setNoReturnTimer(row, noReturnTimer - 1);
+        act(table, row, table.cell(), table.colony(), table.parameters().behavior());
+    }
+
+    protected abstract void act(@NotNull AntTable table, int row, @NotNull Cell cell, @NotNull Colony colony,
+                                @NotNull AntParameters.Behavior parameters);
+
+    /**
+     * Like the score of {@link Behavior#evaluateDirectionScore}. Only options of the highest segment are compared.
+     */
+    protected int segment(@NotNull AntTable table, @NotNull Cell cell) {
+        return 0;
+    }
+
+    protected abstract float score(@NotNull AntTable table, @NotNull Cell cell);
+
+    /**
+     * Weighs all possible next cells of the row like {@link Behavior#evaluateBestDirection()}.
+     *
+     * @return the index of the best option
+     */
+    protected int evaluateBestOption(@NotNull AntTable table, int row) {
+        AntParameters.Behavior parameters = table.parameters().behavior();
+        int best = -1;
+        float bestWeight = 0;
+        int bestSegment = 0;
+        for (int i = 0; i < table.optionCount(); i++) {
+            Cell cell = table.option(i);
+            int segment = segment(table, cell);
+            if (i == 0 || segment > bestSegment) {
+                bestSegment = segment;
+                best = -1;
+            } else if (segment < bestSegment) {
+                continue;
+            }
+
+            float sum = score(table, cell) * parameters.weightScore
+                + table.optionBias(i) * parameters.weightStraight
+                + parameters.biasChoose;
+
+            float weight = Behavior.sigmoid(sum);
+            float randomBias = table.nextGaussian(row);
+            float sum2 = parameters.argRandom * sum * sum;
+            randomBias *= parameters.weightRandom * (1 - (sum2 / (sum2 + 1)));
+            weight += randomBias;
+
+            if (best < 0 || weight > bestWeight) {
+                best = i;
+                bestWeight = weight;
+            }
+        }
+        return best;
+    }
+
+    private static float mixScents(@NotNull AntTable table, float avoidScent, float pursueScent) {
+        AntParameters.Behavior parameters = table.parameters().behavior();
+        float sum = avoidScent * parameters.weightAvoid + pursueScent * parameters.weightPursue + parameters.biasMix;
+        return Behavior.sigmoid(sum);
+    }
+
+    /**
+     * @return true if one of the possible next cells has at least the given scent of the colony
+     */
+    private static boolean anyOption(@NotNull AntTable table, @NotNull ScentKind kind, float threshold) {
+        Colony colony = table.colony();
+        for (int i = 0; i < table.optionCount(); i++) {
+            Cell cell = table.option(i);
+            float scent = kind == ScentKind.FOOD ? cell.foodScent(colony) : cell.colonyScent(colony);
+            if (scent >= threshold) return true;
+        }
+        return false;
+    }
+
+    private static void takeFoodAndReturn(@NotNull AntTable table, int row, @NotNull FoodSource foodSource) {
+        table.takeAllFood(row, foodSource);
+        turnAround(table, row);
+        table.setNextBehavior(row, FOLLOW_SCENT_TO_COLONY);
+    }
+
+    private static void turnAround(@NotNull AntTable table, int row) {
+        if (table.noReturnTimer(row) <= 0) {
+            table.setNextDirection(row, table.returnDirection(row));
+        }
+        table.setNoReturnTimer(row, table.noReturnTimer(row) + 2);
+    }
+}
@@ -1,8 +1,9 @@
 package aufgabe1.view;
 
+import aufgabe1.IVector;
+import aufgabe1.ReplayLog.Target;
 import aufgabe1.Simulation;
 import aufgabe1.world.WorldParameters;
-import aufgabe1.world.entity.Ant;
 import aufgabe1.world.entity.AntParameters;
 import aufgabe1.world.entity.Colony;
 import org.jetbrains.annotations.NotNull;
@@ -41,8 +42,6 @@ public class Viewer extends JFrame {
     private float msPerTick;
     private long lastTpsMeasureTime = System.currentTimeMillis();
     private int lastTpsMeasureTicks;
-    @NotNull
-    private Colony primaryColony;
 
     /**
      * Creates a Viewer for the given simulation and creates sliders for all parameters
@@ -66,6 +65,7 @@ public class Viewer extends JFrame {
         visualization = new Visualization(simulation, visualizationParameters, widthPx, heightPx);
         visualization.setPreferredSize(new Dimension(widthPx, heightPx));
         makeVisualizationDraggable();
+        makeVisualizationInjectable();
         visualizationPanel.add(visualization);
 
         JPanel infoPanel = new JPanel();
@@ -103,7 +103,9 @@ public class Viewer extends JFrame {
         settingsPanel.add(vPanel);
         addHorizontalSeparator(settingsPanel);
 
-        primaryColony = simulation.world().colonies().get(0);
+        // the sliders show the values at startup, every slider sends only its own field to the simulation,
+        // which applies it between two steps
+        Colony primaryColony = simulation.world().colonies().get(0);
         AntParameters antParameters = primaryColony.antSpawnParameters();
         Colony.Parameters colonyParameters = primaryColony.parameters();
         AntParameters.Behavior behaviorParameters = antParameters.behavior();
@@ -120,7 +122,7 @@ public class Viewer extends JFrame {
         settingsPanel.add(colonyParametersPanel);
         addHorizontalSeparator(settingsPanel);
 
-        JComponent worldParametersPanel = createWorldParametersPanel(simulation.world().parameters());
+        JComponent worldParametersPanel = createWorldParametersPanel(simulation, simulation.world().parameters());
         settingsPanel.add(worldParametersPanel);
 
         addWindowListener(new WindowAdapter() {
@@ -157,6 +159,29 @@ public class Viewer extends JFrame {
         });
     }
 
+    /**
+     * A right click spreads food around the cell, a right click with shift creates a colony there.
+     * If the colony can't be created a message tells why.
+     */
+    private void makeVisualizationInjectable() {
+        visualization.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(@NotNull MouseEvent e) {
+                if (!SwingUtilities.isRightMouseButton(e)) return;
+                IVector cell = visualization.cellAt(e.getPoint());
+                if (e.isShiftDown()) {
+                    simulation.injectColony(cell.x(), cell.y(), 100).exceptionally(error -> {
+                        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(Viewer.this,
+                            error.getMessage(), "Could not create a colony", JOptionPane.WARNING_MESSAGE));
+                        return null;
+                    });
+                } else {
+                    simulation.injectFood(cell.x(), cell.y(), 25);
+                }
+            }
+        });
+    }
+
     @NotNull
     private JPanel createButtonPanel(@NotNull Simulation simulation) {
         JPanel buttonPanel = new JPanel();
@@ -248,27 +273,21 @@ public class Viewer extends JFrame {
         return new JOptionGroup.Builder()
             .label("Behavior Parameters")
             .add(new JLabeledFloatSlider.Builder().label("High Threshold").range(0, 10).scale(100)
-                .binding(params.highScentThreshold, v -> params.highScentThreshold = v).build())
+                .binding(params.highScentThreshold, v -> simulation.changeParameter(Target.BEHAVIOR, "highScentThreshold", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Pursue").range(0, 10).scale(100)
-                .binding(params.weightPursue, v -> params.weightPursue = v).build())
+                .binding(params.weightPursue, v -> simulation.changeParameter(Target.BEHAVIOR, "weightPursue", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Avoid").range(0, 10).scale(100)
-                .binding(-params.weightAvoid, v -> params.weightAvoid = -v).build())
+                .binding(-params.weightAvoid, v -> simulation.changeParameter(Target.BEHAVIOR, "weightAvoid", -v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Scent").range(0, 10).scale(100)
-                .binding(params.weightScore, v -> params.weightScore = v).build())
+                .binding(params.weightScore, v -> simulation.changeParameter(Target.BEHAVIOR, "weightScore", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Random").range(0, 1).scale(1000)
-                .binding(params.weightRandom, v -> params.weightRandom = v).build())
+                .binding(params.weightRandom, v -> simulation.changeParameter(Target.BEHAVIOR, "weightRandom", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Random Arg").range(0, 10).scale(100)
-                .binding(params.argRandom, v -> params.argRandom = v).build())
+                .binding(params.argRandom, v -> simulation.changeParameter(Target.BEHAVIOR, "argRandom", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Straight").range(0, 2).scale(1000)
-                .binding(params.weightStraight, v -> params.weightStraight = v).build())
+                .binding(params.weightStraight, v -> simulation.changeParameter(Target.BEHAVIOR, "weightStraight", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Height").range(0, 100).scale(100)
-                .binding(params.weightHeight, v -> params.weightHeight = v).build())
-            .addChangeListener(e -> {
-                for (Colony colony : simulation.world().colonies()) {
-                    colony.setAntSpawnParameters(primaryColony.antSpawnParameters());
-                    applyParametersToAllAnts(colony);
-                }
-            })
+                .binding(params.weightHeight, v -> simulation.changeParameter(Target.BEHAVIOR, "weightHeight", v)).build())
             .build();
     }
 
@@ -277,33 +296,27 @@ public class Viewer extends JFrame {
         return new JOptionGroup.Builder()
             .label("Ant Parameters")
             .add(new JLabeledFloatSlider.Builder().label("Straight Bias").range(0, 10).scale(100)
-                .binding(params.straightBias, v -> params.straightBias = v).build())
+                .binding(params.straightBias, v -> simulation.changeParameter(Target.ANT, "straightBias", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Food Gain").range(0, 10).scale(100)
-                .binding(params.foodScentGain, v -> params.foodScentGain = v).build())
+                .binding(params.foodScentGain, v -> simulation.changeParameter(Target.ANT, "foodScentGain", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Food Strength").range(0, 10).scale(100)
-                .binding(params.foodScentAddend, v -> params.foodScentAddend = v).build())
+                .binding(params.foodScentAddend, v -> simulation.changeParameter(Target.ANT, "foodScentAddend", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Food Decay").range(0.9f, 1).scale(2000)
-                .binding(params.foodScentDecay, v -> params.foodScentDecay = v).build())
+                .binding(params.foodScentDecay, v -> simulation.changeParameter(Target.ANT, "foodScentDecay", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Colony Gain").range(0, 10).scale(100)
-                .binding(params.colonyScentGain, v -> params.colonyScentGain = v).build())
+                .binding(params.colonyScentGain, v -> simulation.changeParameter(Target.ANT, "colonyScentGain", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Colony Strength").range(0, 10).scale(100)
-                .binding(params.colonyScentAddend, v -> params.colonyScentAddend = v).build())
+                .binding(params.colonyScentAddend, v -> simulation.changeParameter(Target.ANT, "colonyScentAddend", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Colony Decay").range(0.9f, 1).scale(2000)
-                .binding(params.colonyScentDecay, v -> params.colonyScentDecay = v).build())
+                .binding(params.colonyScentDecay, v -> simulation.changeParameter(Target.ANT, "colonyScentDecay", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Avoid Strength").range(0, 10).scale(100)
-                .binding(params.avoidScentAdded, v -> params.avoidScentAdded = v).build())
+                .binding(params.avoidScentAdded, v -> simulation.changeParameter(Target.ANT, "avoidScentAdded", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Avoid Extra").range(0, 10).scale(100)
-                .binding(params.avoidScentFactor, v -> params.avoidScentFactor = v).build())
+                .binding(params.avoidScentFactor, v -> simulation.changeParameter(Target.ANT, "avoidScentFactor", v)).build())
             .add(new JLabeledSlider.Builder().label("Energy Gain").range(1, 100)
-                .binding(params.energyGain / 100, v -> params.energyGain = v * 100).build())
+                .binding(params.energyGain / 100, v -> simulation.changeParameter(Target.ANT, "energyGain", v * 100)).build())
             .add(new JLabeledFloatSlider.Builder().label("Energy Food Factor").range(0, 50).scale(10)
-                .binding(params.energyFoodFactor / 100, v -> params.energyFoodFactor = v * 100).build())
-            .addChangeListener(e -> {
-                for (Colony colony : simulation.world().colonies()) {
-                    colony.setAntSpawnParameters(primaryColony.antSpawnParameters());
-                    applyParametersToAllAnts(colony);
-                }
-            })
+                .binding(params.energyFoodFactor / 100, v -> simulation.changeParameter(Target.ANT, "energyFoodFactor", v * 100)).build())
             .build();
     }
 
@@ -312,53 +325,35 @@ public class Viewer extends JFrame {
         return new JOptionGroup.Builder()
             .label("Colony Parameters")
             .add(new JLabeledFloatSlider.Builder().label("Spawn Cost").range(1, 100).scale(1)
-                .binding(params.antSpawnFoodCost, v -> params.antSpawnFoodCost = v).build())
+                .binding(params.antSpawnFoodCost, v -> simulation.changeParameter(Target.COLONY, "antSpawnFoodCost", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Spawn Threshold").range(0, 200).scale(1)
-                .binding(params.antSpawnFoodThreshold, v -> params.antSpawnFoodThreshold = v).build())
-            .addChangeListener(e -> {
-                for (Colony colony : simulation.world().colonies()) {
-                    colony.setParameters(primaryColony.parameters());
-                }
-            })
+                .binding(params.antSpawnFoodThreshold, v -> simulation.changeParameter(Target.COLONY, "antSpawnFoodThreshold", v)).build())
             .build();
     }
 
     @NotNull
-    private JComponent createWorldParametersPanel(@NotNull WorldParameters wParams) {
+    private JComponent createWorldParametersPanel(@NotNull Simulation simulation, @NotNull WorldParameters wParams) {
         return new JOptionGroup.Builder()
             .label("World Parameters")
             .add(new JLabeledFloatSlider.Builder().label("Food Decay").range(0.95f, 1).scale(2000)
-                .binding(wParams.foodDecay, v -> wParams.foodDecay = v).build())
+                .binding(wParams.foodDecay, v -> simulation.changeParameter(Target.WORLD, "foodDecay", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Colony Decay").range(0.95f, 1).scale(2000)
-                .binding(wParams.colonyDecay, v -> wParams.colonyDecay = v).build())
+                .binding(wParams.colonyDecay, v -> simulation.changeParameter(Target.WORLD, "colonyDecay", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Avoid Decay").range(0.75f, 1).scale(2000)
-                .binding(wParams.avoidDecay, v -> wParams.avoidDecay = v).build())
+                .binding(wParams.avoidDecay, v -> simulation.changeParameter(Target.WORLD, "avoidDecay", v)).build())
             .add(new JLabeledSlider.Builder().label("Day Cycle Time").range(100, 10000)
-                .binding(wParams.dayNightCycleTime, v -> wParams.dayNightCycleTime = v).build())
+                .binding(wParams.dayNightCycleTime, v -> simulation.changeParameter(Target.WORLD, "dayNightCycleTime", v)).build())
             .add(new JLabeledFloatSlider.Builder().label("Day Percentage").range(0, 1).scale(1000)
-                .binding(wParams.dayPercentage, v -> wParams.dayPercentage = v).build())
+                .binding(wParams.dayPercentage, v -> simulation.changeParameter(Target.WORLD, "dayPercentage", v)).build())
             .build();
     }
 
     @NotNull
     private JButton createResetButton(@NotNull Simulation simulation) {
         JButton resetButton = new JButton("Reset");
-        resetButton.addActionListener(e -> {
-            simulation.resetWorld();
-
-            // Carry over parameters to new world
-            Colony newPrimaryColony = simulation.world().colonies().get(0);
-            newPrimaryColony.setAntSpawnParameters(primaryColony.antSpawnParameters());
-            newPrimaryColony.setParameters(primaryColony.parameters());
-            primaryColony = newPrimaryColony;
-
-            // Copy parameters to all colonies
-            for (Colony colony : simulation.world().colonies()) {
-                colony.setAntSpawnParameters(primaryColony.antSpawnParameters());
-                colony.setParameters(primaryColony.parameters());
-                applyParametersToAllAnts(colony);
-            }
-        });
+        // The world factory creates the colonies with the parameters the changes were applied to,
+        // so they carry over to the new world
+        resetButton.addActionListener(e -> simulation.requestReset());
         return resetButton;
     }
 
@@ -374,15 +369,6 @@ public class Viewer extends JFrame {
         parent.add(separator);
     }
 
-    /**
-     * Copies the colony ant spawn parameters to all ants of that colony
-     */
-    private void applyParametersToAllAnts(@NotNull Colony colony) {
-        for (Ant ant : colony.ants()) {
-            ant.setParameters(new AntParameters(colony.antSpawnParameters()));
-        }
-    }
-
 
     /**
      * Runs the simulation with the specified delay and optionally asynchronously
@@ -2,9 +2,12 @@ package aufgabe1.view;
 
 import aufgabe1.IVector;
 import aufgabe1.Simulation;
+import aufgabe1.Vector;
 import aufgabe1.world.Cell;
 import aufgabe1.world.Chunk;
+import aufgabe1.world.EntityList;
 import aufgabe1.world.entity.Ant;
+import aufgabe1.world.entity.AntTable;
 import aufgabe1.world.entity.Colony;
 import aufgabe1.world.entity.FoodSource;
 import org.jetbrains.annotations.NotNull;
@@ -24,6 +27,8 @@ import java.util.stream.Stream;
  * Modularisierungseinheit: Klasse
  */
 public class Visualization extends JComponent {
+    private static final int BACKGROUND = 0xff808080;
+
     @NotNull
     private final Simulation simulation;
     private final int widthPx;
@@ -36,6 +41,14 @@ public class Visualization extends JComponent {
         Map.entry(0.7f, new Color(150, 149, 149).getRGB()),
         Map.entry(1.0f, new Color(218, 218, 218).getRGB())
     );
+    // the colours of the terrain and of the height map, indexed by height * 0xff
+    private final int @NotNull [] terrainPalette = new int[0x100];
+    private final int @NotNull [] heightPalette = new int[0x100];
+    // the rendered terrain of the chunks that were visible in the last frame, for the scale and mode below
+    private final Map<Chunk, TerrainTile> terrainTiles = new IdentityHashMap<>();
+    private int terrainScale;
+    private boolean terrainShowHeight;
+    private int frame;
     @NotNull
     private Parameters parameters;
     @NotNull
@@ -59,6 +72,17 @@ public class Visualization extends JComponent {
         readImage.setAccelerationPriority(1);
 
         foodColor = new Color(0, 1, 0.2f).getRGB();
+
+        for (int i = 0; i < 0x100; i++) {
+            float height = i / (float) 0xff;
+            heightPalette[i] = packColor(i, i, i, 0xff);
+            // heights above the last entry aren't painted, the background shows
+            terrainPalette[i] = terrainColors.stream()
+                .filter(entry -> height <= entry.getKey())
+                .findFirst()
+                .map(Map.Entry::getValue)
+                .orElse(BACKGROUND);
+        }
     }
 
     private void swapImages() {
@@ -113,7 +137,7 @@ public class Visualization extends JComponent {
 
     private boolean paintImmediate() {
         if (parameters.scale == 0) return false;
-        clear(0xff808080);
+        clear(BACKGROUND);
 
         boolean completed;
         try {
@@ -133,7 +157,8 @@ public class Visualization extends JComponent {
         Point mouse = getMousePosition();
         if (mouse == null) return;
 
-        Cell cell = simulation.world().getOrNull(pxToCellX(mouse.x), pxToCellY(mouse.y));
+        IVector position = cellAt(mouse);
+        Cell cell = simulation.world().getOrNull(position.x(), position.y());
         if (cell == null) return;
 
         List<String> lines = Stream.of(
@@ -199,15 +224,29 @@ public class Visualization extends JComponent {
         }
         simulation.world().unlock();
 
+        // the tiles only depend on the heights, the scale and the mode
+        if (parameters.scale != terrainScale || parameters.showHeight != terrainShowHeight) {
+            terrainTiles.clear();
+            terrainScale = parameters.scale;
+            terrainShowHeight = parameters.showHeight;
+        }
+        frame++;
+
         // paint background
         for (Chunk chunk : visible) {
             paintChunk(chunk);
         }
+        // keep the tiles of the visible chunks only, the others would pile up while scrolling
+        terrainTiles.values().removeIf(tile -> tile.frame != frame);
 
         // paint over background
         for (Chunk chunk : visible) {
             paintChunkContent(chunk);
         }
+        for (Colony colony : simulation.world().colonies()) {
+            AntTable table = colony.antTable();
+            if (table != null) paintAntTable(table);
+        }
 
         return true;
     }
@@ -234,27 +273,58 @@ public class Visualization extends JComponent {
     }
 
     /**
-     * STYLE: Functional
+     * Copies the rendered terrain of a chunk into the image, one row of pixels at a time.
+     * The terrain is opaque, so copying gives the same pixels as blending it with {@link #fillRect}.
      */
     private void paintHeight(@NotNull Chunk chunk) {
-        for (int y = chunk.origin().y(); y < chunk.limit().y(); y++) {
-            for (int x = chunk.origin().x(); x < chunk.limit().x(); x++) {
-                Cell cell = chunk.get(x, y);
-                float cellHeight = cell.height();
-
-                if (parameters.showHeight) {
-                    int color = (int) (cellHeight * 0xff);
-                    fillRect(packColor(color, color, color, 0xff), 0xff, x, y);
-                } else {
-                    int finalX = x;
-                    int finalY = y;
-                    terrainColors.stream()
-                        .filter(entry -> cellHeight <= entry.getKey())
-                        .findFirst()
-                        .ifPresent(entry -> fillRect(entry.getValue(), 0xff, finalX, finalY));
-                }
+        int[] tile = terrainTile(chunk);
+        int size = Chunk.CHUNK_SIZE * terrainScale;
+        int left = chunk.origin().x() * terrainScale - parameters.centerX;
+        int top = chunk.origin().y() * terrainScale - parameters.centerY;
+        int from = Math.max(0, -left);
+        int to = Math.min(size, widthPx - left);
+        if (from >= to) return;
+        for (int row = Math.max(0, -top), rows = Math.min(size, heightPx - top); row < rows; row++) {
+            System.arraycopy(tile, row * size + from, pixels, (top + row) * widthPx + left + from, to - from);
+        }
+    }
+
+    /**
+     * @return the rendered terrain of a chunk, rendered again if its heights changed
+     */
+    private int @NotNull [] terrainTile(@NotNull Chunk chunk) {
+        int version = chunk.heightsVersion();
+        TerrainTile tile = terrainTiles.get(chunk);
+        if (tile == null || tile.version != version) {
+            tile = new TerrainTile(renderTerrain(chunk), version);
+            terrainTiles.put(chunk, tile);
+        }
+        tile.frame = frame;
+        return tile.pixels;
+    }
+
+    /**
+     * Renders the terrain of a chunk with one colour from the palette per cell, a cell covers scale × scale pixels.
+     * The heights are read by cell index, so rendering doesn't create the handles of the cells.
+     */
+    private int @NotNull [] renderTerrain(@NotNull Chunk chunk) {
+        int scale = terrainScale;
+        int size = Chunk.CHUNK_SIZE * scale;
+        int[] palette = terrainShowHeight ? heightPalette : terrainPalette;
+        int[] tile = new int[size * size];
+        for (int y = 0; y < Chunk.CHUNK_SIZE; y++) {
+            int row = y * scale * size;
+            for (int x = 0; x < Chunk.CHUNK_SIZE; x++) {
+                float height = chunk.height(Chunk.index(x, y));
+                int color = palette[Math.min(0xff, Math.max(0, (int) (height * 0xff)))];
+                Arrays.fill(tile, row + x * scale, row + (x + 1) * scale, color);
+            }
+            // the other pixel rows of the cells are the same
+            for (int copy = 1; copy < scale; copy++) {
+                System.arraycopy(tile, row, tile, row + copy * size, size);
             }
         }
+        return tile;
     }
 
     @SuppressWarnings("SameParameterValue")
@@ -266,43 +336,52 @@ public class Visualization extends JComponent {
      * STYLE: functional programming
      */
     private void paintChunkContent(@NotNull Chunk chunk) {
-        for (Cell cell : chunk) {
-            if (cell.isEmpty()) continue;
-            try {
-                cell.scents().forEach(entry -> {
-                    Colony colony = entry.getKey();
-                    float foodScent = cell.foodScent(colony);
-                    float colonyScent = cell.colonyScent(colony);
-                    float avoidScent = cell.avoidScent(colony);
-
-                    if (foodScent <= 0.01 && colonyScent <= 0.01 && avoidScent <= 0.01) return;
-
-                    ColonyColors colors = getColors(colony);
-
-                    int colonyFoodColor = mix(
-                        colors.foodScent, toAlpha(foodScent, parameters.scentColorScale),
-                        colors.colonyScent, toAlpha(colonyScent, parameters.scentColorScale));
-
-                    fillRect(colonyFoodColor, colonyFoodColor >> 24, cell.position());
-                    fillRect(colors.avoidScent, toAlpha(avoidScent, parameters.scentColorScale), cell.position());
-                });
-            } catch (NoSuchElementException ignored) {
+        List<Colony> colonies = simulation.world().colonies();
+        // the scents are read by cell index, so painting doesn't create the handles of the cells
+        for (int y = chunk.origin().y(); y < chunk.limit().y(); y++) {
+            for (int x = chunk.origin().x(); x < chunk.limit().x(); x++) {
+                int index = Chunk.index(x, y);
+                if (!chunk.hasScent(index)) continue;
+                for (Colony colony : colonies) {
+                    paintScent(chunk, index, colony, x, y);
+                }
             }
         }
-        try {
-            chunk.entities().forEach(entity -> {
-                if (entity instanceof Ant) {
-                    paintAnt((Ant) entity);
-                } else if (entity instanceof Colony) {
-                    paintColony((Colony) entity);
-                } else if (entity instanceof FoodSource) {
-                    paintFood((FoodSource) entity);
-                }
-            });
-        } catch (NoSuchElementException ignored) {
+        // The lists may change while painting, removed entities leave null entries behind
+        EntityList<FoodSource> foodSources = chunk.foodSources();
+        for (int i = 0, size = foodSources.size(); i < size; i++) {
+            FoodSource foodSource = foodSources.get(i);
+            if (foodSource != null) paintFood(foodSource);
+        }
+        EntityList<Colony> chunkColonies = chunk.colonies();
+        for (int i = 0, size = chunkColonies.size(); i < size; i++) {
+            Colony colony = chunkColonies.get(i);
+            if (colony != null) paintColony(colony);
+        }
+        EntityList<Ant> ants = chunk.ants();
+        for (int i = 0, size = ants.size(); i < size; i++) {
+            Ant ant = ants.get(i);
+            if (ant != null) paintAnt(ant);
         }
     }
 
+    private void paintScent(@NotNull Chunk chunk, int index, @NotNull Colony colony, int x, int y) {
+        float foodScent = chunk.foodScent(colony, index);
+        float colonyScent = chunk.colonyScent(colony, index);
+        float avoidScent = chunk.avoidScent(colony, index);
+
+        if (foodScent <= 0.01 && colonyScent <= 0.01 && avoidScent <= 0.01) return;
+
+        ColonyColors colors = getColors(colony);
+
+        int colonyFoodColor = mix(
+            colors.foodScent, toAlpha(foodScent, parameters.scentColorScale),
+            colors.colonyScent, toAlpha(colonyScent, parameters.scentColorScale));
+
+        fillRect(colonyFoodColor, colonyFoodColor >> 24, x, y);
+        fillRect(colors.avoidScent, toAlpha(avoidScent, parameters.scentColorScale), x, y);
+    }
+
     /**
      * STYLE: functional programming
      */
@@ -312,6 +391,25 @@ public class Visualization extends JComponent {
         fillRect(color, 0xff, ant.position(), antPadding);
     }
 
+    /**
+     * The rows of a table aren't sorted by chunk, so all of them are checked against the visible area.
+     * The table may change while painting, like the entity lists of the chunks.
+     */
+    private void paintAntTable(@NotNull AntTable table) {
+        int antPadding = Math.round(parameters.scale * 0.25f);
+        int minX = pxToCellX(0) - 1;
+        int minY = pxToCellY(0) - 1;
+        int maxX = pxToCellX(widthPx) + 1;
+        int maxY = pxToCellY(heightPx) + 1;
+        for (int row = 0, size = table.size(); row < size; row++) {
+            int x = table.x(row);
+            int y = table.y(row);
+            if (x < minX || x > maxX || y < minY || y > maxY) continue;
+            int color = table.carrying(row) > 0 ? Color.GREEN.getRGB() : Color.BLACK.getRGB();
+            fillRect(color, 0xff, x, y, 1, 1, antPadding);
+        }
+    }
+
     /**
      * STYLE: functional programming
      */
@@ -325,6 +423,14 @@ public class Visualization extends JComponent {
         fillRect(foodColor, alpha, food.position());
     }
 
+    /**
+     * @return the position of the cell that is painted at the given pixel
+     */
+    @NotNull
+    public IVector cellAt(@NotNull Point px) {
+        return new Vector(pxToCellX(px.x), pxToCellY(px.y));
+    }
+
     private int pxToCellX(int x) {
         return (x + parameters.centerX) / parameters.scale;
     }
@@ -478,6 +584,22 @@ public class Visualization extends JComponent {
         public boolean showHeight;
     }
 
+    /**
+     * The rendered terrain of a chunk, see {@link #terrainTile}.
+     */
+    private static class TerrainTile {
+        private final int @NotNull [] pixels;
+        // the heights version of the chunk the tile was rendered from
+        private final int version;
+        // the last frame the chunk was visible in
+        private int frame;
+
+        private TerrainTile(int @NotNull [] pixels, int version) {
+            this.pixels = pixels;
+            this.version = version;
+        }
+    }
+
     private static class ColonyColors {
         private static final Random random = new Random(1337);
         private final int colony;
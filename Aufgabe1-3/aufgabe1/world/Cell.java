@@ -2,50 +2,39 @@ package aufgabe1.world;
 
 import aufgabe1.Direction;
 import aufgabe1.IVector;
-import aufgabe1.Vector;
 import aufgabe1.world.entity.Ant;
 import aufgabe1.world.entity.Colony;
 import aufgabe1.world.entity.FoodSource;
-import aufgabe1.world.entity.Scent;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.annotations.UnmodifiableView;
+import org.jetbrains.annotations.Unmodifiable;
 
-import java.util.*;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * The `Cell` class represents a cell within a 2D grid. It contains information about its coordinates (x, y),
  * type, a reference to a `FoodSource` (if applicable), a set of ants located on the cell,
- * and scent intensities related to food, colony, and avoidance. The class provides methods for managing ants
- * and updating scent intensities over time.
+ * and scent intensities related to food, colony, and avoidance.
+ * A cell is a lightweight handle: its state is stored in the arrays of its {@link Chunk} and the scents in
+ * the {@link ScentField} of the chunk. The chunk creates one handle per cell when the cell is first looked up,
+ * so cells can still be compared by identity. The cell is its own position.
+ * The class provides methods for managing ants and updating scent intensities over time.
  * Modularisierungseinheit: Klasse
  * STYLE: object-oriented
  */
-public class Cell {
+public class Cell implements IVector {
     @NotNull
-    private final World world;
-    @NotNull
-    private final IVector position;
-    @NotNull
-    private final List<Ant> ants = new ArrayList<>();
-    // there are few colonies so a list is probably faster than a WeakHashMap
-    private final List<Map.Entry<Colony, Scent>> scents = new ArrayList<>();
-    private float height;
-    @Nullable
-    private FoodSource foodSource;
-    //BAD: high class connection, strong object coupling, because the object from the
-    // Cell class contains a link to the object from the Colony class and uses the methods
-    // from the Colony class
-    //To reduce class connection, the Cell class could use interfaces or abstract classes to
-    // relax the dependencies.
-    @Nullable
-    private Colony colony;
-
-    public Cell(@NotNull World world, IVector position) {
-        Objects.requireNonNull(world);
-        this.world = world;
-        this.position = new Vector(position);
+    private final Chunk chunk;
+    private final int x;
+    private final int y;
+
+    Cell(@NotNull Chunk chunk, int x, int y) {
+        Objects.requireNonNull(chunk);
+        this.chunk = chunk;
+        this.x = x;
+        this.y = y;
     }
 
     /**
@@ -53,89 +42,80 @@ public class Cell {
      */
     @NotNull
     public Cell neighbor(@NotNull Direction dir) {
-        return world.get(position.x() + dir.dx(), position.y() + dir.dy());
+        return chunk.world().get(x + dir.dx(), y + dir.dy());
     }
 
     /**
      * Adds scent intensity related to food.
      */
     public void addFoodScent(float strength, @NotNull Colony colony) {
-        wake();
-        getScent(colony).food += strength;
+        addScent(ScentField.FOOD, strength, colony);
     }
 
     public void wake() {
-        world.wake(position.x(), position.y());
+        chunk.awake(index());
     }
 
     /**
-     * Gets the scent of a specified colony.
+     * Adds scent intensity related to colony.
      */
-    @NotNull
-    public Scent getScent(@NotNull Colony colony) {
-        Scent scent = getScentOrNull(colony);
-        if (scent != null) return scent;
-
-        scent = new Scent();
-        scents.add(Map.entry(colony, scent));
-        return scent;
+    public void addColonyScent(float strength, @NotNull Colony colony) {
+        addScent(ScentField.COLONY, strength, colony);
     }
 
-    @Nullable
-    public Scent getScentOrNull(@NotNull Colony colony) {
-        for (Map.Entry<Colony, Scent> entry : scents) {
-            if (entry.getKey() == colony) {
-                return entry.getValue();
-            }
-        }
-        return null;
+    /**
+     * Adds scent intensity related to avoiding certain areas.
+     */
+    public void addAvoidScent(float strength, @NotNull Colony colony) {
+        addScent(ScentField.AVOID, strength, colony);
     }
 
     /**
-     * Adds scent intensity related to colony.
+     * Adds scent to this cell, or defers it if the cell belongs to a chunk
+     * that is processed by another worker in a double-buffered tick.
      */
-    public void addColonyScent(float strength, @NotNull Colony colony) {
-        wake();
-        getScent(colony).colony += strength;
+    private void addScent(int kind, float strength, @NotNull Colony colony) {
+        int slot = chunk.world().colonyId(colony);
+        Outbox outbox = chunk.world().synchronizer().outboxFor(chunk);
+        if (outbox != null) {
+            outbox.addScent(this, kind, slot, strength);
+            return;
+        }
+        applyScent(kind, slot, strength);
     }
 
     /**
-     * Adds scent intensity related to avoiding certain areas.
+     * Adds scent to this cell immediately.
      */
-    public void addAvoidScent(float strength, @NotNull Colony colony) {
+    void applyScent(int kind, int slot, float strength) {
         wake();
-        getScent(colony).avoid += strength;
+        chunk.scents().add(kind, slot, index(), strength);
     }
 
     /**
      * Update the scent intensities over time based on decay rates.
      */
     public void update() {
-        for (int i = 0; i < scents.size(); i++) {
-            Map.Entry<Colony, Scent> entry = scents.get(i);
-            Scent scent = entry.getValue();
-            scent.food *= world.parameters().foodDecay;
-            scent.colony *= world.parameters().colonyDecay;
-            scent.avoid *= world.parameters().avoidDecay;
-
-            if (scent.isEmpty()) {
-                scents.remove(i);
-                i--;
-            }
-        }
+        WorldParameters parameters = chunk.world().parameters();
+        chunk.scents().decay(index(), parameters.foodDecay, parameters.colonyDecay, parameters.avoidDecay);
+        suspendIfEmpty();
+    }
 
+    /**
+     * Suspends the cell if nothing on it needs to be updated anymore.
+     */
+    public void suspendIfEmpty() {
         if (isEmpty()) {
             suspend();
         }
     }
 
     public boolean isEmpty() {
-        // empty scents get removed, so no need to check them
-        return scents.isEmpty() && ants.isEmpty() && colony == null && foodSource == null;
+        return chunk.isEmpty(index());
     }
 
     public void suspend() {
-        world.suspend(position.x(), position.y());
+        chunk.suspend(index());
     }
 
     /**
@@ -143,91 +123,149 @@ public class Cell {
      */
     @Contract(pure = true)
     public boolean hasFood() {
+        FoodSource foodSource = foodSource();
         return foodSource != null && foodSource.amount() > 0;
     }
 
-    @UnmodifiableView
+    /**
+     * During a double-buffered tick these are the ants from the end of the previous tick.
+     *
+     * @return a copy of the ants on this cell
+     */
+    @Unmodifiable
     @NotNull
     public List<Ant> ants() {
-        return Collections.unmodifiableList(ants);
+        return chunk.ants(index());
+    }
+
+    /**
+     * Like {@link #ants()}.size(), but without copying the ants.
+     */
+    @Contract(pure = true)
+    public int antCount() {
+        return chunk.antCount(index());
+    }
+
+    /**
+     * Like {@link #ants()}.get(index), but without copying the ants.
+     */
+    @Contract(pure = true)
+    @NotNull
+    public Ant ant(int index) {
+        return chunk.ant(index(), index);
     }
 
     @Contract(pure = true)
     public @Nullable FoodSource foodSource() {
-        return foodSource;
+        return chunk.foodSource(index());
     }
 
     public float foodScent(@NotNull Colony colony) {
-        Scent scent = getScentOrNull(colony);
-        if (scent == null) return 0;
-        return scent.food;
+        return chunk.scents().food(chunk.world().colonyId(colony), index());
     }
 
     public float colonyScent(@NotNull Colony colony) {
-        Scent scent = getScentOrNull(colony);
-        if (scent == null) return 0;
-        return scent.colony;
+        return chunk.scents().colony(chunk.world().colonyId(colony), index());
     }
 
     public float avoidScent(@NotNull Colony colony) {
-        Scent scent = getScentOrNull(colony);
-        if (scent == null) return 0;
-        return scent.avoid;
+        return chunk.scents().avoid(chunk.world().colonyId(colony), index());
+    }
+
+    /**
+     * @return true if any colony left a scent on this cell
+     */
+    @Contract(pure = true)
+    public boolean hasScent() {
+        return chunk.scents().hasScent(index());
     }
 
     public float height() {
-        return height;
+        return chunk.height(index());
     }
 
     public void setHeight(float height) {
-        this.height = height;
+        chunk.setHeight(index(), height);
     }
 
     @Contract(pure = true)
     public @Nullable Colony colony() {
-        return colony;
+        return chunk.colony(index());
     }
 
     public void setFoodSource(@Nullable FoodSource foodSource) {
-        if (foodSource == null && this.foodSource != null) {
-            world.untrack(this.foodSource);
+        FoodSource previous = foodSource();
+        if (foodSource == null && previous != null) {
+            chunk.world().untrack(previous);
         }
-        this.foodSource = foodSource;
+        chunk.setFoodSource(index(), foodSource);
     }
 
     public void setColony(@Nullable Colony colony) {
-        this.colony = colony;
+        chunk.setColony(index(), colony);
     }
 
+    /**
+     * @return this cell, its coordinates are its position
+     */
     @NotNull
     public IVector position() {
-        return position;
+        return this;
     }
 
-    @NotNull
-    public World world() {
-        return world;
+    @Override
+    @Contract(pure = true)
+    public int x() {
+        return x;
+    }
+
+    @Override
+    @Contract(pure = true)
+    public int y() {
+        return y;
     }
 
-    @UnmodifiableView
     @NotNull
-    public List<Map.Entry<Colony, Scent>> scents() {
-        return Collections.unmodifiableList(scents);
+    public World world() {
+        return chunk.world();
     }
 
     /**
      * Removes an ant from the cell.
+     * During a double-buffered tick the removal is deferred until the end of the tick.
      */
     public void removeAnt(Ant ant) {
-        ants.remove(ant);
+        Outbox outbox = chunk.world().synchronizer().outbox();
+        if (outbox != null) {
+            outbox.removeAnt(this, ant);
+            return;
+        }
+        chunk.removeAnt(index(), ant);
     }
 
     /**
      * Adds an ant to the cell.
+     * During a double-buffered tick the ant is only added at the end of the tick.
      */
     public void addAnt(Ant ant) {
-        if (!ants.contains(ant)) {
-            ants.add(ant);
+        Outbox outbox = chunk.world().synchronizer().outbox();
+        if (outbox != null) {
+            outbox.addAnt(this, ant);
+            return;
         }
+        chunk.addAnt(index(), ant);
+    }
+
+    /**
+     * @return the index of this cell in the arrays of its chunk
+     */
+    private int index() {
+        return Chunk.index(x, y);
+    }
+
+    @Override
+    @NotNull
+    public String toString() {
+        return "Cell{" + x + ", " + y + '}';
     }
 }
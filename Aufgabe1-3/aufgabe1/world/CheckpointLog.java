@@ -0,0 +1,575 @@
+package aufgabe1.world;
+
+import aufgabe1.Simulation;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a running world incrementally, so a long run can be resumed without stopping it for a full
+ * {@link WorldSnapshot}. Every {@link #interval()} ticks the chunks that changed since the last checkpoint
+ * are taken between two ticks, see {@link WorldSnapshot#capture}. Their terrain and scents are shared until
+ * the chunk changes them, so taking them mostly means encoding the ants. A background thread encodes the images
+ * and appends them to the log as one record, so the tick loop only pauses for taking the images.
+ * <br>
+ * The first checkpoint contains every chunk. It takes {@value #PRIMING_BATCH} chunks per tick and then,
+ * in the tick it is written, takes the chunks again that changed in the meantime.
+ * <br>
+ * Layout, all numbers are little endian: a header with magic number, version, flags and chunk size,
+ * followed by records. A record is its length, its body and the CRC32 of its body. The body holds the state
+ * of the world (see {@link WorldSnapshot#captureState}), the positions of the chunks that have been dropped
+ * and the blocks of the chunks that changed. The first record contains every chunk, every other one only
+ * the changes, so the world is restored by applying the records in order and keeping the last block of every chunk.
+ * A record that was cut off by a crash fails its checksum and is ignored together with everything after it.
+ * <br>
+ * Old blocks are kept until the log is compacted: once the log is {@value #COMPACT_FACTOR} times larger than
+ * the last block of every chunk, the background thread rewrites it as a single record.
+ * <br>
+ * If the previous checkpoint hasn't been written yet when the next one is due, the next one is postponed,
+ * the chunks stay dirty until then.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural and parallel, the updating thread only copies, the writer thread owns the file
+ */
+public final class CheckpointLog implements Closeable {
+    // "ANTC"
+    private static final int MAGIC = 0x414E5443;
+    private static final int VERSION = 2;
+    // flags of the header
+    private static final int COMPRESSED = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    // chunkX, chunkY, length, uncompressed length
+    private static final int BLOCK_HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int COMPACT_FACTOR = 3;
+    // small logs are never compacted
+    private static final long COMPACT_MIN_BYTES = 4L << 20;
+    // the number of chunks the first checkpoint takes per tick
+    private static final int PRIMING_BATCH = 16;
+
+    @NotNull
+    private final Path file;
+    private final int interval;
+    private final boolean compress;
+    @NotNull
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+        Thread.ofPlatform().name("checkpoint").daemon().factory());
+    // the last submitted checkpoint, only accessed by the updating thread
+    @Nullable
+    private Future<?> pending;
+    // true until the first checkpoint has been started, which contains every chunk
+    private boolean first = true;
+    // the images of the first checkpoint while they are taken, see prime, only accessed by the updating thread
+    @Nullable
+    private Map<Long, WorldSnapshot.ChunkImage> primed;
+    @Nullable
+    private Map<Long, WorldSnapshot.ChunkImage> primedEvicted;
+
+    // STYLE: the fields below are only accessed by the writer thread
+    @Nullable
+    private FileChannel channel;
+    // the last block of every chunk in the log: offset of the block, length and uncompressed length
+    @NotNull
+    private final Map<Long, long[]> latest = new HashMap<>();
+    private long liveBytes;
+    @Nullable
+    private ByteBuffer lastState;
+
+    private volatile long lastPauseNanos;
+    private volatile long maxPauseNanos;
+    private volatile int checkpoints;
+    private volatile int postponed;
+    private volatile int compactions;
+    private volatile long bytes;
+    @Nullable
+    private volatile IOException failure;
+
+    /**
+     * Creates a new log, an existing file is replaced once the first checkpoint is written.
+     *
+     * @param interval the number of ticks between two checkpoints
+     * @param compress true to deflate the chunk blocks
+     */
+    public CheckpointLog(@NotNull Path file, int interval, boolean compress) {
+        if (interval < 1) throw new IllegalArgumentException("interval must be positive");
+        this.file = file;
+        this.interval = interval;
+        this.compress = compress;
+    }
+
+    @Contract(pure = true)
+    public int interval() {
+        return interval;
+    }
+
+    /**
+     * Called by the world when the log is attached, while it is locked. The state is encoded once and thrown away,
+     * so the field accessors of the parameters are set up now instead of in the pause of the first checkpoint.
+     */
+    void attach(@NotNull World world) {
+        WorldSnapshot.captureState(world);
+    }
+
+    /**
+     * Takes a checkpoint if one is due at the current tick of the world.
+     * Called by the world between two ticks while it is locked.
+     */
+    void tick(@NotNull World world) {
+        if (primed != null) {
+            prime(world);
+            return;
+        }
+        if (world.time() % interval != 0) return;
+        if (pending != null && !pending.isDone()) {
+            postponed++;
+            return;
+        }
+        if (first) {
+            first = false;
+            primed = new LinkedHashMap<>();
+            prime(world);
+            return;
+        }
+        long start = System.nanoTime();
+        ChunkMap chunks = world.chunks();
+
+        ByteBuffer state = WorldSnapshot.captureState(world);
+        List<Chunk> dirty = new ArrayList<>();
+        List<Long> keys = new ArrayList<>();
+        for (Chunk chunk : chunks.snapshot()) {
+            if (chunk.takeDirty()) {
+                dirty.add(chunk);
+                keys.add(ChunkMap.key(chunk.chunkX(), chunk.chunkY()));
+            }
+        }
+        // STYLE: Parallel
+        // the workers are idle between ticks, encoding the ants is the largest part of the pause
+        List<WorldSnapshot.ChunkImage> images = new ArrayList<>(dirty.parallelStream().map(WorldSnapshot::capture).toList());
+        // evicted chunks only keep their terrain, dropped ones are removed from the log
+        List<Long> dropped = new ArrayList<>();
+        List<Long> evictedKeys = new ArrayList<>();
+        List<WorldSnapshot.ChunkImage> evicted = new ArrayList<>();
+        takeRemoved(chunks, dropped, evictedKeys, evicted);
+        // evicted chunks come first, a chunk that has been restored since is newer
+        evictedKeys.addAll(keys);
+        evicted.addAll(images);
+        submit(new Checkpoint(state, dropped, evictedKeys, evicted), false, start);
+    }
+
+    /**
+     * Takes the images of the first checkpoint, which contains every chunk, a few chunks per tick, so the first
+     * checkpoint doesn't pause the world much longer than the others. Once every resident chunk has an image,
+     * the chunks that changed since their image was taken are taken again and the checkpoint is written.
+     */
+    private void prime(@NotNull World world) {
+        assert primed != null;
+        long start = System.nanoTime();
+        ChunkMap chunks = world.chunks();
+        if (primedEvicted == null) {
+            // the terrain of the chunks evicted before the log was attached is read first
+            primedEvicted = new LinkedHashMap<>();
+            for (long key : chunks.evictedKeys()) {
+                primedEvicted.put(key, WorldSnapshot.captureEvicted(chunks, key));
+            }
+        }
+        List<Chunk> batch = new ArrayList<>(PRIMING_BATCH);
+        for (Chunk chunk : chunks.snapshot()) {
+            if (batch.size() == PRIMING_BATCH) break;
+            if (!primed.containsKey(ChunkMap.key(chunk.chunkX(), chunk.chunkY()))) batch.add(chunk);
+        }
+        if (!batch.isEmpty()) {
+            put(primed, batch);
+            recordPause(start);
+            return;
+        }
+
+        ByteBuffer state = WorldSnapshot.captureState(world);
+        List<Long> dropped = new ArrayList<>();
+        List<Long> evictedKeys = new ArrayList<>(primedEvicted.keySet());
+        List<WorldSnapshot.ChunkImage> evicted = new ArrayList<>(primedEvicted.values());
+        takeRemoved(chunks, dropped, evictedKeys, evicted);
+        for (long key : dropped) {
+            primed.remove(key);
+        }
+        // the image of a chunk that has been evicted since is dropped, if the chunk is resident again it is taken again
+        for (int i = primedEvicted.size(); i < evictedKeys.size(); i++) {
+            primed.remove(evictedKeys.get(i));
+        }
+        List<Chunk> changed = new ArrayList<>();
+        for (Chunk chunk : chunks.snapshot()) {
+            if (chunk.dirty() || !primed.containsKey(ChunkMap.key(chunk.chunkX(), chunk.chunkY()))) changed.add(chunk);
+        }
+        put(primed, changed);
+        evictedKeys.addAll(primed.keySet());
+        evicted.addAll(primed.values());
+        primed = null;
+        primedEvicted = null;
+        // the first record starts a new log, so the dropped chunks aren't in it anyway
+        submit(new Checkpoint(state, List.of(), evictedKeys, evicted), true, start);
+    }
+
+    /**
+     * Takes the images of the chunks and clears their dirty flags, so a chunk is only taken again once it changes.
+     */
+    private static void put(@NotNull Map<Long, WorldSnapshot.ChunkImage> images, @NotNull List<Chunk> chunks) {
+        for (Chunk chunk : chunks) {
+            chunk.takeDirty();
+        }
+        // STYLE: Parallel
+        List<WorldSnapshot.ChunkImage> taken = chunks.parallelStream().map(WorldSnapshot::capture).toList();
+        for (int i = 0; i < chunks.size(); i++) {
+            images.put(ChunkMap.key(chunks.get(i).chunkX(), chunks.get(i).chunkY()), taken.get(i));
+        }
+    }
+
+    /**
+     * Adds the chunks that have been dropped or evicted since the last checkpoint to the lists.
+     */
+    private static void takeRemoved(@NotNull ChunkMap chunks, @NotNull List<Long> dropped, @NotNull List<Long> evictedKeys,
+                                    @NotNull List<WorldSnapshot.ChunkImage> evicted) {
+        for (Map.Entry<Long, float[]> entry : chunks.takeRemoved().entrySet()) {
+            if (entry.getValue() == null) {
+                dropped.add(entry.getKey());
+            } else {
+                evictedKeys.add(entry.getKey());
+                evicted.add(WorldSnapshot.captureTerrain(entry.getValue()));
+            }
+        }
+    }
+
+    private void submit(@NotNull Checkpoint checkpoint, boolean full, long start) {
+        pending = writer.submit(() -> write(checkpoint, full));
+        recordPause(start);
+    }
+
+    private void recordPause(long start) {
+        lastPauseNanos = System.nanoTime() - start;
+        maxPauseNanos = Math.max(maxPauseNanos, lastPauseNanos);
+    }
+
+    /**
+     * Encodes a checkpoint and appends it to the log. Runs on the writer thread.
+     */
+    private void write(@NotNull Checkpoint checkpoint, boolean full) {
+        try {
+            List<ByteBuffer> blocks = new ArrayList<>(checkpoint.images.size());
+            List<Integer> rawLengths = new ArrayList<>(checkpoint.images.size());
+            for (WorldSnapshot.ChunkImage image : checkpoint.images) {
+                ByteBuffer raw = WorldSnapshot.encode(image);
+                rawLengths.add(raw.remaining());
+                blocks.add(compress ? WorldSnapshot.deflate(raw) : raw);
+            }
+            List<Long> keys = checkpoint.keys;
+            List<Long> dropped = checkpoint.dropped;
+
+            if (full) {
+                open();
+                append(checkpoint.state, dropped, keys, blocks, rawLengths);
+                publish();
+            } else {
+                append(checkpoint.state, dropped, keys, blocks, rawLengths);
+            }
+            checkpoints++;
+            if (bytes > COMPACT_MIN_BYTES && bytes > COMPACT_FACTOR * liveBytes) compact();
+        } catch (IOException e) {
+            failure = e;
+            System.err.println("Failed to write checkpoint to " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a new log with its header. It is written next to the target until {@link #publish()} is called,
+     * so the old log stays intact until the first record of the new one is complete.
+     */
+    private void open() throws IOException {
+        if (channel != null) channel.close();
+        // compacting reads the old blocks back
+        channel = FileChannel.open(temporary(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeFully(channel, header());
+        latest.clear();
+        liveBytes = 0;
+        bytes = HEADER_BYTES;
+    }
+
+    /**
+     * Replaces the old log by the new one, the channel stays open since the file is only moved.
+     */
+    private void publish() throws IOException {
+        Files.move(temporary(), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Appends one record and remembers where the blocks are.
+     */
+    private void append(@NotNull ByteBuffer state, @NotNull List<Long> dropped, @NotNull List<Long> keys,
+                        @NotNull List<ByteBuffer> blocks, @NotNull List<Integer> rawLengths) throws IOException {
+        assert channel != null;
+        int bodyBytes = state.remaining() + Integer.BYTES + dropped.size() * Long.BYTES + Integer.BYTES;
+        for (ByteBuffer block : blocks) {
+            bodyBytes += BLOCK_HEADER_BYTES + block.remaining();
+        }
+        ByteBuffer body = ByteBuffer.allocate(bodyBytes).order(ByteOrder.LITTLE_ENDIAN);
+        body.put(state.duplicate());
+        body.putInt(dropped.size());
+        for (long key : dropped) {
+            body.putLong(key);
+        }
+        body.putInt(blocks.size());
+        long recordStart = bytes + Integer.BYTES;
+        long[][] locations = new long[blocks.size()][];
+        for (int i = 0; i < blocks.size(); i++) {
+            ByteBuffer block = blocks.get(i);
+            body.putInt(ChunkMap.keyX(keys.get(i)));
+            body.putInt(ChunkMap.keyY(keys.get(i)));
+            body.putInt(block.remaining());
+            body.putInt(rawLengths.get(i));
+            locations[i] = new long[]{recordStart + body.position(), block.remaining(), rawLengths.get(i)};
+            body.put(block.duplicate());
+        }
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(bodyBytes).flip();
+        ByteBuffer checksum = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt((int) crc.getValue()).flip();
+        writeFully(channel, length, body, checksum);
+        channel.force(false);
+
+        bytes += Integer.BYTES + bodyBytes + Integer.BYTES;
+        lastState = state;
+        for (long key : dropped) {
+            long[] old = latest.remove(key);
+            if (old != null) liveBytes -= old[1];
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+            long[] old = latest.put(keys.get(i), locations[i]);
+            if (old != null) liveBytes -= old[1];
+            liveBytes += locations[i][1];
+        }
+    }
+
+    /**
+     * Rewrites the log as a single record with the last block of every chunk.
+     */
+    private void compact() throws IOException {
+        assert channel != null && lastState != null;
+        List<Long> keys = new ArrayList<>(latest.keySet());
+        keys.sort(null);
+        List<ByteBuffer> blocks = new ArrayList<>(keys.size());
+        List<Integer> rawLengths = new ArrayList<>(keys.size());
+        for (long key : keys) {
+            long[] location = latest.get(key);
+            ByteBuffer block = ByteBuffer.allocate((int) location[1]);
+            while (block.hasRemaining()) {
+                if (channel.read(block, location[0] + block.position()) < 0) throw new IOException("Log is truncated");
+            }
+            blocks.add(block.flip());
+            rawLengths.add((int) location[2]);
+        }
+        ByteBuffer state = lastState;
+        open();
+        append(state, List.of(), keys, blocks, rawLengths);
+        publish();
+        compactions++;
+    }
+
+    @NotNull
+    private ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(compress ? COMPRESSED : 0);
+        header.putInt(Chunk.CHUNK_SIZE);
+        return header.flip();
+    }
+
+    @NotNull
+    private Path temporary() {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    private static void writeFully(@NotNull FileChannel channel, ByteBuffer @NotNull ... buffers) throws IOException {
+        // a gathering write may stop early, the buffers are written in order, so the last one is empty at the end
+        while (buffers[buffers.length - 1].hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    /**
+     * Waits until the last checkpoint has been written.
+     *
+     * @throws IOException if writing any checkpoint failed
+     */
+    public void flush() throws IOException {
+        Future<?> last = pending;
+        if (last != null) {
+            try {
+                last.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing the checkpoint", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Checkpoint failed", e.getCause());
+            }
+        }
+        IOException failure = this.failure;
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Writes the pending checkpoint and closes the log. A checkpoint that is due but hasn't been taken is lost.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("Checkpoint was not written within 30 seconds");
+                writer.shutdownNow();
+            }
+            if (channel != null) channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Failed to close checkpoint log " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return how long the last checkpoint paused the updating thread in nanoseconds
+     */
+    public long lastPauseNanos() {
+        return lastPauseNanos;
+    }
+
+    public long maxPauseNanos() {
+        return maxPauseNanos;
+    }
+
+    /**
+     * @return the number of checkpoints that have been written
+     */
+    public int checkpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * @return the number of checkpoints that were postponed because the writer was still busy
+     */
+    public int postponed() {
+        return postponed;
+    }
+
+    public int compactions() {
+        return compactions;
+    }
+
+    /**
+     * @return the size of the log in bytes
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Restores the world of the last complete checkpoint in a log. See {@link WorldSnapshot#read} for
+     * what is restored exactly.
+     *
+     * @throws IOException if the file can't be read or has no complete checkpoint
+     */
+    @NotNull
+    public static World read(@NotNull Path file, @NotNull Simulation simulation, @NotNull WorldGenerator generator, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Checkpoint log " + file + " is too large");
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            return read(map, simulation, generator, threads);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Checkpoint log " + file + " is corrupt", e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @NotNull
+    private static World read(@NotNull ByteBuffer map, @NotNull Simulation simulation, @NotNull WorldGenerator generator, int threads) throws IOException {
+        if (map.remaining() < HEADER_BYTES || map.getInt() != MAGIC) throw new IOException("Not a checkpoint log");
+        int version = map.getInt();
+        if (version != VERSION) throw new IOException("Unsupported checkpoint log version " + version);
+        boolean compressed = (map.getInt() & COMPRESSED) != 0;
+        if (map.getInt() != Chunk.CHUNK_SIZE) throw new IOException("Log was written with a different chunk size");
+
+        WorldSnapshot.State state = null;
+        // the last block of every chunk: offset, length and uncompressed length
+        Map<Long, int[]> blocks = new HashMap<>();
+        while (map.remaining() >= Integer.BYTES) {
+            int length = map.getInt();
+            if (length < 0 || map.remaining() < length + Integer.BYTES) break;
+            ByteBuffer body = map.slice(map.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            int expected = map.getInt(map.position() + length);
+            if ((int) crc.getValue() != expected) break;
+
+            state = WorldSnapshot.readState(body);
+            int dropped = body.getInt();
+            for (int i = 0; i < dropped; i++) {
+                blocks.remove(body.getLong());
+            }
+            int count = body.getInt();
+            for (int i = 0; i < count; i++) {
+                long key = ChunkMap.key(body.getInt(), body.getInt());
+                int blockLength = body.getInt();
+                int rawLength = body.getInt();
+                blocks.put(key, new int[]{map.position() + body.position(), blockLength, rawLength});
+                body.position(body.position() + blockLength);
+            }
+            map.position(map.position() + length + Integer.BYTES);
+        }
+        if (state == null) throw new IOException("Checkpoint log has no complete checkpoint");
+        if (map.hasRemaining()) System.err.println("Ignoring an incomplete checkpoint at the end of the log");
+
+        long[] keys = blocks.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        int[][] locations = new int[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            locations[i] = blocks.get(keys[i]);
+        }
+        return WorldSnapshot.restore(state, keys, i -> {
+            ByteBuffer block = map.slice(locations[i][0], locations[i][1]).order(ByteOrder.LITTLE_ENDIAN);
+            return compressed ? WorldSnapshot.inflate(block, locations[i][2]) : block;
+        }, simulation, generator, threads);
+    }
+
+    /**
+     * The copies taken by the updating thread for one checkpoint.
+     *
+     * @param dropped the chunks that left the map without being populated
+     * @param keys    the positions of the changed chunks, a chunk may appear twice, the later image is newer
+     */
+    private record Checkpoint(@NotNull ByteBuffer state, @NotNull List<Long> dropped, @NotNull List<Long> keys,
+                              @NotNull List<WorldSnapshot.ChunkImage> images) {
+    }
+}
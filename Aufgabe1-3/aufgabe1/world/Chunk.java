@@ -2,15 +2,19 @@ package aufgabe1.world;
 
 import aufgabe1.IVector;
 import aufgabe1.Vector;
+import aufgabe1.world.entity.Ant;
+import aufgabe1.world.entity.Colony;
 import aufgabe1.world.entity.Entity;
+import aufgabe1.world.entity.FoodSource;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.annotations.UnmodifiableView;
 
-import java.util.Collections;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -24,33 +28,78 @@ public class Chunk implements Iterable<Cell>, ChunkView {
     private static final int CHUNK_SIZE_SHIFT = 5;
     public static final int CHUNK_SIZE = 1 << CHUNK_SIZE_SHIFT;
     private static final IVector SIZE = new Vector(CHUNK_SIZE, CHUNK_SIZE);
+    static final int AWAKE_WORDS = CHUNK_SIZE * CHUNK_SIZE / Long.SIZE;
+    static final int CELLS = CHUNK_SIZE * CHUNK_SIZE;
+    private static final int CELL_MASK = CHUNK_SIZE - 1;
+    // capacity of the ant array of a cell when its first ant arrives
+    private static final int INITIAL_CELL_ANTS = 4;
+    // atomic access to the words of the awake bitset
+    private static final VarHandle AWAKE_WORD = MethodHandles.arrayElementVarHandle(long[].class);
+    // cell handles are created by whichever thread looks them up first, only one of them is kept
+    private static final VarHandle CELL = MethodHandles.arrayElementVarHandle(Cell[].class);
+    private static final VarHandle CELLS_ARRAY;
+
+    static {
+        try {
+            CELLS_ARRAY = MethodHandles.lookup().findVarHandle(Chunk.class, "cells", Cell[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
     @NotNull
     final ReentrantLock mutex = new ReentrantLock();
+    // STYLE: Data-oriented
+    // The state of the cells is stored in arrays indexed by cell index, a Cell is only a handle onto them.
+    // Handles are created when a cell is first looked up, the arrays for ants, food sources and colonies
+    // when the first cell of the chunk gets one. So empty grassland only costs the height of its cells.
+    private volatile Cell @Nullable [] cells;
+    // one bit per cell index, set if the cell is awake
+    private final long @NotNull [] awake = new long[AWAKE_WORDS];
+    // the height of every cell, generated for the whole chunk at once, null until the chunk is populated
+    private float @Nullable [] heights;
+    // true while a checkpoint references the heights, they are copied before they are changed
+    private boolean heightsShared;
+    // changes whenever the heights change, e.g. the viewer caches the rendered terrain until then
+    private volatile int heightsVersion;
+    // the ants on every cell in the order they arrived, the arrays are kept when the ants leave
+    private Ant @Nullable [] @Nullable [] cellAnts;
+    private int @Nullable [] antCounts;
+    @Nullable
+    private FoodSource @Nullable [] cellFoodSources;
+    // references instead of colony ids, because a colony spreads over its cells before it's tracked and gets an id
+    @Nullable
+    private Colony @Nullable [] cellColonies;
     @NotNull
-    private final Cell @NotNull [] cells;
-    @NotNull
-    private final SuspendState @NotNull [] states;
+    private final ScentField scents = new ScentField(CHUNK_SIZE);
     private final int chunkX;
     private final int chunkY;
     @NotNull
     private final IVector origin;
     @NotNull
     private final IVector limit;
-    @SuppressWarnings({"FieldCanBeLocal", "unused"})
     @NotNull
     private final World world;
     @NotNull
     private final WorldGenerator generator;
+    // STYLE: Data-oriented
+    // One dense list per entity type, so updating and painting are indexed loops without type checks
+    @NotNull
+    private final EntityList<Ant> ants = new EntityList<>();
     @NotNull
-    private final CellCache cache = new CellCache();
+    private final EntityList<Colony> colonies = new EntityList<>();
     @NotNull
-    private final Set<Entity> entities = ConcurrentHashMap.newKeySet();
+    private final EntityList<FoodSource> foodSources = new EntityList<>();
     @Nullable
     private Synchronizer.Worker owner;
     @NotNull
-    private SuspendState state = SuspendState.AWAKE;
+    private volatile SuspendState state = SuspendState.AWAKE;
     private boolean populated = false;
     private boolean hasCompleteNeighbors = false;
+    // the last tick in which the chunk had anything to update, used to pick chunks for eviction
+    private int lastActive;
+    // true if anything changed since the last checkpoint, see CheckpointLog. Set by workers and cleared
+    // between ticks, the end of the tick orders the writes before the read
+    private boolean dirty = true;
 
     public Chunk(@NotNull World world, @NotNull WorldGenerator generator, int chunkX, int chunkY) {
         this.world = world;
@@ -59,15 +108,7 @@ public class Chunk implements Iterable<Cell>, ChunkView {
         this.chunkY = chunkY;
         this.origin = new Vector(chunkX << CHUNK_SIZE_SHIFT, chunkY << CHUNK_SIZE_SHIFT);
         this.limit = new Vector(this.origin).add(Chunk.SIZE);
-        this.cells = new Cell[CHUNK_SIZE * CHUNK_SIZE];
-        this.states = new SuspendState[CHUNK_SIZE * CHUNK_SIZE];
-        for (int dx = 0; dx < CHUNK_SIZE; dx++) {
-            for (int dy = 0; dy < CHUNK_SIZE; dy++) {
-                int index = dx + dy * CHUNK_SIZE;
-                cells[index] = new Cell(world, new Vector(origin).add(dx, dy));
-                states[index] = SuspendState.AWAKE;
-            }
-        }
+        // Cells start suspended, they are woken once they get something to update
     }
 
     /**
@@ -90,24 +131,212 @@ public class Chunk implements Iterable<Cell>, ChunkView {
     public void populate() {
         if (populated) throw new IllegalStateException("Chunk is already populated");
         populated = true;
-        for (int dx = 0; dx < CHUNK_SIZE; dx++) {
-            for (int dy = 0; dy < CHUNK_SIZE; dy++) {
-                int index = dx + dy * CHUNK_SIZE;
-                Cell cell = cells[index];
-                generator.generate(cell);
-            }
-        }
+        dirty = true;
+        heights = new float[CELLS];
+        generator.generateHeights(this, heights);
+        heightsVersion++;
+        populateCells();
+    }
+
+    /**
+     * Populates the chunk with heights that have been generated in the background, see {@link WorldGenerator#generateHeights}.
+     *
+     * @param heights the height of every cell by cell index, the chunk takes ownership of the array
+     */
+    void populate(float @NotNull [] heights) {
+        if (populated) throw new IllegalStateException("Chunk is already populated");
+        if (heights.length != CELLS) throw new IllegalArgumentException("heights must have a value for every cell");
+        populated = true;
+        dirty = true;
+        this.heights = heights;
+        heightsVersion++;
+        populateCells();
+    }
+
+    /**
+     * Generates the contents of the cells once the heights are set.
+     */
+    private void populateCells() {
+        generator.generate(this);
+        generator.schedule(this, world.time());
     }
 
     public boolean populated() {
         return populated;
     }
 
+    /**
+     * Restores the terrain of a chunk that has been evicted. The chunk counts as populated afterwards.
+     *
+     * @param heights the height of every cell by cell index
+     */
+    void restore(float @NotNull [] heights) {
+        if (populated) throw new IllegalStateException("Chunk is already populated");
+        if (heights.length != CELLS) throw new IllegalArgumentException("heights must have a value for every cell");
+        populated = true;
+        dirty = true;
+        this.heights = heights.clone();
+        heightsVersion++;
+    }
+
+    /**
+     * @return the heights of all cells by cell index, owned by the chunk
+     * @throws IllegalStateException if the chunk hasn't been populated
+     */
+    float @NotNull [] heights() {
+        if (heights == null) throw new IllegalStateException("Chunk " + this + " is not populated");
+        return heights;
+    }
+
+    /**
+     * Reads the height without creating the handle of the cell, e.g. for painting.
+     *
+     * @return the height of a cell, 0 until the chunk is populated
+     */
+    public float height(int index) {
+        float[] heights = this.heights;
+        return heights == null ? 0 : heights[index];
+    }
+
+    void setHeight(int index, float height) {
+        if (heights == null) {
+            heights = new float[CELLS];
+        } else if (heightsShared) {
+            heights = heights.clone();
+            heightsShared = false;
+        }
+        heights[index] = height;
+        heightsVersion++;
+        dirty = true;
+    }
+
+    /**
+     * @return a number that changes whenever the height of a cell changes
+     */
+    public int heightsVersion() {
+        return heightsVersion;
+    }
+
+    /**
+     * Hands the heights to a checkpoint without copying them. They are copied once they are changed,
+     * so the checkpoint keeps the heights of the moment it was taken.
+     *
+     * @return the heights of all cells by cell index, null if the chunk hasn't been populated
+     */
+    float @Nullable [] shareHeights() {
+        heightsShared = heights != null;
+        return heights;
+    }
+
+    int antCount(int index) {
+        int[] counts = antCounts;
+        return counts == null ? 0 : counts[index];
+    }
+
+    @NotNull
+    Ant ant(int index, int i) {
+        if (i < 0 || i >= antCount(index)) throw new IndexOutOfBoundsException("Cell has no ant " + i);
+        assert cellAnts != null && cellAnts[index] != null;
+        return cellAnts[index][i];
+    }
+
+    /**
+     * @return a copy of the ants on a cell
+     */
+    @NotNull
+    List<Ant> ants(int index) {
+        int count = antCount(index);
+        if (count == 0) return List.of();
+        assert cellAnts != null && cellAnts[index] != null;
+        return List.of(Arrays.copyOf(cellAnts[index], count));
+    }
+
+    /**
+     * Adds an ant to a cell unless it's already there.
+     */
+    void addAnt(int index, @NotNull Ant ant) {
+        if (antCounts == null) {
+            cellAnts = new Ant[CELLS][];
+            antCounts = new int[CELLS];
+        }
+        assert cellAnts != null;
+        Ant[] ants = cellAnts[index];
+        int count = antCounts[index];
+        for (int i = 0; i < count; i++) {
+            if (ants[i] == ant) return;
+        }
+        if (ants == null) {
+            ants = cellAnts[index] = new Ant[INITIAL_CELL_ANTS];
+        } else if (count == ants.length) {
+            ants = cellAnts[index] = Arrays.copyOf(ants, count * 2);
+        }
+        ants[count] = ant;
+        antCounts[index] = count + 1;
+        dirty = true;
+    }
+
+    /**
+     * Removes an ant from a cell, the remaining ants keep their order.
+     */
+    void removeAnt(int index, @NotNull Ant ant) {
+        int count = antCount(index);
+        if (count == 0) return;
+        assert cellAnts != null && antCounts != null;
+        Ant[] ants = cellAnts[index];
+        for (int i = 0; i < count; i++) {
+            if (ants[i] != ant) continue;
+            System.arraycopy(ants, i + 1, ants, i, count - i - 1);
+            ants[count - 1] = null;
+            antCounts[index] = count - 1;
+            dirty = true;
+            return;
+        }
+    }
+
+    @Nullable
+    FoodSource foodSource(int index) {
+        FoodSource[] foodSources = cellFoodSources;
+        return foodSources == null ? null : foodSources[index];
+    }
+
+    void setFoodSource(int index, @Nullable FoodSource foodSource) {
+        if (cellFoodSources == null) {
+            if (foodSource == null) return;
+            cellFoodSources = new FoodSource[CELLS];
+        }
+        cellFoodSources[index] = foodSource;
+        dirty = true;
+    }
+
+    @Nullable
+    Colony colony(int index) {
+        Colony[] colonies = cellColonies;
+        return colonies == null ? null : colonies[index];
+    }
+
+    void setColony(int index, @Nullable Colony colony) {
+        if (cellColonies == null) {
+            if (colony == null) return;
+            cellColonies = new Colony[CELLS];
+        }
+        cellColonies[index] = colony;
+        dirty = true;
+    }
+
+    /**
+     * @return true if nothing on the cell needs to be updated
+     */
+    boolean isEmpty(int index) {
+        // empty scents get cleared, so no need to check the threshold
+        return antCount(index) == 0 && colony(index) == null && foodSource(index) == null && !scents.hasScent(index);
+    }
+
     public boolean hasCompleteNeighbors() {
         return this.hasCompleteNeighbors;
     }
 
     public void setHasCompleteNeighbors(boolean hasCompleteNeighbors) {
+        if (this.hasCompleteNeighbors != hasCompleteNeighbors) dirty = true;
         this.hasCompleteNeighbors = hasCompleteNeighbors;
     }
 
@@ -116,18 +345,38 @@ public class Chunk implements Iterable<Cell>, ChunkView {
      */
     @NotNull
     public Cell get(int x, int y) {
-        if (cache.matches(x, y)) return cache.get();
-
+        // computing the index is cheaper than any cache
         if (!isInside(x, y)) {
             throw new RuntimeException(String.format("Position %d,%d is not inside chunk %s", x, y, this));
         }
         int dx = x - origin.x();
         int dy = y - origin.y();
-        int index = dx + dy * CHUNK_SIZE;
-        Cell cell = cells[index];
+        return cell(dx + dy * CHUNK_SIZE);
+    }
+
+    /**
+     * @return the handle of the cell with the given index, created on first access
+     */
+    @NotNull
+    Cell cell(int index) {
+        Cell[] cells = this.cells;
+        if (cells == null) {
+            cells = new Cell[CELLS];
+            Cell[] witness = (Cell[]) CELLS_ARRAY.compareAndExchange(this, null, cells);
+            if (witness != null) cells = witness;
+        }
+        Cell cell = (Cell) CELL.getAcquire(cells, index);
+        if (cell != null) return cell;
+        cell = new Cell(this, origin.x() + (index & CELL_MASK), origin.y() + (index >>> CHUNK_SIZE_SHIFT));
+        Cell witness = (Cell) CELL.compareAndExchange(cells, index, null, cell);
+        return witness != null ? witness : cell;
+    }
 
-        cache.set(cell, index);
-        return cell;
+    /**
+     * @return the index of a cell in the arrays of its chunk
+     */
+    public static int index(int x, int y) {
+        return (x & CELL_MASK) + ((y & CELL_MASK) << CHUNK_SIZE_SHIFT);
     }
 
     /**
@@ -140,22 +389,202 @@ public class Chunk implements Iterable<Cell>, ChunkView {
     /**
      * Awakens a cell at the specified position.
      */
-    synchronized void awake(int x, int y) {
-        int dx = x - origin.x();
-        int dy = y - origin.y();
-        int index = dx + dy * CHUNK_SIZE;
-        states[index] = SuspendState.AWAKE;
-        state = SuspendState.AWAKE;
+    void awake(int x, int y) {
+        awake(x - origin.x() + (y - origin.y()) * CHUNK_SIZE);
+    }
+
+    /**
+     * Awakens the cell with the given index. Safe to call from any thread.
+     */
+    void awake(int index) {
+        long bit = 1L << index;
+        long word = (long) AWAKE_WORD.getAndBitwiseOr(awake, index >>> 6, bit);
+        if ((word & bit) == 0) {
+            dirty = true;
+            if (state != SuspendState.AWAKE) state = SuspendState.AWAKE;
+        }
     }
 
     /**
      * Suspends a cell at the specified position.
      */
-    synchronized void suspend(int x, int y) {
-        int dx = x - origin.x();
-        int dy = y - origin.y();
-        int index = dx + dy * CHUNK_SIZE;
-        states[index] = SuspendState.SUSPENDED;
+    void suspend(int x, int y) {
+        suspend(x - origin.x() + (y - origin.y()) * CHUNK_SIZE);
+    }
+
+    /**
+     * Suspends the cell with the given index. Safe to call from any thread.
+     */
+    void suspend(int index) {
+        AWAKE_WORD.getAndBitwiseAnd(awake, index >>> 6, ~(1L << index));
+    }
+
+    /**
+     * Decays the scents of the whole chunk in one pass and suspends the cells that became empty.
+     * If no cell is awake anymore the chunk gets suspended.
+     */
+    void updateCells(@NotNull WorldParameters parameters) {
+        scents.decayAll(parameters.foodDecay, parameters.colonyDecay, parameters.avoidDecay);
+        suspendEmptyCells();
+    }
+
+    /**
+     * Starts a double-buffered tick for this chunk by writing the decayed scents into the next buffers.
+     */
+    void prepareScents(@NotNull WorldParameters parameters) {
+        scents.prepare(parameters.foodDecay, parameters.colonyDecay, parameters.avoidDecay);
+    }
+
+    /**
+     * Ends a double-buffered tick for this chunk by making the next scent buffers readable.
+     */
+    void swapScents() {
+        scents.swap();
+    }
+
+    /**
+     * Copies the border cells of the scents for the diffusion phase, see {@link ScentField#copyEdges()}.
+     * An idle chunk has no scents, so nothing is copied.
+     */
+    void copyScentEdges() {
+        if (isIdle()) {
+            scents.clearEdges();
+        } else {
+            scents.copyEdges();
+        }
+    }
+
+    /**
+     * Spreads the scents to the neighbouring cells, see {@link ScentField#diffuse}, and wakes the cells that
+     * have scent afterwards, so they are decayed in the next tick.
+     *
+     * @param occupied scratch space with a word for every 64 cells
+     */
+    void diffuseScents(float rate, @Nullable ScentField @NotNull [] neighbours, float @NotNull [] @NotNull [] scratch, long @NotNull [] occupied) {
+        Arrays.fill(occupied, 0);
+        scents.diffuse(rate, neighbours, scratch, occupied);
+        for (int w = 0; w < AWAKE_WORDS; w++) {
+            if (occupied[w] == 0) continue;
+            long word = (long) AWAKE_WORD.getAndBitwiseOr(awake, w, occupied[w]);
+            if ((word | occupied[w]) != word && state != SuspendState.AWAKE) {
+                state = SuspendState.AWAKE;
+            }
+            dirty = true;
+        }
+    }
+
+    /**
+     * Suspends the awake cells that have become empty. Only the set bits of the awake bitset are visited.
+     * If no cell is awake anymore the chunk gets suspended.
+     */
+    void suspendEmptyCells() {
+        boolean noUpdates = true;
+        for (int w = 0; w < AWAKE_WORDS; w++) {
+            long word = (long) AWAKE_WORD.getVolatile(awake, w);
+            while (word != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                // clear the lowest set bit
+                word &= word - 1;
+                if (isEmpty(index)) suspend(index);
+                noUpdates = false;
+            }
+        }
+        if (noUpdates) {
+            suspend();
+            // a cell might have been woken while the chunk got suspended
+            if (hasAwakeCells()) state = SuspendState.AWAKE;
+        }
+    }
+
+    /**
+     * @return one word of the bitset of awake cells, see {@link #AWAKE_WORDS}
+     */
+    @Contract(pure = true)
+    long awakeWord(int word) {
+        return (long) AWAKE_WORD.getVolatile(awake, word);
+    }
+
+    /**
+     * Replaces one word of the bitset of awake cells when the chunk is restored from a snapshot.
+     */
+    void setAwakeWord(int word, long bits) {
+        AWAKE_WORD.setVolatile(awake, word, bits);
+        if (bits != 0) state = SuspendState.AWAKE;
+    }
+
+    /**
+     * @return true if any cell of the chunk is awake
+     */
+    @Contract(pure = true)
+    boolean hasAwakeCells() {
+        for (int w = 0; w < AWAKE_WORDS; w++) {
+            if ((long) AWAKE_WORD.getVolatile(awake, w) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the chunk has neither awake cells nor entities, so a tick has nothing to do
+     */
+    @Contract(pure = true)
+    boolean isIdle() {
+        return state == SuspendState.SUSPENDED && !hasEntities();
+    }
+
+    /**
+     * An idle chunk can be evicted if no cell references anything besides its terrain.
+     * Colonies spread over cells of other chunks, so the cells have to be checked as well.
+     *
+     * @return true if the chunk can be restored from its terrain alone
+     */
+    @Contract(pure = true)
+    boolean canEvict() {
+        if (!isIdle() || owner != null) return false;
+        if (!allNull(cellColonies) || !allNull(cellFoodSources)) return false;
+        if (antCounts != null) {
+            for (int count : antCounts) {
+                if (count > 0) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean allNull(Object @Nullable [] values) {
+        if (values == null) return true;
+        for (Object value : values) {
+            if (value != null) return false;
+        }
+        return true;
+    }
+
+    int lastActive() {
+        return lastActive;
+    }
+
+    /**
+     * Records that the chunk has been updated in the given tick, which also makes it dirty.
+     */
+    void setLastActive(int time) {
+        this.lastActive = time;
+        this.dirty = true;
+    }
+
+    /**
+     * @return true if the chunk changed since the dirty flag was cleared, see {@link #takeDirty()}
+     */
+    boolean dirty() {
+        return dirty;
+    }
+
+    /**
+     * Clears the dirty flag, see {@link CheckpointLog}. Must not be called while the world is updated.
+     *
+     * @return true if anything in the chunk changed since the flag was cleared the last time
+     */
+    boolean takeDirty() {
+        boolean wasDirty = dirty;
+        dirty = false;
+        return wasDirty;
     }
 
     @Contract(pure = true)
@@ -203,8 +632,9 @@ public class Chunk implements Iterable<Cell>, ChunkView {
         return "Chunk{" + chunkX + ", " + chunkY + '}';
     }
 
-    Cell @NotNull [] cells() {
-        return cells;
+    @NotNull
+    World world() {
+        return world;
     }
 
     Synchronizer.@Nullable Worker getOwner() {
@@ -215,85 +645,118 @@ public class Chunk implements Iterable<Cell>, ChunkView {
         this.owner = owner;
     }
 
-    SuspendState @NotNull [] cellStates() {
-        return states;
+    @NotNull
+    ScentField scents() {
+        return scents;
     }
 
-    @NotNull
-    @Override
-    public java.util.Iterator<@Nullable Cell> iterator() {
-        return new Iterator(cells);
+    /**
+     * Like {@link Cell#hasScent()}, but without creating the handle of the cell.
+     */
+    @Contract(pure = true)
+    public boolean hasScent(int index) {
+        return scents.hasScent(index);
     }
 
-    public void track(Entity entity) {
-        entities.add(entity);
+    /**
+     * Like {@link Cell#foodScent}, but without creating the handle of the cell.
+     */
+    public float foodScent(@NotNull Colony colony, int index) {
+        return scents.food(world.colonyId(colony), index);
     }
 
-    @NotNull
-    @UnmodifiableView
-    public Set<Entity> entities() {
-        return Collections.unmodifiableSet(entities);
+    /**
+     * Like {@link Cell#colonyScent}, but without creating the handle of the cell.
+     */
+    public float colonyScent(@NotNull Colony colony, int index) {
+        return scents.colony(world.colonyId(colony), index);
     }
 
-    public void untrack(Entity entity) {
-        entities.remove(entity);
+    /**
+     * Like {@link Cell#avoidScent}, but without creating the handle of the cell.
+     */
+    public float avoidScent(@NotNull Colony colony, int index) {
+        return scents.avoid(world.colonyId(colony), index);
     }
 
-    private static class Iterator implements java.util.Iterator<Cell> {
-        private final Cell[] cells;
-        private int index = 0;
+    @NotNull
+    @Override
+    public java.util.Iterator<Cell> iterator() {
+        return new Iterator(this);
+    }
 
-        private Iterator(Cell[] cells) {
-            this.cells = cells;
+    public void track(@NotNull Entity entity) {
+        dirty = true;
+        //GOOD: The type is only checked once when the entity is tracked, not every time the entities are iterated
+        if (entity instanceof Ant ant) {
+            ants.add(ant);
+        } else if (entity instanceof Colony colony) {
+            colonies.add(colony);
+        } else if (entity instanceof FoodSource foodSource) {
+            foodSources.add(foodSource);
+        } else {
+            throw new IllegalArgumentException("Unknown entity type " + entity.getClass().getName());
         }
+    }
 
-        @Override
-        public boolean hasNext() {
-            return index < cells.length;
+    public void untrack(@NotNull Entity entity) {
+        dirty = true;
+        if (entity instanceof Ant ant) {
+            ants.remove(ant);
+        } else if (entity instanceof Colony colony) {
+            colonies.remove(colony);
+        } else if (entity instanceof FoodSource foodSource) {
+            foodSources.remove(foodSource);
         }
+    }
 
-        @Override
-        public Cell next() {
-            return cells[index++];
-        }
+    @NotNull
+    public EntityList<Ant> ants() {
+        return ants;
     }
 
-    private static class CellCache {
-        private Cell value;
-        private int x;
-        private int y;
-        private int index;
+    @NotNull
+    public EntityList<Colony> colonies() {
+        return colonies;
+    }
 
-        public boolean matches(int x, int y) {
-            return value != null && this.x == x && this.y == y;
-        }
+    @NotNull
+    public EntityList<FoodSource> foodSources() {
+        return foodSources;
+    }
 
-        public void set(@NotNull Cell cell, int index) {
-            this.value = cell;
-            this.x = cell.position().x();
-            this.y = cell.position().y();
-            this.index = index;
-        }
+    @Contract(pure = true)
+    public boolean hasEntities() {
+        return ants.size() > 0 || colonies.size() > 0 || foodSources.size() > 0;
+    }
+
+    /**
+     * Iterates over the cells by index, creating their handles.
+     */
+    private static class Iterator implements java.util.Iterator<Cell> {
+        private final Chunk chunk;
+        private int index = 0;
 
-        @SuppressWarnings("unused")
-        public void set(@NotNull CellCache cache) {
-            this.value = cache.value;
-            this.x = cache.x;
-            this.y = cache.y;
-            this.index = cache.index;
+        private Iterator(Chunk chunk) {
+            this.chunk = chunk;
         }
 
-        public Cell get() {
-            return value;
+        @Override
+        public boolean hasNext() {
+            return index < CELLS;
         }
 
-        @SuppressWarnings("unused")
-        public int index() {
-            return index;
+        @Override
+        public Cell next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return chunk.cell(index++);
         }
     }
 
-    public boolean isTracking(Entity entity) {
-        return entities.contains(entity);
+    public boolean isTracking(@NotNull Entity entity) {
+        if (entity instanceof Ant ant) return ants.contains(ant);
+        if (entity instanceof Colony colony) return colonies.contains(colony);
+        if (entity instanceof FoodSource foodSource) return foodSources.contains(foodSource);
+        return false;
     }
 }
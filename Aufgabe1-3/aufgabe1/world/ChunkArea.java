@@ -0,0 +1,22 @@
+package aufgabe1.world;
+
+import aufgabe1.IVector;
+import org.jetbrains.annotations.Contract;
+
+/**
+ * The cells a chunk covers, without access to the cells themselves.
+ * Enough to generate the terrain of a chunk, see {@link WorldGenerator#generateHeights}.
+ */
+public interface ChunkArea {
+    /**
+     * @return the chunk's origin position
+     */
+    @Contract(pure = true)
+    IVector origin();
+
+    /**
+     * @return the chunk's size
+     */
+    @Contract(pure = true)
+    IVector size();
+}
@@ -1,111 +1,215 @@
 package aufgabe1.world;
 
+import aufgabe1.IVector;
+import aufgabe1.Vector;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represents a map of chunks in the game world. Chunks are processed in parallel
  * and are used to generate and manage the game world.
+ * <br>
+ * Chunks are grouped into regions of {@value RegionStore#REGION_SIZE}x{@value RegionStore#REGION_SIZE} chunks.
+ * The regions are found through an open-addressing hash table keyed by the packed region coordinates.
+ * Lookups never lock: they read the current table and the chunk slot of the region. New regions are
+ * inserted under a lock, growing the table only copies the region references, never the chunks.
+ * Chunks are allocated under the monitor of their region and populated under their own monitor,
+ * so generating one chunk doesn't block lookups or the generation of other chunks.
  * STYLE: objected oriented, because it manages many chunk objects and encapsulates access.
  */
 public class ChunkMap implements Iterable<Chunk> {
-    public static final int MIN_EXPAND_AMOUNT = 2;
     public static final int EDGE_CHUNKS = 2;
     public static final int POPULATED_EDGE_CHUNKS = 1;
+    public static final int DEFAULT_RESIDENT_BUDGET = 1024;
+    // chunks have to be idle for this many ticks before they are evicted
+    public static final int MIN_IDLE_TICKS = 200;
+    private static final int REGION_SHIFT = 4;
+    private static final int REGION_MASK = RegionStore.REGION_SIZE - 1;
+    private static final int INITIAL_TABLE_SIZE = 16;
+    // generating terrain is rare, a few threads keep up with the ants without taking cores from the workers
+    private static final int GENERATION_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
 
     @NotNull
     private final World world;
-    /**
-     * The world is divided into 3x3 chunks or 9 batches which are each processed in parallel.
-     * 9 │7 │8 │9 │7  | The batches 1..9 are processed one after the other.
-     * ──┼──┼──┼──┼── | Every chunk in a batch is processed in parallel.
-     * 3 │1 │2 │3 │1  | This ensures that threads are unlikely to interfere with each other
-     * ──┼──┼──┼──┼── | since the 8 neighboring chunks are only locked if needed (so not initially).
-     * 6 │4 │5 │6 │4  |
-     * ──┼──┼──┼──┼── |
-     * 9 │7 │8 │9 │7  |
-     * ──┼──┼──┼──┼── |
-     * 3 │1 │2 │3 │1  |
-     */
     @NotNull
-    private final List<List<Chunk>> batches = List.of(
-        new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
-        new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
-        new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    private final WorldGenerator generator;
+    // open-addressing table of the regions, replaced as a whole when it grows
+    private volatile Region @NotNull [] table;
+    // number of regions in the table, guarded by the map
+    private int regions;
+    // true while the current thread populates chunks, the generator may look up other chunks meanwhile
+    private final ThreadLocal<Boolean> populating = ThreadLocal.withInitial(() -> false);
+    // positions of the chunks whose neighbors have to be populated between ticks, see key()
     @NotNull
-    private final ChunkCache cache = new ChunkCache();
+    private final Set<Long> deferred = ConcurrentHashMap.newKeySet();
+    // STYLE: Parallel
+    // The terrain of new chunks is generated by background threads, see prefetch(). It stays in this map
+    // until the chunk is populated or dropped. A chunk is only populated between ticks, so the tick never
+    // waits for terrain and workers never see a chunk that is being populated.
     @NotNull
-    private final WorldGenerator generator;
+    private final Map<Long, CompletableFuture<float[]>> terrain = new ConcurrentHashMap<>();
+    @NotNull
+    private final ExecutorService generation = Executors.newFixedThreadPool(GENERATION_THREADS,
+        Thread.ofPlatform().name("generation-", 0).daemon().factory());
+    // STYLE: Memory
+    // When more chunks than the budget are resident, idle chunks are written to region files and
+    // dropped from the map. They are restored transparently when they are looked up again.
+    @NotNull
+    private final RegionStore store = new RegionStore(null);
+    // positions of the chunks that are stored in region files, see key()
+    @NotNull
+    private final Set<Long> evicted = ConcurrentHashMap.newKeySet();
+    // chunks that left the map since the last checkpoint with their heights, null heights if they were dropped,
+    // null unless a checkpoint log is attached, guarded by the map
     @Nullable
-    private Chunk @NotNull [] chunks;
-    private int offsetX;
-    private int offsetY;
-    private int sizeX;
-    private int sizeY;
+    private Map<Long, float[]> removed;
+    private volatile int residentBudget = DEFAULT_RESIDENT_BUDGET;
+    private final AtomicInteger resident = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
 
+    /**
+     * @param initialSize the number of chunks along each axis the table is sized for initially
+     */
     public ChunkMap(@NotNull World world, @NotNull WorldGenerator generator, int initialSize) {
         this.world = world;
         this.generator = generator;
 
-        offsetX = -initialSize / 2;
-        offsetY = -initialSize / 2;
-        sizeX = initialSize;
-        sizeY = initialSize;
-
-        chunks = new Chunk[sizeX * sizeY];
+        int regionsPerAxis = (initialSize + EDGE_CHUNKS * 2) / RegionStore.REGION_SIZE + 2;
+        int tableSize = INITIAL_TABLE_SIZE;
+        while (tableSize < regionsPerAxis * regionsPerAxis * 2) tableSize <<= 1;
+        table = new Region[tableSize];
     }
 
     /**
      * Gets the Chunk at the specified coordinates.
      * The chunk and its neighbors are created if they don't exist yet.
+     * During a tick the neighbors are not populated right away, see {@link #deferPopulation()}.
      */
     @NotNull
-    public synchronized Chunk get(int chunkX, int chunkY) {
-        if (cache.matches(chunkX, chunkY)) return cache.get();
-
-        expandTo(chunkX + EDGE_CHUNKS, chunkY + EDGE_CHUNKS);
-        expandTo(chunkX - EDGE_CHUNKS, chunkY - EDGE_CHUNKS);
-
-        int ix = chunkX - offsetX;
-        int iy = chunkY - offsetY;
-        int index = ix + iy * sizeX;
-        Chunk chunk = chunks[index];
+    public Chunk get(int chunkX, int chunkY) {
+        Chunk chunk = lookup(chunkX, chunkY);
+        if (chunk != null) hits.increment();
         if (chunk == null || !chunk.hasCompleteNeighbors()) {
+            if (deferPopulation()) {
+                if (chunk == null) chunk = allocateChunks(chunkX, chunkY);
+                // the terrain is generated in the background and installed between ticks
+                if (deferred.add(key(chunkX, chunkY))) prefetch(chunkX, chunkY, POPULATED_EDGE_CHUNKS);
+                return chunk;
+            }
             chunk = allocateChunks(chunkX, chunkY);
-
-            if (!generator.locked()) {
-                generator.setLocked(true);
+            if (!generator.locked() && !populating.get()) {
+                populating.set(true);
                 try {
-                    populateChunks(chunkX, chunkY);
+                    populateChunks(chunkX, chunkY, true);
                     chunk.setHasCompleteNeighbors(true);
                 } catch (Exception e) {
                     System.err.println("Failed to populate chunks at " + chunk + ": " + e);
+                } finally {
+                    populating.set(false);
                 }
-                generator.setLocked(false);
             }
         }
-        cache.set(chunk);
         return chunk;
     }
 
     /**
-     * Expands the map to include the specified coordinates if necessary.
+     * Generating terrain must never block a tick, so workers, and the updating thread while the world is
+     * locked for the tick, leave new chunks unpopulated. Until {@link #populateDeferred()} populates them
+     * the chunks are flat and have no food.
      */
-    private void expandTo(int x, int y) {
-        int dx = x - offsetX;
-        int dy = y - offsetY;
+    private boolean deferPopulation() {
+        return world.synchronizer().onWorkerThread() || world.tickingOnCurrentThread();
+    }
 
-        int ex = 0, ey = 0;
+    /**
+     * Starts generating the terrain of the chunks around the specified chunk in the background.
+     * The terrain is installed by {@link #populateDeferred()} between ticks, chunks that are populated
+     * in the meantime ignore it.
+     *
+     * @return a future that completes when the terrain of all these chunks has been generated
+     */
+    @NotNull
+    public CompletableFuture<Void> prefetch(int chunkX, int chunkY, int radius) {
+        if (radius < 0) throw new IllegalArgumentException("radius must not be negative");
+        List<CompletableFuture<float[]>> futures = new ArrayList<>();
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                Chunk chunk = lookup(chunkX + dx, chunkY + dy);
+                if (chunk != null && chunk.populated()) continue;
+                futures.add(terrain(chunkX + dx, chunkY + dy));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
 
-        if (dx < 0) ex = dx;
-        else if (dx >= sizeX) ex = dx - sizeX + 1;
-        if (dy < 0) ey = dy;
-        else if (dy >= sizeY) ey = dy - sizeY + 1;
+    /**
+     * @return the future of the terrain of a chunk, the terrain is generated if it hasn't been requested yet
+     */
+    @NotNull
+    private CompletableFuture<float[]> terrain(int chunkX, int chunkY) {
+        return terrain.computeIfAbsent(key(chunkX, chunkY), key -> {
+            ChunkArea area = new TerrainArea(chunkX, chunkY);
+            try {
+                return CompletableFuture.supplyAsync(() -> {
+                    float[] heights = new float[Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE];
+                    generator.generateHeights(area, heights);
+                    return heights;
+                }, generation);
+            } catch (RejectedExecutionException e) {
+                // generation pool has been shut down, the chunk is generated when it's populated
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+    }
 
-        expand(ex, ey);
+    /**
+     * Populates the chunks that were reached during the tick, ordered by their position.
+     * In {@link UpdateMode#DETERMINISTIC} mode it waits for their terrain, so the chunks are always
+     * populated in the tick they were reached in. Otherwise chunks whose terrain isn't ready yet stay
+     * unpopulated until a later tick.
+     * Must not be called while the world is updated.
+     */
+    public void populateDeferred() {
+        if (deferred.isEmpty()) return;
+        boolean wait = world.updateMode() == UpdateMode.DETERMINISTIC;
+        long[] positions = deferred.stream().mapToLong(Long::longValue).sorted().toArray();
+        populating.set(true);
+        try {
+            for (long position : positions) {
+                int chunkX = keyX(position);
+                int chunkY = keyY(position);
+                Chunk chunk = allocateChunks(chunkX, chunkY);
+                try {
+                    if (!populateChunks(chunkX, chunkY, wait)) continue;
+                    chunk.setHasCompleteNeighbors(true);
+                    // ants will reach the next ring soon, its terrain is ready by then
+                    prefetch(chunkX, chunkY, EDGE_CHUNKS);
+                } catch (Exception e) {
+                    System.err.println("Failed to populate chunks at " + chunk + ": " + e);
+                }
+                deferred.remove(position);
+            }
+        } finally {
+            populating.set(false);
+        }
     }
 
     /**
@@ -116,15 +220,9 @@ public class ChunkMap implements Iterable<Chunk> {
         Chunk center = null;
         for (int dy = -EDGE_CHUNKS; dy <= EDGE_CHUNKS; dy++) {
             for (int dx = -EDGE_CHUNKS; dx <= EDGE_CHUNKS; dx++) {
-                int ix = chunkX + dx - offsetX;
-                int iy = chunkY + dy - offsetY;
-                int index = ix + iy * sizeX;
-                Chunk chunk = chunks[index];
+                Chunk chunk = lookup(chunkX + dx, chunkY + dy);
                 if (chunk == null) {
-                    chunk = new Chunk(world, generator, chunkX + dx, chunkY + dy);
-                    chunks[index] = chunk;
-                    int batch = (((chunkX + dx) % 3 + 3) % 3) + (((chunkY + dy) % 3 + 3) % 3) * 3;
-                    batches.get(batch).add(chunk);
+                    chunk = createChunk(chunkX + dx, chunkY + dy);
                 }
                 if (dx == 0 && dy == 0) center = chunk;
             }
@@ -134,144 +232,320 @@ public class ChunkMap implements Iterable<Chunk> {
     }
 
     /**
-     * Populates the chunks in the specified area.
+     * Creates the chunk at the specified coordinates, or restores it if it has been evicted.
+     * If another thread created the chunk first, that chunk is returned.
+     */
+    @NotNull
+    Chunk createChunk(int chunkX, int chunkY) {
+        Region region = region(chunkX, chunkY, true);
+        assert region != null;
+        int slot = slot(chunkX, chunkY);
+        Chunk chunk = new Chunk(world, generator, chunkX, chunkY);
+        chunk.setLastActive(world.time());
+        synchronized (region) {
+            // restoring has to happen before the chunk is visible, and only once
+            Chunk existing = region.chunks.get(slot);
+            if (existing != null) return existing;
+            if (evicted.remove(key(chunkX, chunkY))) {
+                if (!store.load(chunk)) throw new IllegalStateException("Evicted chunk " + chunk + " was not stored");
+                misses.increment();
+            }
+            region.chunks.set(slot, chunk);
+        }
+        resident.incrementAndGet();
+        return chunk;
+    }
+
+    /**
+     * Populates the chunks in the specified area. Terrain that has been generated in the background is used,
+     * the terrain that is still being generated is either waited for or generated right away.
+     *
+     * @param wait false to leave chunks whose terrain is still being generated unpopulated
+     * @return true if all chunks in the area are populated
      */
-    private void populateChunks(int chunkX, int chunkY) {
+    private boolean populateChunks(int chunkX, int chunkY, boolean wait) {
+        boolean complete = true;
         for (int dy = -POPULATED_EDGE_CHUNKS; dy <= POPULATED_EDGE_CHUNKS; dy++) {
             for (int dx = -POPULATED_EDGE_CHUNKS; dx <= POPULATED_EDGE_CHUNKS; dx++) {
-                int ix = chunkX + dx - offsetX;
-                int iy = chunkY + dy - offsetY;
-                int index = ix + iy * sizeX;
-                Chunk chunk = chunks[index];
+                Chunk chunk = lookup(chunkX + dx, chunkY + dy);
                 assert chunk != null;
-                if (!chunk.populated()) chunk.populate();
+                long key = key(chunkX + dx, chunkY + dy);
+                CompletableFuture<float[]> future = terrain.get(key);
+                if (future != null && !future.isDone() && !wait) {
+                    complete = false;
+                    continue;
+                }
+                float[] heights = future == null ? null : future.exceptionally(e -> null).join();
+                // generation is serialised per chunk, other chunks can be generated at the same time
+                synchronized (chunk) {
+                    if (!chunk.populated()) {
+                        if (heights != null) {
+                            chunk.populate(heights);
+                        } else {
+                            chunk.populate();
+                        }
+                    }
+                }
+                terrain.remove(key);
             }
         }
+        return complete;
     }
 
-    private void expand(int ex, int ey) {
-        if (ex == 0 && ey == 0) return;
-        if (ex > 0) ex = Math.max(ex, MIN_EXPAND_AMOUNT);
-        if (ex < 0) ex = -Math.max(-ex, MIN_EXPAND_AMOUNT);
-        if (ey > 0) ey = Math.max(ey, MIN_EXPAND_AMOUNT);
-        if (ey < 0) ey = -Math.max(-ey, MIN_EXPAND_AMOUNT);
+    /**
+     * Gets the Chunk at the specified coordinates, or returns null if it hasn't been allocated yet.
+     * Evicted chunks are restored.
+     */
+    @Nullable
+    public Chunk getOrNull(int chunkX, int chunkY) {
+        Chunk chunk = lookup(chunkX, chunkY);
+        if (chunk != null) {
+            hits.increment();
+        } else if (evicted.contains(key(chunkX, chunkY))) {
+            chunk = createChunk(chunkX, chunkY);
+        }
+        return chunk;
+    }
 
-        int newSizeX = sizeX + Math.abs(ex);
-        int newSizeY = sizeY + Math.abs(ey);
+    /**
+     * Looks up an allocated chunk without locking. Unlike {@link #getOrNull} an evicted chunk is not restored.
+     */
+    @Nullable
+    Chunk lookup(int chunkX, int chunkY) {
+        Region region = region(chunkX, chunkY, false);
+        if (region == null) return null;
+        return region.chunks.get(slot(chunkX, chunkY));
+    }
 
-        int newOffsetX = offsetX + Math.min(ex, 0);
-        int newOffsetY = offsetY + Math.min(ey, 0);
+    /**
+     * Finds the region of a chunk. Reading the table doesn't lock, a region that is inserted at the same time
+     * may be missed, which is why inserting checks again under the lock.
+     */
+    @Nullable
+    private Region region(int chunkX, int chunkY, boolean create) {
+        long key = key(chunkX >> REGION_SHIFT, chunkY >> REGION_SHIFT);
+        Region[] table = this.table;
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            Region region = table[i];
+            if (region == null) break;
+            if (region.key == key) return region;
+        }
+        if (!create) return null;
+        return insertRegion(key);
+    }
 
-        Chunk[] newChunks = new Chunk[newSizeX * newSizeY];
+    @NotNull
+    private synchronized Region insertRegion(long key) {
+        Region[] table = this.table;
+        int mask = table.length - 1;
+        int i = hash(key) & mask;
+        for (; table[i] != null; i = (i + 1) & mask) {
+            if (table[i].key == key) return table[i];
+        }
+        Region region = new Region(key);
+        // keep the load factor at most 1/2 so probe sequences stay short
+        if ((regions + 1) * 2 > table.length) {
+            Region[] grown = new Region[table.length * 2];
+            insert(grown, region);
+            for (Region existing : table) {
+                if (existing != null) insert(grown, existing);
+            }
+            this.table = grown;
+        } else {
+            table[i] = region;
+        }
+        regions++;
+        return region;
+    }
 
-        for (int newIy = 0; newIy < newSizeY; newIy++) {
-            for (int newIx = 0; newIx < newSizeX; newIx++) {
-                int newIndex = newIx + newIy * newSizeX;
+    private static void insert(Region @NotNull [] table, @NotNull Region region) {
+        int mask = table.length - 1;
+        int i = hash(region.key) & mask;
+        while (table[i] != null) i = (i + 1) & mask;
+        table[i] = region;
+    }
 
-                int x = newIx + newOffsetX;
-                int y = newIy + newOffsetY;
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
 
-                int oldIx = x - offsetX;
-                int oldIy = y - offsetY;
+    private static int slot(int chunkX, int chunkY) {
+        return (chunkX & REGION_MASK) + (chunkY & REGION_MASK) * RegionStore.REGION_SIZE;
+    }
 
-                // inside old region
-                if (oldIx >= 0 && oldIy >= 0 && oldIx < sizeX && oldIy < sizeY) {
-                    int oldIndex = oldIx + oldIy * sizeX;
-                    newChunks[newIndex] = chunks[oldIndex];
-                }
+    /**
+     * Iterates over a snapshot of the allocated chunks, see {@link #snapshot()}.
+     */
+    @NotNull
+    @Override
+    public java.util.Iterator<Chunk> iterator() {
+        return snapshot().iterator();
+    }
+
+    /**
+     * @return a list of all allocated chunks that is safe to use while chunks are allocated.
+     * The order only changes when chunks are allocated or evicted.
+     */
+    @NotNull
+    public List<Chunk> snapshot() {
+        List<Chunk> all = new ArrayList<>(resident.get());
+        for (Region region : table) {
+            if (region == null) continue;
+            for (int i = 0; i < region.chunks.length(); i++) {
+                Chunk chunk = region.chunks.get(i);
+                if (chunk != null) all.add(chunk);
             }
         }
-
-        sizeX = newSizeX;
-        sizeY = newSizeY;
-        offsetX = newOffsetX;
-        offsetY = newOffsetY;
-        chunks = newChunks;
+        return all;
     }
 
     /**
-     * Gets the Chunk at the specified coordinates, or returns null if the coordinates
-     * are outside the map.
+     * Evicts chunks that have been idle for at least {@link #MIN_IDLE_TICKS} until no more than
+     * the resident budget are left, starting with the ones that have been idle the longest.
+     * Populated chunks are written to their region file, the others are simply dropped since they
+     * can be recreated.
+     * Must not be called while the chunks are updated.
      */
-    @Nullable
-    public synchronized Chunk getOrNull(int chunkX, int chunkY) {
-        if (!isInside(chunkX, chunkY)) {
-            return null;
-        }
+    public synchronized void evictIdle(int time) {
+        if (resident.get() <= residentBudget) return;
 
-        int ix = chunkX - offsetX;
-        int iy = chunkY - offsetY;
-        return chunks[ix + iy * sizeX];
+        List<Chunk> candidates = new ArrayList<>();
+        for (Chunk chunk : snapshot()) {
+            if (time - chunk.lastActive() >= MIN_IDLE_TICKS && chunk.canEvict()) {
+                candidates.add(chunk);
+            }
+        }
+        if (candidates.isEmpty()) return;
+        // ties are broken by the position, so the same chunks are evicted regardless of the table layout
+        candidates.sort(Comparator.comparingInt(Chunk::lastActive)
+            .thenComparingLong(chunk -> key(chunk.chunkX(), chunk.chunkY())));
+
+        for (Chunk chunk : candidates) {
+            if (resident.get() <= residentBudget) break;
+            Region region = region(chunk.chunkX(), chunk.chunkY(), false);
+            assert region != null;
+            synchronized (region) {
+                if (removed != null) removed.put(key(chunk.chunkX(), chunk.chunkY()), chunk.shareHeights());
+                if (chunk.populated()) {
+                    store.store(chunk);
+                    evicted.add(key(chunk.chunkX(), chunk.chunkY()));
+                } else {
+                    CompletableFuture<float[]> future = terrain.remove(key(chunk.chunkX(), chunk.chunkY()));
+                    if (future != null) future.cancel(false);
+                }
+                region.chunks.set(slot(chunk.chunkX(), chunk.chunkY()), null);
+            }
+            resident.decrementAndGet();
+            evictions.increment();
+        }
     }
 
     /**
-     * Checks if the specified coordinates are inside the map.
+     * @return the positions of the chunks that are stored in region files, see {@link #key}, in ascending order
      */
-    private boolean isInside(int x, int y) {
-        return x >= offsetX && y >= offsetY && x < offsetX + sizeX && y < offsetY + sizeY;
+    long @NotNull [] evictedKeys() {
+        long[] keys = evicted.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(keys);
+        return keys;
     }
 
-    @NotNull
-    @Override
-    public java.util.Iterator<@Nullable Chunk> iterator() {
-        return new Iterator(chunks);
+    /**
+     * Starts or stops recording the chunks that are evicted or dropped, see {@link #takeRemoved()}.
+     */
+    synchronized void trackRemovals(boolean enabled) {
+        removed = enabled ? new HashMap<>() : null;
     }
 
+    /**
+     * @return the chunks that have been evicted or dropped since the last call with their heights,
+     * null if the chunk was dropped because it hasn't been populated. Empty if removals aren't tracked.
+     */
     @NotNull
-    public List<List<Chunk>> batches() {
-        return batches;
+    synchronized Map<Long, float[]> takeRemoved() {
+        if (removed == null || removed.isEmpty()) return Map.of();
+        Map<Long, float[]> result = removed;
+        removed = new HashMap<>();
+        return result;
     }
 
-    public void setSeed(int seed) {
-        generator.setSeed(seed);
+    /**
+     * Reads the terrain of an evicted chunk without restoring the chunk.
+     *
+     * @return false if the chunk is not stored
+     */
+    boolean readEvicted(long key, float @NotNull [] heights) {
+        return evicted.contains(key) && store.read(keyX(key), keyY(key), heights);
     }
 
-    private static class Iterator implements java.util.Iterator<Chunk> {
-        private final Chunk[] chunks;
-        private int index = 0;
-
-        private Iterator(Chunk[] chunks) {
-            this.chunks = chunks;
-        }
+    /**
+     * Sets the number of chunks that may stay in memory before idle chunks are evicted.
+     */
+    public void setResidentBudget(int residentBudget) {
+        if (residentBudget < 1) throw new IllegalArgumentException("residentBudget must be positive");
+        this.residentBudget = residentBudget;
+    }
 
-        @Override
-        public boolean hasNext() {
-            return index < chunks.length;
-        }
+    @NotNull
+    public ChunkStats stats() {
+        return new ChunkStats(resident.get(), residentBudget, hits.sum(), misses.sum(), evictions.sum());
+    }
 
-        @Override
-        public Chunk next() {
-            return chunks[index++];
-        }
+    /**
+     * Stops the generation threads and deletes the region files of the evicted chunks.
+     */
+    public synchronized void close() {
+        generation.shutdownNow();
+        terrain.clear();
+        store.close();
+        evicted.clear();
     }
 
     /**
-     * A private nested class for caching the last accessed Chunk to improve performance.
+     * Packs chunk coordinates into one long.
      */
-    private static class ChunkCache {
-        private Chunk value;
-        private int chunkX;
-        private int chunkY;
+    public static long key(int chunkX, int chunkY) {
+        return ((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+    }
 
-        public boolean matches(int chunkX, int chunkY) {
-            return value != null && this.chunkX == chunkX && this.chunkY == chunkY;
-        }
+    public static int keyX(long key) {
+        return (int) (key >> 32);
+    }
 
-        public void set(@NotNull Chunk chunk) {
-            this.value = chunk;
-            this.chunkX = chunk.chunkX();
-            this.chunkY = chunk.chunkY();
-        }
+    public static int keyY(long key) {
+        return (int) key;
+    }
+
+    public void setSeed(int seed) {
+        generator.setSeed(seed);
+    }
 
-        @SuppressWarnings("unused")
-        public void set(@NotNull ChunkCache cache) {
-            this.value = cache.value;
-            this.chunkX = cache.chunkX;
-            this.chunkY = cache.chunkY;
+    public int seed() {
+        return generator.seed();
+    }
+
+    /**
+     * The position of a chunk, the only thing needed to generate its terrain without the chunk itself.
+     */
+    private record TerrainArea(@NotNull IVector origin, @NotNull IVector size) implements ChunkArea {
+        private TerrainArea(int chunkX, int chunkY) {
+            this(new Vector(chunkX * Chunk.CHUNK_SIZE, chunkY * Chunk.CHUNK_SIZE),
+                new Vector(Chunk.CHUNK_SIZE, Chunk.CHUNK_SIZE));
         }
+    }
 
-        public Chunk get() {
-            return value;
+    /**
+     * The chunk slots of one region. Slots are only set under the region's monitor.
+     */
+    private static final class Region {
+        private final long key;
+        @NotNull
+        private final AtomicReferenceArray<Chunk> chunks =
+            new AtomicReferenceArray<>(RegionStore.REGION_SIZE * RegionStore.REGION_SIZE);
+
+        private Region(long key) {
+            this.key = key;
         }
     }
 }
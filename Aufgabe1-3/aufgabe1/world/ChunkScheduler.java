@@ -0,0 +1,203 @@
+package aufgabe1.world;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs a task for every chunk of a tick on a work-stealing pool.
+ * <br>
+ * The world is divided into 5x5 chunks or 25 colours, see {@link #colour}. Instead of waiting for all chunks
+ * of a colour to finish a chunk starts as soon as the chunks up to two chunks away with a lower colour are done.
+ * A worker locks the 3x3 chunks around its chunk, so two chunks that run at the same time never lock the
+ * same chunk and always run in the same order, while a slow chunk only delays the chunks around it
+ * instead of every worker.
+ * If a task fails the remaining chunks are still run, the failure is thrown by {@link #run} afterwards.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented and parallel
+ */
+final class ChunkScheduler {
+    // all chunks may run at the same time
+    static final int UNORDERED = 0;
+    // chunks that share a neighbour never run at the same time and always run in the same order
+    static final int SEPARATED = 2;
+
+    @NotNull
+    private final ForkJoinPool pool;
+    @NotNull
+    private final Synchronizer synchronizer;
+    // The dependency graph only changes when chunks are allocated or evicted
+    @NotNull
+    private List<Node> graph = List.of();
+    private int graphDistance = -1;
+
+    ChunkScheduler(@NotNull ForkJoinPool pool, @NotNull Synchronizer synchronizer) {
+        this.pool = pool;
+        this.synchronizer = synchronizer;
+    }
+
+    /**
+     * Runs the task for all given chunks and waits until all of them are done.
+     *
+     * @param chunks   all chunks of the tick, see {@link ChunkMap#snapshot()}
+     * @param distance chunks that are at most this many chunks apart run one after another,
+     *                 see {@link #UNORDERED} and {@link #SEPARATED}
+     * @return false if the pool has been shut down
+     * @throws IllegalStateException if the task failed for a chunk, the other chunks have been run
+     */
+    boolean run(@NotNull List<Chunk> chunks, int distance, @NotNull Consumer<Chunk> task) {
+        if (distance < 0) throw new IllegalArgumentException("distance must not be negative");
+        boolean ordered = distance > 0;
+        // an unordered run ignores the dependencies, so it can share the graph of the ordered runs
+        List<Node> nodes = graph(chunks, Math.max(distance, SEPARATED));
+        CountDownLatch remaining = new CountDownLatch(nodes.size());
+        AtomicReference<IllegalStateException> failure = new AtomicReference<>();
+        for (Node node : nodes) {
+            node.pending.set(ordered ? node.dependencies : 0);
+        }
+        try {
+            for (Node node : nodes) {
+                // pending can't be checked here, it may already have dropped to 0 for a node that has been forked
+                if (!ordered || node.dependencies == 0) {
+                    pool.execute(new NodeTask(node, task, remaining, failure));
+                }
+            }
+            remaining.await();
+        } catch (RejectedExecutionException e) {
+            // pool has been shut down
+            return false;
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if (failure.get() != null) throw failure.get();
+        return true;
+    }
+
+    @NotNull
+    private List<Node> graph(@NotNull List<Chunk> chunks, int distance) {
+        if (distance == graphDistance && matches(chunks)) return graph;
+
+        Map<Long, Node> byPosition = new HashMap<>();
+        List<Node> nodes = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            Node node = new Node(chunk);
+            nodes.add(node);
+            byPosition.put(ChunkMap.key(chunk.chunkX(), chunk.chunkY()), node);
+        }
+        int period = distance * 2 + 1;
+        for (Node node : nodes) {
+            int colour = colour(node.chunk.chunkX(), node.chunk.chunkY(), period);
+            for (int dy = -distance; dy <= distance; dy++) {
+                for (int dx = -distance; dx <= distance; dx++) {
+                    if (dx == 0 && dy == 0) continue;
+                    int x = node.chunk.chunkX() + dx;
+                    int y = node.chunk.chunkY() + dy;
+                    Node neighbour = byPosition.get(ChunkMap.key(x, y));
+                    // the neighbour has to finish first, chunks within the distance always have a different colour
+                    if (neighbour != null && colour(x, y, period) < colour) {
+                        node.dependencies++;
+                        neighbour.dependents.add(node);
+                    }
+                }
+            }
+        }
+        graph = nodes;
+        graphDistance = distance;
+        return nodes;
+    }
+
+    /**
+     * @return true if the cached graph was built for the same chunks in the same order
+     */
+    private boolean matches(@NotNull List<Chunk> chunks) {
+        if (chunks.size() != graph.size()) return false;
+        for (int i = 0; i < chunks.size(); i++) {
+            if (graph.get(i).chunk != chunks.get(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     *  0│ 1│ 2│ 3│ 4│ 0 | The colour of a chunk depends on its position modulo the period,
+     * ──┼──┼──┼──┼──┼── | which is 5 for a distance of 2.
+     *  5│ 6│ 7│ 8│ 9│ 5 | Chunks up to two chunks apart always have different colours, so the graph
+     * ──┼──┼──┼──┼──┼── | orders every pair of them, the one with the lower colour runs first.
+     * 10│11│12│13│14│10 | Chunks of the same colour are at least five chunks apart, the 3x3 chunks
+     * ──┼──┼──┼──┼──┼── | their workers lock never overlap.
+     * 15│16│17│18│19│15 |
+     * ──┼──┼──┼──┼──┼── |
+     * 20│21│22│23│24│20 |
+     * ──┼──┼──┼──┼──┼── |
+     *  0│ 1│ 2│ 3│ 4│ 0 |
+     *
+     * @return the colour of the chunk, starting at 0
+     */
+    private static int colour(int chunkX, int chunkY, int period) {
+        return Math.floorMod(chunkX, period) + Math.floorMod(chunkY, period) * period;
+    }
+
+    private static final class Node {
+        @NotNull
+        private final Chunk chunk;
+        @NotNull
+        private final List<Node> dependents = new ArrayList<>(4);
+        // number of neighbours that have to finish before this chunk
+        private int dependencies;
+        @NotNull
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Node(@NotNull Chunk chunk) {
+            this.chunk = chunk;
+        }
+    }
+
+    private final class NodeTask extends RecursiveAction {
+        @NotNull
+        private final Node node;
+        @NotNull
+        private final Consumer<Chunk> task;
+        @NotNull
+        private final CountDownLatch remaining;
+        // the first failure of the run, later ones are added as suppressed exceptions
+        @NotNull
+        private final AtomicReference<IllegalStateException> failure;
+
+        private NodeTask(@NotNull Node node, @NotNull Consumer<Chunk> task, @NotNull CountDownLatch remaining,
+                         @NotNull AtomicReference<IllegalStateException> failure) {
+            this.node = node;
+            this.task = task;
+            this.remaining = remaining;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            long start = System.nanoTime();
+            try {
+                task.accept(node.chunk);
+            } catch (RuntimeException | Error e) {
+                IllegalStateException failed = new IllegalStateException("Failed to update chunk " + node.chunk, e);
+                if (!failure.compareAndSet(null, failed)) failure.get().addSuppressed(failed);
+            } finally {
+                synchronizer.addBusyTime(System.nanoTime() - start);
+                for (Node dependent : node.dependents) {
+                    if (dependent.pending.decrementAndGet() == 0) {
+                        // pushed onto this worker's queue, idle workers steal from it
+                        new NodeTask(dependent, task, remaining, failure).fork();
+                    }
+                }
+                remaining.countDown();
+            }
+        }
+    }
+}
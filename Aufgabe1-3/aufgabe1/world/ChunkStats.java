@@ -0,0 +1,62 @@
+package aufgabe1.world;
+
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Counters of the chunk map: how many chunks are resident in memory and how often
+ * lookups found a resident chunk, had to reload one from its region file or evicted one.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented, immutable
+ */
+public final class ChunkStats {
+    private final int resident;
+    private final int budget;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    public ChunkStats(int resident, int budget, long hits, long misses, long evictions) {
+        this.resident = resident;
+        this.budget = budget;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    @Contract(pure = true)
+    public int resident() {
+        return resident;
+    }
+
+    @Contract(pure = true)
+    public int budget() {
+        return budget;
+    }
+
+    /**
+     * @return the number of lookups that found a resident chunk
+     */
+    @Contract(pure = true)
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of chunks that had to be reloaded from a region file
+     */
+    @Contract(pure = true)
+    public long misses() {
+        return misses;
+    }
+
+    @Contract(pure = true)
+    public long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("resident: %d/%d, hits: %d, misses: %d, evictions: %d",
+            resident, budget, hits, misses, evictions);
+    }
+}
@@ -0,0 +1,145 @@
+package aufgabe1.world;
+
+import aufgabe1.world.entity.Entity;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Dense storage of the entities of one type that are tracked by a chunk.
+ * Every entity knows its index in the list, see {@link Entity#chunkSlot()}, so removing is a swap with the
+ * last entity instead of a search.
+ * <br>
+ * While the list is iterated, see {@link #beginIteration()}, removed entities leave a null behind so the
+ * indices don't change, and added entities are appended behind the end of the iteration.
+ * The gaps are closed when the iteration ends.
+ * <pre>
+ * for (int i = 0, size = list.size(); i < size; i++) {
+ *     Ant ant = list.get(i);
+ *     if (ant == null) continue;
+ *     ...
+ * }
+ * </pre>
+ * Changes are synchronized, since entities of a chunk may be tracked or untracked by other workers.
+ * Reads are not, readers on other threads like the visualization may see null entries.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural, because the entities are iterated in tight loops
+ */
+public final class EntityList<T extends Entity> {
+    private static final Entity[] EMPTY = new Entity[0];
+
+    @SuppressWarnings("unchecked")
+    private volatile T @NotNull [] items = (T[]) EMPTY;
+    private volatile int size;
+    // number of null entries left by removals during an iteration
+    private int removed;
+    private int iterating;
+
+    /**
+     * @return the number of entries including the ones removed during the current iteration
+     */
+    @Contract(pure = true)
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of entities in the list
+     */
+    @Contract(pure = true)
+    public synchronized int count() {
+        return size - removed;
+    }
+
+    /**
+     * @return the entity at the index, or null if it has been removed during the current iteration
+     */
+    @Contract(pure = true)
+    public @Nullable T get(int index) {
+        T[] items = this.items;
+        return index < items.length ? items[index] : null;
+    }
+
+    synchronized void add(@NotNull T entity) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, Math.max(4, size * 2));
+        }
+        entity.setChunkSlot(size);
+        items[size] = entity;
+        size++;
+    }
+
+    /**
+     * @return false if the entity is not in this list
+     */
+    synchronized boolean remove(@NotNull T entity) {
+        int slot = entity.chunkSlot();
+        if (!contains(entity)) return false;
+        entity.setChunkSlot(-1);
+        if (iterating > 0) {
+            items[slot] = null;
+            removed++;
+            return true;
+        }
+        int last = size - 1;
+        T moved = items[last];
+        items[slot] = moved;
+        moved.setChunkSlot(slot);
+        items[last] = null;
+        size = last;
+        return true;
+    }
+
+    @Contract(pure = true)
+    synchronized boolean contains(@NotNull T entity) {
+        int slot = entity.chunkSlot();
+        return slot >= 0 && slot < size && items[slot] == entity;
+    }
+
+    /**
+     * Starts an iteration, until {@link #endIteration()} the indices of the entities don't change.
+     * Iterations may be nested.
+     */
+    synchronized void beginIteration() {
+        iterating++;
+    }
+
+    synchronized void endIteration() {
+        if (iterating == 0) throw new IllegalStateException("No iteration in progress");
+        iterating--;
+        if (iterating == 0 && removed > 0) compact();
+    }
+
+    /**
+     * Sorts the entities. Must not be called during an iteration.
+     */
+    synchronized void sort(@NotNull Comparator<? super T> order) {
+        if (iterating > 0) throw new IllegalStateException("Can't sort during an iteration");
+        Arrays.sort(items, 0, size, order);
+        for (int i = 0; i < size; i++) {
+            items[i].setChunkSlot(i);
+        }
+    }
+
+    /**
+     * Closes the gaps left by removals while keeping the order of the remaining entities.
+     */
+    private void compact() {
+        int target = 0;
+        for (int i = 0; i < size; i++) {
+            T entity = items[i];
+            if (entity == null) continue;
+            if (target != i) {
+                items[target] = entity;
+                entity.setChunkSlot(target);
+            }
+            target++;
+        }
+        Arrays.fill(items, target, size, null);
+        size = target;
+        removed = 0;
+    }
+}
@@ -0,0 +1,174 @@
+package aufgabe1.world;
+
+import aufgabe1.world.entity.Entity;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Moves entities that crossed a chunk border into the entity lists of their new chunks.
+ * Every worker records the entities that left its chunks in its own {@link Buffer}, so recording
+ * needs no lock. At the end of the tick {@link #drain} collects the buffers, groups the entities
+ * by their new chunk and moves the groups in parallel.
+ * <br>
+ * Ordering: an entity is removed from its old chunk before it is added to the new one, and the entities
+ * that move into the same chunk are added in the order of their {@link Entity#orderKey()}, no matter
+ * which worker recorded them. So the order of the lists doesn't depend on the number of workers.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural and parallel
+ */
+final class Migrations {
+    // forking costs more than moving this many entities
+    private static final int TASK_SIZE = 256;
+    private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingLong(entry -> entry.target)
+        .thenComparingLong(entry -> entry.entity.orderKey());
+
+    @NotNull
+    private final ForkJoinPool pool;
+    @NotNull
+    private final ChunkMap chunks;
+    // the entries of all buffers, reused between ticks
+    private Entry @NotNull [] pending = new Entry[64];
+    // index of the first entry of every group, the last element is the number of entries
+    private int @NotNull [] groups = new int[64];
+
+    Migrations(@NotNull ForkJoinPool pool, @NotNull ChunkMap chunks) {
+        this.pool = pool;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Moves the entities of all buffers to their new chunks and clears the buffers.
+     * Must be called from the updating thread after all workers finished.
+     */
+    void drain(@NotNull List<Buffer> buffers) {
+        int size = 0;
+        for (Buffer buffer : buffers) {
+            size += buffer.size;
+        }
+        if (size == 0) return;
+
+        if (pending.length < size) {
+            pending = new Entry[Math.max(size, pending.length * 2)];
+        }
+        int count = 0;
+        for (Buffer buffer : buffers) {
+            System.arraycopy(buffer.entries, 0, pending, count, buffer.size);
+            count += buffer.size;
+        }
+        Arrays.sort(pending, 0, size, ORDER);
+
+        int groupCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || pending[i].target != pending[i - 1].target) {
+                if (groupCount + 1 >= groups.length) groups = Arrays.copyOf(groups, groups.length * 2);
+                groups[groupCount++] = i;
+            }
+        }
+        groups[groupCount] = size;
+
+        try {
+            if (size <= TASK_SIZE) {
+                move(0, groupCount);
+            } else {
+                pool.invoke(new MoveTask(0, groupCount));
+            }
+        } catch (RejectedExecutionException e) {
+            // pool has been shut down
+        } finally {
+            // entries stay in their buffers for reuse, only the references to entities and chunks are released
+            Arrays.fill(pending, 0, size, null);
+            for (Buffer buffer : buffers) {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Moves the entities of the groups from the first (inclusive) to the last (exclusive) group.
+     */
+    private void move(int fromGroup, int toGroup) {
+        for (int group = fromGroup; group < toGroup; group++) {
+            int start = groups[group];
+            long target = pending[start].target;
+            Chunk next = chunks.getOrNull(ChunkMap.keyX(target), ChunkMap.keyY(target));
+            if (next == null) throw new IllegalStateException("Chunk was null");
+            for (int i = start; i < groups[group + 1]; i++) {
+                Entry entry = pending[i];
+                entry.source.untrack(entry.entity);
+                next.track(entry.entity);
+            }
+        }
+    }
+
+    /**
+     * Splits the groups until a task moves about {@value #TASK_SIZE} entities.
+     * A group is never split, so every chunk receives its entities from one task in order.
+     */
+    private final class MoveTask extends RecursiveAction {
+        private final int fromGroup;
+        private final int toGroup;
+
+        private MoveTask(int fromGroup, int toGroup) {
+            this.fromGroup = fromGroup;
+            this.toGroup = toGroup;
+        }
+
+        @Override
+        protected void compute() {
+            int entities = groups[toGroup] - groups[fromGroup];
+            if (toGroup - fromGroup <= 1 || entities <= TASK_SIZE) {
+                move(fromGroup, toGroup);
+                return;
+            }
+            int middle = (fromGroup + toGroup) >>> 1;
+            invokeAll(new MoveTask(fromGroup, middle), new MoveTask(middle, toGroup));
+        }
+    }
+
+    /**
+     * The entities that left the chunks of one worker during a tick.
+     * The entries are reused, so recording doesn't allocate once the buffer is large enough.
+     */
+    static final class Buffer {
+        private Entry @NotNull [] entries = new Entry[16];
+        private int size;
+
+        /**
+         * Records that an entity moved out of a chunk, its new chunk is taken from its current position.
+         */
+        void add(@NotNull Entity entity, @NotNull Chunk source) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            Entry entry = entries[size];
+            if (entry == null) {
+                entry = entries[size] = new Entry();
+            }
+            entry.entity = entity;
+            entry.source = source;
+            entry.target = ChunkMap.key(Chunk.toChunkX(entity.position().x()), Chunk.toChunkY(entity.position().y()));
+            size++;
+        }
+
+        private void clear() {
+            for (int i = 0; i < size; i++) {
+                entries[i].entity = null;
+                entries[i].source = null;
+            }
+            size = 0;
+        }
+    }
+
+    private static final class Entry {
+        private Entity entity;
+        private Chunk source;
+        // key of the new chunk, see ChunkMap#key
+        private long target;
+    }
+}
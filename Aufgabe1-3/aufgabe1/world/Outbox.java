@@ -0,0 +1,86 @@
+package aufgabe1.world;
+
+import aufgabe1.world.entity.Ant;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Collects the writes of one worker that can't be applied during a double-buffered tick,
+ * because they target chunks that are processed by other workers or cell occupancy that
+ * other workers are reading. The writes are stored in parallel arrays so recording them
+ * doesn't allocate once the arrays are large enough.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural
+ */
+final class Outbox {
+    private static final int ADD_SCENT = 0;
+    private static final int ADD_ANT = 1;
+    private static final int REMOVE_ANT = 2;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    private int @NotNull [] ops = new int[INITIAL_CAPACITY];
+    private int @NotNull [] kinds = new int[INITIAL_CAPACITY];
+    private int @NotNull [] slots = new int[INITIAL_CAPACITY];
+    private float @NotNull [] amounts = new float[INITIAL_CAPACITY];
+    private Cell @NotNull [] cells = new Cell[INITIAL_CAPACITY];
+    private Ant @NotNull [] ants = new Ant[INITIAL_CAPACITY];
+
+    /**
+     * Records scent that gets added to a cell.
+     *
+     * @param kind one of {@link ScentField#FOOD}, {@link ScentField#COLONY} or {@link ScentField#AVOID}
+     */
+    void addScent(@NotNull Cell cell, int kind, int slot, float amount) {
+        int i = append(ADD_SCENT, cell, null);
+        kinds[i] = kind;
+        slots[i] = slot;
+        amounts[i] = amount;
+    }
+
+    void addAnt(@NotNull Cell cell, @NotNull Ant ant) {
+        append(ADD_ANT, cell, ant);
+    }
+
+    void removeAnt(@NotNull Cell cell, @NotNull Ant ant) {
+        append(REMOVE_ANT, cell, ant);
+    }
+
+    /**
+     * Applies all recorded writes in the order they were recorded and clears the outbox.
+     * Must not be called on a worker thread during a double-buffered tick.
+     */
+    void apply() {
+        for (int i = 0; i < size; i++) {
+            Cell cell = cells[i];
+            switch (ops[i]) {
+                case ADD_SCENT -> cell.applyScent(kinds[i], slots[i], amounts[i]);
+                case ADD_ANT -> cell.addAnt(ants[i]);
+                case REMOVE_ANT -> cell.removeAnt(ants[i]);
+                default -> throw new IllegalStateException("Unknown operation " + ops[i]);
+            }
+        }
+        // release references so removed ants can be collected
+        Arrays.fill(cells, 0, size, null);
+        Arrays.fill(ants, 0, size, null);
+        size = 0;
+    }
+
+    private int append(int op, @NotNull Cell cell, Ant ant) {
+        if (size == ops.length) {
+            int capacity = ops.length * 2;
+            ops = Arrays.copyOf(ops, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            cells = Arrays.copyOf(cells, capacity);
+            ants = Arrays.copyOf(ants, capacity);
+        }
+        int i = size++;
+        ops[i] = op;
+        cells[i] = cell;
+        ants[i] = ant;
+        return i;
+    }
+}
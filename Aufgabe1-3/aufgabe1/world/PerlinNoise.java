@@ -1,5 +1,7 @@
 package aufgabe1.world;
 
+import org.jetbrains.annotations.NotNull;
+
 /**
  * Class for calculating the Perlin Noise filter
  * STYLE: procedural, because it is static and each method has a specific task that the program follows
@@ -25,6 +27,10 @@ public class PerlinNoise {
         138, 236, 205, 93, 222, 114, 67, 29, 24, 72, 243, 141, 128, 195, 78, 66, 215, 61, 156, 180
     };
 
+    // the gradients selected by the two lowest bits of a hash, see dotProduct
+    private static final float[] GRADIENT_X = {1, -1, 1, -1};
+    private static final float[] GRADIENT_Y = {1, 1, -1, -1};
+
     static {
         for (int i = 0; i < 256; i++) p[256 + i] = p[i] = permutation[i];
     }
@@ -34,15 +40,17 @@ public class PerlinNoise {
      */
     // BAD: The method 'noise' lacks comments explaining the steps involved in Perlin noise calculation
     public static float noise(float x, float y) {
-        int xi = (int) Math.floor(x) & 255;
-        int yi = (int) Math.floor(y) & 255;
+        int xFloor = fastFloor(x);
+        int yFloor = fastFloor(y);
+        int xi = xFloor & 255;
+        int yi = yFloor & 255;
         int gradientTopLeft = p[p[xi] + yi];
         int gradientTopRight = p[p[xi + 1] + yi];
         int gradientBottomLeft = p[p[xi] + yi + 1];
         int gradientBottomRight = p[p[xi + 1] + yi + 1];
 
-        float xFraction = (float) (x - Math.floor(x));
-        float yFraction = (float) (y - Math.floor(y));
+        float xFraction = x - xFloor;
+        float yFraction = y - yFloor;
 
         float d1 = dotProduct(gradientTopLeft, xFraction, yFraction);
         float d2 = dotProduct(gradientTopRight, xFraction - 1, yFraction);
@@ -58,6 +66,71 @@ public class PerlinNoise {
 
     }
 
+    /**
+     * Adds the noise of a whole area, scaled by the amplitude, to the values in {@code out}.
+     * The result for every cell is the same as {@code noise(x * frequency, y * frequency) * amplitude}.
+     *
+     * @param out     the values of the area row by row, index {@code dx + dy * width}
+     * @param originX the x-coordinate of the first cell of the area
+     * @param originY the y-coordinate of the first cell of the area
+     */
+    public static void addNoise(float @NotNull [] out, int originX, int originY, int width, int height,
+                                float frequency, float amplitude) {
+        if (out.length < width * height) throw new IllegalArgumentException("out is smaller than the area");
+        // STYLE: Data-oriented
+        // The lattice column, the fraction and the fade of an x-coordinate are the same in every row,
+        // so they are computed once per area. The inner loop has no calls and no branches.
+        int[] columns = new int[width];
+        float[] xFractions = new float[width];
+        float[] xFades = new float[width];
+        for (int dx = 0; dx < width; dx++) {
+            float x = (originX + dx) * frequency;
+            int xFloor = fastFloor(x);
+            columns[dx] = xFloor & 255;
+            xFractions[dx] = x - xFloor;
+            xFades[dx] = fade(xFractions[dx]);
+        }
+        for (int dy = 0; dy < height; dy++) {
+            float y = (originY + dy) * frequency;
+            int yFloor = fastFloor(y);
+            int yi = yFloor & 255;
+            float yFraction = y - yFloor;
+            float yFractionBelow = yFraction - 1;
+            float v = fade(yFraction);
+            int row = dy * width;
+            for (int dx = 0; dx < width; dx++) {
+                int xi = columns[dx];
+                int left = p[xi] + yi;
+                int right = p[xi + 1] + yi;
+                int topLeft = p[left] & 3;
+                int topRight = p[right] & 3;
+                int bottomLeft = p[left + 1] & 3;
+                int bottomRight = p[right + 1] & 3;
+
+                float xFraction = xFractions[dx];
+                float xFractionRight = xFraction - 1;
+                // gradient dot products, the same as dotProduct
+                float d1 = GRADIENT_X[topLeft] * xFraction + GRADIENT_Y[topLeft] * yFraction;
+                float d2 = GRADIENT_X[topRight] * xFractionRight + GRADIENT_Y[topRight] * yFraction;
+                float d3 = GRADIENT_X[bottomLeft] * xFraction + GRADIENT_Y[bottomLeft] * yFractionBelow;
+                float d4 = GRADIENT_X[bottomRight] * xFractionRight + GRADIENT_Y[bottomRight] * yFractionBelow;
+
+                float u = xFades[dx];
+                float x1Interpolated = (d2 - d1) * u + d1;
+                float x2Interpolated = (d4 - d3) * u + d3;
+                out[row + dx] += ((x2Interpolated - x1Interpolated) * v + x1Interpolated) * amplitude;
+            }
+        }
+    }
+
+    /**
+     * Rounds down without the conversion to double of {@link Math#floor}
+     */
+    private static int fastFloor(float value) {
+        int truncated = (int) value;
+        return value < truncated ? truncated - 1 : truncated;
+    }
+
     /**
      * Calculates dot product of 2 values
      */
@@ -72,10 +145,10 @@ public class PerlinNoise {
     }
 
     /**
-     * Fades the given value t
+     * Fades the given value t with 6t^5 - 15t^4 + 10t^3, evaluated with Horner's method
      */
     private static float fade(float t) {
-        return (float) (6 * Math.pow(t, 5) - 15 * Math.pow(t, 4) + 10 * Math.pow(t, 3));
+        return t * t * t * (t * (t * 6 - 15) + 10);
     }
 
     /**
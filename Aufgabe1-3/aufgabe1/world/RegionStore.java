@@ -0,0 +1,155 @@
+package aufgabe1.world;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores evicted chunks in memory-mapped region files. A region file holds a fixed slot for each of
+ * the {@value #REGION_SIZE}x{@value #REGION_SIZE} chunks of its region, so a chunk is written and read
+ * in place without any index.
+ * <br>
+ * Only chunks without entities and awake cells are stored, their whole state is the terrain height
+ * of every cell. The files only live as long as the world and use the native byte order.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural, because the chunks are copied to and from flat buffers
+ */
+final class RegionStore {
+    static final int REGION_SIZE = 16;
+    private static final int REGION_SHIFT = 4;
+    private static final int CELLS = Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE;
+    // slot layout: int marker, float[CELLS] heights
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int SLOT_BYTES = HEADER_BYTES + CELLS * Float.BYTES;
+    private static final int REGION_BYTES = REGION_SIZE * REGION_SIZE * SLOT_BYTES;
+    private static final int STORED = 1;
+
+    @Nullable
+    private final Path configuredDirectory;
+    @Nullable
+    private Path directory;
+    @NotNull
+    private final Map<Long, MappedByteBuffer> regions = new HashMap<>();
+    private final float @NotNull [] heights = new float[CELLS];
+
+    /**
+     * @param directory the directory for the region files, if null a temporary directory is created when needed
+     */
+    RegionStore(@Nullable Path directory) {
+        this.configuredDirectory = directory;
+    }
+
+    /**
+     * Writes the terrain of the chunk into its slot.
+     */
+    synchronized void store(@NotNull Chunk chunk) {
+        MappedByteBuffer region = region(chunk.chunkX(), chunk.chunkY(), true);
+        assert region != null;
+        int offset = slotOffset(chunk.chunkX(), chunk.chunkY());
+        slotHeights(region, offset).put(0, chunk.heights());
+        region.putInt(offset, STORED);
+    }
+
+    /**
+     * Restores the chunk if it has been stored before and clears its slot.
+     *
+     * @return false if the chunk has never been stored
+     */
+    synchronized boolean load(@NotNull Chunk chunk) {
+        if (!read(chunk.chunkX(), chunk.chunkY(), heights)) return false;
+        MappedByteBuffer region = region(chunk.chunkX(), chunk.chunkY(), false);
+        assert region != null;
+        region.putInt(slotOffset(chunk.chunkX(), chunk.chunkY()), 0);
+        chunk.restore(heights);
+        return true;
+    }
+
+    /**
+     * Copies the terrain of a stored chunk without clearing its slot.
+     *
+     * @return false if the chunk is not stored
+     */
+    synchronized boolean read(int chunkX, int chunkY, float @NotNull [] heights) {
+        MappedByteBuffer region = region(chunkX, chunkY, false);
+        if (region == null) return false;
+        int offset = slotOffset(chunkX, chunkY);
+        if (region.getInt(offset) != STORED) return false;
+        slotHeights(region, offset).get(0, heights);
+        return true;
+    }
+
+    /**
+     * Deletes all region files. The store can't be used afterwards.
+     */
+    synchronized void close() {
+        regions.clear();
+        if (directory == null) return;
+        try {
+            for (Path file : Files.newDirectoryStream(directory, "*.region")) {
+                Files.deleteIfExists(file);
+            }
+            if (configuredDirectory == null) {
+                Files.deleteIfExists(directory);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to delete region files in " + directory + ": " + e);
+        }
+    }
+
+    @Nullable
+    private MappedByteBuffer region(int chunkX, int chunkY, boolean create) {
+        int regionX = chunkX >> REGION_SHIFT;
+        int regionY = chunkY >> REGION_SHIFT;
+        long key = ((long) regionX << 32) | (regionY & 0xFFFFFFFFL);
+        MappedByteBuffer region = regions.get(key);
+        if (region != null || !create) return region;
+
+        Path file = directory().resolve(String.format("r.%d.%d.region", regionX, regionY));
+        try (FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_BYTES);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to map region file " + file, e);
+        }
+        region.order(ByteOrder.nativeOrder());
+        regions.put(key, region);
+        return region;
+    }
+
+    @NotNull
+    private Path directory() {
+        if (directory != null) return directory;
+        try {
+            if (configuredDirectory != null) {
+                directory = Files.createDirectories(configuredDirectory);
+            } else {
+                directory = Files.createTempDirectory("ant-regions");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create region directory", e);
+        }
+        return directory;
+    }
+
+    private static int slotOffset(int chunkX, int chunkY) {
+        int localX = chunkX & (REGION_SIZE - 1);
+        int localY = chunkY & (REGION_SIZE - 1);
+        return (localX + localY * REGION_SIZE) * SLOT_BYTES;
+    }
+
+    @NotNull
+    private static FloatBuffer slotHeights(@NotNull MappedByteBuffer region, int offset) {
+        return region.slice(offset + HEADER_BYTES, CELLS * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+}
@@ -0,0 +1,40 @@
+package aufgabe1.world;
+
+import aufgabe1.world.entity.Scent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decays scents one cell after the other.
+ * Used when the Vector API is not available.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural
+ */
+final class ScalarScentDecayKernel implements ScentDecayKernel {
+    @Override
+    public void decay(float @NotNull [] food, float @NotNull [] colony, float @NotNull [] avoid,
+                      float @NotNull [] outFood, float @NotNull [] outColony, float @NotNull [] outAvoid,
+                      float foodDecay, float colonyDecay, float avoidDecay) {
+        decay(food, colony, avoid, outFood, outColony, outAvoid, foodDecay, colonyDecay, avoidDecay, 0, food.length);
+    }
+
+    /**
+     * Decays the scents in the range [from, to).
+     */
+    static void decay(float @NotNull [] food, float @NotNull [] colony, float @NotNull [] avoid,
+                      float @NotNull [] outFood, float @NotNull [] outColony, float @NotNull [] outAvoid,
+                      float foodDecay, float colonyDecay, float avoidDecay, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float f = food[i] * foodDecay;
+            float c = colony[i] * colonyDecay;
+            float a = avoid[i] * avoidDecay;
+            if (Scent.isEmpty(f, c, a)) {
+                f = 0;
+                c = 0;
+                a = 0;
+            }
+            outFood[i] = f;
+            outColony[i] = c;
+            outAvoid[i] = a;
+        }
+    }
+}
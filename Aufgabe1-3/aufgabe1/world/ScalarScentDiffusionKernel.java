@@ -0,0 +1,57 @@
+package aufgabe1.world;
+
+import aufgabe1.world.entity.Scent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Spreads scents one cell after the other.
+ * Used when the Vector API is not available.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural
+ */
+final class ScalarScentDiffusionKernel implements ScentDiffusionKernel {
+    @Override
+    public void diffuse(float @NotNull [] food, float @NotNull [] colony, float @NotNull [] avoid,
+                        float @NotNull [] outFood, float @NotNull [] outColony, float @NotNull [] outAvoid,
+                        int width, float rate, long @NotNull [] occupied) {
+        for (int y = 0; y < width; y++) {
+            diffuse(food, colony, avoid, outFood, outColony, outAvoid, width, rate, occupied, y, 0, width);
+        }
+    }
+
+    /**
+     * Spreads the scents of the cells [from, to) of one row.
+     * The neighbours are added in the same order as in the vectorized kernel, so both give the same results.
+     */
+    static void diffuse(float @NotNull [] food, float @NotNull [] colony, float @NotNull [] avoid,
+                        float @NotNull [] outFood, float @NotNull [] outColony, float @NotNull [] outAvoid,
+                        int width, float rate, long @NotNull [] occupied, int y, int from, int to) {
+        int stride = width + 2;
+        float keep = 1 - rate;
+        float share = rate / 8;
+        for (int x = from; x < to; x++) {
+            int p = (y + 1) * stride + x + 1;
+            int i = y * width + x;
+            float f = spread(food, p, stride, keep, share);
+            float c = spread(colony, p, stride, keep, share);
+            float a = spread(avoid, p, stride, keep, share);
+            if (Scent.isEmpty(f, c, a)) {
+                f = 0;
+                c = 0;
+                a = 0;
+            } else {
+                occupied[i >>> 6] |= 1L << i;
+            }
+            outFood[i] = f;
+            outColony[i] = c;
+            outAvoid[i] = a;
+        }
+    }
+
+    private static float spread(float @NotNull [] values, int p, int stride, float keep, float share) {
+        float sum = values[p - stride - 1] + values[p - stride] + values[p - stride + 1]
+            + values[p - 1] + values[p + 1]
+            + values[p + stride - 1] + values[p + stride] + values[p + stride + 1];
+        return values[p] * keep + sum * share;
+    }
+}
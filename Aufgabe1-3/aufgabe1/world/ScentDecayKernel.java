@@ -0,0 +1,42 @@
+package aufgabe1.world;
+
+import aufgabe1.world.entity.Scent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decays the scent arrays of one colony slot of a chunk at once.
+ * After decaying, the scents of a cell are cleared if all three of them are below
+ * {@link Scent#NO_SCENT_THRESHOLD}. The results may be written back into the input arrays.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural
+ */
+interface ScentDecayKernel {
+    String VECTOR_MODULE = "jdk.incubator.vector";
+    String VECTOR_KERNEL = "aufgabe1.world.VectorScentDecayKernel";
+
+    /**
+     * Reads the scents from the first three arrays and writes the decayed scents into the last three.
+     * All arrays must have the same length.
+     */
+    void decay(float @NotNull [] food, float @NotNull [] colony, float @NotNull [] avoid,
+               float @NotNull [] outFood, float @NotNull [] outColony, float @NotNull [] outAvoid,
+               float foodDecay, float colonyDecay, float avoidDecay);
+
+    /**
+     * Creates the fastest available kernel.
+     * The vectorized kernel is only used if the JVM was started with
+     * {@code --add-modules jdk.incubator.vector}, otherwise the scalar kernel is used without a warning.
+     */
+    @NotNull
+    static ScentDecayKernel create() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                // loaded reflectively so this class can be loaded without the incubator module
+                return (ScentDecayKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ignored) {
+                // the scalar kernel gives the same results, so falling back silently is fine
+            }
+        }
+        return new ScalarScentDecayKernel();
+    }
+}
@@ -0,0 +1,72 @@
+package aufgabe1.world;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spreads the scents of all chunks to the neighbouring cells once per tick, see {@link WorldParameters#scentDiffusion}.
+ * <br>
+ * The phase has two passes over the chunks, both run in parallel. The first one copies the border cells of every
+ * chunk into its edges, the second one runs the stencil of every chunk and reads the cells around it from the
+ * edges of the neighbours. A chunk only writes its own scents, and the edges don't change in the second pass,
+ * so the result doesn't depend on the number of workers or the order of the chunks.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural and parallel
+ */
+final class ScentDiffusion {
+    // the neighbours of a chunk row by row from the north-west to the south-east, see ScentField#diffuse
+    private static final int[] NEIGHBOUR_X = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, -1, -1, 0, 0, 1, 1, 1};
+
+    @NotNull
+    private final ChunkScheduler scheduler;
+    @NotNull
+    private final ChunkMap chunks;
+    @NotNull
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    ScentDiffusion(@NotNull ChunkScheduler scheduler, @NotNull ChunkMap chunks) {
+        this.scheduler = scheduler;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Spreads the scents of the given chunks and waits until all of them are done.
+     * Must be called from the updating thread while no entity is updated.
+     *
+     * @param rate the share of its scent a cell passes on to its neighbours, between 0 and 1
+     */
+    void run(@NotNull List<Chunk> all, float rate) {
+        if (!(rate >= 0 && rate <= 1)) throw new IllegalArgumentException("rate must be between 0 and 1");
+        if (!scheduler.run(all, ChunkScheduler.UNORDERED, Chunk::copyScentEdges)) return;
+        scheduler.run(all, ChunkScheduler.UNORDERED, chunk -> diffuse(chunk, rate));
+    }
+
+    private void diffuse(@NotNull Chunk chunk, float rate) {
+        Scratch scratch = this.scratch.get();
+        // an idle chunk only needs to run if scent spreads into it from a neighbour
+        boolean needed = !chunk.isIdle();
+        for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+            Chunk neighbour = chunks.lookup(chunk.chunkX() + NEIGHBOUR_X[i], chunk.chunkY() + NEIGHBOUR_Y[i]);
+            scratch.neighbours[i] = neighbour == null ? null : neighbour.scents();
+            if (neighbour != null && neighbour.scents().hasEdgeScent()) needed = true;
+        }
+        try {
+            if (needed) chunk.diffuseScents(rate, scratch.neighbours, scratch.values, scratch.occupied);
+        } finally {
+            // don't keep evicted chunks alive until the next tick
+            Arrays.fill(scratch.neighbours, null);
+        }
+    }
+
+    /**
+     * The arrays a worker reuses for every chunk.
+     */
+    private static final class Scratch {
+        private final ScentField[] neighbours = new ScentField[NEIGHBOUR_X.length];
+        private final float[][] values = new float[3][(Chunk.CHUNK_SIZE + 2) * (Chunk.CHUNK_SIZE + 2)];
+        private final long[] occupied = new long[Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE / Long.SIZE];
+    }
+}
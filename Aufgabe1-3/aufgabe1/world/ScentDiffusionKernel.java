@@ -0,0 +1,42 @@
+package aufgabe1.world;
+
+import aufgabe1.world.entity.Scent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Spreads the scent arrays of one colony slot of a chunk with a 3x3 stencil.
+ * A cell keeps {@code 1 - rate} of its scent and receives {@code rate / 8} of the scent of each of its
+ * 8 neighbours, so the total amount of scent stays the same. Afterwards the scents of a cell are cleared
+ * if all three of them are below {@link Scent#NO_SCENT_THRESHOLD}, like after decaying.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural
+ */
+interface ScentDiffusionKernel {
+    String VECTOR_KERNEL = "aufgabe1.world.VectorScentDiffusionKernel";
+
+    /**
+     * Reads the scents with a halo of one cell from the first three arrays, which have {@code (width + 2)²}
+     * elements, and writes the spread scents into the last three arrays, which have {@code width²} elements.
+     *
+     * @param occupied receives a bit for every cell that has scent afterwards, indexed like the cells
+     */
+    void diffuse(float @NotNull [] food, float @NotNull [] colony, float @NotNull [] avoid,
+                 float @NotNull [] outFood, float @NotNull [] outColony, float @NotNull [] outAvoid,
+                 int width, float rate, long @NotNull [] occupied);
+
+    /**
+     * Creates the fastest available kernel, see {@link ScentDecayKernel#create()}.
+     */
+    @NotNull
+    static ScentDiffusionKernel create() {
+        if (ModuleLayer.boot().findModule(ScentDecayKernel.VECTOR_MODULE).isPresent()) {
+            try {
+                // loaded reflectively so this class can be loaded without the incubator module
+                return (ScentDiffusionKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ignored) {
+                // the scalar kernel gives the same results, so falling back silently is fine
+            }
+        }
+        return new ScalarScentDiffusionKernel();
+    }
+}
@@ -0,0 +1,500 @@
+package aufgabe1.world;
+
+import aufgabe1.world.entity.Scent;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Dense scent storage of a chunk. For every scent kind (food, colony, avoid) and every colony slot
+ * there is one float array which is indexed like the cells of the chunk.
+ * The colony slots are handed out by the world, see {@link World#colonyId}.
+ * Arrays of a slot are only allocated once a scent of that colony is added to the chunk.
+ * The arrays of all slots are published together in an immutable {@link Buffers} object through a volatile
+ * field, so a thread that reads the scents while another one adds a slot sees all arrays of the slot or none.
+ * <br>
+ * In {@link UpdateMode#DOUBLE_BUFFERED} mode the field has a second set of arrays. After {@link #prepare}
+ * reads still return the values of the previous tick while writes go into the next buffers.
+ * {@link #swap()} makes the next buffers readable at the end of the tick.
+ * <br>
+ * For {@link #diffuse} every field keeps a copy of its border cells, the edges. They are copied for all chunks
+ * before any chunk diffuses, so a chunk reads the borders of its neighbours as they were at the start of the phase.
+ * <br>
+ * A checkpoint takes the current arrays without copying them, see {@link #share()}. The first write afterwards
+ * copies them, so the copying happens in parallel during the next tick instead of in the pause between two ticks.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural, because the scent values are plain data that is processed in tight loops
+ */
+final class ScentField {
+    static final int FOOD = 0;
+    static final int COLONY = 1;
+    static final int AVOID = 2;
+
+    private static final float[][] NO_SLOTS = new float[0][];
+    private static final ScentDecayKernel KERNEL = ScentDecayKernel.create();
+    private static final ScentDiffusionKernel DIFFUSION = ScentDiffusionKernel.create();
+    // the sides of the edges
+    private static final int TOP = 0;
+    private static final int BOTTOM = 1;
+    private static final int LEFT = 2;
+    private static final int RIGHT = 3;
+
+    private static final Buffers EMPTY = new Buffers(NO_SLOTS, NO_SLOTS, NO_SLOTS);
+
+    private final int width;
+    private final int size;
+    private volatile Buffers current = EMPTY;
+    // next buffers, their slots are only allocated when the field gets prepared
+    private volatile Buffers next = EMPTY;
+    // true while writes go into the next buffers
+    private boolean prepared;
+    // the border cells of every slot: per kind the top row, the bottom row, the left and the right column
+    private float[][] edges = NO_SLOTS;
+    // true for the slots that had any scent on their border when the edges were copied
+    private boolean[] edgeScent = new boolean[0];
+    private boolean anyEdgeScent;
+    // true while a checkpoint references the current arrays, they are copied before they are changed
+    private volatile boolean shared;
+
+    /**
+     * @param width the number of cells per row and column
+     */
+    ScentField(int width) {
+        this.width = width;
+        this.size = width * width;
+    }
+
+    @Contract(pure = true)
+    float food(int slot, int index) {
+        return read(current.food, slot, index);
+    }
+
+    @Contract(pure = true)
+    float colony(int slot, int index) {
+        return read(current.colony, slot, index);
+    }
+
+    @Contract(pure = true)
+    float avoid(int slot, int index) {
+        return read(current.avoid, slot, index);
+    }
+
+    /**
+     * Adds scent of one of the kinds {@link #FOOD}, {@link #COLONY} or {@link #AVOID}.
+     */
+    void add(int kind, int slot, int index, float amount) {
+        ensureSlot(slot);
+        if (!prepared) unshare();
+        Buffers buffers = prepared ? next : current;
+        float[][] target = switch (kind) {
+            case FOOD -> buffers.food;
+            case COLONY -> buffers.colony;
+            case AVOID -> buffers.avoid;
+            default -> throw new IllegalArgumentException("Unknown scent kind " + kind);
+        };
+        target[slot][index] += amount;
+    }
+
+    /**
+     * Checks the buffers that are currently written to, so scent added during a
+     * double-buffered tick counts as well.
+     *
+     * @return true if any colony has a scent on the cell with the given index
+     */
+    @Contract(pure = true)
+    boolean hasScent(int index) {
+        Buffers buffers = prepared ? next : current;
+        float[][] food = buffers.food;
+        float[][] colony = buffers.colony;
+        float[][] avoid = buffers.avoid;
+        for (int slot = 0; slot < food.length; slot++) {
+            if (read(food, slot, index) != 0 || read(colony, slot, index) != 0 || read(avoid, slot, index) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decays all scents of one cell. When all three scents of a colony drop below
+     * {@link Scent#NO_SCENT_THRESHOLD} they are cleared.
+     *
+     * @return true if any scent is left on the cell
+     */
+    boolean decay(int index, float foodDecay, float colonyDecay, float avoidDecay) {
+        unshare();
+        Buffers buffers = current;
+        float[][] food = buffers.food;
+        float[][] colony = buffers.colony;
+        float[][] avoid = buffers.avoid;
+        boolean remaining = false;
+        for (int slot = 0; slot < food.length; slot++) {
+            float[] f = food[slot];
+            if (f == null) continue;
+            float[] c = colony[slot];
+            float[] a = avoid[slot];
+
+            float fv = f[index] * foodDecay;
+            float cv = c[index] * colonyDecay;
+            float av = a[index] * avoidDecay;
+            if (Scent.isEmpty(fv, cv, av)) {
+                fv = 0;
+                cv = 0;
+                av = 0;
+            } else {
+                remaining = true;
+            }
+            f[index] = fv;
+            c[index] = cv;
+            a[index] = av;
+        }
+        return remaining;
+    }
+
+    /**
+     * Decays the scents of all cells and colonies at once.
+     * Cells without scent stay at zero, so it's fine to include them.
+     */
+    void decayAll(float foodDecay, float colonyDecay, float avoidDecay) {
+        unshare();
+        Buffers buffers = current;
+        float[][] food = buffers.food;
+        float[][] colony = buffers.colony;
+        float[][] avoid = buffers.avoid;
+        for (int slot = 0; slot < food.length; slot++) {
+            if (food[slot] == null) continue;
+            KERNEL.decay(food[slot], colony[slot], avoid[slot],
+                food[slot], colony[slot], avoid[slot],
+                foodDecay, colonyDecay, avoidDecay);
+        }
+    }
+
+    /**
+     * Starts a double-buffered tick: the decayed scents of the current buffers are written into the
+     * next buffers, which then receive all writes until {@link #swap()} is called.
+     * Has no effect if the field is already prepared.
+     */
+    void prepare(float foodDecay, float colonyDecay, float avoidDecay) {
+        if (prepared) return;
+        Buffers buffers = current;
+        float[][] food = buffers.food;
+        float[][] colony = buffers.colony;
+        float[][] avoid = buffers.avoid;
+        // the next buffers always have as many slots as the current ones and are only used by the
+        // worker of this chunk until the swap, so their slots can be allocated in place
+        Buffers next = this.next;
+        float[][] nextFood = next.food;
+        float[][] nextColony = next.colony;
+        float[][] nextAvoid = next.avoid;
+        for (int slot = 0; slot < food.length; slot++) {
+            if (food[slot] == null) continue;
+            if (nextFood[slot] == null) {
+                nextColony[slot] = new float[size];
+                nextAvoid[slot] = new float[size];
+                nextFood[slot] = new float[size];
+            }
+            KERNEL.decay(food[slot], colony[slot], avoid[slot],
+                nextFood[slot], nextColony[slot], nextAvoid[slot],
+                foodDecay, colonyDecay, avoidDecay);
+        }
+        prepared = true;
+    }
+
+    /**
+     * Ends a double-buffered tick by making the next buffers readable.
+     * Has no effect if the field was not prepared in this tick.
+     */
+    void swap() {
+        if (!prepared) return;
+        Buffers tmp = current;
+        if (shared) {
+            // the old arrays become the next buffers, which the next tick overwrites
+            tmp = tmp.copy();
+            shared = false;
+        }
+        current = next;
+        next = tmp;
+        prepared = false;
+    }
+
+    /**
+     * Copies the border cells of every slot into the edges, which the neighbouring chunks read in {@link #diffuse}.
+     * Must be called for all chunks before any of them diffuses.
+     */
+    void copyEdges() {
+        Buffers buffers = current;
+        float[][] food = buffers.food;
+        float[][] colony = buffers.colony;
+        float[][] avoid = buffers.avoid;
+        if (edges.length < food.length) {
+            edges = Arrays.copyOf(edges, food.length);
+            edgeScent = Arrays.copyOf(edgeScent, food.length);
+        }
+        boolean any = false;
+        for (int slot = 0; slot < food.length; slot++) {
+            boolean scent = false;
+            if (food[slot] != null) {
+                if (edges[slot] == null) edges[slot] = new float[3 * 4 * width];
+                float[] out = edges[slot];
+                scent = copyEdges(food[slot], out, FOOD) | copyEdges(colony[slot], out, COLONY) | copyEdges(avoid[slot], out, AVOID);
+            }
+            edgeScent[slot] = scent;
+            any |= scent;
+        }
+        anyEdgeScent = any;
+    }
+
+    /**
+     * Marks the edges as empty without copying them, for fields that are known to have no scent.
+     */
+    void clearEdges() {
+        Arrays.fill(edgeScent, false);
+        anyEdgeScent = false;
+    }
+
+    /**
+     * @return true if any slot had scent on the border when the edges were copied
+     */
+    @Contract(pure = true)
+    boolean hasEdgeScent() {
+        return anyEdgeScent;
+    }
+
+    /**
+     * Spreads the scents of every slot to the neighbouring cells, see {@link ScentDiffusionKernel}.
+     * The cells on the border read the cells of the neighbouring chunks from their edges. Scent that spreads from
+     * a neighbour into a slot this field has no storage for yet allocates the slot.
+     *
+     * @param neighbours the fields of the 8 neighbouring chunks row by row from the north-west to the south-east,
+     *                   null if a chunk isn't allocated
+     * @param scratch    three arrays of {@code (width + 2)²} elements that receive the scents with their halo
+     * @param occupied   receives a bit for every cell that has scent afterwards
+     */
+    void diffuse(float rate, @Nullable ScentField @NotNull [] neighbours, float @NotNull [] @NotNull [] scratch, long @NotNull [] occupied) {
+        unshare();
+        Buffers buffers = current;
+        int slots = buffers.food.length;
+        for (ScentField neighbour : neighbours) {
+            if (neighbour != null && neighbour.anyEdgeScent) slots = Math.max(slots, neighbour.edgeScent.length);
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            if (slot >= buffers.food.length || buffers.food[slot] == null) {
+                if (!receives(neighbours, slot)) continue;
+                ensureSlot(slot);
+                buffers = current;
+            }
+            fillHalo(FOOD, slot, buffers.food[slot], neighbours, scratch[FOOD]);
+            fillHalo(COLONY, slot, buffers.colony[slot], neighbours, scratch[COLONY]);
+            fillHalo(AVOID, slot, buffers.avoid[slot], neighbours, scratch[AVOID]);
+            DIFFUSION.diffuse(scratch[FOOD], scratch[COLONY], scratch[AVOID],
+                buffers.food[slot], buffers.colony[slot], buffers.avoid[slot], width, rate, occupied);
+        }
+    }
+
+    /**
+     * @param kind one of {@link #FOOD}, {@link #COLONY} or {@link #AVOID}
+     * @return the values of a slot that are read in the current tick, null if the slot has no storage
+     */
+    @Contract(pure = true)
+    float @Nullable [] values(int kind, int slot) {
+        Buffers buffers = current;
+        float[][] values = switch (kind) {
+            case FOOD -> buffers.food;
+            case COLONY -> buffers.colony;
+            case AVOID -> buffers.avoid;
+            default -> throw new IllegalArgumentException("Unknown scent kind " + kind);
+        };
+        return slot < values.length ? values[slot] : null;
+    }
+
+    /**
+     * Marks the current arrays as referenced by a checkpoint, which reads them through {@link #values} afterwards.
+     * They are copied before the next change, so they keep the values of this tick.
+     * Must not be called while the world is updated.
+     */
+    void share() {
+        shared = true;
+    }
+
+    /**
+     * Copies the current arrays if a checkpoint references them, see {@link #share()}.
+     */
+    private void unshare() {
+        if (!shared) return;
+        synchronized (this) {
+            if (!shared) return;
+            current = current.copy();
+            shared = false;
+        }
+    }
+
+    /**
+     * Allocates a slot if needed and returns its values of one kind, so they can be restored from a snapshot.
+     * Must not be called during a double-buffered tick.
+     */
+    float @NotNull [] restoreValues(int kind, int slot) {
+        if (prepared) throw new IllegalStateException("Scents can't be restored during a tick");
+        ensureSlot(slot);
+        unshare();
+        float[] values = values(kind, slot);
+        assert values != null;
+        return values;
+    }
+
+    /**
+     * @return the number of colony slots that have storage in this field
+     */
+    @Contract(pure = true)
+    int slots() {
+        return current.food.length;
+    }
+
+    /**
+     * Copies the top and bottom row and the left and right column of one kind into the edges.
+     *
+     * @return true if any of the copied cells has scent
+     */
+    private boolean copyEdges(float @NotNull [] values, float @NotNull [] out, int kind) {
+        int offset = kind * 4 * width;
+        System.arraycopy(values, 0, out, offset + TOP * width, width);
+        System.arraycopy(values, size - width, out, offset + BOTTOM * width, width);
+        for (int i = 0; i < width; i++) {
+            out[offset + LEFT * width + i] = values[i * width];
+            out[offset + RIGHT * width + i] = values[i * width + width - 1];
+        }
+        for (int i = offset; i < offset + 4 * width; i++) {
+            if (out[i] != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copies the cells of one kind into the middle of the scratch array and surrounds them
+     * with the adjacent border cells of the neighbours.
+     */
+    private void fillHalo(int kind, int slot, float @NotNull [] values, @Nullable ScentField @NotNull [] neighbours, float @NotNull [] out) {
+        int stride = width + 2;
+        int bottom = (width + 1) * stride;
+        for (int y = 0; y < width; y++) {
+            System.arraycopy(values, y * width, out, (y + 1) * stride + 1, width);
+        }
+        // north-west, north and north-east
+        out[0] = edge(neighbours[0], kind, slot, BOTTOM, width - 1);
+        copyEdge(neighbours[1], kind, slot, BOTTOM, out, 1, 1);
+        out[width + 1] = edge(neighbours[2], kind, slot, BOTTOM, 0);
+        // west and east
+        copyEdge(neighbours[3], kind, slot, RIGHT, out, stride, stride);
+        copyEdge(neighbours[4], kind, slot, LEFT, out, stride + width + 1, stride);
+        // south-west, south and south-east
+        out[bottom] = edge(neighbours[5], kind, slot, TOP, width - 1);
+        copyEdge(neighbours[6], kind, slot, TOP, out, bottom + 1, 1);
+        out[bottom + width + 1] = edge(neighbours[7], kind, slot, TOP, 0);
+    }
+
+    private float edge(@Nullable ScentField field, int kind, int slot, int side, int i) {
+        float[] edges = edges(field, slot);
+        return edges == null ? 0 : edges[(kind * 4 + side) * width + i];
+    }
+
+    private void copyEdge(@Nullable ScentField field, int kind, int slot, int side, float @NotNull [] out, int offset, int step) {
+        float[] edges = edges(field, slot);
+        int from = (kind * 4 + side) * width;
+        for (int i = 0; i < width; i++) {
+            out[offset + i * step] = edges == null ? 0 : edges[from + i];
+        }
+    }
+
+    /**
+     * @return the edges of a slot, null if they have no scent
+     */
+    @Contract(pure = true)
+    private static float @Nullable [] edges(@Nullable ScentField field, int slot) {
+        if (field == null || slot >= field.edgeScent.length || !field.edgeScent[slot]) return null;
+        return field.edges[slot];
+    }
+
+    @Contract(pure = true)
+    private static boolean receives(@Nullable ScentField @NotNull [] neighbours, int slot) {
+        for (ScentField neighbour : neighbours) {
+            if (edges(neighbour, slot) != null) return true;
+        }
+        return false;
+    }
+
+    @Contract(pure = true)
+    private static float read(float[][] kind, int slot, int index) {
+        if (slot >= kind.length) return 0;
+        float[] values = kind[slot];
+        if (values == null) return 0;
+        return values[index];
+    }
+
+    /**
+     * Allocates the arrays for a colony slot if they don't exist yet. The arrays are copied into new
+     * {@link Buffers} which are then published, the published ones are never changed.
+     */
+    private void ensureSlot(int slot) {
+        Buffers buffers = current;
+        if (slot < buffers.food.length && buffers.food[slot] != null) return;
+        synchronized (this) {
+            buffers = current;
+            if (slot < buffers.food.length && buffers.food[slot] != null) return;
+            int length = Math.max(buffers.food.length, slot + 1);
+            // a new slot has no previous values, so the next buffers simply start empty
+            next = next.grow(length, slot, prepared, size);
+            current = buffers.grow(length, slot, true, size);
+        }
+    }
+
+    /**
+     * The arrays of all colony slots of one buffer. A new slot creates new buffers instead of changing the
+     * published ones, only {@link #prepare} fills in the slots of the next buffers, which no other thread reads.
+     * STYLE: procedural, plain data
+     */
+    private static final class Buffers {
+        final float[][] food;
+        final float[][] colony;
+        final float[][] avoid;
+
+        private Buffers(float[][] food, float[][] colony, float[][] avoid) {
+            this.food = food;
+            this.colony = colony;
+            this.avoid = avoid;
+        }
+
+        /**
+         * @param allocate true to allocate the arrays of the slot if it has none
+         * @return copies of the buffers with the given number of slots
+         */
+        @NotNull
+        private Buffers grow(int length, int slot, boolean allocate, int size) {
+            float[][] food = Arrays.copyOf(this.food, length);
+            float[][] colony = Arrays.copyOf(this.colony, length);
+            float[][] avoid = Arrays.copyOf(this.avoid, length);
+            if (allocate && food[slot] == null) {
+                food[slot] = new float[size];
+                colony[slot] = new float[size];
+                avoid[slot] = new float[size];
+            }
+            return new Buffers(food, colony, avoid);
+        }
+
+        /**
+         * @return buffers with copies of all arrays
+         */
+        @NotNull
+        private Buffers copy() {
+            return new Buffers(copy(food), copy(colony), copy(avoid));
+        }
+
+        private static float @NotNull [] @NotNull [] copy(float @NotNull [] @NotNull [] slots) {
+            float[][] copy = new float[slots.length][];
+            for (int slot = 0; slot < slots.length; slot++) {
+                if (slots[slot] != null) copy[slot] = slots[slot].clone();
+            }
+            return copy;
+        }
+    }
+}
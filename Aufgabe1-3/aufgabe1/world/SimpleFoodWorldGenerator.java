@@ -1,5 +1,6 @@
 package aufgabe1.world;
 
+import aufgabe1.IVector;
 import aufgabe1.Randoms;
 import aufgabe1.Vector;
 import aufgabe1.world.entity.AntParameters;
@@ -7,6 +8,10 @@ import aufgabe1.world.entity.Colony;
 import aufgabe1.world.entity.FoodSource;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
 /**
  * This class, SimpleFoodWorldGenerator, extends WorldGenerator and is responsible for generating
  * a simple food-based world. It generates height maps and food sources in the world.
@@ -14,39 +19,53 @@ import org.jetbrains.annotations.NotNull;
  * STYLE: object-oriented
  */
 public class SimpleFoodWorldGenerator extends WorldGenerator {
+    // on average one food source spawns on this many cells every foodExpireTimeMean ticks
+    private static final int FOOD_SPAWN_AREA = 32 * 32;
+    // separates the stream for spawn times from the one for spawn positions
+    private static final long SPAWN_STREAM = 3;
+    @NotNull
+    private final SpawnQueue spawns = new SpawnQueue();
 
     public SimpleFoodWorldGenerator(int seed, @NotNull Randoms randoms, @NotNull WorldParameters parameters) {
         super(seed, randoms, parameters);
     }
 
     /**
-     * Generates the contents of a cell in the world.
+     * Generates the contents of the cells of a chunk. Only the cells that get food are looked up.
      */
     @Override
-    public void generate(@NotNull Cell cell) {
-        if (hashToFloat(cell.position().x(), cell.position().y()) < 0.0001) {
-            generateFood(cell, 25);
+    public void generate(@NotNull ChunkView chunk) {
+        IVector origin = chunk.origin();
+        for (int dx = 0; dx < chunk.size().x(); dx++) {
+            for (int dy = 0; dy < chunk.size().y(); dy++) {
+                int x = origin.x() + dx;
+                int y = origin.y() + dy;
+                if (hashToFloat(x, y) < 0.0001) {
+                    generateFood(chunk.get(x, y), 25);
+                }
+            }
         }
-        cell.setHeight(generateHeight(cell.position().x(), cell.position().y()));
     }
 
     /**
      * Generates food sources around a given cell.
+     * Synchronized since chunks may be populated by several threads at once.
      */
     @Override
-    public void generateFood(@NotNull Cell center, float amount) {
+    public synchronized void generateFood(@NotNull Cell center, float amount) {
         World world = center.world();
-        Randoms random = world.simulation().orElseThrow().randoms();
+        // the stream only depends on where and when the food is generated
+        RandomGenerator random = derive(center.position().x(), center.position().y(), world.time());
         int samples = (int) Math.floor(amount);
         float sigma = (float) Math.max(1, Math.sqrt(amount / 25));
         for (int i = 0; i < samples; i++) {
-            int dx = (int) Math.round(random.places().nextGaussian(0, sigma));
-            int dy = (int) Math.round(random.places().nextGaussian(0, sigma));
+            int dx = (int) Math.round(random.nextGaussian(0, sigma));
+            int dy = (int) Math.round(random.nextGaussian(0, sigma));
 
             Vector pos = new Vector(center.position()).add(dx, dy);
             Cell cell = world.get(pos);
             if (cell.foodSource() == null) {
-                FoodSource source = new FoodSource(cell, amount / samples, nextFoodExpireTime());
+                FoodSource source = new FoodSource(cell, amount / samples, nextFoodExpireTime(random));
                 cell.setFoodSource(source);
                 world.track(source);
             } else {
@@ -56,29 +75,34 @@ public class SimpleFoodWorldGenerator extends WorldGenerator {
     }
 
     /**
-     * Generates the height for a given position in the world.
+     * Generates the heights of a whole chunk, one octave of noise at a time.
      */
-    private float generateHeight(int x, int y) {
-        float noise = 0;
+    @Override
+    public void generateHeights(@NotNull ChunkArea chunk, float @NotNull [] heights) {
+        int width = chunk.size().x();
+        int height = chunk.size().y();
+        Arrays.fill(heights, 0, width * height, 0);
         float persistence = 0.5f;
         float amplitude = 1;
         float lacunarity = 2;
         float frequency = 1 / 64f;
         float maxValue = 0;
         for (int octave = 0; octave < 6; octave++) {
-            noise += PerlinNoise.noise(x * frequency, y * frequency) * amplitude;
+            PerlinNoise.addNoise(heights, chunk.origin().x(), chunk.origin().y(), width, height, frequency, amplitude);
             maxValue += amplitude;
             amplitude *= persistence;
             frequency *= lacunarity;
         }
-        noise = (noise / maxValue) * 0.5f + 0.5f;
-        return Math.max(0.49f, noise);
+        for (int i = 0; i < width * height; i++) {
+            float noise = (heights[i] / maxValue) * 0.5f + 0.5f;
+            heights[i] = Math.max(0.49f, noise);
+        }
     }
 
     /**
      * Generate the expiration time for food sources.
      */
-    private int nextFoodExpireTime() {
+    private int nextFoodExpireTime(@NotNull RandomGenerator random) {
         int time = (int) random.nextGaussian(parameters.foodExpireTimeMean, parameters.foodExpireTimeVariance);
         time = Math.max(parameters.foodExpireTimeMin, time);
         return time;
@@ -98,15 +122,64 @@ public class SimpleFoodWorldGenerator extends WorldGenerator {
     }
 
     /**
-     * Creates a colony in a cell.
+     * Schedules the first food spawn of a newly populated chunk.
+     */
+    @Override
+    public void schedule(@NotNull ChunkArea chunk, int time) {
+        int chunkX = Chunk.toChunkX(chunk.origin().x());
+        int chunkY = Chunk.toChunkY(chunk.origin().y());
+        spawns.add(nextSpawnTime(chunkX, chunkY, chunk.size(), time), ChunkMap.key(chunkX, chunkY));
+    }
+
+    @Override
+    public int stateBytes() {
+        return spawns.bytes();
+    }
+
+    /**
+     * Writes the tick of the next food spawn of every chunk.
      */
     @Override
-    public void update(@NotNull ChunkView chunk, int time) {
-        // FIXME: The generated amount depends on the chunk size
-        float foodSpawnChance = 1.0f / parameters.foodExpireTimeMean;
-        if (hashToFloat(chunk.hashCode(), time) < foodSpawnChance) {
-            Vector pos = randomPosition(chunk);
+    public void writeState(@NotNull ByteBuffer out) {
+        spawns.writeTo(out);
+    }
+
+    @Override
+    public void readState(@NotNull ByteBuffer in) {
+        spawns.readFrom(in);
+    }
+
+    /**
+     * Spawns the food that is due in this tick and schedules the next spawn of every chunk that spawned food.
+     * Only the chunks with a spawn are visited, evicted chunks keep their place in the queue and are
+     * restored when their food is placed.
+     */
+    @Override
+    public void update(@NotNull World world, int time) {
+        while (spawns.hasDue(time)) {
+            long key = spawns.poll();
+            int chunkX = ChunkMap.keyX(key);
+            int chunkY = ChunkMap.keyY(key);
+            ChunkView chunk = world.chunkView(key);
+            Vector pos = randomPosition(chunk, derive(chunkX, chunkY, time));
             generateFood(chunk.get(pos.x, pos.y), 25);
+            spawns.add(nextSpawnTime(chunkX, chunkY, chunk.size(), time + 1), key);
         }
     }
+
+    /**
+     * Draws the first tick at or after {@code from} in which a chunk spawns food.
+     * Every tick the chunk spawns food with the same small chance, so the number of ticks until the next spawn
+     * is geometrically distributed and can be drawn at once instead of rolling the chance every tick.
+     * The chance is proportional to the area of the chunk, so the amount of food per cell doesn't depend on
+     * the chunk size. The draw only depends on the chunk and {@code from}, not on the order of the chunks.
+     */
+    private int nextSpawnTime(int chunkX, int chunkY, @NotNull IVector size, int from) {
+        double chance = (double) size.x() * size.y() / (FOOD_SPAWN_AREA * (double) parameters.foodExpireTimeMean);
+        if (chance >= 1) return from;
+        // inverse transform sampling of the geometric distribution, starting at 0
+        double uniform = derive(chunkX, chunkY, from, SPAWN_STREAM).nextDouble();
+        double ticks = Math.floor(Math.log1p(-uniform) / Math.log1p(-chance));
+        return (int) Math.min(from + ticks, Integer.MAX_VALUE);
+    }
 }
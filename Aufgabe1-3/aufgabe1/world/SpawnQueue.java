@@ -0,0 +1,114 @@
+package aufgabe1.world;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A time-ordered queue of chunk events, implemented as a binary min-heap over primitive arrays.
+ * Events are ordered by their tick and then by the key of their chunk (see {@link ChunkMap#key}),
+ * so events that are due in the same tick are always polled in the same order.
+ * Chunks are added by the threads that populate them, so all methods are synchronized.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural
+ */
+final class SpawnQueue {
+    private int[] times = new int[64];
+    private long[] keys = new long[64];
+    private int size;
+
+    /**
+     * Adds an event for a chunk at the given tick.
+     */
+    synchronized void add(int time, long key) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int index = size++;
+        // sift up
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(time, key, times[parent], keys[parent])) break;
+            times[index] = times[parent];
+            keys[index] = keys[parent];
+            index = parent;
+        }
+        times[index] = time;
+        keys[index] = key;
+    }
+
+    /**
+     * @return true if the earliest event is due at or before the given tick
+     */
+    synchronized boolean hasDue(int time) {
+        return size > 0 && times[0] <= time;
+    }
+
+    /**
+     * Removes the earliest event.
+     *
+     * @return the key of the event's chunk
+     */
+    synchronized long poll() {
+        if (size == 0) throw new IllegalStateException("Queue is empty");
+        long result = keys[0];
+        size--;
+        int time = times[size];
+        long key = keys[size];
+        int index = 0;
+        // sift down
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= size) break;
+            if (child + 1 < size && before(times[child + 1], keys[child + 1], times[child], keys[child])) child++;
+            if (!before(times[child], keys[child], time, key)) break;
+            times[index] = times[child];
+            keys[index] = keys[child];
+            index = child;
+        }
+        times[index] = time;
+        keys[index] = key;
+        return result;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes {@link #writeTo} writes
+     */
+    synchronized int bytes() {
+        return Integer.BYTES + size * (Integer.BYTES + Long.BYTES);
+    }
+
+    /**
+     * Writes the heap as it is, so a queue read from it polls the events in the same order.
+     */
+    synchronized void writeTo(ByteBuffer out) {
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.putInt(times[i]);
+            out.putLong(keys[i]);
+        }
+    }
+
+    /**
+     * Replaces all events with the ones written by {@link #writeTo}.
+     */
+    synchronized void readFrom(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0) throw new IllegalArgumentException("Invalid number of events " + count);
+        times = new int[Math.max(64, count)];
+        keys = new long[times.length];
+        for (int i = 0; i < count; i++) {
+            times[i] = in.getInt();
+            keys[i] = in.getLong();
+        }
+        size = count;
+    }
+
+    private static boolean before(int time, long key, int otherTime, long otherKey) {
+        return time < otherTime || (time == otherTime && key < otherKey);
+    }
+}
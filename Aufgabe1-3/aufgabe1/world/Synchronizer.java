@@ -1,11 +1,15 @@
 package aufgabe1.world;
 
+import aufgabe1.world.entity.Entity;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -13,23 +17,36 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Modularisierungseinheit: Klasse
  * STYLE: object-oriented and parallel
  */
-public class Synchronizer implements ThreadFactory {
-    private final ThreadLocal<Worker> localWorker = ThreadLocal.withInitial(Worker::new);
+public class Synchronizer implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Worker> localWorker = ThreadLocal.withInitial(this::newWorker);
 
     private final ChunkMap chunks;
     private final AtomicInteger workerId = new AtomicInteger();
     private final ThreadGroup group = new ThreadGroup("chunk-updaters");
     private final AtomicBoolean active = new AtomicBoolean(false);
+    // true while a double-buffered tick is running, chunks are not locked then
+    private volatile boolean buffered = false;
+    // incremented every tick, chunks may be evicted between ticks so the worker caches become invalid
+    private volatile int epoch = 0;
 
     public Synchronizer(ChunkMap chunks) {
         this.chunks = chunks;
     }
 
+    /**
+     * In double-buffered mode the chunk is not locked.
+     */
     @Nullable
     public Chunk getAndLockOrNull(int chunkX, int chunkY) {
-        Chunk chunk = chunks.getOrNull(chunkX, chunkY);
-        if (chunk == null) return null;
-        lock(chunk);
+        Worker worker = localWorker.get();
+        Chunk chunk = worker.cache.get(chunkX, chunkY, epoch);
+        if (chunk == null) {
+            chunk = chunks.getOrNull(chunkX, chunkY);
+            if (chunk == null) return null;
+            worker.cache.put(chunk);
+        }
+        if (!buffered) lock(chunk);
         return chunk;
     }
 
@@ -99,11 +116,17 @@ public class Synchronizer implements ThreadFactory {
 
     /**
      * The synchronizer should be active before calling this method.
+     * In double-buffered mode the chunk is not locked.
      */
     @NotNull
     public Chunk getAndLock(int chunkX, int chunkY) {
-        Chunk chunk = chunks.get(chunkX, chunkY);
-        lock(chunk);
+        Worker worker = localWorker.get();
+        Chunk chunk = worker.cache.get(chunkX, chunkY, epoch);
+        if (chunk == null) {
+            chunk = chunks.get(chunkX, chunkY);
+            worker.cache.put(chunk);
+        }
+        if (!buffered) lock(chunk);
         return chunk;
     }
 
@@ -160,10 +183,118 @@ public class Synchronizer implements ThreadFactory {
         worker.locks.clear();
     }
 
+    // STYLE: Parallel
+    // In double-buffered mode workers don't lock chunks. Instead, every worker declares the chunk
+    // it is processing and defers writes that would interfere with other workers to its outbox.
+    // The outboxes are applied by the updating thread once all workers are done.
+
+    /**
+     * Declares that the current worker processes the given chunk in a double-buffered tick.
+     */
+    public void enter(@NotNull Chunk chunk) {
+        localWorker.get().current = chunk;
+    }
+
+    /**
+     * Declares that the current worker finished processing its chunk.
+     */
+    public void leave() {
+        localWorker.get().current = null;
+    }
+
+    /**
+     * @return the outbox of the current worker if writes to cell occupancy have to be deferred, otherwise null
+     */
+    @Nullable
+    Outbox outbox() {
+        if (!buffered || !onWorkerThread()) return null;
+        return localWorker.get().outbox;
+    }
+
+    /**
+     * @return the outbox of the current worker if writes to the given chunk have to be deferred
+     * because it is not the chunk the worker is processing, otherwise null
+     */
+    @Nullable
+    Outbox outboxFor(@NotNull Chunk chunk) {
+        if (!buffered || !onWorkerThread()) return null;
+        Worker worker = localWorker.get();
+        if (worker.current == chunk) return null;
+        return worker.outbox;
+    }
+
+    /**
+     * Applies the deferred writes of all workers. The workers are applied in the order
+     * they were created.
+     * Must be called from the updating thread after all workers finished.
+     */
+    public void flushOutboxes() {
+        for (Worker worker : workers) {
+            worker.outbox.apply();
+        }
+    }
+
+    /**
+     * Records that an entity moved out of a chunk processed by the current worker, see {@link Migrations}.
+     */
+    void recordMigration(@NotNull Entity entity, @NotNull Chunk source) {
+        localWorker.get().migrations.add(entity, source);
+    }
+
+    /**
+     * @return the migration buffers of all workers in the order they were created
+     */
+    @NotNull
+    List<Migrations.Buffer> migrationBuffers() {
+        List<Migrations.Buffer> buffers = new ArrayList<>(workers.size());
+        for (Worker worker : workers) {
+            buffers.add(worker.migrations);
+        }
+        return buffers;
+    }
+
+    /**
+     * Adds time the current worker spent processing a chunk.
+     */
+    void addBusyTime(long nanos) {
+        localWorker.get().busyNanos += nanos;
+    }
+
+    /**
+     * Collects and resets the busy time of all workers.
+     * Must be called from the updating thread after all workers finished.
+     *
+     * @param tickNanos the wall time of the chunk phase
+     */
+    @NotNull
+    TickMetrics collectMetrics(long tickNanos) {
+        long[] busy = new long[workers.size()];
+        long hits = 0;
+        long lookups = 0;
+        for (int i = 0; i < busy.length; i++) {
+            Worker worker = workers.get(i);
+            busy[i] = worker.busyNanos;
+            worker.busyNanos = 0;
+            hits += worker.cache.hits;
+            lookups += worker.cache.lookups;
+            worker.cache.hits = 0;
+            worker.cache.lookups = 0;
+        }
+        return new TickMetrics(tickNanos, busy, hits, lookups);
+    }
+
+    @NotNull
+    private Worker newWorker() {
+        Worker worker = new Worker();
+        workers.add(worker);
+        return worker;
+    }
+
     @Override
     @NotNull
-    public Thread newThread(@NotNull Runnable r) {
-        Thread thread = new Thread(group, r, String.format("worker-%d", workerId.getAndIncrement()));
+    public ForkJoinWorkerThread newThread(@NotNull ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = new UpdaterThread(group, pool);
+        thread.setName(String.format("worker-%d", workerId.getAndIncrement()));
         thread.setPriority(Thread.MAX_PRIORITY);
         return thread;
     }
@@ -176,12 +307,15 @@ public class Synchronizer implements ThreadFactory {
         return Thread.currentThread().getThreadGroup() == group;
     }
 
-    public synchronized void begin() {
+    public synchronized void begin(@NotNull UpdateMode mode) {
+        buffered = mode == UpdateMode.DOUBLE_BUFFERED;
+        epoch++;
         active.set(true);
     }
 
     public synchronized void end() {
         active.set(false);
+        buffered = false;
         this.notifyAll();
     }
 
@@ -207,7 +341,16 @@ public class Synchronizer implements ThreadFactory {
 
     static class Worker {
         private final List<Chunk> locks = new ArrayList<>();
+        private final Outbox outbox = new Outbox();
+        // entities that left the chunks of this worker
+        private final Migrations.Buffer migrations = new Migrations.Buffer();
         private @Nullable Worker waits = null;
+        // the chunk that is processed in a double-buffered tick
+        private @Nullable Chunk current = null;
+        // time spent processing chunks since the last tick metrics were collected
+        private long busyNanos = 0;
+        // only used by the worker's thread, so it needs no synchronization
+        private final ChunkCache cache = new ChunkCache();
 
         public boolean isCyclicWait() {
             Worker current = this;
@@ -218,4 +361,61 @@ public class Synchronizer implements ThreadFactory {
             return false;
         }
     }
+
+    /**
+     * Remembers the chunks a worker used most recently, the most recent one first.
+     * Ants mostly look at cells of their own chunk and the chunks right next to it,
+     * so a few entries are enough to avoid most map lookups.
+     */
+    private static class ChunkCache {
+        private static final int SIZE = 4;
+        private final Chunk[] chunks = new Chunk[SIZE];
+        private int epoch = -1;
+        private long hits;
+        private long lookups;
+
+        /**
+         * @return the cached chunk or null if it isn't cached or the cache is from another tick
+         */
+        @Nullable
+        public Chunk get(int chunkX, int chunkY, int epoch) {
+            lookups++;
+            if (this.epoch != epoch) {
+                Arrays.fill(chunks, null);
+                this.epoch = epoch;
+                return null;
+            }
+            for (int i = 0; i < SIZE; i++) {
+                Chunk chunk = chunks[i];
+                if (chunk == null) return null;
+                if (chunk.chunkX() == chunkX && chunk.chunkY() == chunkY) {
+                    // move to the front
+                    System.arraycopy(chunks, 0, chunks, 1, i);
+                    chunks[0] = chunk;
+                    hits++;
+                    return chunk;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Caches a chunk as the most recent one, the least recent one is dropped.
+         * Chunks without complete neighbors are not cached since the map still has to populate them.
+         */
+        public void put(@NotNull Chunk chunk) {
+            if (!chunk.hasCompleteNeighbors()) return;
+            System.arraycopy(chunks, 0, chunks, 1, SIZE - 1);
+            chunks[0] = chunk;
+        }
+    }
+
+    /**
+     * Pool thread that belongs to the thread group of the synchronizer, see {@link #onWorkerThread()}.
+     */
+    private static class UpdaterThread extends ForkJoinWorkerThread {
+        private UpdaterThread(@NotNull ThreadGroup group, @NotNull ForkJoinPool pool) {
+            super(group, pool, true);
+        }
+    }
 }
@@ -0,0 +1,112 @@
+package aufgabe1.world;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Timing of the parallel chunk phase of one world tick.
+ * For every worker it records how long it was busy processing chunks, the rest of the tick it was idle.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented, immutable
+ */
+public final class TickMetrics {
+    public static final TickMetrics EMPTY = new TickMetrics(0, new long[0], 0, 0);
+
+    private final long tickNanos;
+    private final long @NotNull [] busyNanos;
+    private final long cacheHits;
+    private final long cacheLookups;
+
+    /**
+     * @param tickNanos    wall time of the chunk phase
+     * @param busyNanos    busy time of every worker, is copied
+     * @param cacheHits    chunk lookups of all workers that were answered by their chunk cache
+     * @param cacheLookups all chunk lookups of the workers
+     */
+    public TickMetrics(long tickNanos, long @NotNull [] busyNanos, long cacheHits, long cacheLookups) {
+        if (tickNanos < 0) throw new IllegalArgumentException("tickNanos must be positive");
+        if (cacheHits < 0 || cacheHits > cacheLookups) throw new IllegalArgumentException("cacheHits must be between 0 and cacheLookups");
+        this.tickNanos = tickNanos;
+        this.busyNanos = busyNanos.clone();
+        this.cacheHits = cacheHits;
+        this.cacheLookups = cacheLookups;
+    }
+
+    /**
+     * @return the wall time of the chunk phase in nanoseconds
+     */
+    @Contract(pure = true)
+    public long tickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * @return the number of workers that took part in the tick
+     */
+    @Contract(pure = true)
+    public int workers() {
+        return busyNanos.length;
+    }
+
+    @Contract(pure = true)
+    public long busyNanos(int worker) {
+        return busyNanos[worker];
+    }
+
+    /**
+     * @return the time the worker spent waiting for work, always >= 0
+     */
+    @Contract(pure = true)
+    public long idleNanos(int worker) {
+        return Math.max(0, tickNanos - busyNanos[worker]);
+    }
+
+    @Contract(pure = true)
+    public long totalIdleNanos() {
+        long total = 0;
+        for (int i = 0; i < busyNanos.length; i++) {
+            total += idleNanos(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return the share of the available worker time that was spent idle, between 0 and 1
+     */
+    @Contract(pure = true)
+    public double idleRatio() {
+        if (tickNanos == 0 || busyNanos.length == 0) return 0;
+        return (double) totalIdleNanos() / ((double) tickNanos * busyNanos.length);
+    }
+
+    @Contract(pure = true)
+    public long cacheHits() {
+        return cacheHits;
+    }
+
+    @Contract(pure = true)
+    public long cacheLookups() {
+        return cacheLookups;
+    }
+
+    /**
+     * @return the share of chunk lookups that were answered by the worker caches, between 0 and 1
+     */
+    @Contract(pure = true)
+    public double cacheHitRate() {
+        if (cacheLookups == 0) return 0;
+        return (double) cacheHits / cacheLookups;
+    }
+
+    @Override
+    public String toString() {
+        long[] idleMicros = new long[busyNanos.length];
+        for (int i = 0; i < idleMicros.length; i++) {
+            idleMicros[i] = idleNanos(i) / 1000;
+        }
+        return String.format("tick: %dus, idle: %.1f%%, idle per worker (us): %s, chunk cache hits: %.1f%%",
+            tickNanos / 1000, idleRatio() * 100, Arrays.toString(idleMicros), cacheHitRate() * 100);
+    }
+}
@@ -0,0 +1,25 @@
+package aufgabe1.world;
+
+/**
+ * Defines how the chunks of a world are updated in parallel.
+ */
+public enum UpdateMode {
+    /**
+     * Chunks are updated in batches and every chunk is locked by the {@link Synchronizer}
+     * when a worker accesses it.
+     */
+    LOCKING,
+    /**
+     * Every tick reads the scents and ant positions of the previous tick and writes into the next buffers,
+     * so no chunk locks are needed. Writes that cross into chunks processed by other workers are collected
+     * in per-worker {@link Outbox}es and applied at the end of the tick.
+     */
+    DOUBLE_BUFFERED,
+    /**
+     * Like {@link #LOCKING}, but every pair of chunks that could touch the same cells or the same colony is
+     * processed in a fixed order and the entities of a chunk are updated in a fixed order. Chunks reached
+     * by ants are populated at the end of the tick. Two runs with the same seed produce identical
+     * worlds regardless of the number of worker threads, at the cost of less parallelism.
+     */
+    DETERMINISTIC
+}
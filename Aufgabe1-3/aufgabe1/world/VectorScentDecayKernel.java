@@ -0,0 +1,42 @@
+package aufgabe1.world;
+
+import aufgabe1.world.entity.Scent;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decays scents with SIMD instructions using the incubating Vector API.
+ * Only loaded by {@link ScentDecayKernel#create()} if the module is available.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural
+ */
+final class VectorScentDecayKernel implements ScentDecayKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void decay(float @NotNull [] food, float @NotNull [] colony, float @NotNull [] avoid,
+                      float @NotNull [] outFood, float @NotNull [] outColony, float @NotNull [] outAvoid,
+                      float foodDecay, float colonyDecay, float avoidDecay) {
+        int upper = SPECIES.loopBound(food.length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector f = FloatVector.fromArray(SPECIES, food, i).mul(foodDecay);
+            FloatVector c = FloatVector.fromArray(SPECIES, colony, i).mul(colonyDecay);
+            FloatVector a = FloatVector.fromArray(SPECIES, avoid, i).mul(avoidDecay);
+
+            VectorMask<Float> empty = f.compare(VectorOperators.LT, Scent.NO_SCENT_THRESHOLD)
+                .and(c.compare(VectorOperators.LT, Scent.NO_SCENT_THRESHOLD))
+                .and(a.compare(VectorOperators.LT, Scent.NO_SCENT_THRESHOLD));
+
+            f.blend(0f, empty).intoArray(outFood, i);
+            c.blend(0f, empty).intoArray(outColony, i);
+            a.blend(0f, empty).intoArray(outAvoid, i);
+        }
+        // remaining elements that don't fill a whole vector
+        ScalarScentDecayKernel.decay(food, colony, avoid, outFood, outColony, outAvoid,
+            foodDecay, colonyDecay, avoidDecay, i, food.length);
+    }
+}
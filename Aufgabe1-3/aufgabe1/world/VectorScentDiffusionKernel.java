@@ -0,0 +1,71 @@
+package aufgabe1.world;
+
+import aufgabe1.world.entity.Scent;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Spreads scents with SIMD instructions using the incubating Vector API.
+ * The 9 cells of the stencil are read as 9 shifted vectors of the padded rows, so a row needs no gathering.
+ * Only loaded by {@link ScentDiffusionKernel#create()} if the module is available.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural
+ */
+final class VectorScentDiffusionKernel implements ScentDiffusionKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void diffuse(float @NotNull [] food, float @NotNull [] colony, float @NotNull [] avoid,
+                        float @NotNull [] outFood, float @NotNull [] outColony, float @NotNull [] outAvoid,
+                        int width, float rate, long @NotNull [] occupied) {
+        int stride = width + 2;
+        float keep = 1 - rate;
+        float share = rate / 8;
+        int upper = SPECIES.loopBound(width);
+        for (int y = 0; y < width; y++) {
+            int x = 0;
+            for (; x < upper; x += SPECIES.length()) {
+                int p = (y + 1) * stride + x + 1;
+                int i = y * width + x;
+                FloatVector f = spread(food, p, stride, keep, share);
+                FloatVector c = spread(colony, p, stride, keep, share);
+                FloatVector a = spread(avoid, p, stride, keep, share);
+
+                VectorMask<Float> empty = f.compare(VectorOperators.LT, Scent.NO_SCENT_THRESHOLD)
+                    .and(c.compare(VectorOperators.LT, Scent.NO_SCENT_THRESHOLD))
+                    .and(a.compare(VectorOperators.LT, Scent.NO_SCENT_THRESHOLD));
+
+                f.blend(0f, empty).intoArray(outFood, i);
+                c.blend(0f, empty).intoArray(outColony, i);
+                a.blend(0f, empty).intoArray(outAvoid, i);
+
+                long bits = empty.not().toLong();
+                if (bits != 0) {
+                    int bit = i & 63;
+                    occupied[i >>> 6] |= bits << bit;
+                    // the lanes may reach into the next word if the width isn't a multiple of the vector length
+                    if (bit + SPECIES.length() > 64) occupied[(i >>> 6) + 1] |= bits >>> (64 - bit);
+                }
+            }
+            // remaining cells of the row that don't fill a whole vector
+            ScalarScentDiffusionKernel.diffuse(food, colony, avoid, outFood, outColony, outAvoid,
+                width, rate, occupied, y, x, width);
+        }
+    }
+
+    @NotNull
+    private static FloatVector spread(float @NotNull [] values, int p, int stride, float keep, float share) {
+        FloatVector sum = FloatVector.fromArray(SPECIES, values, p - stride - 1)
+            .add(FloatVector.fromArray(SPECIES, values, p - stride))
+            .add(FloatVector.fromArray(SPECIES, values, p - stride + 1))
+            .add(FloatVector.fromArray(SPECIES, values, p - 1))
+            .add(FloatVector.fromArray(SPECIES, values, p + 1))
+            .add(FloatVector.fromArray(SPECIES, values, p + stride - 1))
+            .add(FloatVector.fromArray(SPECIES, values, p + stride))
+            .add(FloatVector.fromArray(SPECIES, values, p + stride + 1));
+        return FloatVector.fromArray(SPECIES, values, p).mul(keep).add(sum.mul(share));
+    }
+}
@@ -2,21 +2,23 @@ package aufgabe1.world;
 
 import aufgabe1.IVector;
 import aufgabe1.Simulation;
+import aufgabe1.Vector;
 import aufgabe1.world.entity.Ant;
+import aufgabe1.world.entity.AntTable;
 import aufgabe1.world.entity.Colony;
 import aufgabe1.world.entity.Entity;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.StreamSupport;
 
 /**
  * The world represents a wrapping 2D grid manages all elements of a simulation.
@@ -24,6 +26,8 @@ import java.util.stream.StreamSupport;
  * STYLE: object-oriented
  */
 public class World {
+    // the order in which the entities of one type are updated in deterministic mode
+    private static final Comparator<Entity> ENTITY_ORDER = Comparator.comparingLong(Entity::orderKey);
     private static final boolean DEBUG_ASYNC_CHECKS = false;
     private static final boolean DEBUG_SINGLE_THREADED = false;
     private final UUID uuid = UUID.randomUUID();
@@ -31,14 +35,43 @@ public class World {
     private final ChunkMap chunks;
     @NotNull
     private final WorldGenerator generator;
-    // There are few colonies so a list is faster than a set probably
+    // There are few colonies so a list is faster than a set probably.
+    // Colonies are rarely added, so the viewer can iterate a copy-on-write list while the world changes.
     @NotNull
-    private final List<Colony> colonies = new ArrayList<>();
+    private final CopyOnWriteArrayList<Colony> colonies = new CopyOnWriteArrayList<>();
+    // Maps the compact colony ids used by the chunk scent fields to colonies.
+    // Ids are never reused, so the scents of a removed colony simply decay.
     @NotNull
-    private final ExecutorService executor;
+    private final List<Colony> colonyIds = new ArrayList<>();
+    @NotNull
+    private final ForkJoinPool pool;
     @NotNull
     private final Synchronizer synchronizer;
+    @NotNull
+    private final ChunkScheduler scheduler;
+    @NotNull
+    private final Migrations migrations;
+    @NotNull
+    private final ScentDiffusion diffusion;
+    @NotNull
+    private final KeyedChunk chunkView = new KeyedChunk(this);
+    // STYLE: Parallel
+    // Live totals of the tracked colonies, reported by the colonies whenever ants spawn or die and food changes.
+    // Reading them neither visits the colonies nor locks anything the workers use.
+    @NotNull
+    private final LongAdder antTotal = new LongAdder();
+    @NotNull
+    private final DoubleAdder colonyFoodTotal = new DoubleAdder();
+    @NotNull
+    private volatile TickMetrics metrics = TickMetrics.EMPTY;
     private final ReentrantLock lock = new ReentrantLock(true);
+    // true while the updating thread holds the lock for the tick
+    private volatile boolean ticking;
+    @NotNull
+    private volatile UpdateMode updateMode = UpdateMode.LOCKING;
+    // saves the changed chunks in the background every few ticks, null if the world isn't checkpointed
+    @Nullable
+    private volatile CheckpointLog checkpoints;
     @Nullable
     private Simulation simulation;
     @NotNull
@@ -46,17 +79,38 @@ public class World {
     private int time;
 
     public World(@NotNull WorldGenerator generator, @NotNull WorldParameters parameters) {
+        this(generator, parameters, defaultThreads());
+    }
+
+    /**
+     * @param threads the number of worker threads that update the chunks, must be positive
+     */
+    public World(@NotNull WorldGenerator generator, @NotNull WorldParameters parameters, int threads) {
         Objects.requireNonNull(parameters);
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive");
         this.parameters = parameters;
         this.chunks = new ChunkMap(this, generator, 7);
         this.generator = generator;
         this.synchronizer = new Synchronizer(this.chunks);
-        if (DEBUG_SINGLE_THREADED) {
-            this.executor = Executors.newSingleThreadExecutor(synchronizer);
-        } else {
-            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
-            this.executor = Executors.newFixedThreadPool(threads, synchronizer);
-        }
+        this.pool = new ForkJoinPool(threads, synchronizer, null, false);
+        this.scheduler = new ChunkScheduler(pool, synchronizer);
+        this.migrations = new Migrations(pool, chunks);
+        this.diffusion = new ScentDiffusion(scheduler, chunks);
+    }
+
+    /**
+     * @return the number of worker threads used if none is specified, leaves two processors for the main and UI thread
+     */
+    public static int defaultThreads() {
+        return DEBUG_SINGLE_THREADED ? 1 : Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+    }
+
+    /**
+     * @return the number of worker threads that update the chunks
+     */
+    @Contract(pure = true)
+    public int threads() {
+        return pool.getParallelism();
     }
 
     /**
@@ -64,29 +118,87 @@ public class World {
      */
     public void close() {
         synchronizer.waitUntilDone();
-        executor.shutdown();
+        // the pending checkpoint still needs the chunks
+        CheckpointLog checkpoints = this.checkpoints;
+        if (checkpoints != null) checkpoints.close();
+        pool.shutdown();
         try {
-            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-                System.err.println("Executor did not shut down within 5 seconds");
-                executor.shutdownNow();
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                System.err.println("Pool did not shut down within 5 seconds");
+                pool.shutdownNow();
             }
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
-        executor.close();
+        pool.close();
+        chunks.close();
     }
 
     /**
      * Updates the world by processing ants, colonies and cells.
      */
     public void update() {
-        // entities that moved into another chunk
-        List<Map.Entry<Entity, Chunk>> trackInvalid = new ArrayList<>();
+        Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
+        lock.lock();
+        ticking = true;
+        UpdateMode mode = updateMode;
+        synchronizer.begin(mode);
+        long start = System.nanoTime();
+        // a failed chunk is thrown once all workers are done, the world is unlocked anyway
+        try {
+            try {
+                switch (mode) {
+                    case LOCKING -> updateLocking(false);
+                    case DOUBLE_BUFFERED -> updateBuffered();
+                    case DETERMINISTIC -> updateLocking(true);
+                }
+                if (parameters.scentDiffusion > 0) {
+                    // STYLE: Parallel
+                    // Runs after the chunks are done in every mode, so the scents of all chunks belong to the same tick
+                    diffusion.run(chunks.snapshot(), parameters.scentDiffusion);
+                }
+                metrics = synchronizer.collectMetrics(System.nanoTime() - start);
+            } finally {
+                synchronizer.end();
+            }
+            updateAntTables();
+            // Track entities in their new chunks. The workers recorded them in their own buffers,
+            // the buffers are drained in parallel while the world is still locked.
+            migrations.drain(synchronizer.migrationBuffers());
+        } finally {
+            ticking = false;
+            lock.unlock();
+        }
+
+        // Chunks that were reached by ants during the tick, their terrain has been generated in the background
+        chunks.populateDeferred();
 
+        this.generator.setLocked(true);
+        // only the chunks that spawn food in this tick are visited, in a fixed order
+        this.generator.update(this, time);
+        this.generator.setLocked(false);
+
+        lock.lock();
+        chunks.evictIdle(time);
+        time++;
+        // copies the chunks that changed, they are written in the background
+        CheckpointLog checkpoints = this.checkpoints;
+        if (checkpoints != null) checkpoints.tick(this);
+        lock.unlock();
+    }
+
+    /**
+     * Updates all chunks while locking the chunks that are accessed.
+     *
+     * @param deterministic if true the entities of a chunk are sorted, see {@link UpdateMode#DETERMINISTIC}
+     */
+    private void updateLocking(boolean deterministic) {
         // STYLE: Parallel
         // Chunks are updated in parallel for a major performance boost
-        // They are split up into 9 batches to reduce interference and stalling.
-        // A deadlock condition detection is used to prevent deadlocks at the
+        // They are coloured with 25 colours so workers never lock the same chunk: the ChunkScheduler starts
+        // a chunk as soon as the chunks up to two chunks away with a lower colour are done, so chunks
+        // whose neighbours overlap are never processed at the same time and there is no barrier between the colours.
+        // A deadlock condition detection remains as a safeguard, it would prevent deadlocks at the
         // cost of having a low chance for undefined behavior.
         // The Synchronizer class is responsible for managing thread chunk access.
         // Chunks are locked "automagically" when they are accessed by a thread to avoid
@@ -95,113 +207,141 @@ public class World {
         // until the update is finished. The world can be locked for exclusive access to the chunks. This will
         // delay the next update until the world is unlocked again.
         // More info in can be found in the Visualization class
-        Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
-        lock.lock();
-        synchronizer.begin();
-        for (List<Chunk> batch : chunks.batches()) {
+        boolean completed = scheduler.run(chunks.snapshot(), ChunkScheduler.SEPARATED, chunk -> {
+            // Chunks without awake cells and entities have nothing to update
+            if (chunk.isIdle()) return;
+            chunk.setLastActive(time);
             try {
-                // work completion counter
-                AtomicInteger todo = new AtomicInteger(batch.size());
-
-                //noinspection ForLoopReplaceableByForEach
-                for (int i = 0; i < batch.size(); i++) {
-                    final Chunk chunk = batch.get(i);
-                    executor.execute(() -> {
-                        try {
-                            synchronizer.lockFirst(chunk);
-                            for (Entity entity : chunk.entities()) {
-                                int chunkXBefore = Chunk.toChunkX(entity.position().x());
-                                int chunkYBefore = Chunk.toChunkY(entity.position().y());
-                                //GOOD: Dynamic binding: The actual implementation is chosen at runtime
-                                entity.update();
-                                int chunkXAfter = Chunk.toChunkX(entity.position().x());
-                                int chunkYAfter = Chunk.toChunkY(entity.position().y());
-                                boolean moved = chunkXBefore != chunkXAfter || chunkYBefore != chunkYAfter;
-                                if (moved && chunk.isTracking(entity)) {
-                                    synchronized (trackInvalid) {
-                                        trackInvalid.add(Map.entry(entity, chunk));
-                                    }
-                                }
-                            }
-
-                            // Suspended chunks don't need to update their cells and can be skipped
-                            if (chunk.suspendState() == SuspendState.AWAKE) {
-                                Cell[] cells = chunk.cells();
-                                SuspendState[] states = chunk.cellStates();
-                                boolean noUpdates = true;
-                                for (int j = 0; j < cells.length; j++) {
-                                    if (states[j] == SuspendState.SUSPENDED) continue;
-
-                                    Cell cell = cells[j];
-                                    cell.update();
-                                    noUpdates = false;
-                                }
-                                if (noUpdates) {
-                                    chunk.suspend();
-                                }
-                            }
-                        } finally {
-                            synchronizer.releaseAll();
-                            synchronized (todo) {
-                                if (todo.decrementAndGet() == 0) {
-                                    // notify other threads that the work is complete
-                                    todo.notifyAll();
-                                }
-                            }
-                        }
-                    });
+                synchronizer.lockFirst(chunk);
+                updateEntities(chunk, deterministic);
+
+                // Suspended chunks don't need to update their cells and can be skipped
+                if (chunk.suspendState() == SuspendState.AWAKE) {
+                    chunk.updateCells(parameters);
                 }
+            } finally {
+                synchronizer.releaseAll();
+            }
+        });
 
-                synchronized (todo) {
-                    if (todo.get() > 0) {
-                        // wait until all work has been completed
-                        todo.wait();
-                    }
+        if (completed && DEBUG_ASYNC_CHECKS) {
+            for (Chunk chunk : chunks) {
+                if (chunk == null) continue;
+                if (chunk.getOwner() != null || chunk.mutex.isLocked()) {
+                    throw new IllegalStateException("Chunk was not unlocked");
                 }
-            } catch (RejectedExecutionException e) {
-                // executor has been shut down
-                break;
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
             }
+        }
+    }
 
-            if (DEBUG_ASYNC_CHECKS) {
-                for (Chunk chunk : chunks) {
-                    if (chunk == null) continue;
-                    if (chunk.getOwner() != null || chunk.mutex.isLocked()) {
-                        throw new IllegalStateException("Chunk was not unlocked");
-                    }
+    /**
+     * Updates all chunks at once without locking.
+     */
+    private void updateBuffered() {
+        // STYLE: Parallel
+        // Every chunk is processed by exactly one worker. Scents are read from the buffers of the
+        // previous tick and written into the next buffers, ant occupancy of cells stays as it was
+        // at the end of the previous tick. Writes into chunks of other workers are collected in
+        // per-worker outboxes and applied once all workers are done, so no chunk needs to be locked.
+        List<Chunk> all = chunks.snapshot();
+        boolean completed = scheduler.run(all, ChunkScheduler.UNORDERED, chunk -> {
+            // an idle chunk has no scents left, so it doesn't need to be prepared
+            if (chunk.isIdle()) return;
+            chunk.setLastActive(time);
+            synchronizer.enter(chunk);
+            try {
+                chunk.prepareScents(parameters);
+                updateEntities(chunk, false);
+                if (chunk.suspendState() == SuspendState.AWAKE) {
+                    chunk.suspendEmptyCells();
                 }
+            } finally {
+                synchronizer.leave();
             }
+        });
+        if (!completed) return;
 
+        synchronizer.flushOutboxes();
+        for (Chunk chunk : all) {
+            chunk.swapScents();
         }
-        synchronizer.end();
-        lock.unlock();
+    }
 
-        // FIXME: At small chunk sizes ConcurrentModificationException occurs
-        // Track entities in their new chunks
-        for (Map.Entry<Entity, Chunk> entry : trackInvalid) {
-            Entity entity = entry.getKey();
-            entry.getValue().untrack(entity);
-            Chunk next = chunks.getOrNull(Chunk.toChunkX(entity.position().x()), Chunk.toChunkY(entity.position().y()));
-            if (next == null) throw new IllegalStateException("Chunk was null");
-            next.track(entity);
+    /**
+     * Updates the ant tables of the colonies, see {@link AntTable}.
+     * The rows are updated one after another on this thread once the workers are done, so the cells can be
+     * accessed without locking and the result doesn't depend on the number of workers.
+     */
+    private void updateAntTables() {
+        for (int i = 0; i < colonies.size(); i++) {
+            AntTable table = colonies.get(i).antTable();
+            if (table == null) continue;
+            int before = table.size();
+            table.update();
+            // dead rows are removed by the table itself
+            antTotal.add(table.size() - before);
         }
+    }
 
-        this.generator.setLocked(true);
-        for (Chunk chunk : chunks) {
-            if (chunk == null || !chunk.populated()) continue;
-            this.generator.update(chunk, time);
+    /**
+     * Updates the entities of a chunk and remembers the ones that moved into another chunk.
+     * Ants are updated first, then colonies and food sources.
+     *
+     * @param sorted if true the entities of each type are updated in the order of {@link #ENTITY_ORDER}
+     */
+    private void updateEntities(@NotNull Chunk chunk, boolean sorted) {
+        updateEntities(chunk, chunk.ants(), sorted);
+        updateEntities(chunk, chunk.colonies(), sorted);
+        updateEntities(chunk, chunk.foodSources(), sorted);
+    }
+
+    /**
+     * Entities that are added meanwhile are not updated, entities that are removed meanwhile are skipped.
+     */
+    private <T extends Entity> void updateEntities(@NotNull Chunk chunk, @NotNull EntityList<T> entities, boolean sorted) {
+        if (entities.size() == 0) return;
+        if (sorted) entities.sort(ENTITY_ORDER);
+        entities.beginIteration();
+        try {
+            for (int i = 0, size = entities.size(); i < size; i++) {
+                T entity = entities.get(i);
+                if (entity == null) continue;
+                updateEntity(chunk, entity);
+            }
+        } finally {
+            entities.endIteration();
         }
-        this.generator.setLocked(false);
+    }
 
-        time++;
+    private void updateEntity(@NotNull Chunk chunk, @NotNull Entity entity) {
+        int chunkXBefore = Chunk.toChunkX(entity.position().x());
+        int chunkYBefore = Chunk.toChunkY(entity.position().y());
+        //GOOD: Dynamic binding: The actual implementation is chosen at runtime
+        entity.update();
+        int chunkXAfter = Chunk.toChunkX(entity.position().x());
+        int chunkYAfter = Chunk.toChunkY(entity.position().y());
+        boolean moved = chunkXBefore != chunkXAfter || chunkYBefore != chunkYAfter;
+        if (moved && chunk.isTracking(entity)) {
+            synchronizer.recordMigration(entity, chunk);
+        }
     }
 
     public int time() {
         return time;
     }
 
+    /**
+     * Sets the tick of a world that is restored from a snapshot, before any chunk is created.
+     */
+    void setTime(int time) {
+        this.time = time;
+    }
+
+    @NotNull
+    ChunkMap chunks() {
+        return chunks;
+    }
+
     public boolean isNight() {
         return !isDay();
     }
@@ -264,18 +404,39 @@ public class World {
         Chunk chunk = getInternal(Chunk.toChunkX(entity.position().x()), Chunk.toChunkY(entity.position().y()));
         chunk.track(entity);
 
-        if (entity instanceof Colony colony && !colonies.contains(colony)) {
-            colonies.add(colony);
+        if (entity instanceof Colony colony && colonies.addIfAbsent(colony)) {
+            registerColony(colony);
+            colony.setCounted(true);
         }
     }
 
+    /**
+     * Assigns the next compact id to a colony unless it already has one.
+     */
+    private synchronized void registerColony(@NotNull Colony colony) {
+        if (colony.id() >= 0) return;
+        colony.setId(colonyIds.size());
+        colonyIds.add(colony);
+    }
+
+    /**
+     * Gets the compact id of a colony, which is used as a slot index for the scents stored in chunks.
+     *
+     * @throws IllegalStateException if the colony is not tracked by this world
+     */
+    public int colonyId(@NotNull Colony colony) {
+        int id = colony.id();
+        if (id < 0) throw new IllegalStateException("Colony is not tracked by the world");
+        return id;
+    }
+
     public void untrack(@NotNull Entity entity) {
         Chunk chunk = getOrNullInternal(Chunk.toChunkX(entity.position().x()), Chunk.toChunkY(entity.position().y()));
         if (chunk != null) {
             chunk.untrack(entity);
         }
-        if (entity instanceof Colony colony) {
-            colonies.remove(colony);
+        if (entity instanceof Colony colony && colonies.remove(colony)) {
+            colony.setCounted(false);
         }
     }
 
@@ -298,6 +459,76 @@ public class World {
         return parameters;
     }
 
+    /**
+     * @return the timing of the chunk phase of the last tick
+     */
+    @NotNull
+    public TickMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the counters of the chunk map, including evictions to region files
+     */
+    @NotNull
+    public ChunkStats chunkStats() {
+        return chunks.stats();
+    }
+
+    /**
+     * Sets how many chunks may stay in memory before idle chunks are evicted to region files.
+     */
+    public void setResidentChunkBudget(int budget) {
+        chunks.setResidentBudget(budget);
+    }
+
+    @NotNull
+    public UpdateMode updateMode() {
+        return updateMode;
+    }
+
+    /**
+     * Saves the world incrementally to a checkpoint log from now on, see {@link CheckpointLog}.
+     * The first checkpoint contains every chunk. The log is closed together with the world.
+     *
+     * @param checkpoints null to stop checkpointing, the previous log is not closed
+     */
+    public void setCheckpointLog(@Nullable CheckpointLog checkpoints) {
+        if (!lock(5000)) throw new IllegalStateException("Could not lock the world");
+        try {
+            chunks.trackRemovals(checkpoints != null);
+            if (checkpoints != null) checkpoints.attach(this);
+            this.checkpoints = checkpoints;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Nullable
+    public CheckpointLog checkpointLog() {
+        return checkpoints;
+    }
+
+    /**
+     * Sets how the chunks are updated. The mode is applied from the next tick on.
+     */
+    public void setUpdateMode(@NotNull UpdateMode updateMode) {
+        Objects.requireNonNull(updateMode);
+        this.updateMode = updateMode;
+    }
+
+    @NotNull
+    Synchronizer synchronizer() {
+        return synchronizer;
+    }
+
+    /**
+     * @return true if the current thread updates the world and the tick isn't over yet
+     */
+    boolean tickingOnCurrentThread() {
+        return ticking && lock.isHeldByCurrentThread();
+    }
+
     @SuppressWarnings("unused")
     public void setParameters(@NotNull WorldParameters parameters) {
         Objects.requireNonNull(parameters);
@@ -320,20 +551,27 @@ public class World {
     }
 
     //STYLE: functional
+    /**
+     * @return the food of all colonies, a live total that is O(1) to read
+     */
     public float totalColonyFood() {
-        return StreamSupport.stream(chunks.spliterator(), false).filter(Objects::nonNull)
-            .flatMap(chunk -> chunk.entities().stream()).filter(Colony.class::isInstance)
-            .map(Colony.class::cast)
-            .map(Colony::food).reduce(0f, Float::sum);
+        // the rounding errors of the added and removed amounts must not show up as negative food
+        return (float) Math.max(0, colonyFoodTotal.sum());
     }
 
-    //STYLE: functional
+    /**
+     * @return the ants of all colonies including their ant tables, a live total that is O(1) to read
+     */
     public int totalAnts() {
-        return StreamSupport.stream(chunks.spliterator(), false).filter(Objects::nonNull)
-            .flatMap(chunk -> chunk.entities().stream()).filter(Colony.class::isInstance)
-            .map(Colony.class::cast)
-            .map(Colony::ants).map(Set::size)
-            .reduce(0, Integer::sum);
+        return (int) antTotal.sum();
+    }
+
+    /**
+     * Adjusts the live totals. Called by the tracked colonies when their ants or food change.
+     */
+    public void addToTotals(int ants, float food) {
+        if (ants != 0) antTotal.add(ants);
+        if (food != 0) colonyFoodTotal.add(food);
     }
 
 
@@ -377,4 +615,63 @@ public class World {
         if (chunk == null) throw new IllegalStateException("Chunk was null");
         chunk.suspend(x, y);
     }
+
+    /**
+     * Returns a view of the chunk with the given key, see {@link ChunkMap#key}, for the generator.
+     * The view is reused by the next call. It doesn't restore an evicted chunk until one of its cells is looked up.
+     */
+    @NotNull
+    ChunkView chunkView(long key) {
+        chunkView.setPosition(key);
+        return chunkView;
+    }
+
+    /**
+     * Stands in for a resident or evicted chunk when the generator updates the world.
+     * Looking up a cell restores an evicted chunk.
+     */
+    private static class KeyedChunk implements ChunkView {
+        private static final IVector SIZE = new Vector(Chunk.CHUNK_SIZE, Chunk.CHUNK_SIZE);
+        @NotNull
+        private final World world;
+        @NotNull
+        private final Vector origin = new Vector(0, 0);
+        private long position;
+
+        private KeyedChunk(@NotNull World world) {
+            this.world = world;
+        }
+
+        private void setPosition(long position) {
+            this.position = position;
+            origin.x = ChunkMap.keyX(position) * Chunk.CHUNK_SIZE;
+            origin.y = ChunkMap.keyY(position) * Chunk.CHUNK_SIZE;
+        }
+
+        @Override
+        @NotNull
+        public Cell get(int x, int y) {
+            return world.get(x, y);
+        }
+
+        @Override
+        public IVector origin() {
+            return origin;
+        }
+
+        @Override
+        public IVector size() {
+            return SIZE;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(position);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof KeyedChunk other && other.position == position;
+        }
+    }
 }
@@ -7,13 +7,15 @@ import aufgabe1.world.entity.AntParameters;
 import aufgabe1.world.entity.Colony;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.random.RandomGenerator;
 
 /**
  * Represents an abstraction of the generation of the content of the world.
  * STYLE: This class follows the object-oriented programming paradigm, because it is an abstraction of methods like
- * generateFood, update, createColony etc. It also consists of a subtyping class ChunkView.
+ * generateFood, update, createColony etc. It also consists of a subtyping class ChunkView and its narrower ChunkArea.
  */
 public abstract class WorldGenerator {
 
@@ -41,6 +43,10 @@ public abstract class WorldGenerator {
         random = randoms.newRandom(seed);
     }
 
+    public int seed() {
+        return seed;
+    }
+
     /**
      * While the generator is locked, no chunks will be populated
      */
@@ -52,17 +58,66 @@ public abstract class WorldGenerator {
         return locked;
     }
 
-    public abstract void generate(@NotNull Cell cell);
+    /**
+     * Generates the contents of the cells of a chunk once its heights are set.
+     */
+    public abstract void generate(@NotNull ChunkView chunk);
+
+    /**
+     * Generates the heights of all cells of a chunk in one pass.
+     * Called by the background generation threads, so it must only depend on the origin and size of the chunk.
+     *
+     * @param heights receives the height of every cell by cell index, {@code dx + dy * size.x()}
+     */
+    public abstract void generateHeights(@NotNull ChunkArea chunk, float @NotNull [] heights);
 
     public abstract void generateFood(@NotNull Cell center, float amount);
 
     @NotNull
     public abstract Colony createColony(@NotNull Cell center, @NotNull Colony.Parameters colonyParameters, @NotNull AntParameters antSpawnParameters);
 
-    public abstract void update(ChunkView chunk, int time);
+    /**
+     * Called once after a chunk has been populated, so the generator can schedule the chunk's future updates.
+     * May be called by several threads at once.
+     *
+     * @param time the tick in which the chunk was populated
+     */
+    public abstract void schedule(@NotNull ChunkArea chunk, int time);
+
+    /**
+     * @return the number of bytes {@link #writeState} writes
+     */
+    public int stateBytes() {
+        return 0;
+    }
+
+    /**
+     * Writes the scheduled updates for a snapshot. Called while the world is locked.
+     * A generator without state writes nothing.
+     */
+    public void writeState(@NotNull ByteBuffer out) {
+    }
+
+    /**
+     * Replaces the scheduled updates with the ones written by {@link #writeState}. A restored world calls this
+     * instead of {@link #schedule} for its chunks.
+     */
+    public void readState(@NotNull ByteBuffer in) {
+    }
+
+    /**
+     * Runs the updates that are due in the given tick. Called by the updating thread at the end
+     * of every tick while the generator is locked.
+     */
+    public abstract void update(@NotNull World world, int time);
+
+    @NotNull
+    protected Vector randomPosition(@NotNull ChunkArea chunk) {
+        return randomPosition(chunk, random);
+    }
 
     @NotNull
-    protected Vector randomPosition(@NotNull ChunkView chunk) {
+    protected Vector randomPosition(@NotNull ChunkArea chunk, @NotNull RandomGenerator random) {
         IVector size = chunk.size();
         int dx = random.nextInt(size.x());
         int dy = random.nextInt(size.y());
@@ -70,6 +125,18 @@ public abstract class WorldGenerator {
         return new Vector(chunk.origin()).add(dx, dy);
     }
 
+    /**
+     * Creates a random stream that only depends on the seed and the given keys,
+     * see {@link Randoms#derive}. Used so generating content doesn't depend on the order
+     * in which chunks are generated or updated.
+     */
+    @NotNull
+    protected RandomGenerator derive(long @NotNull ... keys) {
+        long[] seeded = Arrays.copyOf(keys, keys.length + 1);
+        seeded[keys.length] = seed;
+        return randoms.derive(seeded);
+    }
+
     protected float hashToFloat(int... values) {
         int hash = hash(values);
 
@@ -1,5 +1,7 @@
 package aufgabe1.world;
 
+import org.jetbrains.annotations.NotNull;
+
 /**
  * Modularisierungseinheit: Klasse
  * STYLE: object-oriented
@@ -8,9 +10,29 @@ public class WorldParameters {
     public float foodDecay;
     public float colonyDecay;
     public float avoidDecay;
+    // the share of its scent a cell passes on to its 8 neighbours every tick, 0 disables the diffusion
+    public float scentDiffusion;
     public int dayNightCycleTime;
     public float dayPercentage;
     public int foodExpireTimeMean;
     public int foodExpireTimeVariance;
     public int foodExpireTimeMin;
+
+    public WorldParameters() {
+    }
+
+    /**
+     * Copy constructor, e.g. for the viewer, which edits a copy and hands it to the simulation.
+     */
+    public WorldParameters(@NotNull WorldParameters other) {
+        this.foodDecay = other.foodDecay;
+        this.colonyDecay = other.colonyDecay;
+        this.avoidDecay = other.avoidDecay;
+        this.scentDiffusion = other.scentDiffusion;
+        this.dayNightCycleTime = other.dayNightCycleTime;
+        this.dayPercentage = other.dayPercentage;
+        this.foodExpireTimeMean = other.foodExpireTimeMean;
+        this.foodExpireTimeVariance = other.foodExpireTimeVariance;
+        this.foodExpireTimeMin = other.foodExpireTimeMin;
+    }
 }
@@ -0,0 +1,709 @@
+package aufgabe1.world;
+
+import aufgabe1.Direction;
+import aufgabe1.MixRandom;
+import aufgabe1.Simulation;
+import aufgabe1.world.entity.Ant;
+import aufgabe1.world.entity.AntParameters;
+import aufgabe1.world.entity.AntTable;
+import aufgabe1.world.entity.Colony;
+import aufgabe1.world.entity.FoodSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Saves a whole world into a binary file and restores it, so a long run can be resumed.
+ * Unlike {@link Simulation#saveWorldData()} it contains the chunks with their terrain and scents, the food sources,
+ * the colonies and all ants.
+ * <br>
+ * Layout of version {@value #VERSION}, all numbers are little endian:
+ * <ol>
+ *     <li>header: magic number, version, flags and chunk size</li>
+ *     <li>state: tick, terrain seed, the world parameters, the state of the generator and the colonies with their
+ *     id, position, food, random stream, parameters, ant spawn parameters and the rows of their ant table</li>
+ *     <li>index: number of chunks, then position, offset, length and uncompressed length of every block</li>
+ *     <li>one block per chunk: terrain, awake cells, scents, colony cells, food sources and ants</li>
+ * </ol>
+ * The state and the blocks are also the records of a {@link CheckpointLog}.
+ * The chunks are encoded and decoded in parallel and each block is deflated on its own if compression is enabled.
+ * The file is written with one gathering write and read through a memory mapping, so an uncompressed block
+ * is copied straight from the mapping into the arrays of its chunk.
+ * <br>
+ * Everything that changes during a run is restored exactly: the random streams of ants and colonies are
+ * {@link MixRandom}s, whose state is saved with the behaviours of the ants, and the generator saves its scheduled
+ * food spawns. With {@link UpdateMode#DETERMINISTIC} a resumed run is therefore the same run as the one that
+ * was saved.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural, because the world is copied to and from flat buffers
+ */
+public final class WorldSnapshot {
+    // "ANTS"
+    private static final int MAGIC = 0x414E5453;
+    private static final int VERSION = 2;
+    // flags of the header
+    private static final int COMPRESSED = 1;
+    // flags of a chunk block
+    private static final byte POPULATED = 1;
+    private static final byte COMPLETE_NEIGHBOURS = 2;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    // chunkX, chunkY, offset, length, uncompressed length
+    private static final int INDEX_BYTES = 2 * Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+    // chunkX, chunkY, order key, colony id, direction
+    private static final int ANT_BYTES = 2 * Integer.BYTES + Long.BYTES + Integer.BYTES + Byte.BYTES;
+    private static final int[] KINDS = {ScentField.FOOD, ScentField.COLONY, ScentField.AVOID};
+    private static final ClassValue<List<Field>> FIELDS = new ClassValue<>() {
+        @Override
+        protected List<Field> computeValue(@NotNull Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Field field : type.getFields()) {
+                if (Modifier.isStatic(field.getModifiers())) continue;
+                if (field.getType() == int.class || field.getType() == float.class) fields.add(field);
+            }
+            fields.sort(Comparator.comparing(Field::getName));
+            return List.copyOf(fields);
+        }
+    };
+
+    private WorldSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the world. The file is written next to the target first and then moved,
+     * so an existing snapshot stays intact if writing fails.
+     * Must not be called while the world is updated, see {@link World#lock(long)}.
+     *
+     * @param compress true to deflate the chunk blocks, which makes the file much smaller but slower to write
+     */
+    public static void write(@NotNull World world, @NotNull Path file, boolean compress) throws IOException {
+        ChunkMap chunks = world.chunks();
+        // blocks are sorted by chunk key, so the file doesn't depend on which chunks happen to be evicted
+        Map<Long, Chunk> resident = new HashMap<>();
+        for (Chunk chunk : chunks.snapshot()) {
+            resident.put(ChunkMap.key(chunk.chunkX(), chunk.chunkY()), chunk);
+        }
+        long[] evicted = chunks.evictedKeys();
+        long[] keys = LongStream.concat(resident.keySet().stream().mapToLong(Long::longValue), Arrays.stream(evicted))
+            .sorted().toArray();
+
+        int count = keys.length;
+        int[] rawLengths = new int[count];
+        ByteBuffer[] blocks = IntStream.range(0, count).parallel().mapToObj(i -> {
+            Chunk chunk = resident.get(keys[i]);
+            ByteBuffer raw = encode(chunk != null ? capture(chunk) : captureEvicted(chunks, keys[i]));
+            rawLengths[i] = raw.remaining();
+            return compress ? deflate(raw) : raw;
+        }).toArray(ByteBuffer[]::new);
+
+        ByteBuffer state = captureState(world);
+        int headBytes = HEADER_BYTES + state.remaining() + Integer.BYTES + count * INDEX_BYTES;
+        ByteBuffer head = ByteBuffer.allocate(headBytes).order(ByteOrder.LITTLE_ENDIAN);
+        head.putInt(MAGIC);
+        head.putInt(VERSION);
+        head.putInt(compress ? COMPRESSED : 0);
+        head.putInt(Chunk.CHUNK_SIZE);
+        head.put(state);
+        head.putInt(count);
+        long offset = headBytes;
+        for (int i = 0; i < count; i++) {
+            head.putInt(ChunkMap.keyX(keys[i]));
+            head.putInt(ChunkMap.keyY(keys[i]));
+            head.putLong(offset);
+            head.putInt(blocks[i].remaining());
+            head.putInt(rawLengths[i]);
+            offset += blocks[i].remaining();
+        }
+        head.flip();
+
+        ByteBuffer[] all = new ByteBuffer[count + 1];
+        all[0] = head;
+        System.arraycopy(blocks, 0, all, 1, count);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // a gathering write may stop early, the buffers are written in order, so the last one is empty at the end
+            while (all[count].hasRemaining()) {
+                channel.write(all);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores a world from a snapshot. The world is bound to the simulation but not set as its world,
+     * see {@link Simulation#setWorld}.
+     *
+     * @param generator generates the chunks that are not part of the snapshot, its seed and parameters
+     *                  are replaced by the ones of the snapshot
+     * @throws IOException if the file can't be read or isn't a valid snapshot of this version
+     */
+    @NotNull
+    public static World read(@NotNull Path file, @NotNull Simulation simulation, @NotNull WorldGenerator generator, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Snapshot " + file + " is too large");
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            return read(map, simulation, generator, threads);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Snapshot " + file + " is corrupt", e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @NotNull
+    private static World read(@NotNull ByteBuffer map, @NotNull Simulation simulation, @NotNull WorldGenerator generator, int threads) throws IOException {
+        if (map.getInt() != MAGIC) throw new IOException("Not a world snapshot");
+        int version = map.getInt();
+        if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+        boolean compressed = (map.getInt() & COMPRESSED) != 0;
+        if (map.getInt() != Chunk.CHUNK_SIZE) throw new IOException("Snapshot was saved with a different chunk size");
+        State state = readState(map);
+
+        int count = map.getInt();
+        long[] keys = new long[count];
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        int[] rawLengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ChunkMap.key(map.getInt(), map.getInt());
+            offsets[i] = Math.toIntExact(map.getLong());
+            lengths[i] = map.getInt();
+            rawLengths[i] = map.getInt();
+        }
+        return restore(state, keys, i -> {
+            ByteBuffer block = map.slice(offsets[i], lengths[i]).order(ByteOrder.LITTLE_ENDIAN);
+            return compressed ? inflate(block, rawLengths[i]) : block;
+        }, simulation, generator, threads);
+    }
+
+    /**
+     * Creates a world from a saved state and the blocks of its chunks.
+     *
+     * @param keys   the positions of the chunks, see {@link ChunkMap#key}, entities are created in this order
+     * @param blocks the uncompressed block of every chunk by its index in keys, called in parallel
+     */
+    @NotNull
+    static World restore(@NotNull State state, long @NotNull [] keys, @NotNull IntFunction<ByteBuffer> blocks,
+                         @NotNull Simulation simulation, @NotNull WorldGenerator generator, int threads) {
+        generator.setParameters(state.parameters);
+        World world = new World(generator, state.parameters, threads);
+        world.setSimulation(simulation);
+        // binding the world draws a new seed, the terrain has to continue with the old one
+        world.chunks().setSeed(state.seed);
+        world.setTime(state.time);
+
+        // colonies get new ids in the order of their old ones, the scent slots are mapped accordingly
+        int maxId = -1;
+        for (ColonyRecord record : state.colonies) {
+            maxId = Math.max(maxId, record.id);
+        }
+        int[] slots = new int[maxId + 1];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < state.colonies.length; i++) {
+            slots[state.colonies[i].id] = i;
+        }
+
+        // the terrain and scents are restored in parallel, every chunk only writes its own arrays
+        int count = keys.length;
+        Chunk[] restored = new Chunk[count];
+        ByteBuffer[] entities = new ByteBuffer[count];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            ByteBuffer block = blocks.apply(i);
+            restored[i] = world.chunks().createChunk(ChunkMap.keyX(keys[i]), ChunkMap.keyY(keys[i]));
+            decodeTerrain(block, restored[i], slots);
+            entities[i] = block;
+        });
+
+        // entities are created one after another, in the same order as they were saved
+        Colony[] colonies = new Colony[maxId + 1];
+        for (ColonyRecord record : state.colonies) {
+            Colony colony = new Colony(cell(world, record.x, record.y), record.parameters, record.antParameters);
+            colony.cell().setColony(colony);
+            colony.restore(record.food, record.randomState);
+            if (record.table != null) colony.enableAntTable().readRows(record.table.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+            colonies[record.id] = colony;
+        }
+        for (ColonyRecord record : state.colonies) {
+            world.track(colonies[record.id]);
+        }
+        for (int i = 0; i < count; i++) {
+            decodeEntities(entities[i], restored[i], colonies);
+        }
+        // the chunks keep their scheduled spawns instead of being scheduled again
+        generator.readState(state.generator.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+        return world;
+    }
+
+    /**
+     * Encodes the tick, the terrain seed, the world parameters, the state of the generator and the colonies.
+     */
+    @NotNull
+    static ByteBuffer captureState(@NotNull World world) {
+        List<Colony> colonies = new ArrayList<>(world.colonies());
+        colonies.sort(Comparator.comparingInt(Colony::id));
+        WorldGenerator generator = world.generator();
+        int generatorBytes = generator.stateBytes();
+        int bytes = 4 * Integer.BYTES + fieldBytes(world.parameters()) + generatorBytes;
+        for (Colony colony : colonies) {
+            bytes += colonyBytes(colony);
+        }
+        ByteBuffer out = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(world.time());
+        out.putInt(world.chunks().seed());
+        writeFields(out, world.parameters());
+        // the length allows reading the state without knowing the generator
+        out.putInt(generatorBytes);
+        generator.writeState(out);
+        out.putInt(colonies.size());
+        for (Colony colony : colonies) {
+            writeColony(out, colony);
+        }
+        return out.flip();
+    }
+
+    /**
+     * Reads a state written by {@link #captureState}.
+     */
+    @NotNull
+    static State readState(@NotNull ByteBuffer in) throws IOException {
+        int time = in.getInt();
+        int seed = in.getInt();
+        WorldParameters parameters = new WorldParameters();
+        readFields(in, parameters);
+        int generatorBytes = in.getInt();
+        if (generatorBytes < 0) throw new IOException("Invalid length of the generator state " + generatorBytes);
+        ByteBuffer generator = in.slice(in.position(), generatorBytes).order(ByteOrder.LITTLE_ENDIAN);
+        in.position(in.position() + generatorBytes);
+        int colonyCount = in.getInt();
+        if (colonyCount < 0) throw new IOException("Invalid number of colonies " + colonyCount);
+        ColonyRecord[] colonies = new ColonyRecord[colonyCount];
+        for (int i = 0; i < colonyCount; i++) {
+            colonies[i] = readColony(in);
+        }
+        return new State(time, seed, parameters, generator, colonies);
+    }
+
+    /**
+     * Takes an image of everything stored in a chunk that changes during a tick, so it can be encoded by another
+     * thread while the world goes on. The heights and scents are shared until the chunk changes them, see
+     * {@link Chunk#shareHeights()} and {@link ScentField#share()}. The entities are encoded right away, that is
+     * cheaper than copying them.
+     * Must not be called while the world is updated.
+     */
+    @NotNull
+    static ChunkImage capture(@NotNull Chunk chunk) {
+        ScentField scents = chunk.scents();
+        scents.share();
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < scents.slots(); slot++) {
+            if (scents.values(KINDS[0], slot) != null) slots.add(slot);
+        }
+        float[][] values = new float[slots.size() * KINDS.length][];
+        for (int s = 0; s < slots.size(); s++) {
+            for (int k = 0; k < KINDS.length; k++) {
+                float[] current = scents.values(KINDS[k], slots.get(s));
+                assert current != null;
+                values[s * KINDS.length + k] = current;
+            }
+        }
+        long[] awake = new long[Chunk.AWAKE_WORDS];
+        for (int w = 0; w < Chunk.AWAKE_WORDS; w++) {
+            awake[w] = chunk.awakeWord(w);
+        }
+        byte flags = (byte) ((chunk.populated() ? POPULATED : 0) | (chunk.hasCompleteNeighbors() ? COMPLETE_NEIGHBOURS : 0));
+        return new ChunkImage(flags, chunk.populated() ? chunk.shareHeights() : null, awake,
+            slots.stream().mapToInt(Integer::intValue).toArray(), values, encodeEntities(chunk));
+    }
+
+    /**
+     * Creates the image of a chunk that has been evicted to a region file, its terrain is all it has.
+     */
+    @NotNull
+    static ChunkImage captureEvicted(@NotNull ChunkMap chunks, long key) {
+        float[] heights = new float[Chunk.CELLS];
+        if (!chunks.readEvicted(key, heights)) throw new IllegalStateException("Evicted chunk was not stored");
+        return captureTerrain(heights);
+    }
+
+    /**
+     * Creates the image of a populated chunk that has nothing but its terrain.
+     */
+    @NotNull
+    static ChunkImage captureTerrain(float @NotNull [] heights) {
+        // no colony cells, food sources and ants
+        byte[] entities = new byte[3 * Integer.BYTES];
+        return new ChunkImage(POPULATED, heights, new long[Chunk.AWAKE_WORDS], new int[0], new float[0][], entities);
+    }
+
+    /**
+     * Encodes the image of a chunk into a block. Only scent slots that have any scent are written.
+     */
+    @NotNull
+    static ByteBuffer encode(@NotNull ChunkImage image) {
+        List<Integer> slots = new ArrayList<>();
+        for (int s = 0; s < image.slots.length; s++) {
+            if (hasScent(image.scents, s)) slots.add(s);
+        }
+        int bytes = Byte.BYTES + (image.heights != null ? Chunk.CELLS * Float.BYTES : 0) + Chunk.AWAKE_WORDS * Long.BYTES
+            + Integer.BYTES + slots.size() * (Integer.BYTES + KINDS.length * Chunk.CELLS * Float.BYTES)
+            + image.entities.length;
+
+        ByteBuffer out = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(image.flags);
+        if (image.heights != null) {
+            out.asFloatBuffer().put(image.heights);
+            out.position(out.position() + Chunk.CELLS * Float.BYTES);
+        }
+        for (long word : image.awake) {
+            out.putLong(word);
+        }
+        out.putInt(slots.size());
+        for (int s : slots) {
+            out.putInt(image.slots[s]);
+            for (int k = 0; k < KINDS.length; k++) {
+                out.asFloatBuffer().put(image.scents[s * KINDS.length + k]);
+                out.position(out.position() + Chunk.CELLS * Float.BYTES);
+            }
+        }
+        out.put(image.entities);
+        return out.flip();
+    }
+
+    /**
+     * Encodes the colony cells, food sources and ants of a chunk.
+     */
+    private static byte @NotNull [] encodeEntities(@NotNull Chunk chunk) {
+        int colonyCells = 0;
+        for (int i = 0; i < Chunk.CELLS; i++) {
+            if (chunk.colony(i) != null) colonyCells++;
+        }
+        List<FoodSource> foodSources = entities(chunk.foodSources());
+        List<Ant> ants = entities(chunk.ants());
+        int bytes = Integer.BYTES + colonyCells * 2 * Integer.BYTES
+            + Integer.BYTES + foodSources.size() * (2 * Integer.BYTES + Float.BYTES)
+            + Integer.BYTES;
+        for (Ant ant : ants) {
+            bytes += ANT_BYTES + ant.stateBytes();
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(colonyCells);
+        for (int i = 0; i < Chunk.CELLS; i++) {
+            Colony colony = chunk.colony(i);
+            if (colony == null) continue;
+            out.putInt(i);
+            out.putInt(colony.id());
+        }
+        out.putInt(foodSources.size());
+        for (FoodSource foodSource : foodSources) {
+            out.putInt(Chunk.index(foodSource.position().x(), foodSource.position().y()));
+            out.putFloat(foodSource.amount());
+            out.putInt(foodSource.expireTimer());
+        }
+        out.putInt(ants.size());
+        for (Ant ant : ants) {
+            out.putInt(ant.position().x());
+            out.putInt(ant.position().y());
+            out.putLong(ant.orderKey());
+            out.putInt(ant.colony().id());
+            out.put((byte) ant.direction().ordinal());
+            ant.writeState(out);
+        }
+        return out.array();
+    }
+
+    /**
+     * Restores the terrain, the awake cells and the scents of a chunk. The block is left at the colony cells.
+     *
+     * @param slots the new scent slot of every old colony id, -1 if the colony no longer exists
+     */
+    private static void decodeTerrain(@NotNull ByteBuffer in, @NotNull Chunk chunk, int @NotNull [] slots) {
+        byte flags = in.get();
+        if ((flags & POPULATED) != 0) {
+            float[] heights = new float[Chunk.CELLS];
+            in.asFloatBuffer().get(heights);
+            in.position(in.position() + Chunk.CELLS * Float.BYTES);
+            chunk.restore(heights);
+        }
+        chunk.setHasCompleteNeighbors((flags & COMPLETE_NEIGHBOURS) != 0);
+        for (int w = 0; w < Chunk.AWAKE_WORDS; w++) {
+            chunk.setAwakeWord(w, in.getLong());
+        }
+        int slotCount = in.getInt();
+        for (int s = 0; s < slotCount; s++) {
+            int id = in.getInt();
+            int slot = id < slots.length ? slots[id] : -1;
+            for (int kind : KINDS) {
+                if (slot >= 0) {
+                    in.asFloatBuffer().get(chunk.scents().restoreValues(kind, slot));
+                }
+                // the scents of removed colonies are dropped
+                in.position(in.position() + Chunk.CELLS * Float.BYTES);
+            }
+        }
+    }
+
+    /**
+     * Restores the colony cells, food sources and ants of a chunk.
+     */
+    private static void decodeEntities(@NotNull ByteBuffer in, @NotNull Chunk chunk, @Nullable Colony @NotNull [] colonies) {
+        int colonyCells = in.getInt();
+        for (int i = 0; i < colonyCells; i++) {
+            Cell cell = chunk.cell(in.getInt());
+            Colony colony = colony(colonies, in.getInt());
+            cell.setColony(colony);
+            colony.addCell(cell);
+        }
+        int foodSources = in.getInt();
+        for (int i = 0; i < foodSources; i++) {
+            Cell cell = chunk.cell(in.getInt());
+            FoodSource foodSource = new FoodSource(cell, in.getFloat(), in.getInt());
+            cell.setFoodSource(foodSource);
+            chunk.track(foodSource);
+        }
+        int ants = in.getInt();
+        for (int i = 0; i < ants; i++) {
+            Cell cell = cell(chunk.world(), in.getInt(), in.getInt());
+            long orderKey = in.getLong();
+            Colony colony = colony(colonies, in.getInt());
+            Direction direction = Direction.of(in.get());
+            // the stream continues at the state that readState reads
+            Ant ant = new Ant(colony, new AntParameters(colony.antSpawnParameters()), cell, direction, new MixRandom(0), orderKey);
+            ant.readState(in);
+            // tracked by the chunk directly, so chunks at the border don't populate their neighbours while loading
+            chunk.track(ant);
+            colony.addAnt(ant);
+            cell.addAnt(ant);
+        }
+    }
+
+    @NotNull
+    private static Colony colony(@Nullable Colony @NotNull [] colonies, int id) {
+        Colony colony = id >= 0 && id < colonies.length ? colonies[id] : null;
+        if (colony == null) throw new IllegalArgumentException("Unknown colony " + id);
+        return colony;
+    }
+
+    /**
+     * Looks up a cell of a restored chunk without populating the chunks around it.
+     */
+    @NotNull
+    private static Cell cell(@NotNull World world, int x, int y) {
+        Chunk chunk = world.chunks().lookup(Chunk.toChunkX(x), Chunk.toChunkY(y));
+        if (chunk == null) return world.get(x, y);
+        return chunk.get(x, y);
+    }
+
+    private static int colonyBytes(@NotNull Colony colony) {
+        AntTable table = colony.antTable();
+        return 3 * Integer.BYTES + Float.BYTES + Long.BYTES
+            + fieldBytes(colony.parameters()) + fieldBytes(colony.antSpawnParameters())
+            + fieldBytes(colony.antSpawnParameters().behavior())
+            + Byte.BYTES + (table == null ? 0 : Integer.BYTES + Integer.BYTES + table.rowBytes());
+    }
+
+    private static void writeColony(@NotNull ByteBuffer out, @NotNull Colony colony) {
+        out.putInt(colony.id());
+        out.putInt(colony.position().x());
+        out.putInt(colony.position().y());
+        out.putFloat(colony.food());
+        out.putLong(colony.randomState());
+        writeFields(out, colony.parameters());
+        writeFields(out, colony.antSpawnParameters());
+        writeFields(out, colony.antSpawnParameters().behavior());
+        AntTable table = colony.antTable();
+        out.put((byte) (table == null ? 0 : 1));
+        if (table != null) {
+            // the length allows skipping the rows without knowing their layout
+            out.putInt(Integer.BYTES + table.rowBytes());
+            table.writeRows(out);
+        }
+    }
+
+    @NotNull
+    private static ColonyRecord readColony(@NotNull ByteBuffer in) throws IOException {
+        int id = in.getInt();
+        if (id < 0) throw new IOException("Invalid colony id " + id);
+        int x = in.getInt();
+        int y = in.getInt();
+        float food = in.getFloat();
+        long randomState = in.getLong();
+        Colony.Parameters parameters = new Colony.Parameters();
+        readFields(in, parameters);
+        AntParameters antParameters = new AntParameters();
+        readFields(in, antParameters);
+        readFields(in, antParameters.behavior());
+        ByteBuffer table = null;
+        if (in.get() != 0) {
+            int length = in.getInt();
+            table = in.slice(in.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+            in.position(in.position() + length);
+        }
+        return new ColonyRecord(id, x, y, food, randomState, parameters, antParameters, table);
+    }
+
+    /**
+     * The public int and float fields of a parameter object, sorted by name so the order doesn't depend on the JVM.
+     * Parameters are plain data, like in {@link Simulation#saveWorldData()} they are written through reflection.
+     * The fields are looked up once per class, since every checkpoint writes the parameters.
+     */
+    @NotNull
+    private static List<Field> fields(@NotNull Object parameters) {
+        return FIELDS.get(parameters.getClass());
+    }
+
+    private static int fieldBytes(@NotNull Object parameters) {
+        return Integer.BYTES + fields(parameters).size() * Integer.BYTES;
+    }
+
+    private static void writeFields(@NotNull ByteBuffer out, @NotNull Object parameters) {
+        List<Field> fields = fields(parameters);
+        out.putInt(fields.size());
+        try {
+            for (Field field : fields) {
+                if (field.getType() == int.class) {
+                    out.putInt(field.getInt(parameters));
+                } else {
+                    out.putFloat(field.getFloat(parameters));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Public field is not accessible", e);
+        }
+    }
+
+    private static void readFields(@NotNull ByteBuffer in, @NotNull Object parameters) throws IOException {
+        List<Field> fields = fields(parameters);
+        int count = in.getInt();
+        if (count != fields.size()) {
+            throw new IOException("Snapshot has " + count + " fields for " + parameters.getClass().getSimpleName()
+                + ", expected " + fields.size());
+        }
+        try {
+            for (Field field : fields) {
+                if (field.getType() == int.class) {
+                    field.setInt(parameters, in.getInt());
+                } else {
+                    field.setFloat(parameters, in.getFloat());
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Public field is not accessible", e);
+        }
+    }
+
+    /**
+     * @return true if any scent of the slot with the given index is not 0
+     */
+    private static boolean hasScent(float @NotNull [] @NotNull [] scents, int slot) {
+        for (int k = 0; k < KINDS.length; k++) {
+            for (float value : scents[slot * KINDS.length + k]) {
+                if (value != 0) return true;
+            }
+        }
+        return false;
+    }
+
+    @NotNull
+    private static <T extends aufgabe1.world.entity.Entity> List<T> entities(@NotNull EntityList<T> list) {
+        List<T> entities = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            T entity = list.get(i);
+            if (entity != null) entities.add(entity);
+        }
+        return entities;
+    }
+
+    @NotNull
+    static ByteBuffer deflate(@NotNull ByteBuffer raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteBuffer out = ByteBuffer.allocate(raw.remaining() / 2 + 64);
+            while (!deflater.finished()) {
+                if (!out.hasRemaining()) {
+                    out = ByteBuffer.allocate(out.capacity() * 2).put(out.flip());
+                }
+                deflater.deflate(out);
+            }
+            return out.flip();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @NotNull
+    static ByteBuffer inflate(@NotNull ByteBuffer block, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block);
+            ByteBuffer out = ByteBuffer.allocate(rawLength).order(ByteOrder.LITTLE_ENDIAN);
+            while (out.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(out) == 0 && inflater.needsInput()) break;
+            }
+            if (out.hasRemaining()) throw new UncheckedIOException(new IOException("Chunk block is truncated"));
+            return out.flip();
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Chunk block is corrupt", e));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * The tick, the terrain seed, the world parameters, the generator state and the colonies of a saved world,
+     * see {@link #captureState}.
+     *
+     * @param generator the state written by {@link WorldGenerator#writeState}
+     */
+    record State(int time, int seed, @NotNull WorldParameters parameters, @NotNull ByteBuffer generator,
+                 ColonyRecord @NotNull [] colonies) {
+    }
+
+    /**
+     * A copy of a chunk, see {@link #capture}. The arrays must not be changed.
+     *
+     * @param heights  null if the chunk is not populated
+     * @param slots    the colony id of every scent slot
+     * @param scents   the food, colony and avoid scents of every slot
+     * @param entities the encoded colony cells, food sources and ants
+     */
+    record ChunkImage(byte flags, float @Nullable [] heights, long @NotNull [] awake, int @NotNull [] slots,
+                      float @NotNull [] @NotNull [] scents, byte @NotNull [] entities) {
+    }
+
+    /**
+     * A colony as it is stored in the snapshot, the colony itself can only be created once the chunks exist.
+     */
+    private record ColonyRecord(int id, int x, int y, float food, long randomState, @NotNull Colony.Parameters parameters,
+                                @NotNull AntParameters antParameters, @Nullable ByteBuffer table) {
+    }
+}
@@ -1,12 +1,14 @@
 package aufgabe1.world.entity;
 
 import aufgabe1.Direction;
+import aufgabe1.MixRandom;
 import aufgabe1.behavior.Behavior;
 import aufgabe1.behavior.Behaviors;
 import aufgabe1.world.Cell;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
@@ -38,6 +40,7 @@ public class Ant extends Entity {
     private AntParameters parameters;
     private int sleep;
     private int energy;
+    private final long orderKey;
     private boolean recordPath = true;
     @NotNull
     private Direction nextDirection;
@@ -47,7 +50,23 @@ public class Ant extends Entity {
     private Behavior nextBehavior;
 
     public Ant(@NotNull Colony colony, @NotNull AntParameters parameters, @NotNull Cell cell, @NotNull Direction direction, long seed) {
+        this(colony, parameters, cell, direction, new MixRandom(seed));
+    }
+
+    /**
+     * @param random the ant's own random stream, usually split from the colony's stream
+     */
+    public Ant(@NotNull Colony colony, @NotNull AntParameters parameters, @NotNull Cell cell, @NotNull Direction direction, @NotNull MixRandom random) {
+        // many ants are created on the same cell, so the key is drawn from the ant's own stream
+        this(colony, parameters, cell, direction, random, random.nextLong());
+    }
+
+    /**
+     * @param orderKey the key of an ant that is restored from a snapshot, see {@link #orderKey()}
+     */
+    public Ant(@NotNull Colony colony, @NotNull AntParameters parameters, @NotNull Cell cell, @NotNull Direction direction, @NotNull MixRandom random, long orderKey) {
         super(cell);
+        Objects.requireNonNull(random);
         Objects.requireNonNull(colony);
         Objects.requireNonNull(direction);
         //BAD: high class connection, strong object coupling, because the object from the
@@ -62,7 +81,8 @@ public class Ant extends Entity {
         this.nextDirection = direction;
         this.parameters = parameters;
         this.energy = parameters.energyGain;
-        this.behaviors = new Behaviors(this, cell.world().simulation().orElseThrow().randoms().newRandom(seed), parameters.behavior());
+        this.orderKey = orderKey;
+        this.behaviors = new Behaviors(this, random, parameters.behavior());
         this.behavior = behaviors.exploreInit();
         this.nextBehavior = behavior;
         updatePossibleNextCells();
@@ -74,13 +94,28 @@ public class Ant extends Entity {
      * - The 'possibleNextCells' list must have a size of at least 5.
      * Post-conditions:
      * - The 'possibleNextCells' list is updated with WeightedDirection objects representing possible directions.
+     *   The objects are created once and reused afterwards.
      */
     private void updatePossibleNextCells() {
-        possibleNextCells.set(0, Behavior.WeightedDirection.inDirection(cell, direction, parameters.straightBias));
-        possibleNextCells.set(1, Behavior.WeightedDirection.inDirection(cell, direction.left(1), 0f));
-        possibleNextCells.set(2, Behavior.WeightedDirection.inDirection(cell, direction.right(1), 0f));
-        possibleNextCells.set(3, Behavior.WeightedDirection.inDirection(cell, direction.left(2), 0f));
-        possibleNextCells.set(4, Behavior.WeightedDirection.inDirection(cell, direction.right(2), 0f));
+        setPossibleNextCell(0, direction, parameters.straightBias);
+        setPossibleNextCell(1, direction.left(1), 0f);
+        setPossibleNextCell(2, direction.right(1), 0f);
+        setPossibleNextCell(3, direction.left(2), 0f);
+        setPossibleNextCell(4, direction.right(2), 0f);
+    }
+
+    private void setPossibleNextCell(int index, @NotNull Direction direction, float bias) {
+        Behavior.WeightedDirection option = possibleNextCells.get(index);
+        if (option == null) {
+            possibleNextCells.set(index, Behavior.WeightedDirection.inDirection(cell, direction, bias));
+        } else {
+            option.set(cell, direction, bias);
+        }
+    }
+
+    @Override
+    public long orderKey() {
+        return orderKey;
     }
 
     /**
@@ -93,8 +128,7 @@ public class Ant extends Entity {
             pathHistory.reset();
             int missingEnergy = parameters.energyGain - energy;
             if (missingEnergy > 1) {
-                float requiredFood = Math.min(colony.food(), missingEnergy / parameters.energyFoodFactor);
-                colony.decreaseFood(requiredFood);
+                float requiredFood = colony.takeFood(missingEnergy / parameters.energyFoodFactor);
                 energy += (int) Math.ceil(requiredFood * parameters.energyFoodFactor);
             }
         }
@@ -138,6 +172,53 @@ public class Ant extends Entity {
         updatePossibleNextCells();
     }
 
+    /**
+     * @return the number of bytes {@link #writeState} writes
+     */
+    @Contract(pure = true)
+    public int stateBytes() {
+        return 2 * Byte.BYTES + 3 * Float.BYTES + 2 * Integer.BYTES + 3 * Byte.BYTES + pathHistory.bytes()
+            + behaviors.stateBytes();
+    }
+
+    /**
+     * Writes the state of the ant that changes between ticks for a snapshot. The colony, the cell, the direction
+     * and the order key are needed to create the ant and are written by the snapshot itself.
+     */
+    public void writeState(@NotNull ByteBuffer out) {
+        out.put((byte) returnDirection.ordinal());
+        out.put((byte) nextDirection.ordinal());
+        out.putFloat(carrying);
+        out.putFloat(colonyScentStrength);
+        out.putFloat(foodScentStrength);
+        out.putInt(energy);
+        out.putInt(sleep);
+        out.put((byte) behaviors.index(behavior));
+        out.put((byte) behaviors.index(nextBehavior));
+        out.put((byte) (recordPath ? 1 : 0));
+        pathHistory.writeTo(out);
+        behaviors.writeState(out);
+    }
+
+    /**
+     * Reads the state written by {@link #writeState}. The behaviors continue where they were, so they are
+     * not begun again.
+     */
+    public void readState(@NotNull ByteBuffer in) {
+        returnDirection = Direction.of(in.get());
+        nextDirection = Direction.of(in.get());
+        carrying = in.getFloat();
+        colonyScentStrength = in.getFloat();
+        foodScentStrength = in.getFloat();
+        energy = in.getInt();
+        sleep = in.getInt();
+        behavior = behaviors.byIndex(in.get());
+        nextBehavior = behaviors.byIndex(in.get());
+        recordPath = in.get() != 0;
+        pathHistory.readFrom(in);
+        behaviors.readState(in);
+    }
+
     /**
      * Replenishes scents for the ant based on its current cell
      */
@@ -282,9 +363,8 @@ public class Ant extends Entity {
      * @param foodSource The food source from which the ant picks up food.
      */
     public void takeAllFood(@NotNull FoodSource foodSource) {
-        float amount = Math.min(availableCarryingCapacity(), foodSource.amount());
+        float amount = foodSource.take(availableCarryingCapacity());
         increaseCarrying(amount);
-        foodSource.decreaseAmount(amount);
     }
 
     /**
@@ -0,0 +1,508 @@
+package aufgabe1.world.entity;
+
+import aufgabe1.Direction;
+import aufgabe1.Randoms;
+import aufgabe1.behavior.TableBehavior;
+import aufgabe1.world.Cell;
+import aufgabe1.world.World;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Stores ants of a colony in primitive arrays, one row per ant, instead of one {@link Ant} object each.
+ * An ant object carries five behaviours, its own copy of the parameters and a path history, which are
+ * several kilobytes. A row has about 50 bytes, all rows use the spawn parameters of the colony.
+ * The behaviours are the stateless functions of {@link TableBehavior}, their state is kept in the row as well.
+ * <br>
+ * The world updates the rows one after another after the chunks have been updated, see {@link #update()},
+ * so the table doesn't need any locking. Ants of a table are neither tracked by chunks nor listed by cells.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural, because millions of rows are processed in a tight loop
+ */
+public final class AntTable {
+    // same as Ant, cells above this height can't be entered
+    private static final float MAX_HEIGHT = 0.62f;
+    private static final int OPTIONS = 5;
+    // increment of SplitMix64
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    // the bytes of one row in a snapshot, see writeRows
+    private static final int ROW_BYTES = 9 * Integer.BYTES + 5 * Byte.BYTES + Byte.BYTES + Long.BYTES;
+
+    @NotNull
+    private final Colony colony;
+    @NotNull
+    private final World world;
+    private int size;
+
+    private int @NotNull [] x = new int[0];
+    private int @NotNull [] y = new int[0];
+    // ordinals of Direction
+    private byte @NotNull [] direction = new byte[0];
+    private byte @NotNull [] nextDirection = new byte[0];
+    private byte @NotNull [] returnDirection = new byte[0];
+    // ordinals of TableBehavior
+    private byte @NotNull [] behavior = new byte[0];
+    private byte @NotNull [] nextBehavior = new byte[0];
+    private int @NotNull [] energy = new int[0];
+    private int @NotNull [] sleep = new int[0];
+    private int @NotNull [] noReturnTimer = new int[0];
+    // free for the current behaviour, e.g. the remaining steps
+    private int @NotNull [] counter = new int[0];
+    private float @NotNull [] carrying = new float[0];
+    private float @NotNull [] colonyScentStrength = new float[0];
+    private float @NotNull [] foodScentStrength = new float[0];
+    // free for the current behaviour
+    private boolean @NotNull [] flag = new boolean[0];
+    // state of the random stream of the row
+    private long @NotNull [] random = new long[0];
+
+    // the cell and the possible next cells of the row that is updated right now
+    private Cell cell;
+    private final Cell @NotNull [] options = new Cell[OPTIONS];
+    private final Direction @NotNull [] optionDirections = new Direction[OPTIONS];
+    private final float @NotNull [] optionBiases = new float[OPTIONS];
+
+    public AntTable(@NotNull Colony colony) {
+        Objects.requireNonNull(colony);
+        this.colony = colony;
+        this.world = colony.cell().world();
+        allocate(64);
+    }
+
+    /**
+     * Adds an ant at the given position.
+     *
+     * @param seed the seed of the random stream of the ant
+     * @return the row of the ant, it changes when other ants die
+     */
+    public int add(int x, int y, @NotNull Direction direction, long seed) {
+        if (size == this.x.length) {
+            allocate(size * 2);
+        }
+        int row = size++;
+        this.x[row] = x;
+        this.y[row] = y;
+        this.direction[row] = (byte) direction.ordinal();
+        this.nextDirection[row] = (byte) direction.ordinal();
+        this.returnDirection[row] = (byte) direction.ordinal();
+        this.energy[row] = parameters().energyGain;
+        this.sleep[row] = 0;
+        this.carrying[row] = 0;
+        this.colonyScentStrength[row] = 0;
+        this.foodScentStrength[row] = 0;
+        this.flag[row] = false;
+        this.random[row] = seed;
+        setNextBehaviorImmediate(row, TableBehavior.EXPLORE_INIT);
+        return row;
+    }
+
+    /**
+     * Updates every ant once. Ants that die are removed, the last row takes their place.
+     */
+    public void update() {
+        for (int row = 0; row < size; ) {
+            if (updateRow(row)) {
+                row++;
+            } else {
+                // the moved row has not been updated yet, so the same index is updated again
+                remove(row);
+            }
+        }
+        cell = null;
+        Arrays.fill(options, null);
+    }
+
+    /**
+     * The same steps as {@link Ant#update()}.
+     *
+     * @return false if the ant died
+     */
+    private boolean updateRow(int row) {
+        AntParameters parameters = parameters();
+        cell = world.get(x[row], y[row]);
+        Direction direction = Direction.of(this.direction[row]);
+
+        // replenish scents
+        boolean home = cell.colony() == colony;
+        if (home) {
+            colonyScentStrength[row] = parameters.colonyScentGain;
+        }
+        if (cell.hasFood()) {
+            foodScentStrength[row] = parameters.foodScentGain;
+        }
+        if (home) {
+            int missingEnergy = parameters.energyGain - energy[row];
+            if (missingEnergy > 1) {
+                float requiredFood = colony.takeFood(missingEnergy / parameters.energyFoodFactor);
+                energy[row] += (int) Math.ceil(requiredFood * parameters.energyFoodFactor);
+            }
+        }
+
+        setOption(0, direction, parameters.straightBias);
+        setOption(1, direction.left(1), 0f);
+        setOption(2, direction.right(1), 0f);
+        setOption(3, direction.left(2), 0f);
+        setOption(4, direction.right(2), 0f);
+
+        TableBehavior.of(behavior[row]).act(this, row);
+        if (behavior[row] != nextBehavior[row]) {
+            behavior[row] = nextBehavior[row];
+            TableBehavior.of(behavior[row]).begin(this, row);
+        }
+
+        Direction next = Direction.of(nextDirection[row]);
+        if (cell.neighbor(next).height() > MAX_HEIGHT) {
+            next = cell.height() > MAX_HEIGHT ? direction : Direction.of(returnDirection[row]);
+        }
+        returnDirection[row] = (byte) next.opposite().ordinal();
+        this.direction[row] = (byte) next.ordinal();
+        nextDirection[row] = (byte) next.ordinal();
+        if (sleep[row] > 0) {
+            sleep[row]--;
+        } else {
+            x[row] += next.dx();
+            y[row] += next.dy();
+            energy[row]--;
+        }
+
+        if (energy[row] <= 0) {
+            energy[row] += (int) Math.ceil(carrying[row] * parameters.energyFoodFactor);
+            carrying[row] = 0;
+        }
+        return energy[row] > 0;
+    }
+
+    private void setOption(int index, @NotNull Direction direction, float bias) {
+        options[index] = cell.neighbor(direction);
+        optionDirections[index] = direction;
+        optionBiases[index] = bias;
+    }
+
+    /**
+     * Removes a row by moving the last row into its place.
+     */
+    private void remove(int row) {
+        int last = --size;
+        x[row] = x[last];
+        y[row] = y[last];
+        direction[row] = direction[last];
+        nextDirection[row] = nextDirection[last];
+        returnDirection[row] = returnDirection[last];
+        behavior[row] = behavior[last];
+        nextBehavior[row] = nextBehavior[last];
+        energy[row] = energy[last];
+        sleep[row] = sleep[last];
+        noReturnTimer[row] = noReturnTimer[last];
+        counter[row] = counter[last];
+        carrying[row] = carrying[last];
+        colonyScentStrength[row] = colonyScentStrength[last];
+        foodScentStrength[row] = foodScentStrength[last];
+        flag[row] = flag[last];
+        random[row] = random[last];
+    }
+
+    private void allocate(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        nextDirection = Arrays.copyOf(nextDirection, capacity);
+        returnDirection = Arrays.copyOf(returnDirection, capacity);
+        behavior = Arrays.copyOf(behavior, capacity);
+        nextBehavior = Arrays.copyOf(nextBehavior, capacity);
+        energy = Arrays.copyOf(energy, capacity);
+        sleep = Arrays.copyOf(sleep, capacity);
+        noReturnTimer = Arrays.copyOf(noReturnTimer, capacity);
+        counter = Arrays.copyOf(counter, capacity);
+        carrying = Arrays.copyOf(carrying, capacity);
+        colonyScentStrength = Arrays.copyOf(colonyScentStrength, capacity);
+        foodScentStrength = Arrays.copyOf(foodScentStrength, capacity);
+        flag = Arrays.copyOf(flag, capacity);
+        random = Arrays.copyOf(random, capacity);
+    }
+
+    /**
+     * @return the number of bytes {@link #writeRows} writes, without the row count
+     */
+    @Contract(pure = true)
+    public int rowBytes() {
+        return size * ROW_BYTES;
+    }
+
+    /**
+     * Writes all rows column by column for a snapshot, the row count is written first.
+     */
+    public void writeRows(@NotNull ByteBuffer out) {
+        out.putInt(size);
+        for (int row = 0; row < size; row++) out.putInt(x[row]);
+        for (int row = 0; row < size; row++) out.putInt(y[row]);
+        out.put(direction, 0, size);
+        out.put(nextDirection, 0, size);
+        out.put(returnDirection, 0, size);
+        out.put(behavior, 0, size);
+        out.put(nextBehavior, 0, size);
+        for (int row = 0; row < size; row++) out.putInt(energy[row]);
+        for (int row = 0; row < size; row++) out.putInt(sleep[row]);
+        for (int row = 0; row < size; row++) out.putInt(noReturnTimer[row]);
+        for (int row = 0; row < size; row++) out.putInt(counter[row]);
+        for (int row = 0; row < size; row++) out.putFloat(carrying[row]);
+        for (int row = 0; row < size; row++) out.putFloat(colonyScentStrength[row]);
+        for (int row = 0; row < size; row++) out.putFloat(foodScentStrength[row]);
+        for (int row = 0; row < size; row++) out.put((byte) (flag[row] ? 1 : 0));
+        for (int row = 0; row < size; row++) out.putLong(random[row]);
+    }
+
+    /**
+     * Replaces all rows with the ones written by {@link #writeRows}. Since the rows keep the state of their
+     * random streams, a restored table continues exactly like the saved one.
+     */
+    public void readRows(@NotNull ByteBuffer in) {
+        int rows = in.getInt();
+        if (rows < 0) throw new IllegalArgumentException("Invalid row count " + rows);
+        allocate(Math.max(64, rows));
+        size = rows;
+        for (int row = 0; row < size; row++) x[row] = in.getInt();
+        for (int row = 0; row < size; row++) y[row] = in.getInt();
+        in.get(direction, 0, size);
+        in.get(nextDirection, 0, size);
+        in.get(returnDirection, 0, size);
+        in.get(behavior, 0, size);
+        in.get(nextBehavior, 0, size);
+        for (int row = 0; row < size; row++) energy[row] = in.getInt();
+        for (int row = 0; row < size; row++) sleep[row] = in.getInt();
+        for (int row = 0; row < size; row++) noReturnTimer[row] = in.getInt();
+        for (int row = 0; row < size; row++) counter[row] = in.getInt();
+        for (int row = 0; row < size; row++) carrying[row] = in.getFloat();
+        for (int row = 0; row < size; row++) colonyScentStrength[row] = in.getFloat();
+        for (int row = 0; row < size; row++) foodScentStrength[row] = in.getFloat();
+        for (int row = 0; row < size; row++) flag[row] = in.get() != 0;
+        for (int row = 0; row < size; row++) random[row] = in.getLong();
+    }
+
+    /**
+     * @return the number of ants in the table
+     */
+    @Contract(pure = true)
+    public int size() {
+        return size;
+    }
+
+    @Contract(pure = true)
+    @NotNull
+    public Colony colony() {
+        return colony;
+    }
+
+    @Contract(pure = true)
+    @NotNull
+    public World world() {
+        return world;
+    }
+
+    /**
+     * @return the spawn parameters of the colony, they are used by all rows
+     */
+    @Contract(pure = true)
+    @NotNull
+    public AntParameters parameters() {
+        return colony.antSpawnParameters();
+    }
+
+    /**
+     * @return the cell of the row that is updated right now
+     */
+    @Contract(pure = true)
+    @NotNull
+    public Cell cell() {
+        return cell;
+    }
+
+    /**
+     * @return the number of possible next cells of the row that is updated right now
+     */
+    @Contract(pure = true)
+    public int optionCount() {
+        return OPTIONS;
+    }
+
+    @Contract(pure = true)
+    @NotNull
+    public Cell option(int index) {
+        return options[index];
+    }
+
+    @Contract(pure = true)
+    @NotNull
+    public Direction optionDirection(int index) {
+        return optionDirections[index];
+    }
+
+    @Contract(pure = true)
+    public float optionBias(int index) {
+        return optionBiases[index];
+    }
+
+    @Contract(pure = true)
+    public int x(int row) {
+        return x[row];
+    }
+
+    @Contract(pure = true)
+    public int y(int row) {
+        return y[row];
+    }
+
+    @Contract(pure = true)
+    @NotNull
+    public Direction direction(int row) {
+        return Direction.of(direction[row]);
+    }
+
+    @Contract(pure = true)
+    @NotNull
+    public Direction returnDirection(int row) {
+        return Direction.of(returnDirection[row]);
+    }
+
+    public void setNextDirection(int row, @NotNull Direction direction) {
+        nextDirection[row] = (byte) direction.ordinal();
+    }
+
+    public void setNextBehavior(int row, @NotNull TableBehavior behavior) {
+        nextBehavior[row] = (byte) behavior.ordinal();
+    }
+
+    /**
+     * Changes the behaviour without waiting for the end of the step, like {@link Ant#setNextBehaviorImmediate}.
+     */
+    public void setNextBehaviorImmediate(int row, @NotNull TableBehavior behavior) {
+        this.behavior[row] = (byte) behavior.ordinal();
+        this.nextBehavior[row] = (byte) behavior.ordinal();
+        behavior.begin(this, row);
+    }
+
+    public void setSleep(int row, int sleep) {
+        this.sleep[row] = sleep;
+    }
+
+    @Contract(pure = true)
+    public int noReturnTimer(int row) {
+        return noReturnTimer[row];
+    }
+
+    public void setNoReturnTimer(int row, int noReturnTimer) {
+        this.noReturnTimer[row] = noReturnTimer;
+    }
+
+    @Contract(pure = true)
+    public int counter(int row) {
+        return counter[row];
+    }
+
+    public void setCounter(int row, int counter) {
+        this.counter[row] = counter;
+    }
+
+    @Contract(pure = true)
+    public boolean flag(int row) {
+        return flag[row];
+    }
+
+    public void setFlag(int row, boolean flag) {
+        this.flag[row] = flag;
+    }
+
+    /**
+     * @return the amount of food that the ant is carrying. Always >= 0
+     */
+    @Contract(pure = true)
+    public float carrying(int row) {
+        return carrying[row];
+    }
+
+    @Contract(pure = true)
+    public boolean isCarrying(int row) {
+        return carrying[row] > 0;
+    }
+
+    /**
+     * Like {@link Ant#takeAllFood}.
+     */
+    public void takeAllFood(int row, @NotNull FoodSource foodSource) {
+        float capacity = Math.max(parameters().carryingCapacity - carrying[row], 0f);
+        carrying[row] += foodSource.take(capacity);
+    }
+
+    public void depositAllFood(int row) {
+        colony.increaseFood(carrying[row]);
+        carrying[row] = 0;
+    }
+
+    /**
+     * Like {@link Ant#emitColonyScent()}, emits into the cell of the row that is updated right now.
+     */
+    public void emitColonyScent(int row) {
+        if (sleep[row] > 0) return;
+        AntParameters parameters = parameters();
+        cell.addColonyScent(Math.min(parameters.colonyScentAddend, colonyScentStrength[row]), colony);
+        colonyScentStrength[row] *= parameters.colonyScentDecay;
+    }
+
+    /**
+     * Like {@link Ant#emitFoodScent()}.
+     */
+    public void emitFoodScent(int row) {
+        if (sleep[row] > 0) return;
+        AntParameters parameters = parameters();
+        cell.addFoodScent(Math.min(parameters.foodScentAddend, foodScentStrength[row]), colony);
+        foodScentStrength[row] *= parameters.foodScentDecay;
+        cell.addFoodScent(Math.min(parameters.foodScentAddend, foodScentStrength[row]), colony);
+    }
+
+    /**
+     * Like {@link Ant#emitAvoidScent()}.
+     */
+    public void emitAvoidScent(int row) {
+        if (sleep[row] > 0) return;
+        AntParameters parameters = parameters();
+        float addend = parameters.avoidScentAdded;
+        addend += cell.avoidScent(colony) * parameters.avoidScentFactor;
+        cell.addAvoidScent(addend, colony);
+    }
+
+    /**
+     * @return the next value of the random stream of the row
+     */
+    public long nextLong(int row) {
+        long state = random[row] + GOLDEN_GAMMA;
+        random[row] = state;
+        return Randoms.mix(state);
+    }
+
+    /**
+     * @return a uniformly distributed value in [0, 1)
+     */
+    public float nextFloat(int row) {
+        return (nextLong(row) >>> 40) * 0x1.0p-24f;
+    }
+
+    public boolean nextBoolean(int row) {
+        return nextLong(row) < 0;
+    }
+
+    /**
+     * Approximates a standard normal distribution by the sum of four uniform values (Irwin-Hall),
+     * which are taken from one random value. It is much cheaper than the exact distribution and
+     * only used to add noise to the decisions.
+     */
+    public float nextGaussian(int row) {
+        long bits = nextLong(row);
+        int sum = (int) (bits & 0xffff) + (int) ((bits >>> 16) & 0xffff)
+            + (int) ((bits >>> 32) & 0xffff) + (int) (bits >>> 48);
+        // the sum has the mean 2 and the variance 1/3 in units of 2^16
+        return (sum * 0x1.0p-16f - 2f) * 1.7320508f;
+    }
+}
@@ -2,14 +2,18 @@ package aufgabe1.world.entity;
 
 import aufgabe1.Direction;
 import aufgabe1.IVector;
+import aufgabe1.MixRandom;
 import aufgabe1.Randoms;
 import aufgabe1.Vector;
 import aufgabe1.world.Cell;
+import aufgabe1.world.World;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a colony of ants in the simulation world. All ants belong to one colony.
@@ -17,12 +21,25 @@ import java.util.*;
  * STYLE: object-oriented
  */
 public class Colony extends Entity {
+    // separates the stream that spreads the colony from the one that spawns its ants
+    private static final long SPREAD_STREAM = 1;
+    // ants are spawned and die on different worker threads
     @NotNull
-    private final Set<Ant> ants = new HashSet<>();
+    private final Set<Ant> ants = ConcurrentHashMap.newKeySet();
     @NotNull
     private final List<Cell> cells = new ArrayList<>();
-    // is always >= 0
-    private float food;
+    // is always >= 0, written under the monitor of the colony
+    private volatile float food;
+    // true while the world counts the ants and food of this colony in its live totals, see setCounted
+    private volatile boolean counted;
+    // compact id assigned by the world, -1 until the colony is tracked
+    private int id = -1;
+    // the colony's own random stream, every spawned ant gets a stream split from it, see random()
+    @Nullable
+    private MixRandom random;
+    // if set, spawned ants are added to the table instead of being created as Ant objects
+    @Nullable
+    private AntTable antTable;
     @NotNull
     private AntParameters antSpawnParameters;
 
@@ -45,7 +62,9 @@ public class Colony extends Entity {
      * @param ant The ant to be removed.
      */
     public void removeAnt(Ant ant) {
-        ants.remove(ant);
+        if (ants.remove(ant) && counted) {
+            world.addToTotals(-1, 0);
+        }
     }
 
     /**
@@ -53,9 +72,13 @@ public class Colony extends Entity {
      */
     @Override
     public void update() {
-        if (food >= parameters.antSpawnFoodThreshold + parameters.antSpawnFoodCost) {
-            spawnAnt(0, 0);
-            decreaseFood(parameters.antSpawnFoodCost);
+        // the cost is taken before spawning, ants of neighbouring chunks may take food at the same time
+        if (tryDecreaseFood(parameters.antSpawnFoodCost, parameters.antSpawnFoodThreshold)) {
+            if (antTable != null) {
+                spawnTableAnt(0, 0);
+            } else {
+                spawnAnt(0, 0);
+            }
         }
     }
 
@@ -69,38 +92,111 @@ public class Colony extends Entity {
     @SuppressWarnings("UnusedReturnValue")
     @NotNull
     public Ant spawnAnt(int minRadius, int maxRadius) {
-        Randoms random = cell.world().simulation().orElseThrow().randoms();
-        double angle = random.ants().nextDouble(2 * Math.PI);
-        double radius = minRadius;
-        if (minRadius != maxRadius) {
-            radius += random.ants().nextDouble(maxRadius - minRadius);
-        }
-        int dx = (int) Math.round(Math.cos(angle) * radius);
-        int dy = (int) Math.round(Math.sin(angle) * radius);
-
-        IVector pos = new Vector(position()).add(dx, dy);
+        MixRandom random = random();
+        IVector pos = spawnPosition(random, minRadius, maxRadius);
 
         Direction[] dirs = Direction.values();
-        Direction dir = dirs[random.ants().nextInt(dirs.length)];
+        Direction dir = dirs[random.nextInt(dirs.length)];
 
         Cell spawnCell = cell.world().get(pos);
         AntParameters parameters = new AntParameters(antSpawnParameters);
-        Ant ant = new Ant(this, parameters, spawnCell, dir, random.ants().nextLong());
+        Ant ant = new Ant(this, parameters, spawnCell, dir, random.split());
         cell.world().track(ant);
-        ants.add(ant);
+        addAnt(ant);
         spawnCell.addAnt(ant);
         return ant;
     }
 
+    /**
+     * Adds an ant that has been created outside the colony, e.g. restored from a snapshot.
+     * The ant has to be tracked by the world and added to its cell by the caller.
+     */
+    public void addAnt(@NotNull Ant ant) {
+        if (ant.colony() != this) throw new IllegalArgumentException("Ant belongs to a different colony");
+        if (ants.add(ant) && counted) {
+            world.addToTotals(1, 0);
+        }
+    }
+
+    /**
+     * Spawns an ant into the ant table of the colony, see {@link #enableAntTable()}.
+     * The parameters are the same as for {@link #spawnAnt}.
+     *
+     * @throws IllegalStateException if the colony has no ant table
+     */
+    public void spawnTableAnt(int minRadius, int maxRadius) {
+        if (antTable == null) throw new IllegalStateException("The colony has no ant table");
+        MixRandom random = random();
+        IVector pos = spawnPosition(random, minRadius, maxRadius);
+        Direction[] dirs = Direction.values();
+        Direction dir = dirs[random.nextInt(dirs.length)];
+        antTable.add(pos.x(), pos.y(), dir, random.nextLong());
+        if (counted) world.addToTotals(1, 0);
+    }
+
+    /**
+     * @return the random stream of the colony, created when it is needed first
+     */
+    @NotNull
+    private MixRandom random() {
+        if (random == null) {
+            // derived from the position, so it doesn't depend on the order in which colonies are created
+            random = cell.world().simulation().orElseThrow().randoms().stream(orderKey());
+        }
+        return random;
+    }
+
+    @NotNull
+    private IVector spawnPosition(@NotNull MixRandom random, int minRadius, int maxRadius) {
+        double angle = random.nextDouble(2 * Math.PI);
+        double radius = minRadius;
+        if (minRadius != maxRadius) {
+            radius += random.nextDouble(maxRadius - minRadius);
+        }
+        int dx = (int) Math.round(Math.cos(angle) * radius);
+        int dy = (int) Math.round(Math.sin(angle) * radius);
+        return new Vector(position()).add(dx, dy);
+    }
+
     /**
      * Removes food from the colony
      *
      * @param amount must be positive and less than the available food
      */
-    public void decreaseFood(float amount) {
+    public synchronized void decreaseFood(float amount) {
         if (amount < 0) throw new IllegalArgumentException("amount must be positive");
         if (amount > this.food) throw new IllegalArgumentException("amount must less than available");
-        this.food -= amount;
+        changeFood(-amount);
+    }
+
+    /**
+     * Removes food from the colony if at least the given amount would be left.
+     * Checking and removing happens atomically, since ants of different chunks may take food at the same time.
+     *
+     * @param amount  must be positive
+     * @param reserve must be positive
+     * @return true if the food has been removed
+     */
+    public synchronized boolean tryDecreaseFood(float amount, float reserve) {
+        if (amount < 0) throw new IllegalArgumentException("amount must be positive");
+        if (reserve < 0) throw new IllegalArgumentException("reserve must be positive");
+        if (food < reserve + amount) return false;
+        changeFood(-amount);
+        return true;
+    }
+
+    /**
+     * Removes up to the given amount of food from the colony.
+     * Checking and removing happens atomically, since ants of different chunks may take food at the same time.
+     *
+     * @param maxAmount must be positive
+     * @return the amount of food that was removed
+     */
+    public synchronized float takeFood(float maxAmount) {
+        if (maxAmount < 0) throw new IllegalArgumentException("maxAmount must be positive");
+        float amount = Math.min(food, maxAmount);
+        changeFood(-amount);
+        return amount;
     }
 
     /**
@@ -108,9 +204,20 @@ public class Colony extends Entity {
      *
      * @param amount must be positive
      */
-    public void increaseFood(float amount) {
+    public synchronized void increaseFood(float amount) {
         if (amount < 0) throw new IllegalArgumentException("amount must be positive");
-        this.food += amount;
+        changeFood(amount);
+    }
+
+    /**
+     * Changes the food and reports the change to the live totals. The change that is reported is the one
+     * of the float after rounding, so the totals don't drift away from the food of the colonies.
+     * Must be called under the monitor of the colony.
+     */
+    private void changeFood(float amount) {
+        float before = food;
+        food = before + amount;
+        if (counted) world.addToTotals(0, food - before);
     }
 
     /**
@@ -118,6 +225,7 @@ public class Colony extends Entity {
      */
     @Contract(pure = true)
     public float food() {
+        // volatile read, so painting the food doesn't wait for ants that take food
         return food;
     }
 
@@ -133,6 +241,38 @@ public class Colony extends Entity {
         return Collections.unmodifiableSet(ants);
     }
 
+    /**
+     * @return the number of ants including the ones in the ant table
+     */
+    @Contract(pure = true)
+    public int antCount() {
+        AntTable table = antTable;
+        return ants.size() + (table == null ? 0 : table.size());
+    }
+
+    /**
+     * Makes the colony store the ants it spawns from now on in an {@link AntTable}, which needs far less memory
+     * per ant. The ants that already exist stay objects.
+     *
+     * @return the ant table of the colony
+     */
+    @NotNull
+    public AntTable enableAntTable() {
+        if (antTable == null) {
+            antTable = new AntTable(this);
+        }
+        return antTable;
+    }
+
+    /**
+     * @return the ant table or null if the colony creates Ant objects
+     */
+    @Contract(pure = true)
+    @Nullable
+    public AntTable antTable() {
+        return antTable;
+    }
+
     /**
      * Retrieves the ant spawning parameters for this colony.
      *
@@ -178,14 +318,47 @@ public class Colony extends Entity {
     }
 
 
+    /**
+     * @return the compact id of this colony within its world, or -1 if it is not tracked yet
+     */
+    @Contract(pure = true)
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Sets the compact id of this colony. Called by the world when the colony is tracked.
+     *
+     * @param id must be >= 0
+     */
+    public void setId(int id) {
+        if (id < 0) throw new IllegalArgumentException("'id' must be positive");
+        this.id = id;
+    }
+
+    /**
+     * Makes the colony report changes of its ants and food to the live totals of its world, see
+     * {@link World#totalAnts()}. The current ants and food are added to or removed from the totals.
+     * Called by the world when the colony is tracked or untracked.
+     */
+    public synchronized void setCounted(boolean counted) {
+        if (this.counted == counted) return;
+        this.counted = counted;
+        int sign = counted ? 1 : -1;
+        world.addToTotals(sign * antCount(), sign * food);
+    }
+
     public void spread(int n) {
-        Randoms random = cell.world().simulation().orElseThrow().randoms();
+        // like the ants, the cells only depend on the position, so a colony that is created after a snapshot
+        // was restored gets the same cells
+        Randoms randoms = cell.world().simulation().orElseThrow().randoms();
+        MixRandom random = randoms.stream(orderKey(), SPREAD_STREAM);
         for (int i = 0; i < n; i++) {
             Vector pos = new Vector(position());
-            Direction dir = Direction.North.right(random.places().nextInt(8));
+            Direction dir = Direction.North.right(random.nextInt(8));
             while (world.get(pos).colony() != null) {
                 pos.add(dir);
-                dir = dir.left(random.places().nextInt(3) - 1);
+                dir = dir.left(random.nextInt(3) - 1);
             }
             Cell cell = world.get(pos);
             cell.setColony(this);
@@ -193,6 +366,33 @@ public class Colony extends Entity {
         }
     }
 
+    /**
+     * Adds a cell that belongs to the colony, e.g. restored from a snapshot. The cell must already be set to the colony.
+     */
+    public void addCell(@NotNull Cell cell) {
+        if (cell.colony() != this) throw new IllegalArgumentException("Cell doesn't belong to the colony");
+        if (cell != this.cell) cells.add(cell);
+    }
+
+    /**
+     * @return the state of the random stream of the colony for a snapshot, see {@link MixRandom#state()}
+     */
+    public long randomState() {
+        return random().state();
+    }
+
+    /**
+     * Restores the food and the random stream of a colony from a snapshot. Must be called before the colony is tracked.
+     *
+     * @param randomState the state returned by {@link #randomState()}
+     */
+    public synchronized void restore(float food, long randomState) {
+        if (counted) throw new IllegalStateException("Colony is already tracked");
+        if (food < 0) throw new IllegalArgumentException("food must be positive");
+        this.food = food;
+        this.random = new MixRandom(randomState);
+    }
+
     /**
      * Retrieves an unmodifiable view of the cells occupied by this colony.
      *
@@ -208,5 +408,13 @@ public class Colony extends Entity {
     public static class Parameters {
         public float antSpawnFoodCost;
         public float antSpawnFoodThreshold;
+
+        public Parameters() {
+        }
+
+        public Parameters(@NotNull Parameters other) {
+            this.antSpawnFoodCost = other.antSpawnFoodCost;
+            this.antSpawnFoodThreshold = other.antSpawnFoodThreshold;
+        }
     }
 }
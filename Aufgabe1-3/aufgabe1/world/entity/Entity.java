@@ -20,11 +20,16 @@ public abstract class Entity {
     protected Cell cell;
     @NotNull
     protected final World world;
+    // the packed position the entity was created at
+    private final long origin;
+    // index in the entity list of the chunk that tracks the entity, -1 if it is not tracked
+    private int chunkSlot = -1;
 
     public Entity(@NotNull Cell cell) {
         Objects.requireNonNull(cell);
         this.cell = cell;
         this.world = cell.world();
+        this.origin = ((long) cell.position().x() << 32) | (cell.position().y() & 0xFFFFFFFFL);
     }
 
     /**
@@ -67,6 +72,34 @@ public abstract class Entity {
         return uuid;
     }
 
+    /**
+     * Entities of the same type are updated in the order of this key in {@link aufgabe1.world.UpdateMode#DETERMINISTIC}
+     * mode, so it must not depend on the order in which entities were created.
+     * By default, it's the position the entity was created at, which suits entities that never share a cell.
+     *
+     * @return a key that is reproducible for the same seed
+     */
+    @Contract(pure = true)
+    public long orderKey() {
+        return origin;
+    }
+
+    /**
+     * @return the index of the entity in the {@link aufgabe1.world.EntityList} of its chunk, or -1 if it is not tracked
+     */
+    @Contract(pure = true)
+    public int chunkSlot() {
+        return chunkSlot;
+    }
+
+    /**
+     * Sets the index of the entity in the entity list of its chunk. Called by the list when the entity is
+     * added, moved or removed.
+     */
+    public void setChunkSlot(int chunkSlot) {
+        this.chunkSlot = chunkSlot;
+    }
+
     /**
      * Updates the entity. Subclasses can override this method to define specific behaviors.
      */
@@ -25,7 +25,7 @@ public class FoodSource extends Entity {
      *
      * @param amount must be positive
      */
-    public void increaseAmount(float amount) {
+    public synchronized void increaseAmount(float amount) {
         if (amount < 0) throw new IllegalArgumentException("'amount' must be positive");
         this.amount += amount;
     }
@@ -33,12 +33,26 @@ public class FoodSource extends Entity {
     /**
      * @param amount must be positive and less than the available amount
      */
-    public void decreaseAmount(float amount) {
+    public synchronized void decreaseAmount(float amount) {
         if (amount < 0) throw new IllegalArgumentException("'amount' must be positive");
         if (amount > this.amount) throw new IllegalArgumentException("'amount' must be less than available");
         this.amount -= amount;
     }
 
+    /**
+     * Removes up to the given amount of food from the source.
+     * Ants of neighbouring chunks may take food from the same source at the same time.
+     *
+     * @param maxAmount must be positive
+     * @return the amount of food that was removed
+     */
+    public synchronized float take(float maxAmount) {
+        if (maxAmount < 0) throw new IllegalArgumentException("'maxAmount' must be positive");
+        float taken = Math.min(amount, maxAmount);
+        this.amount -= taken;
+        return taken;
+    }
+
     /**
      * @return the amount of food stored in this source. Always >= 0
      */
@@ -47,6 +61,14 @@ public class FoodSource extends Entity {
         return amount;
     }
 
+    /**
+     * @return the number of ticks until the source expires
+     */
+    @Contract(pure = true)
+    public int expireTimer() {
+        return expireTimer;
+    }
+
     /**
      * Checks if the food source is empty.
      *
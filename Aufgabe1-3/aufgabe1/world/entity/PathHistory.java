@@ -3,102 +3,139 @@ package aufgabe1.world.entity;
 import aufgabe1.Direction;
 import aufgabe1.IVector;
 import aufgabe1.Vector;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * Remembers the path of an ant with decreasing detail for older steps.
+ * Every level is a ring buffer of segments, when a level is full its two oldest segments are merged
+ * into one segment of the next level.
+ * The segments are stored in primitive arrays, so pushing a step doesn't allocate.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural, because push is called for every step of every ant
+ */
 public class PathHistory {
     private final int @NotNull [] heads;
-    @NotNull
-    private final List<List<Segment>> levels;
+    // all levels in one array, level lod starts at lod * partitionSize, null marks an empty segment
+    private final Direction @NotNull [] directions;
+    private final int @NotNull [] distances;
+    private final int levels;
     private final int partitionSize;
 
     public PathHistory(int partitionSize, int levels) {
         // the number of saved steps is roughly 2^levels * partitionSize
         this.partitionSize = partitionSize;
-        List<Segment> contiguous = Arrays.asList(new Segment[partitionSize * levels]);
-        this.levels = new ArrayList<>(levels);
+        this.levels = levels;
         this.heads = new int[levels];
-        for (int lod = 0; lod < levels; lod++) {
-            this.levels.add(contiguous.subList(lod * partitionSize, (lod + 1) * partitionSize));
-        }
+        this.directions = new Direction[partitionSize * levels];
+        this.distances = new int[partitionSize * levels];
     }
 
     public void push(@NotNull Direction step) {
-        push(new Segment(step, 1), 0);
+        push(step, 1, 0);
     }
 
     public void reset() {
-        for (int lod = 0; lod < levels.size(); lod++) {
-            heads[lod] = 0;
-            Collections.fill(levels.get(lod), null);
+        Arrays.fill(heads, 0);
+        Arrays.fill(directions, null);
+        Arrays.fill(distances, 0);
+    }
+
+    /**
+     * @return the number of bytes {@link #writeTo} writes
+     */
+    @Contract(pure = true)
+    public int bytes() {
+        return heads.length * Integer.BYTES + directions.length * (Byte.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Writes all levels for a snapshot: the heads, the distances and then the directions, empty segments are
+     * written as direction -1. The int arrays are copied in bulk, since a checkpoint writes every ant in its pause.
+     */
+    public void writeTo(@NotNull ByteBuffer out) {
+        out.asIntBuffer().put(heads);
+        out.position(out.position() + heads.length * Integer.BYTES);
+        out.asIntBuffer().put(distances);
+        out.position(out.position() + distances.length * Integer.BYTES);
+        for (Direction direction : directions) {
+            out.put((byte) (direction == null ? -1 : direction.ordinal()));
+        }
+    }
+
+    /**
+     * Reads the levels written by {@link #writeTo}. The history must have the same size.
+     */
+    public void readFrom(@NotNull ByteBuffer in) {
+        in.asIntBuffer().get(heads);
+        in.position(in.position() + heads.length * Integer.BYTES);
+        in.asIntBuffer().get(distances);
+        in.position(in.position() + distances.length * Integer.BYTES);
+        for (int i = 0; i < directions.length; i++) {
+            byte direction = in.get();
+            directions[i] = direction < 0 ? null : Direction.of(direction);
         }
     }
 
     @NotNull
     public List<IntegratedSegment> integratePath() {
-        List<IntegratedSegment> path = new ArrayList<>(partitionSize * levels.size());
+        List<IntegratedSegment> path = new ArrayList<>(partitionSize * levels);
         Vector pos = new Vector();
-        for (int lod = levels.size() - 1; lod >= 0; lod--) {
-            List<Segment> level = levels.get(lod);
-            for (int offset = 0; offset < level.size(); offset++) {
+        for (int lod = levels - 1; lod >= 0; lod--) {
+            int start = lod * partitionSize;
+            for (int offset = 0; offset < partitionSize; offset++) {
                 // start at oldest
-                int index = (heads[lod] + offset) % partitionSize;
-                Segment s = level.get(index);
-                if (s == null) continue;
+                int index = start + (heads[lod] + offset) % partitionSize;
+                Direction direction = directions[index];
+                if (direction == null) continue;
 
-                pos.add(s.direction.vector(s.distance));
-                path.add(new IntegratedSegment(s.direction, s.distance, pos.copy()));
+                int distance = distances[index];
+                pos.add(direction.vector(distance));
+                path.add(new IntegratedSegment(direction, distance, pos.copy()));
             }
         }
         Collections.reverse(path);
         return path;
     }
 
-    private void push(@NotNull Segment carry, int lod) {
-        if (lod >= levels.size()) return;
+    private void push(@NotNull Direction direction, int distance, int lod) {
+        if (lod >= levels) return;
 
-        List<Segment> level = levels.get(lod);
+        int start = lod * partitionSize;
         int head = heads[lod];
         int next = (head + 1) % partitionSize;
 
-        Segment oldest = level.get(head);
+        Direction oldest = directions[start + head];
+        int oldestDistance = distances[start + head];
 
         // enqueue
-        level.set(head, carry);
+        directions[start + head] = direction;
+        distances[start + head] = distance;
         heads[lod] = next;
 
         // the last level can't carry over and the oldest just gets overwritten
-        if (oldest != null && lod < levels.size() - 1) {
-            Segment nextOldest = level.get(next);
+        if (oldest != null && lod < levels - 1) {
+            Direction nextOldest = directions[start + next];
+            int nextOldestDistance = distances[start + next];
             // dequeue
-            carry = merge(oldest, nextOldest);
-            level.set(next, null);
-            if (carry != null) {
-                push(carry, lod + 1);
-            }
+            directions[start + next] = null;
+            distances[start + next] = 0;
+
+            // merge
+            int dx = oldest.dx() * oldestDistance + nextOldest.dx() * nextOldestDistance;
+            int dy = oldest.dy() * oldestDistance + nextOldest.dy() * nextOldestDistance;
+            if (dx == 0 && dy == 0) return;
+            push(Direction.fromDelta(dx, dy), Math.max(Math.abs(dx), Math.abs(dy)), lod + 1);
         }
     }
 
-    @Nullable
-    private Segment merge(@NotNull Segment a, @NotNull Segment b) {
-        int dx = a.direction.dx() * a.distance + b.direction.dx() * b.distance;
-        int dy = a.direction.dy() * a.distance + b.direction.dy() * b.distance;
-        if (dx == 0 && dy == 0) return null;
-
-        Direction direction = Direction.fromDelta(dx, dy);
-        int distance = Math.max(Math.abs(dx), Math.abs(dy));
-        return new Segment(direction, distance);
-    }
-
 
     public record IntegratedSegment(Direction direction, int distance, IVector position) {
     }
-
-    public record Segment(Direction direction, int distance) {
-    }
 }
@@ -2,14 +2,23 @@ package aufgabe1.world.entity;
 
 import org.jetbrains.annotations.Contract;
 
-public class Scent {
+/**
+ * Constants and helpers for the scents that ants leave on cells.
+ * The scent values themselves are stored per chunk in primitive arrays.
+ * Modularisierungseinheit: Klasse
+ * STYLE: procedural
+ */
+public final class Scent {
     public static final float NO_SCENT_THRESHOLD = 0.001f;
-    public float avoid;
-    public float colony;
-    public float food;
 
+    private Scent() {
+    }
+
+    /**
+     * @return true if all three scent intensities are too weak to be noticed
+     */
     @Contract(pure = true)
-    public boolean isEmpty() {
+    public static boolean isEmpty(float food, float colony, float avoid) {
         return avoid < NO_SCENT_THRESHOLD && colony < NO_SCENT_THRESHOLD && food < NO_SCENT_THRESHOLD;
     }
 }
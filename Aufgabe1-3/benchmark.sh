@@ -0,0 +1,34 @@
+#!/bin/bash
+# Compiles the simulation with the JMH benchmarks in benchmarks/ and runs them.
+# All arguments are passed to JMH, e.g.
+#   ./benchmark.sh WorldUpdateBenchmark -p ants=1000 -p threads=1
+#   ./benchmark.sh -rf json -rff before.json
+# The JMH jars are downloaded into libs/jmh on the first run.
+set -e
+cd "$(dirname "$0")"
+
+JMH_VERSION=1.37
+MAVEN=https://repo1.maven.org/maven2
+JARS=(
+    "org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar"
+    "org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar"
+    "net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar"
+    "org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"
+)
+
+mkdir -p libs/jmh
+CLASSPATH=libs/annotations-24.0.1.jar
+for jar in "${JARS[@]}"; do
+    file="libs/jmh/$(basename "$jar")"
+    if [ ! -f "$file" ]; then
+        curl -fsSL -o "$file" "$MAVEN/$jar"
+    fi
+    CLASSPATH="$CLASSPATH:$file"
+done
+
+rm -rf build/benchmarks
+mkdir -p build/benchmarks
+javac --add-modules jdk.incubator.vector -encoding UTF-8 -classpath "$CLASSPATH" -d build/benchmarks \
+    aufgabe1/*.java aufgabe1/*/*.java aufgabe1/*/*/*.java $(find benchmarks -name "*.java")
+# forked benchmark JVMs get the same JVM arguments
+java --add-modules jdk.incubator.vector -classpath "build/benchmarks:$CLASSPATH" org.openjdk.jmh.Main "$@"
@@ -0,0 +1,73 @@
+package aufgabe1;
+
+import aufgabe1.world.UpdateMode;
+import aufgabe1.world.World;
+import aufgabe1.world.WorldParameters;
+import aufgabe1.world.entity.AntParameters;
+import aufgabe1.world.entity.Colony;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * Creates the seeded simulations used by the benchmarks. The parameters are the same as in {@link Main},
+ * only the number of ants differs, so results of different benchmarks and versions can be compared.
+ * Modularisierungseinheit: Modul
+ * STYLE: procedural
+ */
+public final class BenchmarkWorlds {
+    public static final long SEED = 1337;
+    // ants are spread over this many colonies, so large worlds aren't one crowded spot
+    private static final int COLONIES = 4;
+    private static final int COLONY_DISTANCE = 120;
+
+    private BenchmarkWorlds() {
+    }
+
+    /**
+     * Creates the starting world of {@link Main} with up to {@value #COLONIES} additional colonies,
+     * so the world has at least the given number of ants.
+     *
+     * @param threads the number of worker threads, 0 uses {@link World#defaultThreads()}.
+     *                1 matches the {@code DEBUG_SINGLE_THREADED} executor of the world
+     */
+    @NotNull
+    public static Simulation create(int ants, int threads, @NotNull UpdateMode mode) {
+        if (ants < 1) throw new IllegalArgumentException("ants must be positive");
+        if (threads < 0) throw new IllegalArgumentException("threads must not be negative");
+        WorldParameters worldParams = Main.createWorldParameters();
+        Colony.Parameters colonyParameters = Main.createColonyParameters();
+        AntParameters antParams = Main.createAntParameters(worldParams);
+        int workers = threads == 0 ? World.defaultThreads() : threads;
+
+        Randoms randoms = new Randoms(RandomGeneratorFactory.of("L32X64MixRandom"), SEED);
+        Simulation sim = new Simulation(randoms, s -> {
+            World world = Main.createStartingWorld(s, worldParams, colonyParameters, antParams, workers);
+            // the starting world already has 100 ants, the rest is spread over additional colonies
+            int remaining = Math.max(0, ants - world.totalAnts());
+            for (int i = 0; i < COLONIES && remaining > 0; i++) {
+                int x = (i % 2) * COLONY_DISTANCE - COLONY_DISTANCE / 2;
+                int y = (i / 2) * COLONY_DISTANCE - COLONY_DISTANCE / 2;
+                Colony colony = world.generator().createColony(world.get(x, y), colonyParameters, antParams);
+                colony.increaseFood(100);
+                int count = remaining / (COLONIES - i);
+                for (int ant = 0; ant < count; ant++) {
+                    colony.spawnAnt(0, 30);
+                }
+                remaining -= count;
+            }
+            world.setUpdateMode(mode);
+            return world;
+        });
+        return sim;
+    }
+
+    /**
+     * Runs the given number of ticks, so scents and food trails exist before measuring.
+     */
+    public static void warmUp(@NotNull Simulation sim, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            sim.step();
+        }
+    }
+}
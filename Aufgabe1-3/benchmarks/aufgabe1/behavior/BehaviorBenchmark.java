@@ -0,0 +1,57 @@
+package aufgabe1.behavior;
+
+import aufgabe1.BenchmarkWorlds;
+import aufgabe1.Simulation;
+import aufgabe1.world.UpdateMode;
+import aufgabe1.world.entity.Ant;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Behavior#evaluateBestDirection()} of one ant of a warmed up world, so the cells
+ * in front of the ant carry scents. The world isn't updated while measuring.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BehaviorBenchmark {
+    @Param({"explore", "followScentToFood", "followScentToNest"})
+    public String behavior;
+
+    private Simulation sim;
+    private Behavior evaluated;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sim = BenchmarkWorlds.create(100, 1, UpdateMode.DETERMINISTIC);
+        BenchmarkWorlds.warmUp(sim, 500);
+        // the same ant every run, independent of the iteration order of the set
+        Ant ant = sim.world().colonies().get(0).ants().stream()
+            .min(Comparator.comparingLong(Ant::orderKey))
+            .orElseThrow();
+        Behaviors behaviors = ant.behaviors();
+        evaluated = switch (behavior) {
+            case "explore" -> behaviors.explore();
+            case "followScentToFood" -> behaviors.followScentToFood();
+            case "followScentToNest" -> behaviors.followScentToNest();
+            default -> throw new IllegalArgumentException("Unknown behavior " + behavior);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sim.close();
+    }
+
+    @Benchmark
+    public Behavior.WeightedDirection evaluateBestDirection() {
+        return evaluated.evaluateBestDirection();
+    }
+}
@@ -0,0 +1,62 @@
+package aufgabe1.world;
+
+import aufgabe1.BenchmarkWorlds;
+import aufgabe1.Simulation;
+import aufgabe1.world.entity.Colony;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Cell#update()} for all cells of one chunk that carry the scents of every colony.
+ * The decay factors are set to 1, so the scents never drop below the threshold and every invocation
+ * does the same amount of work.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellBenchmark {
+    private Simulation sim;
+    private Cell[] cells;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sim = BenchmarkWorlds.create(100, 1, UpdateMode.LOCKING);
+        World world = sim.world();
+        WorldParameters parameters = new WorldParameters();
+        parameters.foodDecay = 1f;
+        parameters.colonyDecay = 1f;
+        parameters.avoidDecay = 1f;
+        parameters.dayNightCycleTime = world.parameters().dayNightCycleTime;
+        parameters.dayPercentage = world.parameters().dayPercentage;
+        world.setParameters(parameters);
+
+        cells = new Cell[Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE];
+        for (int i = 0; i < cells.length; i++) {
+            Cell cell = world.get(i % Chunk.CHUNK_SIZE, i / Chunk.CHUNK_SIZE);
+            for (Colony colony : world.colonies()) {
+                cell.addFoodScent(1f, colony);
+                cell.addColonyScent(1f, colony);
+                cell.addAvoidScent(1f, colony);
+            }
+            cells[i] = cell;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sim.close();
+    }
+
+    @Benchmark
+    public void updateChunkCells() {
+        for (Cell cell : cells) {
+            cell.update();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package aufgabe1.world;
+
+import aufgabe1.BenchmarkWorlds;
+import aufgabe1.Simulation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ChunkMap#get} for chunks that are already populated, once for the same chunk over and over
+ * and once for random chunks of the area, which misses most caches.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkMapBenchmark {
+    // number of chunks along each axis of the looked up area
+    @Param({"32"})
+    public int area;
+
+    private Simulation sim;
+    private ChunkMap chunks;
+    private int[] positions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sim = BenchmarkWorlds.create(100, 1, UpdateMode.LOCKING);
+        WorldParameters parameters = sim.world().parameters();
+        chunks = new ChunkMap(sim.world(), new SimpleFoodWorldGenerator(1337, sim.randoms(), parameters), area);
+        chunks.setResidentBudget(Integer.MAX_VALUE);
+        for (int y = 0; y < area; y++) {
+            for (int x = 0; x < area; x++) {
+                chunks.get(x - area / 2, y - area / 2);
+            }
+        }
+
+        // random positions are precomputed so the benchmark doesn't measure the generator
+        SplittableRandom random = new SplittableRandom(BenchmarkWorlds.SEED);
+        positions = new int[4096 * 2];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = random.nextInt(area) - area / 2;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        chunks.close();
+        sim.close();
+    }
+
+    @Benchmark
+    public Chunk sameChunk() {
+        return chunks.get(0, 0);
+    }
+
+    @Benchmark
+    public void randomChunks(Blackhole blackhole) {
+        int i = next;
+        blackhole.consume(chunks.get(positions[i], positions[i + 1]));
+        next = (i + 2) % positions.length;
+    }
+}
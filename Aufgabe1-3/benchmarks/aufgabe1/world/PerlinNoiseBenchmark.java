@@ -0,0 +1,90 @@
+package aufgabe1.world;
+
+import aufgabe1.BenchmarkWorlds;
+import aufgabe1.IVector;
+import aufgabe1.Randoms;
+import aufgabe1.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * Measures {@link PerlinNoise#noise} for the cells of one chunk, with the frequency used by the
+ * {@link SimpleFoodWorldGenerator} for its first octave, against {@link PerlinNoise#addNoise} for the same chunk.
+ * {@link #heightmap} measures the heights generated when a chunk is populated, all six octaves.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PerlinNoiseBenchmark {
+    @Param({"0.015625"})
+    public float frequency;
+
+    private final float[] heights = new float[Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE];
+    private final MovingChunk chunk = new MovingChunk();
+    private WorldGenerator generator;
+    private int offset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // heights don't depend on the parameters
+        Randoms randoms = new Randoms(RandomGeneratorFactory.of("L32X64MixRandom"), BenchmarkWorlds.SEED);
+        generator = new SimpleFoodWorldGenerator(1337, randoms, new WorldParameters());
+    }
+
+    @Benchmark
+    public float noiseChunk() {
+        // the chunk moves every invocation, so the results can't be reused
+        int origin = nextOrigin();
+        float sum = 0;
+        for (int y = 0; y < Chunk.CHUNK_SIZE; y++) {
+            for (int x = 0; x < Chunk.CHUNK_SIZE; x++) {
+                sum += PerlinNoise.noise((origin + x) * frequency, y * frequency);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float[] addNoiseChunk() {
+        PerlinNoise.addNoise(heights, nextOrigin(), 0, Chunk.CHUNK_SIZE, Chunk.CHUNK_SIZE, frequency, 1);
+        return heights;
+    }
+
+    @Benchmark
+    public float[] heightmap() {
+        chunk.origin.x = nextOrigin();
+        generator.generateHeights(chunk, heights);
+        return heights;
+    }
+
+    private int nextOrigin() {
+        int origin = offset;
+        offset = (offset + Chunk.CHUNK_SIZE) & 0xFFFFF;
+        return origin;
+    }
+
+    /**
+     * A chunk without cells, only its origin is used to generate heights.
+     */
+    private static final class MovingChunk implements ChunkArea {
+        private static final IVector SIZE = new Vector(Chunk.CHUNK_SIZE, Chunk.CHUNK_SIZE);
+        private final Vector origin = new Vector(0, 0);
+
+        @Override
+        public IVector origin() {
+            return origin;
+        }
+
+        @Override
+        public IVector size() {
+            return SIZE;
+        }
+    }
+}
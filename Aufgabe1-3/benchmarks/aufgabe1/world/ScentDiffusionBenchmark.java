@@ -0,0 +1,50 @@
+package aufgabe1.world;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar and the vectorized {@link ScentDiffusionKernel} on one colony slot of one chunk.
+ * The scents are well above the threshold, so no cell is cleared and every invocation does the same work.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ScentDiffusionBenchmark {
+    private static final int WIDTH = Chunk.CHUNK_SIZE;
+
+    private final ScentDiffusionKernel scalar = new ScalarScentDiffusionKernel();
+    private final ScentDiffusionKernel vector = ScentDiffusionKernel.create();
+    private final float[][] in = new float[3][(WIDTH + 2) * (WIDTH + 2)];
+    private final float[][] out = new float[3][WIDTH * WIDTH];
+    private final long[] occupied = new long[WIDTH * WIDTH / Long.SIZE];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (float[] values : in) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = 1 + random.nextFloat();
+            }
+        }
+    }
+
+    @Benchmark
+    public long scalar() {
+        scalar.diffuse(in[0], in[1], in[2], out[0], out[1], out[2], WIDTH, 0.2f, occupied);
+        return occupied[0];
+    }
+
+    @Benchmark
+    public long vector() {
+        vector.diffuse(in[0], in[1], in[2], out[0], out[1], out[2], WIDTH, 0.2f, occupied);
+        return occupied[0];
+    }
+}
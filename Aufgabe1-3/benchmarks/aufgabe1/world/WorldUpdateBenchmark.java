@@ -0,0 +1,47 @@
+package aufgabe1.world;
+
+import aufgabe1.BenchmarkWorlds;
+import aufgabe1.Simulation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole tick of {@link World#update()}. The world keeps evolving between the iterations,
+ * so the warmup ticks before the measurement let the ants spread and lay scents first.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorldUpdateBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int ants;
+    // 1 is the DEBUG_SINGLE_THREADED executor, 0 the default pool size
+    @Param({"1", "0"})
+    public int threads;
+    @Param({"LOCKING"})
+    public UpdateMode mode;
+
+    private Simulation sim;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sim = BenchmarkWorlds.create(ants, threads, mode);
+        BenchmarkWorlds.warmUp(sim, 200);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sim.close();
+    }
+
+    @Benchmark
+    public void update() {
+        sim.step();
+    }
+}
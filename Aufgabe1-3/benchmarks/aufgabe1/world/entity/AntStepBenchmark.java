@@ -0,0 +1,57 @@
+package aufgabe1.world.entity;
+
+import aufgabe1.BenchmarkWorlds;
+import aufgabe1.Simulation;
+import aufgabe1.world.UpdateMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single {@link Ant#update()} without the rest of the tick. One operation is one ant step,
+ * so running with {@code -prof gc} reports the allocated bytes per ant and step in {@code gc.alloc.rate.norm}.
+ * The world is created once per trial, creating it per iteration would add its allocations to every iteration.
+ * The world isn't ticked, so ants that die while measuring are skipped and no new ones are spawned.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AntStepBenchmark {
+    private static final int ANTS = 1000;
+
+    private Simulation sim;
+    private Ant[] ants;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sim = BenchmarkWorlds.create(ANTS, 1, UpdateMode.LOCKING);
+        BenchmarkWorlds.warmUp(sim, 200);
+        ants = sim.world().colonies().stream()
+            .flatMap(colony -> colony.ants().stream())
+            .sorted(Comparator.comparingLong(Ant::orderKey))
+            .limit(ANTS)
+            .toArray(Ant[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sim.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANTS)
+    public void step() {
+        for (Ant ant : ants) {
+            // dead ants are untracked by their chunk
+            if (ant.chunkSlot() >= 0) {
+                ant.update();
+            }
+        }
+    }
+}
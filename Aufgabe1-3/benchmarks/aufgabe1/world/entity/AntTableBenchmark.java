@@ -0,0 +1,49 @@
+package aufgabe1.world.entity;
+
+import aufgabe1.BenchmarkWorlds;
+import aufgabe1.Simulation;
+import aufgabe1.world.UpdateMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AntTable#update()}, one operation is one ant step like in {@link AntStepBenchmark},
+ * so the two can be compared. The world isn't ticked while measuring.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AntTableBenchmark {
+    private static final int ANTS = 10000;
+
+    private Simulation sim;
+    private AntTable table;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sim = BenchmarkWorlds.create(100, 1, UpdateMode.LOCKING);
+        Colony colony = sim.world().colonies().get(0);
+        table = colony.enableAntTable();
+        for (int i = 0; i < ANTS; i++) {
+            colony.spawnTableAnt(0, 30);
+        }
+        BenchmarkWorlds.warmUp(sim, 200);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sim.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANTS)
+    public void step() {
+        table.update();
+    }
+}
@@ -0,0 +1,58 @@
+package aufgabe1.world.entity;
+
+import aufgabe1.Direction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PathHistory#push} and {@link PathHistory#integratePath()} with the sizes ants use.
+ * The history is filled with a random walk first, so segments get merged into the higher levels.
+ * Modularisierungseinheit: Klasse
+ * STYLE: object-oriented
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathHistoryBenchmark {
+    // same as Ant
+    private static final int PARTITION_SIZE = 80;
+    private static final int LEVELS = 7;
+
+    private PathHistory history;
+    private Direction[] steps;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // mostly straight with some turns, like an exploring ant
+        SplittableRandom random = new SplittableRandom(1337);
+        steps = new Direction[4096];
+        Direction direction = Direction.North;
+        for (int i = 0; i < steps.length; i++) {
+            direction = direction.right(random.nextInt(3) - 1);
+            steps[i] = direction;
+        }
+        history = new PathHistory(PARTITION_SIZE, LEVELS);
+        for (int i = 0; i < PARTITION_SIZE * (1 << LEVELS); i++) {
+            history.push(steps[i % steps.length]);
+        }
+    }
+
+    @Benchmark
+    public void push() {
+        int i = next;
+        history.push(steps[i]);
+        next = (i + 1) % steps.length;
+    }
+
+    @Benchmark
+    public List<PathHistory.IntegratedSegment> integratePath() {
+        return history.integratePath();
+    }
+}
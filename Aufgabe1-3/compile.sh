@@ -1,2 +1,2 @@
 rm -r *.class
-javac -classpath libs/annotations-24.0.1.jar Test.java aufgabe1/*.java aufgabe1/*/*.java aufgabe1/*/*/*.java
\ No newline at end of file
+javac --add-modules jdk.incubator.vector -classpath libs/annotations-24.0.1.jar Test.java aufgabe1/*.java aufgabe1/*/*.java aufgabe1/*/*/*.java
\ No newline at end of file